@@ -0,0 +1,186 @@
+package flingball;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * An AdminEndpoint is the operator interface of a FlingballServer: a TCP port on the loopback
+ * address only, so that only users of the server's host can reach it, e.g. with
+ * "nc localhost PORT".
+ *
+ * It accepts commands of the form:
+ *
+ * COMMAND ::= "stats" | "boards" | "topology" | "help" | "quit" | TOPOLOGY_COMMAND
+ *
+ * "stats" reports the counters of the server, with rates since the previous report,
+ * see FlingballServer.getStatsReport.
+ * "boards" lists the joinable boards and the boards joined to their sides.
+ * "topology" prints the current joins as a topology, which "load" can apply again.
+ * TOPOLOGY_COMMAND is any command of the server's standard input ("h", "v", "grid", "torus"
+ * or "load"), see FlingballServer.actOnCommand; its reply is a protocol RESPONSE.
+ * "quit" closes the connection.
+ *
+ * Every reply is one or more lines followed by an empty line.
+ * An AdminEndpoint is thread-safe; every admin connection is served by its own daemon thread.
+ */
+public class AdminEndpoint {
+    private static final String HELP = "commands: stats, boards, topology, help, quit,\n"
+            + "h NAME_left NAME_right, v NAME_top NAME_bottom, grid COLS NAME+, torus COLS NAME+, load FILE";
+
+    private final FlingballServer server;
+    private final ServerSocket serverSocket;
+
+    // Abstraction function:
+    //   AF(server, serverSocket) = the admin interface of server, listening on serverSocket
+    // Representation invariant:
+    //   server, serverSocket not null, serverSocket is bound to the loopback address
+    // Safety from rep exposure:
+    //   all fields are private and final and never returned
+    // Thread safety argument:
+    //   fields are final, server is only used through its thread-safe methods, and each
+    //   connection is confined to the thread serving it.
+
+    /**
+     * Make an AdminEndpoint of a server. Call start to serve it.
+     * @param server the server to administer
+     * @param port port to listen on, on the loopback address, 0 for any free port
+     * @throws IOException if the port can't be opened
+     */
+    public AdminEndpoint(FlingballServer server, int port) throws IOException {
+        this.server = server;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert server != null;
+        assert serverSocket != null;
+        assert serverSocket.getInetAddress().isLoopbackAddress();
+    }
+
+    /**
+     * Start accepting admin connections on a daemon thread, until closed.
+     */
+    public void start() {
+        final Thread acceptor = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    final Thread handler = new Thread(() -> serve(socket), "admin " + socket.getPort());
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    if (!serverSocket.isClosed()) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "admin endpoint");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /*
+     * serve one admin connection until it is closed or quits
+     */
+    private void serve(Socket socket) {
+        try (Socket connection = socket;
+                BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+            for (String command = in.readLine(); command != null; command = in.readLine()) {
+                if (command.trim().equals("quit")) {
+                    break;
+                }
+                out.print(handleCommand(command.trim()) + "\n\n");
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the admin closed the connection, stop serving it
+        }
+    }
+
+    /**
+     * Act on one admin command.
+     * @param command a COMMAND other than "quit"
+     * @return the reply, without the final empty line
+     * @throws IOException if a topology command can't send its join requests
+     */
+    String handleCommand(String command) throws IOException {
+        switch (command) {
+        case "stats":
+            return server.getStatsReport().trim();
+        case "boards":
+            return boards();
+        case "topology":
+            return topology();
+        case "help":
+        case "":
+            return HELP;
+        default:
+            return server.actOnCommand(command);
+        }
+    }
+
+    /*
+     * one line per joinable board with the boards joined to its sides
+     */
+    private String boards() {
+        final StringBuilder boards = new StringBuilder();
+        for (String board : server.getJoinableBoards()) {
+            boards.append(board);
+            for (Map.Entry<BOARD_DIRECTION, String> side : server.getNeighbours(board).entrySet()) {
+                boards.append(' ').append(side.getKey().name().toLowerCase()).append('=').append(side.getValue());
+            }
+            boards.append('\n');
+        }
+        return boards.length() == 0 ? "no boards" : boards.toString().trim();
+    }
+
+    /*
+     * the current joins of the server as a topology
+     */
+    private String topology() {
+        final StringBuilder topology = new StringBuilder("# topology of " + server + "\n");
+        for (String board : server.getJoinableBoards()) {
+            final Map<BOARD_DIRECTION, String> sides = server.getNeighbours(board);
+            if (sides.containsKey(BOARD_DIRECTION.RIGHT)) {
+                topology.append("h ").append(board).append(' ').append(sides.get(BOARD_DIRECTION.RIGHT)).append('\n');
+            }
+            if (sides.containsKey(BOARD_DIRECTION.BOTTOM)) {
+                topology.append("v ").append(board).append(' ').append(sides.get(BOARD_DIRECTION.BOTTOM)).append('\n');
+            }
+        }
+        return topology.toString().trim();
+    }
+
+    /**
+     * @return the port this endpoint listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stop accepting admin connections. Connections already open are served until they close.
+     * @throws IOException if the port can't be closed
+     */
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    @Override
+    public String toString() {
+        return "AdminEndpoint of " + server + " on port " + getPort();
+    }
+}
@@ -20,6 +20,7 @@ public class Ball {
     private static final double DIAMETER = 0.5;
     public static final double RADIUS = 0.25;
     private static final int PIXELS_PER_L = 20;
+    public static final int OPAQUE = 255;
 
     // Abstraction Function
     //  AF(name, location, velocity) = A 2D image of a circular ball whose name is name. This
@@ -127,13 +128,24 @@ public class Ball {
      * @param g Graphics the 2D render on which to draw.
      */
     public void draw(Graphics g) {
+        drawAt(g, location, OPAQUE);
+    }
+    
+    /**
+     * Draws this Ball at a location other than its own, e.g. while smoothing its movement.
+     * 
+     * @param g Graphics the 2D render on which to draw.
+     * @param drawLocation location of the center of the drawn ball
+     * @param alpha opacity of the drawn ball, 0 (transparent) to OPAQUE inclusive
+     */
+    public void drawAt(Graphics g, Vect drawLocation, int alpha) {
         // xCoord & yCoord specify the circle's top left corner as per the fillArc spec
-        final int xCoord = (int) ((location.x() - RADIUS) * PIXELS_PER_L);
-        final int yCoord = (int) ((location.y() - RADIUS) * PIXELS_PER_L);
+        final int xCoord = (int) ((drawLocation.x() - RADIUS) * PIXELS_PER_L);
+        final int yCoord = (int) ((drawLocation.y() - RADIUS) * PIXELS_PER_L);
         final int pixelDiameter = (int) (PIXELS_PER_L * DIAMETER);
         final int startAngleDegrees = 0;
         final int arcAngleDegrees = 360;
-        g.setColor(COLOR);
+        g.setColor(alpha == OPAQUE ? COLOR : new Color(COLOR.getRed(), COLOR.getGreen(), COLOR.getBlue(), alpha));
         g.fillArc(xCoord, yCoord, pixelDiameter, pixelDiameter, startAngleDegrees, arcAngleDegrees);
         checkRep(); // just to make sure nothing mutated in-class :)
     }
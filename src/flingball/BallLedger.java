@@ -0,0 +1,386 @@
+package flingball;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A BallLedger records which balls a FlingballServer has handed to a destination client
+ * but not yet seen applied there. Every ball the server forwards gets a new sequence number,
+ * and stays in the ledger until the destination acknowledges it: until then the server owns
+ * the ball, and can send it again (the destination ignores a sequence number it has seen,
+ * see DedupWindow) or give it back to the board that sent it. So a ball is never lost nor
+ * doubled when a destination dies between the server accepting the ball and the destination
+ * applying it.
+ *
+ * On the wire a sequence number is an option of a forwarded TRANSFER_BALL_REQUEST or
+ * PORTAL_BALL_REQUEST, placed after any SEND_STAMP and before any TRACE:
+ * SEQ ::= "seq" NUMBER
+ * NUMBER ::= [0-9]+
+ * and the destination acknowledges it by ending its reply with the same SEQ, e.g.
+ * "succeed: ball received seq 42".
+ *
+ * BallLedgers are mutable and thread-safe.
+ */
+public class BallLedger {
+
+    public static final String KEYWORD = "seq";
+    public static final long NO_SEQ = -1;
+    /** sender of a ball that no client sent, e.g. one the server gives back */
+    public static final int NO_SENDER = -1;
+
+    private final long ackTimeoutMillis;
+    private final Map<Long, Entry> inFlight;
+    private final Map<Long, Integer> attempts;
+    private final TimerWheel<Long> deadlines;
+    private long nextSeq;
+
+    // Abstraction function:
+    //   AF(ackTimeoutMillis, inFlight, attempts, deadlines, nextSeq) = the balls handed out and
+    //      not acknowledged, by sequence number, where the ball of inFlight.get(s) was sent
+    //      attempts.get(s) times and, if deadlines has s, must be acknowledged by the deadline
+    //      of s, ackTimeoutMillis after it was last sent. nextSeq is the next sequence number.
+    // Representation invariant:
+    //   ackTimeoutMillis > 0, nextSeq > every key of inFlight, every key >= 0
+    //   attempts.keySet() equals inFlight.keySet(), every attempts value >= 0
+    //   every key of deadlines is a key of inFlight with attempts > 0
+    // Safety from rep exposure:
+    //   all fields are private, Entries are immutable, lists returned are new
+    // Thread safety argument:
+    //   all fields are guarded by the lock of this, every method that touches them is
+    //   synchronized; deadlines is thread-safe and never calls back
+
+    /**
+     * Make an empty BallLedger.
+     * @param ackTimeoutMillis time a destination has to acknowledge a ball it was sent, > 0
+     * @param startMillis the current time in milliseconds, e.g. of System.currentTimeMillis()
+     */
+    public BallLedger(long ackTimeoutMillis, long startMillis) {
+        this.ackTimeoutMillis = ackTimeoutMillis;
+        this.inFlight = new HashMap<>();
+        this.attempts = new HashMap<>();
+        this.deadlines = new TimerWheel<>(Math.max(1, ackTimeoutMillis / 10), 64, startMillis);
+        this.nextSeq = 0;
+        checkRep();
+    }
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert ackTimeoutMillis > 0;
+        assert attempts.keySet().equals(inFlight.keySet());
+        for (Map.Entry<Long, Integer> sent : attempts.entrySet()) {
+            assert sent.getKey() >= 0 && sent.getKey() < nextSeq;
+            assert sent.getValue() >= 0;
+        }
+    }
+
+    /**
+     * Take ownership of a ball on its way to a destination, with a new sequence number.
+     * @param request the ball request to forward, without SEQ
+     * @param sender userID of the client that sent the ball
+     * @param destination userID of the client the ball goes to
+     * @return the entry of the ball, whose request carries its SEQ
+     */
+    public synchronized Entry open(String request, int sender, int destination) {
+        return open(request, sender, destination, Optional.empty());
+    }
+
+    /**
+     * Take ownership of a ball on its way to a destination, with a new sequence number.
+     * @param request the ball request to forward, without SEQ
+     * @param sender userID of the client that sent the ball
+     * @param destination userID of the client the ball goes to
+     * @param side side of the board of sender the ball left through to the board of
+     *        destination, empty if it didn't cross an edge
+     * @return the entry of the ball, whose request carries its SEQ
+     */
+    public synchronized Entry open(String request, int sender, int destination, Optional<BOARD_DIRECTION> side) {
+        final long seq = nextSeq++;
+        return add(new Entry(seq, withSeq(request, seq), null, sender, destination, side));
+    }
+
+    /**
+     * Like open, for a ball request the server relays without decoding it: request is kept
+     * as it is and decoded only if getRequest of the entry is called, to send the ball again
+     * or give it back.
+     * @param request the ball request to forward, without SEQ, in UTF-8; the ledger takes it
+     *        over and it must not be changed after
+     * @param sender userID of the client that sent the ball
+     * @param destination userID of the client the ball goes to
+     * @param side side of the board of sender the ball left through to the board of
+     *        destination, empty if it didn't cross an edge
+     * @return the entry of the ball, whose request carries its SEQ
+     */
+    public synchronized Entry open(byte[] request, int sender, int destination, Optional<BOARD_DIRECTION> side) {
+        return add(new Entry(nextSeq++, null, request, sender, destination, side));
+    }
+
+    // add entry to the balls in flight, not sent yet
+    private Entry add(Entry entry) {
+        inFlight.put(entry.seq, entry);
+        attempts.put(entry.seq, 0);
+        return entry;
+    }
+
+    /**
+     * Record that the ball seq was written to its destination, which now has ackTimeoutMillis
+     * to acknowledge it. Does nothing if seq isn't in flight.
+     * @param seq sequence number of the ball
+     * @param nowMillis the current time in milliseconds, on the clock of startMillis
+     */
+    public synchronized void sent(long seq, long nowMillis) {
+        final Integer sentBefore = attempts.get(seq);
+        if (sentBefore == null) {
+            return;
+        }
+        attempts.put(seq, sentBefore + 1);
+        deadlines.schedule(seq, nowMillis + ackTimeoutMillis);
+    }
+
+    /**
+     * Record an acknowledgement of a ball, which then leaves the ledger.
+     * @param destination userID of the client that acknowledged the ball
+     * @param seq sequence number acknowledged
+     * @return true iff seq was in flight to destination
+     */
+    public synchronized boolean acknowledge(int destination, long seq) {
+        final Entry entry = inFlight.get(seq);
+        if (entry == null || entry.getDestination() != destination) {
+            return false;
+        }
+        close(seq);
+        return true;
+    }
+
+    /**
+     * Remove a ball from the ledger, e.g. because it is given back to its sender.
+     * @param seq sequence number of the ball
+     * @return the entry of the ball, or null if it wasn't in flight
+     */
+    public synchronized Entry close(long seq) {
+        attempts.remove(seq);
+        deadlines.cancel(seq);
+        return inFlight.remove(seq);
+    }
+
+    /**
+     * Remove all balls in flight to a destination.
+     * @param destination userID of the client
+     * @return the entries of the balls removed, in order of sequence number
+     */
+    public synchronized List<Entry> closeAll(int destination) {
+        final List<Entry> closed = new ArrayList<>();
+        final Iterator<Entry> entries = inFlight.values().iterator();
+        while (entries.hasNext()) {
+            final Entry entry = entries.next();
+            if (entry.getDestination() == destination) {
+                entries.remove();
+                attempts.remove(entry.getSeq());
+                deadlines.cancel(entry.getSeq());
+                closed.add(entry);
+            }
+        }
+        closed.sort((a, b) -> Long.compare(a.getSeq(), b.getSeq()));
+        checkRep();
+        return closed;
+    }
+
+    /**
+     * Find the balls whose destination didn't acknowledge them in time. They stay in the
+     * ledger, without a deadline until they are sent again.
+     * @param nowMillis the current time in milliseconds, on the clock of startMillis
+     * @return the entries of the balls whose deadline passed
+     */
+    public synchronized List<Entry> expired(long nowMillis) {
+        final List<Entry> expired = new ArrayList<>();
+        for (long seq : deadlines.advance(nowMillis)) {
+            final Entry entry = inFlight.get(seq);
+            if (entry != null) {
+                expired.add(entry);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @param seq sequence number of a ball
+     * @return true iff the ball is in flight
+     */
+    public synchronized boolean contains(long seq) {
+        return inFlight.containsKey(seq);
+    }
+
+    /**
+     * @param seq sequence number of a ball
+     * @return number of times the ball was sent, 0 if it isn't in flight
+     */
+    public synchronized int getAttempts(long seq) {
+        return attempts.getOrDefault(seq, 0);
+    }
+
+    /**
+     * @return number of balls in flight
+     */
+    public synchronized int size() {
+        return inFlight.size();
+    }
+
+    /**
+     * Add a SEQ to a ball request, before its TRACE if it has one.
+     * @param request a ball request to a client (see Flingball) without SEQ
+     * @param seq sequence number, >= 0
+     * @return request with the SEQ
+     */
+    public static String withSeq(String request, long seq) {
+        final String option = " " + KEYWORD + " " + seq;
+        final Tokenizer tokens = new Tokenizer(request);
+        final int trace = HandoffTrace.indexIn(tokens, Flingball.ballFields(tokens));
+        if (trace == tokens.count()) {
+            return request + option;
+        }
+        final int separator = tokens.seek(trace).offset() - 1;
+        return request.substring(0, separator) + option + request.substring(separator);
+    }
+
+    /**
+     * Find the SEQ in a tokenized ball request, without moving the cursor of tokens.
+     * @param tokens tokenizer of the request
+     * @param from index of the first token after the fixed fields of the request, where its
+     *        options start; the fields are not searched, since a BALLNAME or BOARDNAME may be "seq"
+     * @return the index of the SEQ in tokens, or tokens.count() if there is none
+     */
+    public static int indexIn(Tokenizer tokens, int from) {
+        return tokens.indexOf(KEYWORD, from);
+    }
+
+    /**
+     * Parse the SEQ of a tokenized ball request. Moves the cursor of tokens.
+     * @param tokens tokenizer of the request
+     * @param index index of the "seq" keyword in tokens, as returned by indexIn
+     * @return the sequence number, or NO_SEQ if tokens has no valid SEQ at index
+     */
+    public static long parse(Tokenizer tokens, int index) {
+        if (index + 1 >= tokens.count() || !tokens.seek(index).nextIs(KEYWORD)) {
+            return NO_SEQ;
+        }
+        try {
+            final long seq = tokens.nextLong();
+            return seq >= 0 ? seq : NO_SEQ;
+        } catch (NumberFormatException e) {
+            return NO_SEQ;
+        }
+    }
+
+    /**
+     * @param seq a sequence number or NO_SEQ
+     * @return the SEQ that acknowledges seq in a reply, starting with a space,
+     *         or "" if seq is NO_SEQ
+     */
+    public static String ack(long seq) {
+        return seq == NO_SEQ ? "" : " " + KEYWORD + " " + seq;
+    }
+
+    /**
+     * Parse the acknowledgement in a reply of a destination client.
+     * @param reply a reply to a request of the server
+     * @return the sequence number acknowledged by reply, or NO_SEQ if it acknowledges none
+     */
+    public static long ackedIn(String reply) {
+        final int option = reply.lastIndexOf(" " + KEYWORD + " ");
+        if (!reply.startsWith("succeed:") || option < 0) {
+            return NO_SEQ;
+        }
+        try {
+            final long seq = Long.parseLong(reply.substring(option + KEYWORD.length() + 2));
+            return seq >= 0 ? seq : NO_SEQ;
+        } catch (NumberFormatException e) {
+            return NO_SEQ;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BallLedger with " + inFlight.size() + " balls in flight";
+    }
+
+    /**
+     * An Entry is a ball in a BallLedger: the request that hands it to its destination,
+     * who sent it, and through which side. Entries are immutable.
+     */
+    public static class Entry {
+        private final long seq;
+        private final String request;
+        private final byte[] encoded;
+        private final int sender;
+        private final int destination;
+        private final Optional<BOARD_DIRECTION> side;
+
+        // Abstraction function:
+        //   AF(seq, request, encoded, sender, destination, side) = the ball with sequence number
+        //      seq sent by the client sender to the client destination with request, or with
+        //      the UTF-8 encoded request without SEQ if request is null, across the side of the
+        //      board of sender if present
+        // Representation invariant:
+        //   seq >= 0, exactly one of request and encoded is null,
+        //   request ends with its SEQ or has it before its TRACE, side not null
+        // Safety from rep exposure:
+        //   all fields are private and final, encoded is never changed nor returned, the
+        //   others are immutable
+
+        private Entry(long seq, String request, byte[] encoded, int sender, int destination,
+                Optional<BOARD_DIRECTION> side) {
+            this.seq = seq;
+            this.request = request;
+            this.encoded = encoded;
+            this.sender = sender;
+            this.destination = destination;
+            this.side = side;
+            assert seq >= 0 && (request == null) != (encoded == null) && side != null;
+        }
+
+        /**
+         * @return the sequence number of the ball
+         */
+        public long getSeq() {
+            return seq;
+        }
+
+        /**
+         * @return the ball request that hands the ball to its destination, with its SEQ
+         */
+        public String getRequest() {
+            return request != null ? request : withSeq(new String(encoded, StandardCharsets.UTF_8), seq);
+        }
+
+        /**
+         * @return userID of the client that sent the ball
+         */
+        public int getSender() {
+            return sender;
+        }
+
+        /**
+         * @return userID of the client the ball goes to
+         */
+        public int getDestination() {
+            return destination;
+        }
+
+        /**
+         * @return side of the board of the sender the ball left through, empty if the ball
+         *         didn't cross an edge
+         */
+        public Optional<BOARD_DIRECTION> getSide() {
+            return side;
+        }
+
+        @Override
+        public String toString() {
+            return "ball seq " + seq + " from " + sender + " to " + destination;
+        }
+    }
+}
@@ -8,10 +8,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.junit.experimental.theories.PotentialAssignment;
@@ -33,23 +35,30 @@ public class Board {
     
     private final String name;
     private final List<Ball> balls;
-    private final List<Bumper> staticBumpers;
-    private final List<Gadget> staticGadgets;
-    private final List<Absorber> absorbers;
+    private List<Bumper> staticBumpers;
+    private List<Gadget> staticGadgets;
+    private List<Absorber> absorbers;
     private final List<LineSegment> walls;
     private final List<Flipper> flippers;
-    private final List<Portal> portals;
-    private final float gravity;
-    private final float friction1;  // units of per second
-    private final float friction2;  // units of per L
+    private List<Portal> portals;
+    private float gravity;
+    private float friction1;  // units of per second
+    private float friction2;  // units of per L
     
-    private final Map<Gadget, List<Absorber>> triggerTargetAbsorberMap = Collections.synchronizedMap(new HashMap<>());
-    private final Map<Gadget, List<Flipper>> triggerTargetFlipperMap = Collections.synchronizedMap(new HashMap<>());
-    private final Map<Integer, List<Absorber>> keyupTriggerAndAbsorberMap = Collections.synchronizedMap(new HashMap<>());
-    private final Map<Integer, List<Absorber>> keydownTriggerAndAbsorberMap = Collections.synchronizedMap(new HashMap<>());
-    private final Map<Integer, List<Flipper>> keyupTriggerAndFlipperMap = Collections.synchronizedMap(new HashMap<>());
-    private final Map<Integer, List<Flipper>> keydownTriggerAndFlipperMap = Collections.synchronizedMap(new HashMap<>());
+    private Map<Gadget, List<Absorber>> triggerTargetAbsorberMap = Collections.synchronizedMap(new HashMap<>());
+    private Map<Gadget, List<Flipper>> triggerTargetFlipperMap = Collections.synchronizedMap(new HashMap<>());
+    private Map<Integer, List<Absorber>> keyupTriggerAndAbsorberMap = Collections.synchronizedMap(new HashMap<>());
+    private Map<Integer, List<Absorber>> keydownTriggerAndAbsorberMap = Collections.synchronizedMap(new HashMap<>());
+    private Map<Integer, List<Flipper>> keyupTriggerAndFlipperMap = Collections.synchronizedMap(new HashMap<>());
+    private Map<Integer, List<Flipper>> keydownTriggerAndFlipperMap = Collections.synchronizedMap(new HashMap<>());
+    // true while the static gadgets and trigger maps are the unmodifiable ones of a BoardBlueprint
+    private boolean shared = false;
     private final Map<Absorber, List<String>> absorberBallNamesMap = Collections.synchronizedMap(new HashMap<>());
+    private final List<HandoffTrace> pendingTraces = Collections.synchronizedList(new LinkedList<>());
+    private final Set<String> hintedBalls = Collections.synchronizedSet(new HashSet<>());
+    private final Map<String, Ball> ghosts = Collections.synchronizedMap(new HashMap<>());
+    private final Map<String, Integer> ghostTicksLeft = Collections.synchronizedMap(new HashMap<>());
+    private final Map<String, Vect> renderOffsets = Collections.synchronizedMap(new HashMap<>());
 
     // other boards. Since board names must not be empty, we use an empty string to 
     // indicate no joined board on this edge
@@ -59,6 +68,7 @@ public class Board {
     private String bottom = "";
     
     private Optional<Flingball> flingball;
+    private long ticks = 0;
     
     private final Color color = Color.WHITE;
     private final static int MILLISECONDS_PER_SECOND=1000;
@@ -67,6 +77,15 @@ public class Board {
     public final static int PIXEL_PER_L = 20;
     private final static float GRAVITY_DEFAULT = 25;  // units of L/(sec^2)
     private final static float FRICTION_DEFAULT = 0.025f;
+    private final static int NANOSECONDS_PER_SECOND=1_000_000_000;
+    public final static int MAX_TRANSIT_TICKS = 50;
+    public final static int HINT_TICKS = 10;
+    public final static int GHOST_TICKS = 3 * HINT_TICKS;
+    private final static double RENDER_OFFSET_DECAY = 0.8;
+    private final static double MIN_RENDER_OFFSET = 0.01;
+    private final static double MAX_RENDER_OFFSET = 2;
+    private final static int GHOST_ALPHA = 96;
+    public final static int FRAME_TICKS = 5;
    
     
     
@@ -87,10 +106,20 @@ public class Board {
     //      not joined to otherboards, the string is empty.
     //      It also have an Optional field flingball. If this board is in server client mode, this field
     //      is the flingball object that plays this board. Otherwise this field is empty.
+    //      pendingTraces are the traces of received balls that are not yet applied at a tick.
+    //      hintedBalls are the names of balls whose imminent crossing to a joined board was announced.
+    //      ghosts maps names of balls announced by joined boards to their predicted state, which is
+    //      dropped after ghostTicksLeft.get(name) more updates. renderOffsets maps names of balls
+    //      to the offset they are drawn at, which decays to zero after a ghost was reconciled.
+    //      ticks is the number of updates of this board so far.
+    //      If shared, staticBumpers, staticGadgets, absorbers, portals and the trigger maps
+    //      are shared with the BoardBlueprint this board was made of, or with forks of this
+    //      board or the board this is a fork of, and are copied before they change.
     // Rep Invariant:
     //  - All fields not null
     // Safety from Rep Exposure:
-    //  --| All fields are private and final. All gadgets are immutable.
+    //  --| All fields are private and final, except the static gadgets and trigger maps shared
+    //  --| with a blueprint or forks, which are never changed until they are copied. All gadgets are immutable.
     //  --| All getter methods that return mutable objects implement defensive copying.
     //  --| Other return types are immutable and thus safe for returning.
     // Thread Safety:
@@ -152,6 +181,236 @@ public class Board {
     }
 
 
+    /**
+     * Construct a new board of a blueprint, which shares the static gadgets and trigger maps
+     * of the blueprint until they are changed, and starts with its balls and flippers.
+     * 
+     * @param blueprint the blueprint of the board
+     */
+    Board(BoardBlueprint blueprint) {
+        this.name = blueprint.getName();
+        this.gravity = blueprint.getGravity();
+        this.friction1 = blueprint.getFriction1();
+        this.friction2 = blueprint.getFriction2();
+        this.balls = Collections.synchronizedList(new LinkedList<>(blueprint.getBalls()));
+        this.flippers = Collections.synchronizedList(new LinkedList<>(blueprint.getFlippers()));
+        this.staticBumpers = blueprint.getBumpers();
+        this.absorbers = blueprint.getAbsorbers();
+        this.portals = blueprint.getPortals();
+        this.staticGadgets = blueprint.getStaticGadgets();
+        this.triggerTargetAbsorberMap = blueprint.getTriggerAbsorbers();
+        this.triggerTargetFlipperMap = blueprint.getTriggerFlippers();
+        this.keyupTriggerAndAbsorberMap = blueprint.getKeyupAbsorbers();
+        this.keydownTriggerAndAbsorberMap = blueprint.getKeydownAbsorbers();
+        this.keyupTriggerAndFlipperMap = blueprint.getKeyupFlippers();
+        this.keydownTriggerAndFlipperMap = blueprint.getKeydownFlippers();
+        this.shared = true;
+        for (Absorber absorber : absorbers) {
+            absorberBallNamesMap.put(absorber, new ArrayList<>());
+        }
+        this.walls = constructWalls();
+        this.flingball = Optional.empty();
+        checkRep();
+    }
+
+    /*
+     * Construct a fork of original, which shares its static gadgets and trigger maps and
+     * starts with copies of its runtime state. Requires original.shared.
+     */
+    private Board(Board original) {
+        this.name = original.name;
+        this.gravity = original.gravity;
+        this.friction1 = original.friction1;
+        this.friction2 = original.friction2;
+        this.balls = Collections.synchronizedList(new LinkedList<>(original.balls));
+        this.flippers = Collections.synchronizedList(new LinkedList<>(original.flippers));
+        this.staticBumpers = original.staticBumpers;
+        this.absorbers = original.absorbers;
+        this.portals = original.portals;
+        this.staticGadgets = original.staticGadgets;
+        this.triggerTargetAbsorberMap = original.triggerTargetAbsorberMap;
+        this.triggerTargetFlipperMap = original.triggerTargetFlipperMap;
+        this.keyupTriggerAndAbsorberMap = original.keyupTriggerAndAbsorberMap;
+        this.keydownTriggerAndAbsorberMap = original.keydownTriggerAndAbsorberMap;
+        this.keyupTriggerAndFlipperMap = original.keyupTriggerAndFlipperMap;
+        this.keydownTriggerAndFlipperMap = original.keydownTriggerAndFlipperMap;
+        this.shared = true;
+        for (Map.Entry<Absorber, List<String>> held : original.absorberBallNamesMap.entrySet()) {
+            absorberBallNamesMap.put(held.getKey(), new ArrayList<>(held.getValue()));
+        }
+        this.walls = new LinkedList<>(original.walls);
+        this.left = original.left;
+        this.right = original.right;
+        this.top = original.top;
+        this.bottom = original.bottom;
+        this.ticks = original.ticks;
+        this.flingball = Optional.empty();
+        checkRep();
+    }
+
+    /**
+     * Fork this board: make a new board with copies of its balls, flippers, balls held by
+     * absorbers and joins, that shares its static gadgets and trigger maps until either
+     * board changes them. The fork is headless: it is not played by any Flingball, so
+     * balls leave it through joined edges and portals to other boards without being sent
+     * anywhere, and it doesn't show balls announced by joined boards.
+     * Forks can be advanced in parallel with each other and with this board.
+     * 
+     * @return a fork of this board
+     */
+    public synchronized Board fork() {
+        shared = true;
+        return new Board(this);
+    }
+
+    /**
+     * Advance this board by a number of updates, without drawing it.
+     * 
+     * @param updates number of updates, requires updates >= 0
+     */
+    public synchronized void advance(int updates) {
+        for (int i = 0; i < updates; i++) {
+            updateBoard();
+        }
+    }
+
+    /**
+     * @return number of updates of this board so far
+     */
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Reload the definition of this board in place, e.g. after its board file was edited:
+     * take the gravity, friction, static gadgets, triggers and key bindings of definition,
+     * while keeping the balls, joins and name of this board. Flippers that didn't change keep
+     * their motion, absorbers that didn't change keep the balls they hold, and the balls held
+     * by removed or changed absorbers are dropped.
+     * 
+     * @param definition the new definition of this board
+     * @return the changes made, one per line, e.g. "added SquareBumper sq", "moved Flipper f"
+     *         or "removed Absorber abs", in no particular order; empty if nothing changed
+     */
+    public synchronized List<String> reload(BoardBlueprint definition) {
+        final List<String> changes = new ArrayList<>();
+        final Map<String, Gadget> before = new HashMap<>();
+        for (Gadget gadget : staticGadgets) {
+            before.put(kindAndName(gadget), gadget);
+        }
+        for (Flipper flipper : flippers) {
+            before.put(kindAndName(flipper), flipper);
+        }
+        final Map<String, Gadget> after = new HashMap<>();
+        for (Gadget gadget : definition.getStaticGadgets()) {
+            after.put(kindAndName(gadget), gadget);
+        }
+        for (Flipper flipper : definition.getFlippers()) {
+            after.put(kindAndName(flipper), flipper);
+        }
+        for (Map.Entry<String, Gadget> gadget : after.entrySet()) {
+            final Gadget old = before.get(gadget.getKey());
+            if (old == null) {
+                changes.add("added " + gadget.getKey());
+            } else if (!old.equals(gadget.getValue())) {
+                changes.add("moved " + gadget.getKey());
+            }
+        }
+        for (String gadget : before.keySet()) {
+            if (!after.containsKey(gadget)) {
+                changes.add("removed " + gadget);
+            }
+        }
+        
+        final List<Flipper> newFlippers = new ArrayList<>();
+        for (Flipper flipper : definition.getFlippers()) {
+            final Optional<Flipper> running = findFlipper(flipper.getName());
+            newFlippers.add(running.isPresent() && running.get().equals(flipper) ? running.get() : flipper);
+        }
+        flippers.clear();
+        flippers.addAll(newFlippers);
+        final Map<Absorber, List<String>> held = new HashMap<>(absorberBallNamesMap);
+        absorberBallNamesMap.clear();
+        for (Absorber absorber : definition.getAbsorbers()) {
+            absorberBallNamesMap.put(absorber, held.getOrDefault(absorber, new ArrayList<>()));
+        }
+        
+        if (!triggerTargetAbsorberMap.equals(definition.getTriggerAbsorbers())
+                || !triggerTargetFlipperMap.equals(definition.getTriggerFlippers())
+                || !keyupTriggerAndAbsorberMap.equals(definition.getKeyupAbsorbers())
+                || !keydownTriggerAndAbsorberMap.equals(definition.getKeydownAbsorbers())
+                || !keyupTriggerAndFlipperMap.equals(definition.getKeyupFlippers())
+                || !keydownTriggerAndFlipperMap.equals(definition.getKeydownFlippers())) {
+            changes.add("changed triggers");
+        }
+        staticBumpers = definition.getBumpers();
+        absorbers = definition.getAbsorbers();
+        portals = definition.getPortals();
+        staticGadgets = definition.getStaticGadgets();
+        triggerTargetAbsorberMap = definition.getTriggerAbsorbers();
+        triggerTargetFlipperMap = definition.getTriggerFlippers();
+        keyupTriggerAndAbsorberMap = definition.getKeyupAbsorbers();
+        keydownTriggerAndAbsorberMap = definition.getKeydownAbsorbers();
+        keyupTriggerAndFlipperMap = definition.getKeyupFlippers();
+        keydownTriggerAndFlipperMap = definition.getKeydownFlippers();
+        shared = true;
+        
+        if (gravity != definition.getGravity() || friction1 != definition.getFriction1()
+                || friction2 != definition.getFriction2()) {
+            changes.add("changed gravity or friction");
+            gravity = definition.getGravity();
+            friction1 = definition.getFriction1();
+            friction2 = definition.getFriction2();
+        }
+        checkRep();
+        return changes;
+    }
+
+    /*
+     * @return the kind and name of gadget, e.g. "SquareBumper sq"
+     */
+    private static String kindAndName(Gadget gadget) {
+        return gadget.getClass().getSimpleName() + " " + gadget.getName();
+    }
+
+    /**
+     * @return the blueprint of this board, with its current balls and flippers as the ones
+     *         a board of the blueprint starts with
+     */
+    public synchronized BoardBlueprint blueprint() {
+        return new BoardBlueprint(name, gravity, friction1, friction2, balls, staticBumpers, absorbers, flippers,
+                portals, staticGadgets, triggerTargetAbsorberMap, triggerTargetFlipperMap, keyupTriggerAndAbsorberMap,
+                keydownTriggerAndAbsorberMap, keyupTriggerAndFlipperMap, keydownTriggerAndFlipperMap);
+    }
+
+    /*
+     * Copy the static gadgets and trigger maps shared with a blueprint, before changing them.
+     */
+    private synchronized void unshare() {
+        if (!shared) {
+            return;
+        }
+        staticBumpers = Collections.synchronizedList(new LinkedList<>(staticBumpers));
+        absorbers = Collections.synchronizedList(new LinkedList<>(absorbers));
+        portals = Collections.synchronizedList(new LinkedList<>(portals));
+        staticGadgets = Collections.synchronizedList(new LinkedList<>(staticGadgets));
+        triggerTargetAbsorberMap = mutableCopy(triggerTargetAbsorberMap);
+        triggerTargetFlipperMap = mutableCopy(triggerTargetFlipperMap);
+        keyupTriggerAndAbsorberMap = mutableCopy(keyupTriggerAndAbsorberMap);
+        keydownTriggerAndAbsorberMap = mutableCopy(keydownTriggerAndAbsorberMap);
+        keyupTriggerAndFlipperMap = mutableCopy(keyupTriggerAndFlipperMap);
+        keydownTriggerAndFlipperMap = mutableCopy(keydownTriggerAndFlipperMap);
+        shared = false;
+    }
+
+    private static <K, V> Map<K, List<V>> mutableCopy(Map<K, List<V>> map) {
+        final Map<K, List<V>> copy = Collections.synchronizedMap(new HashMap<>());
+        for (Map.Entry<K, List<V>> entry : map.entrySet()) {
+            copy.put(entry.getKey(), new LinkedList<>(entry.getValue()));
+        }
+        return copy;
+    }
+
     /*
      * Construct the four walls of the board. The dimensions are 20L x 20L
      */
@@ -194,6 +453,7 @@ public class Board {
      * @param portal this portal on this board
      */
     public synchronized void addPortal(Portal portal) {
+        unshare();
         portals.add(portal);
         staticGadgets.add(portal);
     }
@@ -373,41 +633,275 @@ public class Board {
      * request form:"tran" BOARDNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME
      * @param BOARD_DIRECTION the edge to transfer the ball
      * @param Ball the ball to be transfered to another board
+     * @return true iff the server took the ball, otherwise the ball stays on this board
      */
-    private synchronized void transferBall(BOARD_DIRECTION direction, Ball ball) {
+    private synchronized boolean transferBall(BOARD_DIRECTION direction, Ball ball) {
         String ballRequest;
-        String boardName;
-        Vect offset;
-        if (direction.equals(BOARD_DIRECTION.LEFT)) {
-            boardName=left;
-            offset= new Vect(20, 0);
-        } else if (direction.equals(BOARD_DIRECTION.RIGHT)) {
-            boardName=right;
-            offset = new Vect(-20, 0);
-        } else if (direction.equals(BOARD_DIRECTION.TOP)) {
-            boardName=top;
-            offset = new Vect(0, 20);
-        } else {
-            boardName=bottom;
-            offset = new Vect(0, -20);
-        }
-        Ball newBallLeft = new Ball(ball.getName(), ball.getLocation().plus(offset), ball.getVelocity());
+        String boardName=getJoinedBoardName(direction);
+        hintedBalls.remove(ball.getName());
+        Ball newBallLeft = new Ball(ball.getName(), ball.getLocation().plus(edgeOffset(direction)), ball.getVelocity());
         double posX = newBallLeft.getLocation().x();
         double posY = newBallLeft.getLocation().y();
         double veloX = newBallLeft.getVelocity().x();
         double veloY = newBallLeft.getVelocity().y();
         String ballName = ball.getName();
-        ballRequest = "tran "+ boardName + " " + ballInfo(posX, posY, veloX, veloY, ballName);
+        ballRequest = "tran "+ boardName + " " + ballInfo(posX, posY, veloX, veloY, ballName) 
+                + flingball.get().getClockSync().stampNow() + traceSuffix();
         try {
             String reply=flingball.get().sendBallRequest(ballRequest);
             if(reply.split(" ")[0].equals("succeed:")) {
                 this.balls.remove(ball);
+                return true;
             }else {
                 System.err.println("transfer send ball failed");
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return false;
+    }
+    
+    /*
+     * return the name of the board joined on the edge direction, or "" if there is none
+     */
+    private synchronized String getJoinedBoardName(BOARD_DIRECTION direction) {
+        if (direction.equals(BOARD_DIRECTION.LEFT)) {
+            return left;
+        } else if (direction.equals(BOARD_DIRECTION.RIGHT)) {
+            return right;
+        } else if (direction.equals(BOARD_DIRECTION.TOP)) {
+            return top;
+        } else {
+            return bottom;
+        }
+    }
+    
+    /**
+     * @param direction an edge of a board
+     * @return the offset from the board's coordinates to the coordinates of the board 
+     *         joined on the edge direction
+     */
+    static Vect edgeOffset(BOARD_DIRECTION direction) {
+        if (direction.equals(BOARD_DIRECTION.LEFT)) {
+            return new Vect(L, 0);
+        } else if (direction.equals(BOARD_DIRECTION.RIGHT)) {
+            return new Vect(-L, 0);
+        } else if (direction.equals(BOARD_DIRECTION.TOP)) {
+            return new Vect(0, L);
+        } else {
+            return new Vect(0, -L);
+        }
+    }
+    
+    /*
+     * Announce the imminent crossing of ball to the board joined on the edge direction,
+     * once per crossing. The hint is fire-and-forget: 
+     * "hint" BOARDNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME SEND_STAMP?
+     * with the location in the coordinates of the other board.
+     */
+    private synchronized void hintCrossing(BOARD_DIRECTION direction, Ball ball) {
+        if (!hintedBalls.add(ball.getName())) {
+            return;
+        }
+        Vect location = ball.getLocation().plus(edgeOffset(direction));
+        String hint = "hint "+ getJoinedBoardName(direction) + " " + ballInfo(location.x(), location.y(), 
+                ball.getVelocity().x(), ball.getVelocity().y(), ball.getName()) 
+                + flingball.get().getClockSync().stampNow();
+        try {
+            flingball.get().sendHint(hint);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /*
+     * return the TRACE part for a ball request about to be sent, or "" if the 
+     * flingball playing this board doesn't trace its handoffs
+     */
+    private synchronized String traceSuffix() {
+        HandoffTrace trace=flingball.get().getHandoffTracer().start();
+        return trace==null ? "" : trace.toProtocol();
+    }
+    
+    /**
+     * Receive a ball whose handoff was traced. The trace is recorded in the HandoffTracer of
+     * the flingball playing this board at the next update of this board.
+     * @param newBallInfo new ball's info
+     * @param trace trace of the handoff of the ball, or null if the handoff was not traced
+     */
+    public synchronized void receiveBall(String newBallInfo, HandoffTrace trace) {
+        receiveBall(newBallInfo, 0, trace);
+    }
+    
+    /**
+     * Receive a ball that spent some time in transit from another board. Before it is 
+     * added, the ball is advanced by the ticks it missed (at most MAX_TRANSIT_TICKS) under 
+     * this board's gravity and friction, as if it had been on this board all along. 
+     * Advancing stops early if the ball is about to hit a wall or gadget, so that the 
+     * collision is handled by the next update of this board.
+     * @param newBallInfo new ball's info
+     * @param transitNanos nanoseconds since the ball left the other board, >= 0
+     * @param trace trace of the handoff of the ball, or null if the handoff was not traced
+     */
+    public synchronized void receiveBall(String newBallInfo, long transitNanos, HandoffTrace trace) {
+        receiveBall(parseBall(newBallInfo), transitNanos, trace);
+    }
+    
+    /**
+     * Receive a ball that spent some time in transit from another board, like 
+     * receiveBall(String, long, HandoffTrace).
+     * @param ball new ball, in the coordinates of this board
+     * @param transitNanos nanoseconds since the ball left the other board, >= 0
+     * @param trace trace of the handoff of the ball, or null if the handoff was not traced
+     */
+    public synchronized void receiveBall(Ball ball, long transitNanos, HandoffTrace trace) {
+        this.balls.add(ball);
+        final int last=balls.size()-1;
+        if(transitNanos>0) {
+            balls.set(last, advanceInTransit(balls.get(last), transitTicks(transitNanos)));
+        }
+        reconcileGhost(balls.get(last));
+        if(trace!=null) {
+            pendingTraces.add(trace);
+        }
+    }
+    
+    /*
+     * return the number of updates of this board in transitNanos, at most MAX_TRANSIT_TICKS
+     */
+    private static int transitTicks(long transitNanos) {
+        return (int)Math.min(MAX_TRANSIT_TICKS, Math.round(transitNanos/(TIME*NANOSECONDS_PER_SECOND)));
+    }
+    
+    /**
+     * Receive the announcement of a ball about to cross from a joined board. Until the ball
+     * itself arrives (or GHOST_TICKS updates passed) this board draws a translucent ghost of 
+     * the ball, dead-reckoned from the announced state with this board's gravity and friction.
+     * @param ghostInfo announced ball's info, in the coordinates of this board
+     * @param transitNanos nanoseconds since the announcement was sent, >= 0
+     */
+    public synchronized void receiveHint(String ghostInfo, long transitNanos) {
+        receiveHint(parseBall(ghostInfo), transitNanos);
+    }
+    
+    /**
+     * Receive the announcement of a ball about to cross from a joined board, like
+     * receiveHint(String, long).
+     * @param ghost announced ball, in the coordinates of this board
+     * @param transitNanos nanoseconds since the announcement was sent, >= 0
+     */
+    public synchronized void receiveHint(Ball ghost, long transitNanos) {
+        ghosts.put(ghost.getName(), advanceInTransit(ghost, transitTicks(transitNanos)));
+        ghostTicksLeft.put(ghost.getName(), GHOST_TICKS);
+    }
+    
+    /*
+     * if ball was announced as a ghost, replace the ghost by ball and draw ball at the 
+     * ghost's location first, smoothly moving to its actual location over the next updates
+     */
+    private synchronized void reconcileGhost(Ball ball) {
+        Ball ghost = ghosts.remove(ball.getName());
+        ghostTicksLeft.remove(ball.getName());
+        if (ghost != null) {
+            Vect offset = ghost.getLocation().minus(ball.getLocation());
+            if (offset.length() >= MIN_RENDER_OFFSET && offset.length() <= MAX_RENDER_OFFSET) {
+                renderOffsets.put(ball.getName(), offset);
+            }
+        }
+    }
+    
+    /*
+     * advance all ghosts and render offsets by one update, dropping expired ones
+     */
+    private synchronized void updateGhosts() {
+        for (String ballName: new ArrayList<>(ghosts.keySet())) {
+            final int ticksLeft = ghostTicksLeft.get(ballName) - 1;
+            if (ticksLeft <= 0) {
+                ghosts.remove(ballName);
+                ghostTicksLeft.remove(ballName);
+            } else {
+                ghosts.put(ballName, advanceInTransit(ghosts.get(ballName), 1));
+                ghostTicksLeft.put(ballName, ticksLeft);
+            }
+        }
+        for (String ballName: new ArrayList<>(renderOffsets.keySet())) {
+            Vect offset = renderOffsets.get(ballName).times(RENDER_OFFSET_DECAY);
+            if (offset.length() < MIN_RENDER_OFFSET) {
+                renderOffsets.remove(ballName);
+            } else {
+                renderOffsets.put(ballName, offset);
+            }
+        }
+    }
+    
+    /**
+     * @return a frame of this board for spectators, "BOARDNAME TICK (BALLNAME LOCA_X LOCA_Y)*",
+     *         with as many balls as fit in one UDP datagram
+     */
+    public synchronized String frame() {
+        final int maxLength = UdpTransport.MAX_DATAGRAM_BYTES / 2;
+        StringBuilder builder = new StringBuilder(name).append(' ').append(ticks);
+        for (Ball ball: balls) {
+            if (builder.length() > maxLength) {
+                break;
+            }
+            builder.append(' ').append(ball.getName())
+                   .append(' ').append((float)ball.getLocation().x())
+                   .append(' ').append((float)ball.getLocation().y());
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * @return the predicted states of balls announced by joined boards that did not arrive yet
+     */
+    public synchronized List<Ball> getGhosts() {
+        return new ArrayList<>(ghosts.values());
+    }
+    
+    /**
+     * @param ballName name of a ball
+     * @return the offset from the ball's location at which it is drawn, zero unless the ball 
+     *         recently replaced its ghost
+     */
+    public synchronized Vect getRenderOffset(String ballName) {
+        return renderOffsets.getOrDefault(ballName, Vect.ZERO);
+    }
+    
+    /*
+     * advance a ball that doesn't collide with anything by up to ticks updates of this board
+     */
+    private synchronized Ball advanceInTransit(Ball ball, int ticks) {
+        for(int i=0; i<ticks; i++) {
+            Ball next=updateBallWithGravityAndFrictionInHalfTime(ball);
+            if(aboutToCollide(next)) {
+                return ball;
+            }
+            ball=updateBallLocation(updateBallWithGravityAndFrictionInHalfTime(next));
+        }
+        return ball;
+    }
+    
+    /*
+     * return true if ball hits a wall or gadget of this board within the next update
+     */
+    private synchronized boolean aboutToCollide(Ball ball) {
+        for (LineSegment wall: walls) {
+            if (Physics.timeUntilWallCollision(wall, ball.getCircle(), ball.getVelocity()) < TIME) {
+                return true;
+            }
+        }
+        List<Gadget> gadgets=new ArrayList<>();
+        gadgets.addAll(staticBumpers);
+        gadgets.addAll(absorbers);
+        gadgets.addAll(portals);
+        gadgets.addAll(flippers);
+        for (Gadget gadget: gadgets) {
+            if (gadget.triggered(ball)) {
+                return true;
+            }
+        }
+        return false;
     }
     
     /**
@@ -415,15 +909,20 @@ public class Board {
      * @param newBallInfo new ball's info
      */
     public synchronized void receiveBall(String newBallInfo) {
-        String[] splitted = newBallInfo.split(" "); // posX + " " + posY + " " + veloX + " " + veloY + " " + ballName;
-        // create a new ball
-        double posX = Double.parseDouble(splitted[0]);
-        double posY = Double.parseDouble(splitted[1]);
-        double veloX = Double.parseDouble(splitted[2]);
-        double veloY = Double.parseDouble(splitted[3]);
-        Ball ball = new Ball(splitted[4], new Vect(posX, posY), new Vect(veloX, veloY));
         // add to the current ball
-        this.balls.add(ball);
+        this.balls.add(parseBall(newBallInfo));
+    }
+    
+    /*
+     * create the ball of ballInfo = posX + " " + posY + " " + veloX + " " + veloY + " " + ballName
+     */
+    private static Ball parseBall(String ballInfo) {
+        final Tokenizer tokens = new Tokenizer(ballInfo);
+        final double posX = tokens.nextDouble();
+        final double posY = tokens.nextDouble();
+        final double veloX = tokens.nextDouble();
+        final double veloY = tokens.nextDouble();
+        return new Ball(tokens.next(), new Vect(posX, posY), new Vect(veloX, veloY));
     }
     
     /**
@@ -482,6 +981,7 @@ public class Board {
      * @param newBumper the singular ball to add to the Board
      */
     public synchronized void addBumper(Bumper newBumper) {
+        unshare();
         staticBumpers.add(newBumper);
         staticGadgets.add(newBumper);
         checkRep();
@@ -493,6 +993,7 @@ public class Board {
      * @param newAbsorbor the singular Absorber to add to the Board
      */
     public synchronized void addAbsorber(Absorber newAbsorbor) {
+        unshare();
         absorbers.add(newAbsorbor);
         absorberBallNamesMap.put(newAbsorbor,new ArrayList<>());
         staticGadgets.add(newAbsorbor);
@@ -663,6 +1164,7 @@ public class Board {
     * @return boolean representing if the trigger-target pair were added.
     */
     public synchronized boolean setTarget(Absorber target, Gadget trigger) {
+        unshare();
         if (triggerTargetAbsorberMap.containsKey(trigger) && triggerTargetAbsorberMap.get(trigger).contains(target)) {
             return false;
         }
@@ -684,6 +1186,7 @@ public class Board {
     * @return boolean representing if the trigger-target pair were added.
     */
     public synchronized boolean setTarget(Absorber target, int triggerKeyCode, boolean keyUp) {
+        unshare();
         if (keyUp) {
             if (!keyupTriggerAndAbsorberMap.containsKey(triggerKeyCode)) { 
                 keyupTriggerAndAbsorberMap.put(triggerKeyCode, new LinkedList<>());
@@ -709,6 +1212,7 @@ public class Board {
      * @return boolean representing if the trigger-target pair were added.
      */
      public synchronized boolean setTarget(Flipper target, Gadget trigger) {
+         unshare();
          if (triggerTargetFlipperMap.containsKey(trigger) && triggerTargetFlipperMap.get(trigger).contains(target)) {
              return false;
          }
@@ -730,6 +1234,7 @@ public class Board {
       * @return boolean representing if the trigger-target pair were added.
       */
       public synchronized boolean setTarget(Flipper target, int triggerKeyCode, boolean keyUp) {
+          unshare();
           if (keyUp) {
               if (!keyupTriggerAndFlipperMap.containsKey(triggerKeyCode)) { 
                   keyupTriggerAndFlipperMap.put(triggerKeyCode, new LinkedList<>());
@@ -751,6 +1256,14 @@ public class Board {
      */
     public synchronized void updateBoard() {
         List<Ball> newBalls = new ArrayList<>();
+        // balls received since the last update are applied at this tick
+        if(!pendingTraces.isEmpty() && flingball.isPresent()) {
+            final long applied=HandoffTracer.now();
+            for(HandoffTrace trace: pendingTraces) {
+                flingball.get().getHandoffTracer().recordApplied(trace, applied);
+            }
+        }
+        pendingTraces.clear();
         
         // update collisions between balls
         for (int i = 0; i < balls.size(); i++) {
@@ -800,7 +1313,8 @@ public class Board {
                                     String ballInfo=ballInfo(ball.getLocation().x(), ball.getLocation().y(), 
                                             ball.getVelocity().x(), ball.getVelocity().y(), ball.getName());
                                     String request = "port "+ portal.getOtherBoardName()+" "+portal.getOtherPortalName()
-                                            +" "+ ballInfo +" from "+name;
+                                            +" "+ ballInfo +" from "+name 
+                                            + client.getClockSync().stampNow() + traceSuffix();
                                     String reply = client.sendBallRequest(request);
                                     if(reply.split(" ")[0].equals("succeed:")) {
                                         getAbsorbedorTeleported=true;
@@ -854,6 +1368,15 @@ public class Board {
         for(Ball ball:newBalls) {
             balls.add(updateBallLocation(ball));
         }
+        updateGhosts();
+        ticks++;
+        if(ticks % FRAME_TICKS == 0 && flingball.isPresent() && flingball.get().isUdpEnabled()) {
+            try {
+                flingball.get().sendFrame(frame());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
         // update the flipper movement
         List<Flipper> newFlipperList = new ArrayList<>();
@@ -873,13 +1396,29 @@ public class Board {
     }
 
     /**
-     * checks if a ball is about to be transferred
+     * checks if a ball is about to be transferred, and announces balls that will be 
+     * transferred within HINT_TICKS updates to the joined board
      */
     public synchronized void checkOutBoundary(Ball ball,List<Ball> newBalls) {
         double x = ball.getLocation().x();
         double y = ball.getLocation().y();
         double v_x=ball.getVelocity().x();
         double v_y=ball.getVelocity().y();
+        if(flingball.isPresent()) {
+            final double lookahead=HINT_TICKS*TIME;
+            if(!left.equals("") && v_x<0 && x-Ball.RADIUS+v_x*lookahead <= 0) {
+                hintCrossing(BOARD_DIRECTION.LEFT, ball);
+            }else if(!right.equals("") && v_x>0 && x+Ball.RADIUS+v_x*lookahead >= L) {
+                hintCrossing(BOARD_DIRECTION.RIGHT, ball);
+            }else if(!top.equals("") && v_y<0 && y-Ball.RADIUS+v_y*lookahead <= 0) {
+                hintCrossing(BOARD_DIRECTION.TOP, ball);
+            }else if(!bottom.equals("") && v_y>0 && y+Ball.RADIUS+v_y*lookahead >= L) {
+                hintCrossing(BOARD_DIRECTION.BOTTOM, ball);
+            }else {
+                // not about to cross any more, announce the next crossing again
+                hintedBalls.remove(ball.getName());
+            }
+        }
         if(v_x==0 && v_y==0) return;
         
         final double delta=0.1;// double point imprecision
@@ -921,21 +1460,27 @@ public class Board {
             newBalls.add(new Ball(ball.getName(), new Vect(x,y), new Vect(v_x,v_y)));
         }
         else if (outLeftEdge && !left.equals("")) {
-            assert flingball.isPresent();
-            this.transferBall(BOARD_DIRECTION.LEFT, ball);
             newBalls.remove(ball);
+            // without a Flingball, e.g. in a fork, the ball just leaves the board
+            if(flingball.isPresent() && !this.transferBall(BOARD_DIRECTION.LEFT, ball)) {
+                // the ball stays, bouncing off the edge like off a wall
+                newBalls.add(new Ball(ball.getName(), new Vect(x,y), new Vect(-v_x,v_y)));
+            }
         }else if (outRightEdge&& !right.equals("")) {
-            assert flingball.isPresent();
-            this.transferBall(BOARD_DIRECTION.RIGHT, ball);
             newBalls.remove(ball);
+            if(flingball.isPresent() && !this.transferBall(BOARD_DIRECTION.RIGHT, ball)) {
+                newBalls.add(new Ball(ball.getName(), new Vect(x,y), new Vect(-v_x,v_y)));
+            }
         } else if (outBottomEdge && !bottom.equals("")) {
-            assert flingball.isPresent();
-            this.transferBall(BOARD_DIRECTION.BOTTOM, ball);
             newBalls.remove(ball);
+            if(flingball.isPresent() && !this.transferBall(BOARD_DIRECTION.BOTTOM, ball)) {
+                newBalls.add(new Ball(ball.getName(), new Vect(x,y), new Vect(v_x,-v_y)));
+            }
         } else if (outTopEdge  && !top.equals(""))  {
-            assert flingball.isPresent();
-            this.transferBall(BOARD_DIRECTION.TOP, ball);
             newBalls.remove(ball);
+            if(flingball.isPresent() && !this.transferBall(BOARD_DIRECTION.TOP, ball)) {
+                newBalls.add(new Ball(ball.getName(), new Vect(x,y), new Vect(v_x,-v_y)));
+            }
         }
     }
     
@@ -1093,7 +1638,9 @@ public class Board {
      */
     public synchronized void drawBalls(Graphics graphics) {
         for (Ball ball : balls)
-            ball.draw(graphics);
+            ball.drawAt(graphics, ball.getLocation().plus(getRenderOffset(ball.getName())), Ball.OPAQUE);
+        for (Ball ghost : ghosts.values())
+            ghost.drawAt(graphics, ghost.getLocation(), GHOST_ALPHA);
     }
     
     /**
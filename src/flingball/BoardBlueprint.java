@@ -0,0 +1,202 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A BoardBlueprint is the immutable definition of a board: its name, gravity and friction,
+ * its static gadgets (bumpers, absorbers and portals), its trigger and key binding tables, and
+ * the balls and flippers it starts with. Boards made from one blueprint share its static
+ * gadgets and tables, so making a Board from a blueprint only costs copying its balls and
+ * flippers, which every Board changes while it runs.
+ *
+ * BoardBlueprints are made by Board.blueprint, e.g. of a board just parsed, and are
+ * immutable and thread-safe.
+ */
+public class BoardBlueprint {
+    private final String name;
+    private final float gravity;
+    private final float friction1;
+    private final float friction2;
+    private final List<Ball> balls;
+    private final List<Bumper> bumpers;
+    private final List<Absorber> absorbers;
+    private final List<Flipper> flippers;
+    private final List<Portal> portals;
+    private final List<Gadget> staticGadgets;
+    private final Map<Gadget, List<Absorber>> triggerAbsorbers;
+    private final Map<Gadget, List<Flipper>> triggerFlippers;
+    private final Map<Integer, List<Absorber>> keyupAbsorbers;
+    private final Map<Integer, List<Absorber>> keydownAbsorbers;
+    private final Map<Integer, List<Flipper>> keyupFlippers;
+    private final Map<Integer, List<Flipper>> keydownFlippers;
+
+    // Abstraction function:
+    //   AF(name, gravity, friction1, friction2, balls, bumpers, absorbers, flippers, portals,
+    //      staticGadgets, triggerAbsorbers, triggerFlippers, keyupAbsorbers, keydownAbsorbers,
+    //      keyupFlippers, keydownFlippers) =
+    //      the board named name with gravity, friction1 and friction2 that starts with balls
+    //      and flippers, has the static gadgets staticGadgets (the bumpers, absorbers and portals
+    //      in the order they were added), where triggering a gadget g fires the absorbers
+    //      triggerAbsorbers.get(g) and flippers triggerFlippers.get(g), and releasing or pressing
+    //      the key k fires keyupAbsorbers.get(k), keyupFlippers.get(k) or
+    //      keydownAbsorbers.get(k), keydownFlippers.get(k)
+    // Representation invariant:
+    //   all fields not null, friction1 >= 0, friction2 >= 0
+    // Safety from rep exposure:
+    //   all fields are private and final; lists and maps are unmodifiable copies, with
+    //   unmodifiable lists as values, of immutable gadgets and balls
+    // Thread safety argument:
+    //   BoardBlueprint is immutable
+
+    /*
+     * Make a blueprint from copies of the parts of a board.
+     */
+    BoardBlueprint(String name, float gravity, float friction1, float friction2, List<Ball> balls,
+            List<Bumper> bumpers, List<Absorber> absorbers, List<Flipper> flippers, List<Portal> portals,
+            List<Gadget> staticGadgets, Map<Gadget, List<Absorber>> triggerAbsorbers,
+            Map<Gadget, List<Flipper>> triggerFlippers, Map<Integer, List<Absorber>> keyupAbsorbers,
+            Map<Integer, List<Absorber>> keydownAbsorbers, Map<Integer, List<Flipper>> keyupFlippers,
+            Map<Integer, List<Flipper>> keydownFlippers) {
+        this.name = name;
+        this.gravity = gravity;
+        this.friction1 = friction1;
+        this.friction2 = friction2;
+        this.balls = copy(balls);
+        this.bumpers = copy(bumpers);
+        this.absorbers = copy(absorbers);
+        this.flippers = copy(flippers);
+        this.portals = copy(portals);
+        this.staticGadgets = copy(staticGadgets);
+        this.triggerAbsorbers = copy(triggerAbsorbers);
+        this.triggerFlippers = copy(triggerFlippers);
+        this.keyupAbsorbers = copy(keyupAbsorbers);
+        this.keydownAbsorbers = copy(keydownAbsorbers);
+        this.keyupFlippers = copy(keyupFlippers);
+        this.keydownFlippers = copy(keydownFlippers);
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert name != null;
+        assert balls != null && bumpers != null && absorbers != null && flippers != null && portals != null;
+        assert staticGadgets != null && triggerAbsorbers != null && triggerFlippers != null;
+        assert keyupAbsorbers != null && keydownAbsorbers != null && keyupFlippers != null && keydownFlippers != null;
+        assert friction1 >= 0 && friction2 >= 0;
+    }
+
+    private static <T> List<T> copy(List<T> list) {
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+
+    private static <K, V> Map<K, List<V>> copy(Map<K, List<V>> map) {
+        final Map<K, List<V>> copy = new LinkedHashMap<>();
+        for (Map.Entry<K, List<V>> entry : map.entrySet()) {
+            copy.put(entry.getKey(), copy(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * @return a new Board of this blueprint, that shares its static gadgets and tables until
+     *         they are changed on the Board
+     */
+    public Board instantiate() {
+        return new Board(this);
+    }
+
+    /**
+     * @return name of the board
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return gravity of the board
+     */
+    public float getGravity() {
+        return gravity;
+    }
+
+    /**
+     * @return friction1 of the board
+     */
+    public float getFriction1() {
+        return friction1;
+    }
+
+    /**
+     * @return friction2 of the board
+     */
+    public float getFriction2() {
+        return friction2;
+    }
+
+    /**
+     * @return balls the board starts with
+     */
+    public List<Ball> getBalls() {
+        return balls;
+    }
+
+    /**
+     * @return flippers the board starts with
+     */
+    public List<Flipper> getFlippers() {
+        return flippers;
+    }
+
+    /**
+     * @return bumpers, absorbers and portals of the board, in the order they were added
+     */
+    public List<Gadget> getStaticGadgets() {
+        return staticGadgets;
+    }
+
+    List<Bumper> getBumpers() {
+        return bumpers;
+    }
+
+    List<Absorber> getAbsorbers() {
+        return absorbers;
+    }
+
+    List<Portal> getPortals() {
+        return portals;
+    }
+
+    Map<Gadget, List<Absorber>> getTriggerAbsorbers() {
+        return triggerAbsorbers;
+    }
+
+    Map<Gadget, List<Flipper>> getTriggerFlippers() {
+        return triggerFlippers;
+    }
+
+    Map<Integer, List<Absorber>> getKeyupAbsorbers() {
+        return keyupAbsorbers;
+    }
+
+    Map<Integer, List<Absorber>> getKeydownAbsorbers() {
+        return keydownAbsorbers;
+    }
+
+    Map<Integer, List<Flipper>> getKeyupFlippers() {
+        return keyupFlippers;
+    }
+
+    Map<Integer, List<Flipper>> getKeydownFlippers() {
+        return keydownFlippers;
+    }
+
+    @Override
+    public String toString() {
+        return "BoardBlueprint " + name + ": " + balls.size() + " balls, " + staticGadgets.size() + " static gadgets, "
+                + flippers.size() + " flippers";
+    }
+}
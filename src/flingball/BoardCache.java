@@ -0,0 +1,210 @@
+package flingball;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * A BoardCache makes Boards from board files, parsing every distinct board file content only
+ * once. It keys the parsed board by the SHA-256 hash of the file content, so that files with
+ * the same content share one entry wherever they are, and keeps the entries it used last in
+ * memory. With a cache directory, parsed boards are also kept on disk as compiled board files
+ * named HASH.fbc (see BoardCompiler), so they are parsed once per machine.
+ *
+ * An entry is the immutable BoardBlueprint of the board; every load makes a new Board of it,
+ * so boards loaded from the same entry share only their immutable static gadgets.
+ *
+ * BoardCaches are thread-safe.
+ */
+public class BoardCache {
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final int capacity;
+    private final Optional<Path> directory;
+    private final Map<String, BoardBlueprint> entries;
+    private long hits;
+    private long diskHits;
+    private long misses;
+
+    // Abstraction function:
+    //   AF(capacity, directory, entries, hits, diskHits, misses) =
+    //      a cache of at most capacity parsed boards in memory, entries mapping the hash of a
+    //      board file content to its blueprint, from least to most recently used,
+    //      backed by the compiled board files in directory if present. hits, diskHits and
+    //      misses count the loads found in memory, found on disk and parsed.
+    // Representation invariant:
+    //   capacity > 0, entries.size() <= capacity, hits, diskHits, misses >= 0
+    // Safety from rep exposure:
+    //   all fields are private; entries are immutable
+    // Thread safety argument:
+    //   entries and the counters are only accessed while holding the lock of this.
+    //   Files are parsed and compiled outside the lock, so two threads may parse the same
+    //   content at once; both make the same entry. The disk cache is written atomically.
+
+    /**
+     * Make a cache.
+     * @param capacity number of parsed boards kept in memory, requires capacity > 0
+     * @param directory directory of compiled board files kept on disk, created when the first
+     *        board is written to it, or empty to keep parsed boards in memory only
+     */
+    public BoardCache(int capacity, Optional<Path> directory) {
+        this.capacity = capacity;
+        this.directory = directory;
+        this.entries = new LinkedHashMap<String, BoardBlueprint>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BoardBlueprint> eldest) {
+                return size() > BoardCache.this.capacity;
+            }
+        };
+        checkRep();
+    }
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert capacity > 0;
+        assert directory != null && entries != null;
+        assert entries.size() <= capacity;
+        assert hits >= 0 && diskHits >= 0 && misses >= 0;
+    }
+
+    /**
+     * Make a Board from a board file, parsing it only if its content is not cached.
+     * @param boardFile board file
+     * @return a new Board of the content of boardFile
+     * @throws IOException if boardFile can't be read, or the board can't be written to the cache directory
+     * @throws UnableToParseException if boardFile doesn't match the Board grammar
+     */
+    public Board load(Path boardFile) throws IOException, UnableToParseException {
+        return blueprint(boardFile).instantiate();
+    }
+
+    /**
+     * Get the blueprint of a board file, parsing it only if its content is not cached.
+     * @param boardFile board file
+     * @return the blueprint of the content of boardFile
+     * @throws IOException if boardFile can't be read, or the board can't be written to the cache directory
+     * @throws UnableToParseException if boardFile doesn't match the Board grammar
+     */
+    public BoardBlueprint blueprint(Path boardFile) throws IOException, UnableToParseException {
+        final byte[] content = Files.readAllBytes(boardFile);
+        final String hash = hash(content);
+        BoardBlueprint entry = get(hash);
+        if (entry != null) {
+            return entry;
+        }
+        entry = readDisk(hash);
+        if (entry != null) {
+            synchronized (this) {
+                diskHits++;
+            }
+        } else {
+            final BoardCompiler compiler = new BoardCompiler();
+            StreamingBoardParser.parse(new String(content, StandardCharsets.UTF_8), compiler);
+            entry = BoardCompiler.load(compiler.toBytes(), boardFile.toString()).blueprint();
+            synchronized (this) {
+                misses++;
+            }
+            if (directory.isPresent()) {
+                Files.createDirectories(directory.get());
+                compiler.write(directory.get().resolve(hash + BoardCompiler.EXTENSION));
+            }
+        }
+        synchronized (this) {
+            entries.put(hash, entry);
+            checkRep();
+        }
+        return entry;
+    }
+
+    /*
+     * @return the entry of hash in memory, null if there is none
+     */
+    private synchronized BoardBlueprint get(String hash) {
+        final BoardBlueprint entry = entries.get(hash);
+        if (entry != null) {
+            hits++;
+        }
+        return entry;
+    }
+
+    /*
+     * @return the blueprint of the compiled board file of hash in the cache directory, null if
+     *         there is no cache directory, no such file, or it is not a valid compiled board file
+     */
+    private BoardBlueprint readDisk(String hash) {
+        if (!directory.isPresent()) {
+            return null;
+        }
+        final Path file = directory.get().resolve(hash + BoardCompiler.EXTENSION);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return BoardCompiler.load(file).blueprint();
+        } catch (IOException e) {
+            System.err.println("ignoring cached board " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     * @return the SHA-256 hash of content in lower case hex
+     */
+    private static String hash(byte[] content) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("every Java platform has " + HASH_ALGORITHM, e);
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return number of parsed boards in memory
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of loads of a board found in memory
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of loads of a board found in the cache directory
+     */
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * @return number of loads that parsed a board file
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BoardCache of " + entries.size() + "/" + capacity + " boards" + directory.map(d -> " in " + d).orElse("")
+                + ": " + hits + " hits, " + diskHits + " disk hits, " + misses + " misses";
+    }
+}
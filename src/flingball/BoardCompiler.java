@@ -0,0 +1,459 @@
+package flingball;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Vect;
+
+/**
+ * A BoardCompiler compiles a board file (.fb) into a compiled board file (.fbc), which is
+ * loaded by mapping it into memory and making its gadgets straight from fixed-size records,
+ * without parsing any text. Triggers and key bindings are resolved when compiling, so loading
+ * a compiled board only adds its gadgets and targets to a new Board.
+ *
+ * A compiled board file is, with all numbers little-endian:
+ * FBC ::= MAGIC VERSION short GRAVITY FRICTION1 FRICTION2 NAME COUNTS STRING* BALL* GADGET* TRIGGER* KEY*
+ * MAGIC ::= int 0x31434246 ("FBC1")
+ * VERSION ::= short 1, followed by a short 0 reserved for flags
+ * GRAVITY, FRICTION1, FRICTION2 ::= float
+ * NAME ::= int, index of the board name in the STRINGs
+ * COUNTS ::= int int int int int, the numbers of STRINGs, BALLs, GADGETs, TRIGGERs and KEYs
+ * STRING ::= int length, then length bytes of UTF-8
+ * BALL ::= int name, float x, float y, float xVelocity, float yVelocity
+ * GADGET ::= int kind, int name, int x, int y, int a, int b, int c, int d, in file order, where
+ *            a is the orientation of a triangleBumper or flipper, a and b are the width and
+ *            height of an absorber, a is the otherPortal of a portal and b its otherBoard
+ *            (-1 if it is the board itself), and unused ints are 0
+ * TRIGGER ::= int trigger, int target, indexes of GADGETs, in the order the targets are set
+ * KEY ::= int keyCode, int up (1 for keyup, 0 for keydown), int target, index of a GADGET
+ * Names are indexes of STRINGs.
+ *
+ * BoardCompilers are mutable and not thread-safe; the static methods are thread-safe.
+ */
+public class BoardCompiler implements StreamingBoardParser.Sink {
+    /** extension of compiled board files */
+    public static final String EXTENSION = ".fbc";
+    private static final int MAGIC = 0x31434246;
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 2 + 2 + 3 * 4 + 4 + 5 * 4;
+    private static final int GADGET_INTS = 8;
+    // smallest sizes in bytes of a STRING, BALL, GADGET, TRIGGER and KEY
+    private static final int STRING_BYTES = 4;
+    private static final int BALL_BYTES = 5 * 4;
+    private static final int GADGET_BYTES = GADGET_INTS * 4;
+    private static final int TRIGGER_BYTES = 2 * 4;
+    private static final int KEY_BYTES = 3 * 4;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    // kinds of GADGETs
+    private static final int SQUARE_BUMPER = 0;
+    private static final int CIRCLE_BUMPER = 1;
+    private static final int TRIANGLE_BUMPER = 2;
+    private static final int ABSORBER = 3;
+    private static final int LEFT_FLIPPER = 4;
+    private static final int RIGHT_FLIPPER = 5;
+    private static final int PORTAL = 6;
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private int name = -1;
+    private float gravity;
+    private float friction1;
+    private float friction2;
+    private final List<Integer> ballNames = new ArrayList<>();
+    private final List<float[]> balls = new ArrayList<>();
+    private final List<int[]> gadgets = new ArrayList<>();
+    private final Map<String, Integer> lastGadgets = new HashMap<>();
+    private final Map<String, List<Integer>> absorbers = new HashMap<>();
+    private final Map<String, List<Integer>> flippers = new HashMap<>();
+    private final List<int[]> triggers = new ArrayList<>();
+    private final List<int[]> keys = new ArrayList<>();
+
+    // Abstraction function:
+    //   AF(strings, stringIndexes, name, gravity, friction1, friction2, ballNames, balls, gadgets,
+    //      lastGadgets, absorbers, flippers, triggers, keys) =
+    //      the compiled board read so far, named strings.get(name) (none yet if name is -1),
+    //      whose balls are ballNames and balls as {x, y, xVelocity, yVelocity}, whose gadgets
+    //      are the GADGET records in gadgets, with TRIGGER records triggers and KEY records keys.
+    //      stringIndexes is the index of every string in strings, lastGadgets the index of the
+    //      last gadget of every name, absorbers and flippers the indexes of the absorbers and
+    //      flippers of every name.
+    // Representation invariant:
+    //   ballNames and balls have the same size, every record of gadgets has GADGET_INTS ints,
+    //   every index is an index of strings or of gadgets
+    // Safety from rep exposure:
+    //   all fields are private and never returned
+
+    /**
+     * Make a compiler of one board; hand it to StreamingBoardParser.parse, then write it.
+     */
+    public BoardCompiler() {
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert ballNames.size() == balls.size();
+        assert strings.size() == stringIndexes.size();
+        for (int[] gadget : gadgets) {
+            assert gadget.length == GADGET_INTS;
+        }
+    }
+
+    /**
+     * Compile a board file.
+     * @param source board file to compile
+     * @param target compiled board file, replaced atomically if it exists
+     * @throws IOException if source can't be read or target can't be written
+     * @throws UnableToParseException if source doesn't match the Board grammar
+     */
+    public static void compile(Path source, Path target) throws IOException, UnableToParseException {
+        final BoardCompiler compiler = new BoardCompiler();
+        StreamingBoardParser.parse(new String(Files.readAllBytes(source), StandardCharsets.UTF_8), compiler);
+        compiler.write(target);
+    }
+
+    /**
+     * Write the board compiled so far.
+     * @param target compiled board file, replaced atomically if it exists: it is then a whole
+     *        compiled board or as it was before
+     * @throws IOException if target can't be written
+     */
+    public void write(Path target) throws IOException {
+        final Path temporary = target.resolveSibling(target.getFileName() + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer bytes = toBytes();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the compiled board file of the board compiled so far
+     * @throws IllegalStateException if no board was read
+     */
+    public ByteBuffer toBytes() {
+        if (name < 0) {
+            throw new IllegalStateException("no board compiled");
+        }
+        final List<byte[]> encoded = new ArrayList<>();
+        int size = HEADER_BYTES;
+        for (String string : strings) {
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            size += 4 + bytes.length;
+        }
+        size += balls.size() * 5 * 4 + gadgets.size() * GADGET_INTS * 4 + triggers.size() * 2 * 4 + keys.size() * 3 * 4;
+        final ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+        buffer.putFloat(gravity).putFloat(friction1).putFloat(friction2).putInt(name);
+        buffer.putInt(strings.size()).putInt(balls.size()).putInt(gadgets.size()).putInt(triggers.size()).putInt(keys.size());
+        for (byte[] bytes : encoded) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        for (int i = 0; i < balls.size(); i++) {
+            buffer.putInt(ballNames.get(i));
+            for (float value : balls.get(i)) {
+                buffer.putFloat(value);
+            }
+        }
+        putAll(buffer, gadgets);
+        putAll(buffer, triggers);
+        putAll(buffer, keys);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void putAll(ByteBuffer buffer, List<int[]> records) {
+        for (int[] record : records) {
+            for (int value : record) {
+                buffer.putInt(value);
+            }
+        }
+    }
+
+    /**
+     * Load a compiled board file.
+     * @param compiled compiled board file, written by write
+     * @return a new Board with the balls, gadgets, triggers and key bindings of compiled
+     * @throws IOException if compiled can't be read or is not a compiled board file of this version
+     */
+    public static Board load(Path compiled) throws IOException {
+        final MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(compiled, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return load(mapped, compiled.toString());
+    }
+
+    /**
+     * Load a compiled board file from memory.
+     * @param compiled compiled board file from its position to its limit, as made by toBytes;
+     *        its position and byte order are not changed
+     * @param source where compiled comes from, for error messages
+     * @return a new Board with the balls, gadgets, triggers and key bindings of compiled
+     * @throws IOException if compiled is not a compiled board file of this version
+     */
+    static Board load(ByteBuffer compiled, String source) throws IOException {
+        try {
+            return make(compiled.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException e) {
+            throw new IOException(source + " is not a valid compiled board", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(source + ": " + e.getMessage(), e);
+        }
+    }
+
+    /*
+     * Make the board in buffer, a little-endian compiled board file from its position.
+     * Throws BufferUnderflowException, IndexOutOfBoundsException or ClassCastException if
+     * buffer is corrupt, IllegalArgumentException if it is not a compiled board of this version.
+     */
+    private static Board make(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("not a compiled board");
+        }
+        final short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("compiled board version " + version + ", expected " + VERSION);
+        }
+        buffer.getShort();
+        final float gravity = buffer.getFloat();
+        final float friction1 = buffer.getFloat();
+        final float friction2 = buffer.getFloat();
+        final int name = buffer.getInt();
+        final String[] strings = new String[count(buffer, STRING_BYTES)];
+        final int ballCount = count(buffer, BALL_BYTES);
+        final Gadget[] gadgets = new Gadget[count(buffer, GADGET_BYTES)];
+        final int triggerCount = count(buffer, TRIGGER_BYTES);
+        final int keyCount = count(buffer, KEY_BYTES);
+        for (int i = 0; i < strings.length; i++) {
+            final byte[] bytes = new byte[count(buffer, 1)];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        final Board board = new Board(strings[name], gravity, friction1, friction2);
+        for (int i = 0; i < ballCount; i++) {
+            final String ballName = strings[buffer.getInt()];
+            final Vect position = new Vect(buffer.getFloat(), buffer.getFloat());
+            board.addBall(new Ball(ballName, position, new Vect(buffer.getFloat(), buffer.getFloat())));
+        }
+        for (int i = 0; i < gadgets.length; i++) {
+            final int kind = buffer.getInt();
+            final String gadgetName = strings[buffer.getInt()];
+            final Vect location = new Vect(buffer.getInt(), buffer.getInt());
+            final int a = buffer.getInt();
+            final int b = buffer.getInt();
+            buffer.getInt();
+            buffer.getInt();
+            switch (kind) {
+            case SQUARE_BUMPER: gadgets[i] = add(board, new SquareBumper(gadgetName, location)); break;
+            case CIRCLE_BUMPER: gadgets[i] = add(board, new CircleBumper(gadgetName, location)); break;
+            case TRIANGLE_BUMPER:
+                gadgets[i] = add(board, new TriangleBumper(gadgetName, location, StreamingBoardParser.Builder.angle(a)));
+                break;
+            case ABSORBER: {
+                final Absorber absorber = new Absorber(gadgetName, location, new Vect(a, b));
+                board.addAbsorber(absorber);
+                gadgets[i] = absorber;
+                break;
+            }
+            case LEFT_FLIPPER:
+            case RIGHT_FLIPPER: {
+                final Flipper flipper = new Flipper(gadgetName, location, StreamingBoardParser.Builder.angle(a),
+                        kind == LEFT_FLIPPER ? FlipperLeftOrRight.LEFT_FLIPPER : FlipperLeftOrRight.RIGHT_FLIPPER);
+                board.addFlipper(flipper);
+                gadgets[i] = flipper;
+                break;
+            }
+            case PORTAL: {
+                final Portal portal = new Portal(gadgetName, strings[a], b < 0 ? board.getName() : strings[b], location);
+                board.addPortal(portal);
+                gadgets[i] = portal;
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown gadget kind " + kind);
+            }
+        }
+        for (int i = 0; i < triggerCount; i++) {
+            final Gadget trigger = gadgets[buffer.getInt()];
+            final Gadget target = gadgets[buffer.getInt()];
+            if (target instanceof Absorber) {
+                board.setTarget((Absorber) target, trigger);
+            } else {
+                board.setTarget((Flipper) target, trigger);
+            }
+        }
+        for (int i = 0; i < keyCount; i++) {
+            final int keyCode = buffer.getInt();
+            final boolean up = buffer.getInt() != 0;
+            final Gadget target = gadgets[buffer.getInt()];
+            if (target instanceof Absorber) {
+                board.setTarget((Absorber) target, keyCode, up);
+            } else {
+                board.setTarget((Flipper) target, keyCode, up);
+            }
+        }
+        return board;
+    }
+
+    /*
+     * Read a count of records of at least recordBytes bytes each from buffer.
+     * Throws BufferUnderflowException if the count is negative or the records can't fit in
+     * the rest of buffer, so a corrupt count never makes a huge or negative array.
+     */
+    private static int count(ByteBuffer buffer, int recordBytes) {
+        final int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / recordBytes) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    private static Bumper add(Board board, Bumper bumper) {
+        board.addBumper(bumper);
+        return bumper;
+    }
+
+    /*
+     * @return the index of string in strings, added if it is not there yet
+     */
+    private int string(String string) {
+        final Integer index = stringIndexes.get(string);
+        if (index != null) {
+            return index;
+        }
+        strings.add(string);
+        stringIndexes.put(string, strings.size() - 1);
+        return strings.size() - 1;
+    }
+
+    /*
+     * add a GADGET record of a gadget with name, which is a trigger for later fires
+     */
+    private int gadget(int kind, String gadgetName, int x, int y, int a, int b) {
+        gadgets.add(new int[] { kind, string(gadgetName), x, y, a, b, 0, 0 });
+        lastGadgets.put(gadgetName, gadgets.size() - 1);
+        return gadgets.size() - 1;
+    }
+
+    @Override
+    public void board(String boardName, float gravity, float friction1, float friction2) {
+        this.name = string(boardName);
+        this.gravity = gravity;
+        this.friction1 = friction1;
+        this.friction2 = friction2;
+    }
+
+    @Override
+    public void ball(String ballName, float x, float y, float xVelocity, float yVelocity) {
+        ballNames.add(string(ballName));
+        balls.add(new float[] { x, y, xVelocity, yVelocity });
+    }
+
+    @Override
+    public void squareBumper(String gadgetName, int x, int y) {
+        gadget(SQUARE_BUMPER, gadgetName, x, y, 0, 0);
+    }
+
+    @Override
+    public void circleBumper(String gadgetName, int x, int y) {
+        gadget(CIRCLE_BUMPER, gadgetName, x, y, 0, 0);
+    }
+
+    @Override
+    public void triangleBumper(String gadgetName, int x, int y, int orientation) {
+        gadget(TRIANGLE_BUMPER, gadgetName, x, y, orientation, 0);
+    }
+
+    @Override
+    public void absorber(String gadgetName, int x, int y, int width, int height) {
+        absorbers.computeIfAbsent(gadgetName, n -> new ArrayList<>()).add(gadget(ABSORBER, gadgetName, x, y, width, height));
+    }
+
+    @Override
+    public void flipper(String gadgetName, int x, int y, int orientation, boolean left) {
+        flippers.computeIfAbsent(gadgetName, n -> new ArrayList<>())
+                .add(gadget(left ? LEFT_FLIPPER : RIGHT_FLIPPER, gadgetName, x, y, orientation, 0));
+    }
+
+    @Override
+    public void portal(String gadgetName, int x, int y, String otherBoard, String otherPortal) {
+        gadget(PORTAL, gadgetName, x, y, string(otherPortal), otherBoard == null ? -1 : string(otherBoard));
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws RuntimeException if no gadget other than a ball named trigger was read before
+     */
+    @Override
+    public void fire(String trigger, String action) {
+        final Integer gadget = lastGadgets.get(trigger);
+        if (gadget == null) {
+            throw new RuntimeException("no gadget with name " + trigger);
+        }
+        for (int target : absorbers.getOrDefault(action, Collections.emptyList())) {
+            triggers.add(new int[] { gadget, target });
+        }
+        for (int target : flippers.getOrDefault(action, Collections.emptyList())) {
+            triggers.add(new int[] { gadget, target });
+        }
+    }
+
+    @Override
+    public void key(String key, boolean up, String action) {
+        final int keyCode = StreamingBoardParser.Builder.keyCode(key);
+        for (int target : absorbers.getOrDefault(action, Collections.emptyList())) {
+            keys.add(new int[] { keyCode, up ? 1 : 0, target });
+        }
+        for (int target : flippers.getOrDefault(action, Collections.emptyList())) {
+            keys.add(new int[] { keyCode, up ? 1 : 0, target });
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BoardCompiler of " + (name < 0 ? "no board" : strings.get(name)) + ": " + balls.size() + " balls, "
+                + gadgets.size() + " gadgets, " + triggers.size() + " triggers, " + keys.size() + " keys";
+    }
+
+    /**
+     * Compile board files.
+     * Usage: BoardCompiler FILE.fb... compiles every FILE.fb to FILE.fbc next to it.
+     * @param args board files
+     */
+    public static void main(String[] args) {
+        for (String arg : args) {
+            final File source = new File(arg);
+            final String base = arg.endsWith(".fb") ? arg.substring(0, arg.length() - ".fb".length()) : arg;
+            final Path target = Paths.get(base + EXTENSION);
+            try {
+                compile(source.toPath(), target);
+                System.out.println("compiled " + source + " to " + target);
+            } catch (IOException | UnableToParseException | RuntimeException e) {
+                System.err.println("can't compile " + source + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package flingball;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * A BoardDirectoryLoader loads all the board files (*.fb) of a directory at once, reading and
+ * parsing them in parallel on a pool of worker threads. It reports, for every file, the board
+ * or the error that kept it from loading, and how long reading and parsing it took; a file
+ * that fails doesn't keep the others from loading.
+ *
+ * Files are parsed with BoardParser, or with StreamingBoardParser if streaming. BoardParser
+ * compiles the grammar once per thread, so the loader keeps its worker threads from one load
+ * to the next until it is closed: the grammar is compiled at most once per worker thread over
+ * all the loads, not once per worker thread per load. Worker threads are daemons, started
+ * when a load needs them.
+ *
+ * Usage:
+ * BoardDirectoryLoader [--threads N] [--streaming] DIRECTORY
+ * loads the board files of DIRECTORY on N threads (default the number of processors)
+ * and prints one line per file and a summary.
+ *
+ * BoardDirectoryLoaders are thread-safe.
+ */
+public class BoardDirectoryLoader implements AutoCloseable {
+    private static final String BOARD_FILES = "*.fb";
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * The outcome of loading one board file, immutable.
+     */
+    public static class Result {
+        private final Path file;
+        private final Optional<Board> board;
+        private final Optional<String> error;
+        private final long readNanos;
+        private final long parseNanos;
+
+        // Abstraction function:
+        //   AF(file, board, error, readNanos, parseNanos) = file was loaded as board, or failed
+        //      with the message error, after being read in readNanos and parsed in parseNanos
+        // Representation invariant:
+        //   exactly one of board and error is present, readNanos, parseNanos >= 0
+        // Safety from rep exposure:
+        //   all fields are private and final and immutable, except the Board, which is handed
+        //   over to the caller as the product of the load
+
+        private Result(Path file, Optional<Board> board, Optional<String> error, long readNanos, long parseNanos) {
+            this.file = file;
+            this.board = board;
+            this.error = error;
+            this.readNanos = readNanos;
+            this.parseNanos = parseNanos;
+            assert board.isPresent() != error.isPresent();
+            assert readNanos >= 0 && parseNanos >= 0;
+        }
+
+        /**
+         * @return the board file
+         */
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * @return the board of the file, empty if it failed to load
+         */
+        public Optional<Board> getBoard() {
+            return board;
+        }
+
+        /**
+         * @return why the file failed to load, empty if it loaded
+         */
+        public Optional<String> getError() {
+            return error;
+        }
+
+        /**
+         * @return nanoseconds spent reading the file
+         */
+        public long getReadNanos() {
+            return readNanos;
+        }
+
+        /**
+         * @return nanoseconds spent parsing the file, 0 if it couldn't be read
+         */
+        public long getParseNanos() {
+            return parseNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s, read %.1f ms, parsed %.1f ms", file,
+                    board.map(b -> "board " + b.getName()).orElseGet(() -> "failed: " + error.get()),
+                    readNanos / NANOS_PER_MILLI, parseNanos / NANOS_PER_MILLI);
+        }
+    }
+
+    private final int threads;
+    private final boolean streaming;
+    private final ExecutorService pool;
+    private final AtomicInteger workersStarted = new AtomicInteger();
+
+    // Abstraction function:
+    //   AF(threads, streaming, pool, workersStarted) = a loader of board directories on the
+    //      threads worker threads of pool, parsing with StreamingBoardParser if streaming,
+    //      else with BoardParser, that has started workersStarted worker threads so far
+    // Representation invariant:
+    //   threads > 0, 0 <= workersStarted <= threads
+    // Safety from rep exposure:
+    //   all fields are private and final; threads and streaming are immutable, pool and
+    //   workersStarted are never returned
+    // Thread safety argument:
+    //   threads and streaming are immutable, pool and workersStarted are thread-safe.
+    //   BoardParser keeps a parser per thread and StreamingBoardParser a parse per call,
+    //   so files are parsed independently.
+
+    /**
+     * Make a loader; close it when it is no longer needed.
+     * @param threads number of worker threads, requires threads > 0
+     * @param streaming true to parse with StreamingBoardParser, false with BoardParser
+     */
+    public BoardDirectoryLoader(int threads, boolean streaming) {
+        this.threads = threads;
+        this.streaming = streaming;
+        this.pool = Executors.newFixedThreadPool(threads, task -> {
+            final Thread worker = new Thread(task, "BoardDirectoryLoader worker " + workersStarted.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert threads > 0;
+        assert workersStarted.get() >= 0 && workersStarted.get() <= threads;
+    }
+
+    /**
+     * Load the board files of a directory.
+     * @param directory directory of board files
+     * @return the result of every board file (*.fb) of directory, in order of file name
+     * @throws IOException if directory can't be listed
+     * @throws InterruptedException if interrupted while waiting for the workers
+     * @throws RejectedExecutionException if this loader is closed
+     */
+    public List<Result> load(Path directory) throws IOException, InterruptedException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, BOARD_FILES)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        final List<Callable<Result>> tasks = new ArrayList<>();
+        for (Path file : files) {
+            tasks.add(() -> loadFile(file));
+        }
+        final List<Result> results = new ArrayList<>();
+        for (Future<Result> result : pool.invokeAll(tasks)) {
+            try {
+                results.add(result.get());
+            } catch (ExecutionException e) {
+                // loadFile catches what parsing throws, so only Errors get here
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        checkRep();
+        return results;
+    }
+
+    /**
+     * @return number of worker threads this loader has started, at most its number of threads
+     */
+    int getWorkersStarted() {
+        return workersStarted.get();
+    }
+
+    /**
+     * Stop the worker threads once the loads in progress are done; later loads are rejected.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /*
+     * Read and parse one board file.
+     */
+    private Result loadFile(Path file) {
+        final long start = System.nanoTime();
+        final String text;
+        try {
+            text = read(file);
+        } catch (IOException e) {
+            return new Result(file, Optional.empty(), Optional.of("can't read: " + e.getMessage()),
+                    System.nanoTime() - start, 0);
+        }
+        final long read = System.nanoTime();
+        try {
+            final Board board = streaming ? StreamingBoardParser.parse(text) : BoardParser.parse(text);
+            return new Result(file, Optional.of(board), Optional.empty(), read - start, System.nanoTime() - read);
+        } catch (UnableToParseException | RuntimeException e) {
+            return new Result(file, Optional.empty(), Optional.of(e.getClass().getSimpleName() + ": " + e.getMessage()),
+                    read - start, System.nanoTime() - read);
+        }
+    }
+
+    /*
+     * Read a board file as Flingball.boardFileToString does, ending it with a newline.
+     */
+    private static String read(Path file) throws IOException {
+        final String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        return text.endsWith("\n") ? text : text + "\n";
+    }
+
+    @Override
+    public String toString() {
+        return "BoardDirectoryLoader on " + threads + " threads" + (streaming ? ", streaming" : "");
+    }
+
+    /**
+     * Load a directory of board files and print the results, see the class comment.
+     * @param args command line arguments
+     * @throws IOException if the directory can't be listed
+     * @throws InterruptedException if interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean streaming = false;
+        String directory = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--threads": threads = Integer.parseInt(args[++i]); break;
+            case "--streaming": streaming = true; break;
+            default: directory = args[i];
+            }
+        }
+        if (directory == null) {
+            System.err.println("usage: BoardDirectoryLoader [--threads N] [--streaming] DIRECTORY");
+            return;
+        }
+        final long start = System.nanoTime();
+        final List<Result> results;
+        try (BoardDirectoryLoader loader = new BoardDirectoryLoader(threads, streaming)) {
+            results = loader.load(Paths.get(directory));
+        }
+        final long elapsed = System.nanoTime() - start;
+        int failed = 0;
+        long work = 0;
+        for (Result result : results) {
+            System.out.println(result);
+            failed += result.getError().isPresent() ? 1 : 0;
+            work += result.getReadNanos() + result.getParseNanos();
+        }
+        System.out.println(String.format("%d files, %d failed, %.1f ms on %d threads (%.1f ms of work)",
+                results.size(), failed, elapsed / NANOS_PER_MILLI, threads, work / NANOS_PER_MILLI));
+    }
+}
@@ -52,7 +52,9 @@ public class BoardParser {
         KEY,
     }
 
-    private static Parser<BoardGrammar> parser = makeParser();
+    // parserlib doesn't promise that a Parser can be used by several threads at once,
+    // so every thread that parses compiles its own, the first time it parses
+    private static final ThreadLocal<Parser<BoardGrammar>> parser = ThreadLocal.withInitial(BoardParser::makeParser);
     private final static Map<String,Integer> keyName;
     static {
         Map<String,Integer> map = new HashMap<>();
@@ -142,7 +144,7 @@ public class BoardParser {
      * @throws UnableToParseException if the string doesn't match the Board grammar
      */
     public static Board parse(final String string, List<Board> otherBoards) throws UnableToParseException {
-        final ParseTree<BoardGrammar> parseTree = parser.parse(string);
+        final ParseTree<BoardGrammar> parseTree = parser.get().parse(string);
         // make an AST from the parse tree
         final Board board = makeAbstractSyntaxTree(parseTree);
         return board;
@@ -155,12 +157,23 @@ public class BoardParser {
      * @throws UnableToParseException if the string doesn't match the Board grammar
      */
     public static Board parse(final String string) throws UnableToParseException {
-        final ParseTree<BoardGrammar> parseTree = parser.parse(string);
+        final ParseTree<BoardGrammar> parseTree = parser.get().parse(string);
         // make an AST from the parse tree
         final Board board = makeAbstractSyntaxTree(parseTree);
         return board;
     }
 
+    /**
+     * Parse a string into a BoardBlueprint, from which Boards are made cheaply.
+     * 
+     * @param string string to parse
+     * @return BoardBlueprint parsed from the string
+     * @throws UnableToParseException if the string doesn't match the Board grammar
+     */
+    public static BoardBlueprint parseBlueprint(final String string) throws UnableToParseException {
+        return parse(string).blueprint();
+    }
+
     /**
      * Convert a parse tree into an abstract syntax tree.
      * 
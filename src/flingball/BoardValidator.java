@@ -0,0 +1,276 @@
+package flingball;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * A BoardValidator finds the problems of a board file that the parsers accept but that make
+ * the board behave strangely when played: gadgets that overlap or lie outside the board, two
+ * gadgets with the same name, fire triggers and key bindings whose action is not an absorber
+ * or flipper or whose trigger is not a gadget, or is a gadget declared only after the binding
+ * (the parsers resolve names when they read the binding, so they reject such a trigger and
+ * silently drop such an action), and portals linked to a portal this board doesn't have.
+ * It reports all the problems of a board at once.
+ *
+ * A validator is a StreamingBoardParser.Sink, handed the board file by parse; overlaps are
+ * found by marking the squares every gadget covers on an occupancy grid of the board, so
+ * validating takes time linear in the size of the board file.
+ *
+ * Usage:
+ * BoardValidator FILE...
+ * prints the problems of every board file FILE, or that it is valid.
+ *
+ * BoardValidators are mutable and not thread-safe; validate is thread-safe.
+ */
+public class BoardValidator implements StreamingBoardParser.Sink {
+    private static final int SIZE = 20;
+    private static final int FLIPPER_SIZE = 2;
+    private static final String ABSORBER = "absorber";
+    private static final String FLIPPER = "Flipper";
+    private static final String PORTAL = "portal";
+
+    /*
+     * A gadget of the board file, immutable.
+     */
+    private static class Declaration {
+        private final String kind;
+        private final String name;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final String otherPortal;
+
+        private Declaration(String kind, String name, int x, int y, int width, int height, String otherPortal) {
+            this.kind = kind;
+            this.name = name;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.otherPortal = otherPortal;
+        }
+    }
+
+    /*
+     * A fire trigger or key binding of the board file, immutable.
+     */
+    private static class Binding {
+        private final String trigger;
+        private final String action;
+        private final String description;
+        private final int declared;
+
+        private Binding(String trigger, String action, String description, int declared) {
+            this.trigger = trigger;
+            this.action = action;
+            this.description = description;
+            this.declared = declared;
+        }
+    }
+
+    private String boardName = "";
+    private final List<Declaration> gadgets = new ArrayList<>();
+    private final Map<String, Integer> names = new LinkedHashMap<>();
+    private final Set<String> problems = new LinkedHashSet<>();
+    private final List<Binding> bindings = new ArrayList<>();
+
+    // Abstraction function:
+    //   AF(boardName, gadgets, names, problems, bindings) = the validation of the board file
+    //      named boardName read so far, with the gadgets gadgets in file order, names the
+    //      index in gadgets of the first gadget of every name, problems the problems found
+    //      while reading, and bindings every fire trigger (trigger not null) and key binding
+    //      (trigger null), with the number of gadgets declared before it
+    // Representation invariant:
+    //   every value of names is an index of gadgets, so names.size() <= gadgets.size();
+    //   0 <= declared <= gadgets.size() for every binding
+    // Safety from rep exposure:
+    //   all fields are private and never returned; problems() returns a copy
+
+    /**
+     * Make a validator of one board; hand it to StreamingBoardParser.parse, then call problems.
+     */
+    public BoardValidator() {
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert names.size() <= gadgets.size();
+        assert bindings.isEmpty() || bindings.get(bindings.size() - 1).declared <= gadgets.size();
+    }
+
+    /**
+     * Find the problems of a board file.
+     * @param boardFile text of a board file
+     * @return the problems of boardFile, see problems(); empty if it is valid
+     * @throws UnableToParseException if boardFile doesn't match the Board grammar
+     */
+    public static List<String> validate(String boardFile) throws UnableToParseException {
+        final BoardValidator validator = new BoardValidator();
+        StreamingBoardParser.parse(boardFile, validator);
+        return validator.problems();
+    }
+
+    /**
+     * @return the problems of the board read, one message each, e.g.
+     *         "squareBumper A overlaps absorber B at (3, 19)"; gadgets in file order, then
+     *         fire triggers, key bindings and portal links in file order. Empty if it is valid.
+     */
+    public List<String> problems() {
+        final List<String> all = new ArrayList<>(problems);
+        final String[][] occupant = new String[SIZE][SIZE];
+        final Set<String> overlaps = new LinkedHashSet<>();
+        for (Declaration gadget : gadgets) {
+            if (gadget.x < 0 || gadget.y < 0 || gadget.x + gadget.width > SIZE || gadget.y + gadget.height > SIZE) {
+                all.add(describe(gadget) + " at (" + gadget.x + ", " + gadget.y + ") is outside the board");
+            }
+            for (int x = Math.max(gadget.x, 0); x < Math.min(gadget.x + gadget.width, SIZE); x++) {
+                for (int y = Math.max(gadget.y, 0); y < Math.min(gadget.y + gadget.height, SIZE); y++) {
+                    if (occupant[x][y] == null) {
+                        occupant[x][y] = describe(gadget);
+                    } else if (overlaps.add(describe(gadget) + " " + occupant[x][y])) {
+                        all.add(describe(gadget) + " overlaps " + occupant[x][y] + " at (" + x + ", " + y + ")");
+                    }
+                }
+            }
+        }
+        for (Binding binding : bindings) {
+            if (binding.trigger != null) {
+                final Integer trigger = names.get(binding.trigger);
+                if (trigger == null) {
+                    all.add(binding.description + ": no gadget " + binding.trigger);
+                } else if (trigger >= binding.declared) {
+                    all.add(binding.description + ": " + describe(gadgets.get(trigger)) + " is declared after it");
+                }
+            }
+            final Integer action = names.get(binding.action);
+            if (action == null) {
+                all.add(binding.description + ": no gadget " + binding.action);
+                continue;
+            }
+            final Declaration target = gadgets.get(action);
+            if (!target.kind.equals(ABSORBER) && !target.kind.endsWith(FLIPPER)) {
+                all.add(binding.description + ": " + describe(target) + " is not an absorber or flipper");
+            } else if (action >= binding.declared) {
+                all.add(binding.description + ": " + describe(target) + " is declared after it");
+            }
+        }
+        for (Declaration gadget : gadgets) {
+            if (gadget.kind.equals(PORTAL) && gadget.otherPortal != null) {
+                final Integer otherIndex = names.get(gadget.otherPortal);
+                final Declaration other = otherIndex == null ? null : gadgets.get(otherIndex);
+                if (other == null || !other.kind.equals(PORTAL)) {
+                    all.add(describe(gadget) + ": no portal " + gadget.otherPortal + " on board " + boardName);
+                }
+            }
+        }
+        return all;
+    }
+
+    private static String describe(Declaration gadget) {
+        return gadget.kind + " " + gadget.name;
+    }
+
+    /*
+     * Add a gadget of the board file, noting a name used before.
+     */
+    private void add(Declaration gadget) {
+        final Integer first = names.putIfAbsent(gadget.name, gadgets.size());
+        gadgets.add(gadget);
+        if (first != null) {
+            problems.add(describe(gadget) + " has the name of " + describe(gadgets.get(first)));
+        }
+        checkRep();
+    }
+
+    @Override
+    public void board(String name, float gravity, float friction1, float friction2) {
+        boardName = name;
+    }
+
+    @Override
+    public void ball(String name, float x, float y, float xVelocity, float yVelocity) {
+        if (x < 0 || y < 0 || x > SIZE || y > SIZE) {
+            problems.add("ball " + name + " at (" + x + ", " + y + ") is outside the board");
+        }
+    }
+
+    @Override
+    public void squareBumper(String name, int x, int y) {
+        add(new Declaration("squareBumper", name, x, y, 1, 1, null));
+    }
+
+    @Override
+    public void circleBumper(String name, int x, int y) {
+        add(new Declaration("circleBumper", name, x, y, 1, 1, null));
+    }
+
+    @Override
+    public void triangleBumper(String name, int x, int y, int orientation) {
+        add(new Declaration("triangleBumper", name, x, y, 1, 1, null));
+    }
+
+    @Override
+    public void absorber(String name, int x, int y, int width, int height) {
+        add(new Declaration(ABSORBER, name, x, y, width, height, null));
+    }
+
+    @Override
+    public void flipper(String name, int x, int y, int orientation, boolean left) {
+        add(new Declaration((left ? "left" : "right") + FLIPPER, name, x, y, FLIPPER_SIZE, FLIPPER_SIZE, null));
+    }
+
+    @Override
+    public void portal(String name, int x, int y, String otherBoard, String otherPortal) {
+        // only a link to a portal of this board can be checked here
+        final boolean local = otherBoard == null || otherBoard.equals(boardName);
+        add(new Declaration(PORTAL, name, x, y, 1, 1, local ? otherPortal : null));
+    }
+
+    @Override
+    public void fire(String trigger, String action) {
+        bindings.add(new Binding(trigger, action, "fire trigger=" + trigger + " action=" + action, gadgets.size()));
+    }
+
+    @Override
+    public void key(String key, boolean up, String action) {
+        bindings.add(new Binding(null, action, (up ? "keyup" : "keydown") + " key=" + key + " action=" + action,
+                gadgets.size()));
+    }
+
+    @Override
+    public String toString() {
+        return "BoardValidator of board " + boardName + ", " + gadgets.size() + " gadgets";
+    }
+
+    /**
+     * Validate board files, see the class comment.
+     * @param args board files
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("usage: BoardValidator FILE...");
+            return;
+        }
+        for (String file : args) {
+            try {
+                final List<String> problems = validate(Flingball.boardFileToString(new File(file)));
+                System.out.println(file + (problems.isEmpty() ? ": valid" : ": " + problems.size() + " problems"));
+                for (String problem : problems) {
+                    System.out.println("  " + problem);
+                }
+            } catch (UnableToParseException | IOException e) {
+                System.err.println(file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package flingball;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * A BoardWatcher watches a board file and reloads a running Board whenever the file changes,
+ * so a board can be edited while it is played. Only the watched file is parsed again, and the
+ * Board is changed in place by Board.reload: its balls and the motion of its unchanged
+ * flippers are kept, while added, removed and moved gadgets and changed triggers take effect.
+ * A file that fails to parse is reported and leaves the Board as it was.
+ *
+ * Changes are detected by a WatchService on the directory of the file, on a daemon thread
+ * started by start(). Events that arrive within DEBOUNCE_MILLISECONDS of each other, as an
+ * editor saving a file often makes, cause one reload.
+ *
+ * Usage:
+ * BoardWatcher FILE
+ * plays the board of FILE, reloading it whenever FILE changes.
+ * Flingball does the same for the board it plays with -Dflingball.watch=true, see Flingball.main.
+ *
+ * BoardWatchers are thread-safe.
+ */
+public class BoardWatcher implements Closeable {
+    private static final long DEBOUNCE_MILLISECONDS = 50;
+
+    private final Path file;
+    private final Board board;
+    private final Runnable onReload;
+    private final WatchService watchService;
+    private final Thread thread;
+    private int reloads;
+
+    // Abstraction function:
+    //   AF(file, board, onReload, watchService, thread, reloads) = a watcher of file, that
+    //      reloads board from it when watchService reports that it changed, on thread, and
+    //      then runs onReload; it has reloaded board reloads times
+    // Representation invariant:
+    //   file has a file name, reloads >= 0
+    // Safety from rep exposure:
+    //   all fields are private and never returned; board and onReload are shared with the
+    //   caller on purpose, as the board to reload and what to do after
+    // Thread safety argument:
+    //   board is thread-safe, and watchService is used only by thread after construction,
+    //   except close(), which WatchService allows from any thread. reloads is only accessed
+    //   while holding the lock of this, and reload() holds it throughout, so reloads are
+    //   applied one at a time.
+
+    /**
+     * Make a watcher; it doesn't watch until start() is called.
+     * @param file board file to watch, requires its directory to exist
+     * @param board board to reload when file changes
+     * @param onReload run after every reload, e.g. to redraw the board
+     * @throws IOException if the directory of file can't be watched
+     */
+    public BoardWatcher(Path file, Board board, Runnable onReload) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.board = board;
+        this.onReload = onReload;
+        this.watchService = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        this.thread = new Thread(this::watch, "BoardWatcher " + file);
+        this.thread.setDaemon(true);
+        checkRep();
+    }
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert file.getFileName() != null;
+        assert board != null && onReload != null && watchService != null && thread != null;
+        assert reloads >= 0;
+    }
+
+    /**
+     * Start watching the file.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stop watching the file. A reload in progress is finished.
+     * @throws IOException if the watch service can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * Parse the file now and reload the board from it.
+     * @return the changes made to the board, see Board.reload
+     * @throws IOException if the file can't be read
+     * @throws UnableToParseException if the file doesn't match the Board grammar
+     */
+    public synchronized List<String> reload() throws IOException, UnableToParseException {
+        final BoardBlueprint definition = StreamingBoardParser.parse(Flingball.boardFileToString(file.toFile()))
+                .blueprint();
+        final List<String> changes = board.reload(definition);
+        reloads++;
+        checkRep();
+        onReload.run();
+        return changes;
+    }
+
+    /**
+     * @return number of times the board was reloaded
+     */
+    public synchronized int getReloads() {
+        return reloads;
+    }
+
+    /*
+     * Wait for changes of the file and reload the board, until the watch service is closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                final WatchKey key = watchService.take();
+                Thread.sleep(DEBOUNCE_MILLISECONDS);
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == OVERFLOW || file.getFileName().equals(event.context());
+                }
+                final boolean valid = key.reset();
+                if (changed) {
+                    reloadAndReport();
+                }
+                if (!valid) {
+                    System.err.println("stopped watching " + file + ": its directory is gone");
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed, stop watching
+        }
+    }
+
+    /*
+     * Reload the board and print what changed, or why the file couldn't be loaded.
+     */
+    private void reloadAndReport() {
+        try {
+            final List<String> changes = reload();
+            System.out.println("reloaded " + file + (changes.isEmpty() ? ", no changes" : ": " + String.join(", ", changes)));
+        } catch (IOException | UnableToParseException | RuntimeException e) {
+            System.err.println("keeping the running board, can't reload " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BoardWatcher of " + file + ", " + reloads + " reloads";
+    }
+
+    /**
+     * Play a board file and reload it whenever it changes, see the class comment.
+     * @param args command line arguments
+     * @throws IOException if the file can't be read or watched
+     * @throws UnableToParseException if the file doesn't match the Board grammar
+     */
+    public static void main(String[] args) throws IOException, UnableToParseException {
+        if (args.length != 1) {
+            System.err.println("usage: BoardWatcher FILE");
+            return;
+        }
+        final Path file = Paths.get(args[0]);
+        final Board board = StreamingBoardParser.parse(Flingball.boardFileToString(file.toFile()));
+        final Simulator simulator = new Simulator(board);
+        new BoardWatcher(file, board, simulator::refresh).start();
+        simulator.playFlingball();
+    }
+}
@@ -0,0 +1,104 @@
+package flingball;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A BufferPool recycles direct ByteBuffers of one size, so that connections can read and
+ * write frames without allocating (and later collecting) a new buffer each time.
+ * A buffer is taken with acquire and must be given back with release when it is no longer used.
+ * At most maxPooled free buffers are kept; buffers released beyond that are left to the GC.
+ *
+ * A BufferPool is thread-safe.
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Deque<ByteBuffer> free;
+    private long allocated;
+
+    // Abstraction function:
+    //   AF(bufferSize, maxPooled, free, allocated) = a pool of direct buffers of bufferSize bytes
+    //      where the buffers in free are ready to be acquired, and allocated buffers were
+    //      allocated so far.
+    // Representation invariant:
+    //   bufferSize > 0, maxPooled >= 0, free.size() <= maxPooled,
+    //   every buffer in free is direct, has capacity bufferSize and is cleared
+    // Safety from rep exposure:
+    //   buffers are handed out on purpose, but only while they are not in free
+    // Thread safety argument:
+    //   monitor pattern, all methods touching free and allocated are synchronized
+
+    /**
+     * Make an empty BufferPool.
+     * @param bufferSize capacity of every buffer in bytes, > 0
+     * @param maxPooled maximal number of free buffers kept, >= 0
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.free = new ArrayDeque<>();
+        this.allocated = 0;
+        checkRep();
+    }
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert bufferSize > 0;
+        assert maxPooled >= 0;
+        assert free.size() <= maxPooled;
+    }
+
+    /**
+     * @return a cleared direct buffer of getBufferSize() bytes, owned by the caller until released
+     */
+    public synchronized ByteBuffer acquire() {
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer == null) {
+            allocated++;
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Give a buffer back to the pool. The caller must not use it afterwards.
+     * @param buffer a buffer acquired from this pool
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        assert buffer.isDirect() && buffer.capacity() == bufferSize;
+        if (free.size() < maxPooled) {
+            buffer.clear();
+            free.addFirst(buffer);
+        }
+        checkRep();
+    }
+
+    /**
+     * @return capacity of the buffers of this pool in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return number of buffers allocated by this pool so far
+     */
+    public synchronized long getAllocated() {
+        return allocated;
+    }
+
+    /**
+     * @return number of free buffers in this pool
+     */
+    public synchronized int getFree() {
+        return free.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BufferPool of " + bufferSize + " byte buffers: " + free.size() + " free, "
+                + allocated + " allocated";
+    }
+}
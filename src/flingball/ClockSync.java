@@ -0,0 +1,174 @@
+package flingball;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A ClockSync estimates the offset between the monotonic clock of a Flingball client
+ * (HandoffTracer.now()) and the monotonic clock of its FlingballServer, so that clients
+ * can stamp ball requests in a timebase shared by all boards.
+ *
+ * Each sample is one TIME_REQUEST round trip: the client's clock before sending, the
+ * server's clock in the reply and the client's clock after receiving the reply. Assuming
+ * the server read its clock halfway through the round trip, the offset is
+ *     server - (sent + received) / 2
+ * with an error of at most half the round trip. The estimate is the offset of the sample
+ * with the shortest round trip among the last WINDOW samples.
+ *
+ * On the wire a stamp is an option of a TRANSFER_BALL_REQUEST or PORTAL_BALL_REQUEST,
+ * placed before any TRACE:
+ * SEND_STAMP ::= "at" STAMP
+ * STAMP ::= '-'?[0-9]+
+ * where STAMP is the time the ball left the sending board, on the server's clock.
+ *
+ * A ClockSync is thread-safe.
+ */
+public class ClockSync {
+    public static final long UNKNOWN = Long.MIN_VALUE;
+    public static final String KEYWORD = "at";
+    private static final int WINDOW = 8;
+
+    private final Deque<long[]> samples;
+
+    // Abstraction function:
+    //   AF(samples) = the estimate of (server clock - local clock) given by the sample
+    //      with the shortest round trip in samples, where each sample is {roundTrip, offset}
+    //      in nanoseconds, the newest last. There is no estimate if samples is empty.
+    // Representation invariant:
+    //   samples not null, samples.size() <= WINDOW, every round trip >= 0
+    // Safety from rep exposure:
+    //   samples is private and final and never returned
+    // Thread safety argument:
+    //   monitor pattern, all methods touching samples are synchronized
+
+    /**
+     * Make a ClockSync without any sample.
+     */
+    public ClockSync() {
+        this.samples = new ArrayDeque<>();
+        checkRep();
+    }
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert samples != null;
+        assert samples.size() <= WINDOW;
+        for (long[] sample : samples) {
+            assert sample[0] >= 0;
+        }
+    }
+
+    /**
+     * Add the sample of one round trip to the server.
+     * @param sent local time before sending the request
+     * @param server server time in the reply
+     * @param received local time after receiving the reply, requires received >= sent
+     */
+    public synchronized void addSample(long sent, long server, long received) {
+        final long roundTrip = received - sent;
+        final long offset = server - (sent + roundTrip / 2);
+        samples.addLast(new long[] {roundTrip, offset});
+        if (samples.size() > WINDOW) {
+            samples.removeFirst();
+        }
+        checkRep();
+    }
+
+    /**
+     * @return true iff at least one sample was added
+     */
+    public synchronized boolean hasEstimate() {
+        return !samples.isEmpty();
+    }
+
+    /*
+     * the sample with the shortest round trip, requires hasEstimate()
+     */
+    private synchronized long[] best() {
+        long[] best = samples.peekFirst();
+        for (long[] sample : samples) {
+            if (sample[0] < best[0]) {
+                best = sample;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return estimated server clock minus local clock in nanoseconds, requires hasEstimate()
+     */
+    public synchronized long getOffset() {
+        return best()[1];
+    }
+
+    /**
+     * @return round trip of the sample the estimate is based on in nanoseconds,
+     *         requires hasEstimate(). The estimate is off by at most half of it.
+     */
+    public synchronized long getRoundTrip() {
+        return best()[0];
+    }
+
+    /**
+     * @param local a time on the local clock, requires hasEstimate()
+     * @return the same time on the server's clock
+     */
+    public synchronized long toServerTime(long local) {
+        return local + getOffset();
+    }
+
+    /**
+     * @param server a time on the server's clock, requires hasEstimate()
+     * @return the same time on the local clock
+     */
+    public synchronized long toLocalTime(long server) {
+        return server - getOffset();
+    }
+
+    /**
+     * @return the SEND_STAMP option for a ball request sent now, starting with a space,
+     *         or "" if there is no estimate yet
+     */
+    public synchronized String stampNow() {
+        if (!hasEstimate()) {
+            return "";
+        }
+        return " " + KEYWORD + " " + toServerTime(HandoffTracer.now());
+    }
+
+    /**
+     * Find the SEND_STAMP in a tokenized ball request, without moving the cursor of tokens.
+     * @param tokens tokenizer of the request
+     * @param from index of the first token after the fixed fields of the request, where its
+     *        options start; the fields are not searched, since a BALLNAME or BOARDNAME may be "at"
+     * @return the index of the SEND_STAMP in tokens, or tokens.count() if there is none
+     */
+    public static int indexIn(Tokenizer tokens, int from) {
+        return tokens.indexOf(KEYWORD, from);
+    }
+
+    /**
+     * Parse the SEND_STAMP of a tokenized ball request. Moves the cursor of tokens.
+     * @param tokens tokenizer of the request
+     * @param index index of the "at" keyword in tokens, as returned by indexIn
+     * @return the send time on the server's clock, or UNKNOWN if tokens has no valid SEND_STAMP at index
+     */
+    public static long parse(Tokenizer tokens, int index) {
+        if (index + 1 >= tokens.count() || !tokens.seek(index).nextIs(KEYWORD)) {
+            return UNKNOWN;
+        }
+        try {
+            return tokens.nextLong();
+        } catch (NumberFormatException e) {
+            return UNKNOWN;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (!hasEstimate()) {
+            return "ClockSync without estimate";
+        }
+        return "ClockSync offset " + getOffset() + "ns +/- " + getRoundTrip() / 2 + "ns";
+    }
+}
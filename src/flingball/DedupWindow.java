@@ -0,0 +1,75 @@
+package flingball;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A DedupWindow remembers the last sequence numbers a client applied, so that a ball the
+ * server sends again (see BallLedger) is acknowledged without being applied twice.
+ * A server only resends a ball shortly after sending it, so remembering a window of the
+ * latest sequence numbers is enough.
+ * DedupWindows are mutable and thread-safe.
+ */
+public class DedupWindow {
+
+    private final long[] recent;
+    private final Set<Long> seen;
+    private int next;
+
+    // Abstraction function:
+    //   AF(recent, seen, next) = the set seen of the last recent.length sequence numbers
+    //      added, which recent holds in a ring whose oldest slot is next
+    // Representation invariant:
+    //   recent.length > 0, 0 <= next < recent.length, seen.size() <= recent.length
+    //   seen is the set of the values of recent that aren't BallLedger.NO_SEQ
+    // Safety from rep exposure:
+    //   all fields are private and never returned
+    // Thread safety argument:
+    //   all fields are guarded by the lock of this, every method that touches them is
+    //   synchronized
+
+    /**
+     * Make an empty DedupWindow.
+     * @param size number of sequence numbers remembered, > 0
+     */
+    public DedupWindow(int size) {
+        this.recent = new long[size];
+        Arrays.fill(recent, BallLedger.NO_SEQ);
+        this.seen = new HashSet<>();
+        this.next = 0;
+        checkRep();
+    }
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert recent.length > 0;
+        assert 0 <= next && next < recent.length;
+        assert seen.size() <= recent.length;
+    }
+
+    /**
+     * Remember a sequence number, forgetting the oldest one if the window is full.
+     * @param seq a sequence number, or BallLedger.NO_SEQ
+     * @return true iff seq is BallLedger.NO_SEQ or wasn't in the window, i.e. the ball
+     *         it numbers should be applied
+     */
+    public synchronized boolean add(long seq) {
+        if (seq == BallLedger.NO_SEQ) {
+            return true;
+        }
+        if (!seen.add(seq)) {
+            return false;
+        }
+        seen.remove(recent[next]);
+        recent[next] = seq;
+        next = (next + 1) % recent.length;
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DedupWindow of " + seen.size() + "/" + recent.length + " sequence numbers";
+    }
+}
@@ -0,0 +1,348 @@
+package flingball;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An EventJournal is an append-only binary record of the events a FlingballServer processes
+ * (boards connecting, joins, disjoins, ball transfers and portal sends), for replay (see
+ * JournalReplay) and post-mortems.
+ *
+ * The journal is a directory of segment files of a fixed size, each mapped into memory, so
+ * that recording an event only copies its bytes into the mapped segment, without a system
+ * call. When a segment is full, it is forced to disk and the journal rolls over to a new one.
+ * Records reach the file system as soon as they are written, so they survive a crash of the
+ * process, but only forced segments survive a crash of the machine.
+ *
+ * A segment is named "journal-" NUMBER ".fbj", numbered in the order written, and is:
+ * SEGMENT ::= MAGIC RECORD* END
+ * MAGIC ::= int 0x46424A31 ("FBJ1")
+ * RECORD ::= LENGTH TYPE TIME USERID PAYLOAD
+ * LENGTH ::= int, length of PAYLOAD in bytes, > 0
+ * TYPE ::= byte, ordinal of the Type of the event
+ * TIME ::= long, System.currentTimeMillis() when the event was recorded
+ * USERID ::= int, userID of the client that caused the event, or -1 for the server
+ * PAYLOAD ::= UTF-8 bytes of the request or command of the event
+ * END ::= int 0, or the end of the file
+ * with all numbers big-endian. A journal opened on a directory that has segments already
+ * goes on with a new segment after them.
+ *
+ * EventJournals are mutable and thread-safe.
+ */
+public class EventJournal implements AutoCloseable {
+
+    /**
+     * the kinds of events recorded, whose payloads are
+     * CONNECT: the CONNECT_REQUEST of the board,
+     * JOIN: the "h" or "v" command that joined two boards,
+     * DISJOIN: the name of the board removed from the game,
+     * TRANSFER: the TRANSFER_BALL_REQUEST as sent by the client,
+     * PORTAL: the PORTAL_BALL_REQUEST as sent by the client
+     */
+    public enum Type {
+        CONNECT,
+        JOIN,
+        DISJOIN,
+        TRANSFER,
+        PORTAL,
+    }
+
+    /** default size of a segment in bytes */
+    public static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+    /** userID of the events caused by the server itself */
+    public static final int SERVER = -1;
+    private static final int MAGIC = 0x46424A31;
+    private static final int HEADER_BYTES = Integer.BYTES + 1 + Long.BYTES + Integer.BYTES;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".fbj";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private MappedByteBuffer segment;
+    private int segmentNumber;
+    private long records;
+    private boolean closed;
+
+    // Abstraction function:
+    //   AF(directory, segmentBytes, segment, segmentNumber, records, closed) = the journal in
+    //      directory, whose segments are segmentBytes long, that appends to segment, the
+    //      mapping of segment file number segmentNumber, at its position; records events
+    //      were recorded since the journal was opened. No more events are recorded if closed.
+    // Representation invariant:
+    //   directory, segment not null, segmentBytes > HEADER_BYTES + Integer.BYTES
+    //   segment.capacity() == segmentBytes, segment.position() >= Integer.BYTES
+    //   records >= 0
+    // Safety from rep exposure:
+    //   all fields are private, segment is never returned, events read are new and immutable
+    // Thread safety argument:
+    //   all fields are guarded by the lock of this, every method that touches them is
+    //   synchronized
+
+    /**
+     * Open a journal with segments of DEFAULT_SEGMENT_BYTES.
+     * @param directory directory of the segments, made if it doesn't exist
+     * @throws IOException if the first segment can't be made
+     */
+    public EventJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Open a journal.
+     * @param directory directory of the segments, made if it doesn't exist
+     * @param segmentBytes size of a segment in bytes, large enough for the largest event
+     * @throws IOException if the first segment can't be made
+     */
+    public EventJournal(Path directory, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        final List<Path> existing = segments(directory);
+        this.segmentNumber = existing.isEmpty() ? -1 : numberOf(existing.get(existing.size() - 1));
+        this.records = 0;
+        this.closed = false;
+        roll();
+        checkRep();
+    }
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert directory != null;
+        assert segment != null;
+        assert segmentBytes > HEADER_BYTES + Integer.BYTES;
+        assert segment.capacity() == segmentBytes;
+        assert segment.position() >= Integer.BYTES;
+        assert records >= 0;
+    }
+
+    /*
+     * force the current segment, if any, and map the next one
+     */
+    private synchronized void roll() throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        segmentNumber++;
+        final Path file = directory.resolve(String.format("%s%06d%s", PREFIX, segmentNumber, SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        segment.putInt(MAGIC);
+    }
+
+    /**
+     * Record an event whose payload is text.
+     * @param type kind of the event
+     * @param userID userID of the client that caused the event, or SERVER
+     * @param payload the request or command of the event, not empty
+     * @throws IOException if the journal can't roll over to a new segment
+     */
+    public synchronized void record(Type type, int userID, String payload) throws IOException {
+        record(type, userID, ByteBuffer.wrap(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Record an event whose payload is the UTF-8 bytes of text, without decoding them.
+     * @param type kind of the event
+     * @param userID userID of the client that caused the event, or SERVER
+     * @param payload the remaining bytes of payload are the request or command of the event,
+     *        at least one; its position is left unchanged
+     * @throws IOException if the journal can't roll over to a new segment
+     */
+    public synchronized void record(Type type, int userID, ByteBuffer payload) throws IOException {
+        if (closed) {
+            return;
+        }
+        final int length = payload.remaining();
+        if (HEADER_BYTES + length > segment.remaining() - Integer.BYTES) {
+            if (Integer.BYTES + HEADER_BYTES + length > segmentBytes - Integer.BYTES) {
+                throw new IllegalArgumentException("event of " + length + " bytes doesn't fit in a segment");
+            }
+            segment.putInt(0);
+            roll();
+        }
+        final int start = payload.position();
+        segment.putInt(length).put((byte) type.ordinal()).putLong(System.currentTimeMillis()).putInt(userID);
+        segment.put(payload);
+        payload.position(start);
+        records++;
+    }
+
+    /**
+     * @return number of events recorded since this journal was opened
+     */
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    /**
+     * Force the current segment to disk. Costs a system call, unlike record.
+     */
+    public synchronized void force() {
+        if (!closed) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Mark the end of the current segment, force it to disk and stop recording.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        if (segment.remaining() >= Integer.BYTES) {
+            segment.putInt(0);
+        }
+        segment.force();
+        closed = true;
+    }
+
+    /**
+     * Read all events of a journal, e.g. one another process is still writing.
+     * @param directory directory of the segments
+     * @return the events of all segments in the order they were recorded; a segment ends
+     *         at its END or at the first record that is incomplete
+     * @throws IOException if a segment can't be read or isn't a segment
+     */
+    public static List<Event> read(Path directory) throws IOException {
+        final List<Event> events = new ArrayList<>();
+        for (Path file : segments(directory)) {
+            final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (bytes.remaining() < Integer.BYTES || bytes.getInt() != MAGIC) {
+                throw new IOException(file + " is not a journal segment");
+            }
+            while (bytes.remaining() >= HEADER_BYTES) {
+                final int length = bytes.getInt();
+                if (length <= 0 || length > bytes.remaining() - (HEADER_BYTES - Integer.BYTES)) {
+                    break;
+                }
+                final byte type = bytes.get();
+                final long time = bytes.getLong();
+                final int userID = bytes.getInt();
+                if (type < 0 || type >= Type.values().length) {
+                    break;
+                }
+                final String payload = new String(bytes.array(), bytes.position(), length, StandardCharsets.UTF_8);
+                bytes.position(bytes.position() + length);
+                events.add(new Event(Type.values()[type], time, userID, payload));
+            }
+        }
+        return events;
+    }
+
+    /*
+     * return the segment files in directory, in the order they were written
+     */
+    private static List<Path> segments(Path directory) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : entries) {
+                if (numberOf(file) >= 0) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files, (a, b) -> Integer.compare(numberOf(a), numberOf(b)));
+        return files;
+    }
+
+    /*
+     * return the number of a segment file, or -1 if its name isn't the name of a segment
+     */
+    private static int numberOf(Path file) {
+        final String name = file.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "EventJournal in " + directory + " at segment " + segmentNumber + ", " + records + " events";
+    }
+
+    /**
+     * An Event is one record of an EventJournal. Events are immutable.
+     */
+    public static class Event {
+        private final Type type;
+        private final long timeMillis;
+        private final int userID;
+        private final String payload;
+
+        // Abstraction function:
+        //   AF(type, timeMillis, userID, payload) = the event of kind type with payload, caused
+        //      by the client userID (or the server if SERVER) at timeMillis
+        // Representation invariant:
+        //   type, payload not null
+        // Safety from rep exposure:
+        //   all fields are private, final and immutable
+
+        /**
+         * Make an Event.
+         * @param type kind of the event
+         * @param timeMillis time of the event, see System.currentTimeMillis()
+         * @param userID userID of the client that caused the event, or SERVER
+         * @param payload the request or command of the event
+         */
+        public Event(Type type, long timeMillis, int userID, String payload) {
+            this.type = type;
+            this.timeMillis = timeMillis;
+            this.userID = userID;
+            this.payload = payload;
+            assert type != null && payload != null;
+        }
+
+        /**
+         * @return kind of the event
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return time of the event, see System.currentTimeMillis()
+         */
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        /**
+         * @return userID of the client that caused the event, or SERVER
+         */
+        public int getUserID() {
+            return userID;
+        }
+
+        /**
+         * @return the request or command of the event
+         */
+        public String getPayload() {
+            return payload;
+        }
+
+        @Override
+        public String toString() {
+            return timeMillis + " " + type.name().toLowerCase() + " " + userID + " " + payload;
+        }
+    }
+}
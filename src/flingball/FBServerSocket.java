@@ -0,0 +1,131 @@
+package flingball;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A FBServerSocket is the connection a FlingballServer opens to a client, to send it
+ * requests: a SocketChannel to the client and a BufferedReader on it, read by a thread of
+ * its own that records the answers of the client in a LivenessMonitor and takes the balls
+ * they acknowledge out of a BallLedger.
+ *
+ * It can only be accessed by one thread at a time, except abortIfStuck, and the reader
+ * thread started by startReading, which is the only user of in.
+ */
+class FBServerSocket {
+    private static final String HOST = "localhost";
+
+    private final int userID;
+    private final SocketChannel channel;
+    private final BufferedReader in;
+    private final LivenessMonitor liveness;
+    private final BallLedger ledger;
+    private volatile long writingSince;
+
+    // Abstraction function:
+    //   AF(userID,channel,in,liveness,ledger,writingSince)=The FBServerSocket is a SocketChannel
+    //              channel to the client userID and the BufferedReader in reading from it,
+    //              which has been writing since writingSince (System.currentTimeMillis()),
+    //              or is not writing if writingSince is 0. The answers of the client are
+    //              recorded in liveness and acknowledge the balls of ledger.
+    // Representation invariant:
+    //     All fields not null, writingSince >= 0.
+    // Safety from rep exposure:
+    //     All fields are private and never returned; liveness and ledger are shared with
+    //     the server on purpose.
+    // Thread safety argument:
+    //     writingSince is volatile, liveness and ledger are thread-safe, in is confined to
+    //     the reader thread, and channel is only written by one thread at a time and closed
+    //     by any.
+
+    /**
+     * Connect to the client userID, which listens on userID + Flingball.PORT_START_NUMBER.
+     * @param userID userID of the client
+     * @param liveness records the answers of the client
+     * @param ledger balls in flight, acknowledged by the answers of the client
+     * @throws IOException if can't connect
+     */
+    FBServerSocket(int userID, LivenessMonitor liveness, BallLedger ledger) throws IOException {
+        this.userID=userID;
+        this.liveness=liveness;
+        this.ledger=ledger;
+        this.channel = SocketChannel.open(new InetSocketAddress(HOST, userID + Flingball.PORT_START_NUMBER));
+        this.in = new BufferedReader(new InputStreamReader(channel.socket().getInputStream()));
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert channel!=null && in!=null && liveness!=null && ledger!=null;
+        assert writingSince>=0;
+    }
+
+    /**
+     * Read the answers of the client on a daemon thread, until the channel is closed.
+     */
+    void startReading() {
+        Thread reader=new Thread(() -> {
+            try {
+                for(String answer=in.readLine(); answer!=null; answer=in.readLine()) {
+                    liveness.answered(userID, System.currentTimeMillis());
+                    ledger.acknowledge(userID, BallLedger.ackedIn(answer));
+                }
+            } catch (IOException e) {
+                // the channel was closed, stop reading
+            }
+        }, "answers of "+userID);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Write all remaining bytes of buffers, in order, with gathering writes.
+     * @param buffers bytes to write
+     * @throws IOException if the write fails, or was aborted, see abortIfStuck
+     */
+    void write(ByteBuffer[] buffers) throws IOException {
+        writingSince=System.currentTimeMillis();
+        try {
+            for(ByteBuffer buffer: buffers) {
+                while(buffer.hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+        } finally {
+            writingSince=0;
+        }
+    }
+
+    /**
+     * Close the channel if a write has been stuck for more than timeoutMillis, which
+     * makes the write fail.
+     * @param timeoutMillis time a write may take, in milliseconds
+     */
+    void abortIfStuck(long timeoutMillis) {
+        final long since=writingSince;
+        if(since!=0 && System.currentTimeMillis()-since>timeoutMillis) {
+            try {
+                close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Close the connection to the client.
+     * @throws IOException if close fails
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return "FBServerSocket to client "+userID;
+    }
+}
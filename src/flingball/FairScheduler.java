@@ -0,0 +1,154 @@
+package flingball;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A FairScheduler hands out turns at a shared resource, one at a time, to flows that ask
+ * for them, by deficit round robin: the flows waiting for a turn are served in the order
+ * they asked, each getting a quantum of credit per round, and a flow gets its turn once
+ * its credit covers the cost of its request. So every waiting flow is served once per round
+ * if its requests cost at most a quantum, and flows share the resource by cost (e.g. bytes)
+ * rather than by who grabs it first: a flow that asks again as soon as its turn ends waits
+ * behind all flows already waiting, instead of barging in ahead of them like on a monitor.
+ *
+ * A FlingballServer uses one to order the handler threads of its connections on its lock,
+ * with the connection as flow and the frame size as cost.
+ *
+ * FairSchedulers are mutable and thread-safe.
+ */
+public class FairScheduler {
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private final int quantum;
+    private final Deque<Integer> round;
+    private final Map<Integer, Integer> costs;
+    private final Map<Integer, Integer> deficits;
+    private int holder;
+    private long turns;
+    private long waited;
+
+    // Abstraction function:
+    //   AF(quantum, round, costs, deficits, holder, turns, waited) = the scheduler where flow
+    //      holder has the turn (nobody if NONE), and the flows of round wait for a turn in
+    //      round-robin order, each for a request of cost costs.get(f) with credit deficits.get(f).
+    //      turns turns were given so far, of which waited had to wait for another flow.
+    // Representation invariant:
+    //   quantum > 0, round has no duplicates and not holder
+    //   costs.keySet() and deficits.keySet() equal the set of round, every cost > 0
+    //   holder == NONE implies round is empty
+    //   0 <= waited <= turns
+    // Safety from rep exposure:
+    //   all fields are private and never returned
+    // Thread safety argument:
+    //   all fields are guarded by the lock of this, every method that touches them is
+    //   synchronized; threads wait on this for their turn
+
+    /**
+     * Make a scheduler where nobody has the turn.
+     * @param quantum credit each waiting flow gets per round, > 0
+     */
+    public FairScheduler(int quantum) {
+        this.quantum = quantum;
+        this.round = new ArrayDeque<>();
+        this.costs = new HashMap<>();
+        this.deficits = new HashMap<>();
+        this.holder = NONE;
+        this.turns = 0;
+        this.waited = 0;
+        checkRep();
+    }
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert quantum > 0;
+        assert !round.contains(holder);
+        assert costs.keySet().equals(deficits.keySet()) && costs.size() == round.size();
+        assert holder != NONE || round.isEmpty();
+        assert 0 <= waited && waited <= turns;
+    }
+
+    /**
+     * Wait for the turn of flow. Must be followed by release(flow).
+     * @param flow the flow asking, which doesn't have or wait for a turn already
+     * @param cost cost of the request of flow, > 0
+     * @throws InterruptedException if interrupted while waiting; flow doesn't wait anymore then
+     */
+    public synchronized void acquire(int flow, int cost) throws InterruptedException {
+        turns++;
+        if (holder == NONE) {
+            holder = flow;
+            return;
+        }
+        waited++;
+        round.addLast(flow);
+        costs.put(flow, Math.max(1, cost));
+        deficits.put(flow, quantum);
+        try {
+            while (holder != flow) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            if (holder == flow) {
+                release(flow);
+            } else {
+                round.remove(flow);
+                costs.remove(flow);
+                deficits.remove(flow);
+            }
+            throw e;
+        }
+        checkRep();
+    }
+
+    /**
+     * End the turn of flow, giving it to the next flow whose credit covers its request.
+     * @param flow the flow that has the turn
+     */
+    public synchronized void release(int flow) {
+        assert holder == flow;
+        holder = NONE;
+        while (!round.isEmpty()) {
+            final int next = round.pollFirst();
+            final int deficit = deficits.get(next);
+            if (deficit >= costs.get(next)) {
+                costs.remove(next);
+                deficits.remove(next);
+                holder = next;
+                notifyAll();
+                break;
+            }
+            deficits.put(next, deficit + quantum);
+            round.addLast(next);
+        }
+        checkRep();
+    }
+
+    /**
+     * @return number of flows waiting for a turn
+     */
+    public synchronized int getWaiting() {
+        return round.size();
+    }
+
+    /**
+     * @return number of turns given so far
+     */
+    public synchronized long getTurns() {
+        return turns;
+    }
+
+    /**
+     * @return number of turns given so far that had to wait for another flow
+     */
+    public synchronized long getWaited() {
+        return waited;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FairScheduler with " + round.size() + " flows waiting, " + waited + " of " + turns + " turns waited";
+    }
+}
@@ -6,13 +6,19 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Vect;
 
 /**
  * Flingball is class that can play flingball.
@@ -26,11 +32,15 @@ import edu.mit.eecs.parserlib.UnableToParseException;
  * "client", which must be the FlingballServer that it is connecting to.
  * 
  * It accepts requests of the form:
- * REQUEST ::= JOIN_REQUEST |DISJOIN_REQUEST | TRANSFER_BALL_REQUEST | PORTAL_BALL_REQUEST
+ * REQUEST ::= JOIN_REQUEST | JOINS_REQUEST |DISJOIN_REQUEST | TRANSFER_BALL_REQUEST | PORTAL_BALL_REQUEST | HINT_REQUEST
+ *             | PING_REQUEST
  * JOIN_REQUEST ::= "join" DIRECTION BOARDNAME NEWLINE
+ * JOINS_REQUEST ::= "joins" (DIRECTION BOARDNAME)+ NEWLINE
  * DISJOIN_REQUEST ::= "disjoin" BOARDNAME NEWLINE
- * TRANSFER_BALL_REQUEST ::= "tran" LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME NEWLINE
- * PORTAL_BALL_REQUEST::= "port" PORTALNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME "from" BOARDNAME NEWLINE
+ * TRANSFER_BALL_REQUEST ::= "tran" LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME SEND_STAMP? SEQ? TRACE? NEWLINE
+ * PORTAL_BALL_REQUEST::= "port" PORTALNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME "from" BOARDNAME SEND_STAMP? SEQ? TRACE? NEWLINE
+ * HINT_REQUEST ::= "hint" LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME SEND_STAMP? NEWLINE
+ * PING_REQUEST ::= "ping" NEWLINE
  * 
  * RESPONSE ::= "succeed:"|"fail:" MESSAGE NEWLINE
  * 
@@ -46,6 +56,9 @@ import edu.mit.eecs.parserlib.UnableToParseException;
  * DIRECTION::='left'|'right'|'top'|'bottom'
  * MESSAGE:: [^\n\r]*
  * NEWLINE ::= "\n" | "\r" "\n"?
+ * SEND_STAMP ::= see ClockSync
+ * SEQ ::= see BallLedger
+ * TRACE ::= see HandoffTrace
  * 
  * After getting a TRANSFER_BALL_REQUEST, Flingball will create a new ball with 
  * given info in this Flingball's game.
@@ -53,50 +66,119 @@ import edu.mit.eecs.parserlib.UnableToParseException;
  * After getting a PORTAL_BALL_REQUEST, Flingball will create a new ball with given 
  * info in this Flingball's game. requires that PORTALNAME exists in this board.
  * 
+ * After getting a HINT_REQUEST, Flingball will show a ghost of a ball that a joined board
+ * is about to transfer to this board, see Board.receiveHint.
+ * 
  * After getting a JOIN_REQUEST, Flingball will join its board with given board.
+ * A JOINS_REQUEST joins several sides at once, like one JOIN_REQUEST per DIRECTION BOARDNAME.
+ * 
+ * After getting a PING_REQUEST, Flingball will only reply (reply = "succeed: pong"), which
+ * tells the FlingballServer that this Flingball is alive.
  * 
  * After getting a DISJOIN_REQUEST, Flingball will try to disjoin this board with given board,
  * and if this board was not joined with given board, it will have no influence.
  * 
  * Besides the format, also requires that the location and velocity are valid for balls.
  * 
+ * If a ball request carries a SEQ, Flingball acknowledges it by ending its reply with the SEQ
+ * (e.g. reply = "succeed: ball received seq 42"), and doesn't create the ball again if it
+ * is one of the last DEDUP_WINDOW SEQs it got, since the server sends a ball again until it
+ * is acknowledged.
+ * 
+ * If a ball request carries a SEND_STAMP and this Flingball has an estimate of the server's
+ * clock, the new ball is first advanced by the time it spent in transit, see Board.receiveBall.
+ * Flingball estimates the server's clock right after connecting to the server.
+ * 
+ * Optionally (see requestSession) the board of Flingball has a session on the server, which
+ * keeps the board for a grace period if the connection to the server drops, so that resume
+ * can reconnect without connecting and joining the board again.
+ * 
+ * Optionally (see enableUdp) Flingball also has a UDP channel to the server, on which it sends
+ * and receives the loss-tolerant HINT_REQUESTs, and sends frames of its board to spectators:
+ * FRAME ::= BOARDNAME TICK (BALLNAME LOCA_X LOCA_Y)*
+ * Ball transfers always use the TCP connection.
+ * 
+ * If a ball request carries a TRACE, the hops of its handoff are recorded in this 
+ * Flingball's HandoffTracer once the ball is applied at a tick of the board, on the server's
+ * clock as estimated by Flingball (see HandoffTracer).
+ * 
  * If the request doesn't follow the protocol, Flingball will return an error message and
  * do nothing else.
  */
 public class Flingball {
-    private final Socket socket;
+    private Socket socket;
     private final Board board;
     private ServerSocket serverSocket;
     private int serverPort;
-    private final BufferedReader in;
-    private final PrintWriter out;
+    private BufferedReader in;
+    private PrintWriter out;
+    private String session;
+    private final HandoffTracer tracer;
+    private final ClockSync clock;
+    private final Map<String, String> latestFrames;
+    private UdpTransport udp;
+    private InetSocketAddress serverUdpAddress;
+    private final Tokenizer tokens;
+    private final DedupWindow received;
     public final static int PORT_START_NUMBER = 2000;
+    /** number of the latest SEQs of ball requests remembered to ignore balls sent again */
+    public static final int DEDUP_WINDOW = 1024;
+    private static final int CLOCK_SAMPLES = 5;
+    // tokens of "tran"|"hint" LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME
+    private static final int BALL_FIELDS = 6;
+    // tokens of "port" PORTALNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME "from" BOARDNAME
+    private static final int PORTAL_BALL_FIELDS = 9;
     private static final int PORT = 10987;
     private static String defaultGame="boards/default.fb";
+    private static final int BOARD_CACHE_CAPACITY = 16;
+    /** system property naming a directory where board files played are kept compiled, see BoardCache */
+    public static final String BOARD_CACHE_PROPERTY = "flingball.boardCache";
+    // present only with BOARD_CACHE_PROPERTY; without it board files are parsed by BoardParser
+    private static final Optional<BoardCache> BOARD_CACHE = Optional.ofNullable(System.getProperty(BOARD_CACHE_PROPERTY))
+            .map(directory -> new BoardCache(BOARD_CACHE_CAPACITY, Optional.of(Paths.get(directory))));
+    /** system property that makes main reload the board whenever its file changes, see BoardWatcher */
+    public static final String WATCH_PROPERTY = "flingball.watch";
+    /** system property that makes main exit once the board is loaded, without playing it, see StartupTimer */
+    public static final String EXIT_AFTER_LOAD_PROPERTY = "flingball.exitAfterLoad";
     
     // Abstraction function:
-    //  AF(socket, serverSocket,serverPort,in,out,board)=
+    //  AF(socket, serverSocket,serverPort,in,out,board,tracer,clock)=
     //     the server with socket socket to send request to FlingballServer,
     //     serverSocket serverSocket to receive request from FlingballServer,
     //     BufferedReader in and PrintWriter out, and board board.
+    //     tracer records the latency of ball handoffs to board.
+    //     clock estimates the clock of FlingballServer.
+    //     If udp is not null, it is the UDP channel to the server listening at serverUdpAddress,
+    //     and latestFrames maps each spectated board to the latest FRAME received from it.
+    //     tokens is reused to tokenize the requests from FlingballServer.
+    //     session is the token of the session of board on the server, null if none.
+    //     received holds the latest SEQs of the ball requests applied to board.
     // Representation invariant:
-    //    1. socket, in, out, board not null 
+    //    1. socket, in, out, board, tracer, clock, tokens, received not null 
     //    2. if it succeeded to connect with FlingballServer, then 
     //       serverSocket,serverPort,in,out are not null;
+    //    3. udp is null iff serverUdpAddress is null
     // Safety from rep exposure:
-    //    1. all fields except ServerSocket and serverPort are private and final.
+    //    1. all fields except socket, in, out, session, ServerSocket and serverPort are 
+    //       private and final.
     //    2. ServerSocket and serverPort are private, ServerSocket is never changed 
-    //       after initialization and serverPort's type is immutable.
+    //       after initialization except by resume, and serverPort's type is immutable.
+    //       socket, in and out are private and only replaced by resume, session is an 
+    //       immutable String.
     //    3. fields are never returned.
     // Thread safety argument:
     //   Flingball is not a thread-safe data type, but its use of multiply 
     //   inner threads is safe.
     //    1. all fields private, most of them final. No rep exposure.
-    //    2. all instance methods used synchronized keyword except serverServe and handleConnection.
+    //    2. all instance methods used synchronized keyword except serverServe, handleConnection,
+    //       handleDatagram, getLatestFrame, getHandoffTracer and getClockSync.
     //    3. serverServe only touches the field serverSocket, and serverSocket is confined 
     //       in this one thread only.
     //    4. handleConnection doesn't touch the rep of this, and it calls handleConnection 
-    //       which is synchronized on "this".
+    //       which is synchronized on "this". handleDatagram runs on the thread of udp and 
+    //       only touches latestFrames, which is a synchronized map, or calls handleRequest.
+    //    5. tracer, clock, latestFrames and received are final and thread-safe.
+    //    6. tokens is only used by handleRequest, which is synchronized.
     /**
      * Usage:
      * Flingball [--host HOST] [--port PORT] [FILE].
@@ -110,7 +192,16 @@ public class Flingball {
      * FILE is an optional argument specifying a file pathname of the Flingball 
      * board that this client should run. If FILE is not provided, then the 
      * Flingball client should run the default benchmark board as described in
-     * the phase 1 specification.
+     * the phase 1 specification. A FILE ending with .fbc is a compiled board file, see
+     * BoardCompiler, and is loaded without parsing. Other board files are parsed by BoardParser,
+     * unless the system property flingball.boardCache=DIRECTORY is set: then they are parsed by
+     * StreamingBoardParser and compiled into DIRECTORY the first time they are played, and
+     * loaded from there without parsing after that, see BoardCache.
+     * If the system property flingball.watch=true is set, the board played is reloaded whenever
+     * FILE changes, see BoardWatcher; a compiled board file can't be watched.
+     * If the system property flingball.exitAfterLoad=true is set, the board is loaded and
+     * main returns without playing it or connecting to the server, e.g. to time startup;
+     * the JVM exits with status 1 if the board can't be loaded.
      * e.g. Flingball --host localhost --port 10987 boards/default.fb
      */
     public static void main(String[] args){
@@ -120,7 +211,9 @@ public class Flingball {
             if(args.length % 2 == 0){
                 file=args[args.length-1];
             }
-            if(args.length <= 2 || !args[1].equals("--host")) {
+            if(Boolean.getBoolean(EXIT_AFTER_LOAD_PROPERTY)) {
+                loadBoardFile(file);
+            }else if(args.length <= 2 || !args[1].equals("--host")) {
                 playBoardFile(file);
             }else {
                 try {
@@ -139,8 +232,18 @@ public class Flingball {
             }
         }catch (UnableToParseException e) {
             System.err.println("error: unable to parse, invalid file");
+            exitIfOnlyLoading();
         }catch (IOException e) {
             System.err.println("error: unable to read file");
+            exitIfOnlyLoading();
+        }
+    }
+    /*
+     * exit with status 1, if main only loads the board, see EXIT_AFTER_LOAD_PROPERTY
+     */
+    private static void exitIfOnlyLoading() {
+        if(Boolean.getBoolean(EXIT_AFTER_LOAD_PROPERTY)) {
+            System.exit(1);
         }
     }
     /**
@@ -156,6 +259,11 @@ public class Flingball {
         in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
         out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
         this.board=board;
+        this.clock=new ClockSync();
+        this.tracer=new HandoffTracer(board.getName(), clock);
+        this.latestFrames=Collections.synchronizedMap(new HashMap<>());
+        this.tokens=new Tokenizer();
+        this.received=new DedupWindow(DEDUP_WINDOW);
         board.setFlingball(Optional.of(this));
         checkRep();
     }
@@ -165,6 +273,12 @@ public class Flingball {
         assert socket!=null;
         assert in!=null;
         assert out!=null;
+        assert tracer!=null;
+        assert clock!=null;
+        assert latestFrames!=null;
+        assert tokens!=null;
+        assert received!=null;
+        assert (udp==null) == (serverUdpAddress==null);
     }
     /*
      * start the serverSocket
@@ -205,7 +319,7 @@ public class Flingball {
         PrintWriter flingballServerOut = new PrintWriter(flingballServerSocket.getOutputStream(), true);
         try{
             for (String input = flingballServerIn.readLine(); input != null; input = flingballServerIn.readLine()) {
-                String output = handleRequest(input);
+                String output = handleRequest(input, HandoffTracer.now());
                 flingballServerOut.println(output);
             }
         }finally {
@@ -216,55 +330,152 @@ public class Flingball {
     /**
      * Handle a single client request and return the server response.
      * @param input message from client
+     * @param receivedAt time the message was received, see HandoffTracer.now()
      * @return output message to client
      * @throws IOException if network or server failure
      */
-    private synchronized String handleRequest(String input) throws IOException  {
-        String[] tokens = input.split(" ");
+    private synchronized String handleRequest(String input, long receivedAt) throws IOException  {
+        tokens.reset(input);
+        // ball requests may end with a SEND_STAMP, a SEQ and a TRACE after their fields
+        final int fields=ballFields(tokens);
+        final int stampIndex=ClockSync.indexIn(tokens, fields);
+        final int seqIndex=BallLedger.indexIn(tokens, fields);
+        final int traceIndex=HandoffTrace.indexIn(tokens, fields);
+        final int ballEnd=Math.min(stampIndex, Math.min(seqIndex, traceIndex));
+        final long transit=transitTime(ClockSync.parse(tokens, stampIndex), receivedAt);
+        final long seq=BallLedger.parse(tokens, seqIndex);
+        HandoffTrace trace=HandoffTrace.parse(tokens, traceIndex);
+        if(trace!=null) {
+            trace=trace.withDestinationReceived(receivedAt);
+        }
+        tokens.seek(0);
         // handles TRANSFER_BALL_REQUEST ::= "tran" LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME
-        if (tokens[0].equals("tran") && tokens.length == 6) {
-            final int beginIndex=5;
-            board.receiveBall(input.substring(beginIndex));
-            return "succeed: ball received";
+        if (tokens.peekIs("tran") && ballEnd == 6) {
+            if(received.add(seq)) {
+                board.receiveBall(nextBall(tokens.skip()), transit, trace);
+            }
+            return "succeed: ball received"+BallLedger.ack(seq);
         // handles PORTAL_BALL_REQUEST::= "port" PORTALNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME "from" BOARDNAME 
-        }else if (tokens[0].equals("port") && tokens.length == 9) {
-            String portalName=tokens[1];
+        }else if (tokens.peekIs("port") && ballEnd == 9) {
+            String portalName=tokens.skip().next();
             assert board.hasPortal(portalName);
             Portal portal=board.getPortal(portalName);
-            String ballInfo=portal.getCenter().x()+" " + portal.getCenter().y()
-                    +" "+tokens[4]+" "+tokens[5]+" " +tokens[6];
-            board.receiveBall(ballInfo);
-            return "succeed: portal ball received";
-        // handles JOIN_REQUEST ::= "join" DIRECTION
-        }else if (tokens[0].equals("join") && tokens.length == 3) {
-            String otherBoard=tokens[2];
-            switch (tokens[1]) {
-            case "left":
-                board.joinBoard(otherBoard,BOARD_DIRECTION.LEFT);
-                break;
-            case "right":
-                board.joinBoard(otherBoard,BOARD_DIRECTION.RIGHT);
-                break;
-            case "top":
-                board.joinBoard(otherBoard,BOARD_DIRECTION.TOP);
-                break;
-            case "bottom":
-                board.joinBoard(otherBoard,BOARD_DIRECTION.BOTTOM);
-                break;
-            default:
-                System.err.println("CLIENT "+board.getName()+" should never reach here");
-                break;
+            tokens.skip().skip();
+            double veloX=tokens.nextDouble();
+            double veloY=tokens.nextDouble();
+            if(received.add(seq)) {
+                board.receiveBall(new Ball(tokens.next(), portal.getCenter(), new Vect(veloX, veloY)), transit, trace);
+            }
+            return "succeed: portal ball received"+BallLedger.ack(seq);
+        // handles HINT_REQUEST ::= "hint" LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME
+        }else if (tokens.peekIs("hint") && ballEnd == 6) {
+            board.receiveHint(nextBall(tokens.skip()), transit);
+            return "succeed: hint received";
+        // handles JOIN_REQUEST ::= "join" DIRECTION BOARDNAME
+        }else if (tokens.peekIs("join") && tokens.count() == 3) {
+            String direction=tokens.skip().next();
+            joinBoard(direction, tokens.next());
+            return "succeed: boards joined";
+        // handles JOINS_REQUEST ::= "joins" (DIRECTION BOARDNAME)+
+        }else if (tokens.peekIs("joins") && tokens.count() >= 3 && tokens.count() % 2 == 1) {
+            tokens.skip();
+            while(tokens.hasNext()) {
+                String direction=tokens.next();
+                joinBoard(direction, tokens.next());
             }
             return "succeed: boards joined";
         // handles DISJOIN_REQUEST ::= "disjoin" BOARDNAME
-        }else if (tokens[0].equals("disjoin")) {
-            String otherBoard=tokens[1];
+        }else if (tokens.peekIs("disjoin") && tokens.count() >= 2) {
+            String otherBoard=tokens.skip().next();
             board.disjoinBoard(otherBoard);
             return "succeed: disjoined board";
+        // handles PING_REQUEST ::= "ping"
+        }else if (tokens.peekIs("ping") && tokens.count() == 1) {
+            return "succeed: pong";
         }else {
             return "fail: illegal command";
         }
     }
+    /*
+     * join otherBoard to side direction (a DIRECTION of the protocol) of board
+     */
+    private synchronized void joinBoard(String direction, String otherBoard) {
+        switch (direction) {
+        case "left":
+            board.joinBoard(otherBoard,BOARD_DIRECTION.LEFT);
+            break;
+        case "right":
+            board.joinBoard(otherBoard,BOARD_DIRECTION.RIGHT);
+            break;
+        case "top":
+            board.joinBoard(otherBoard,BOARD_DIRECTION.TOP);
+            break;
+        case "bottom":
+            board.joinBoard(otherBoard,BOARD_DIRECTION.BOTTOM);
+            break;
+        default:
+            System.err.println("CLIENT "+board.getName()+" should never reach here");
+            break;
+        }
+    }
+    /**
+     * @param tokens tokenizer of a request to a client; its cursor is moved to the start
+     * @return number of tokens of the request before its options (SEND_STAMP, SEQ, TRACE) if
+     *         it is a ball request: 9 for a PORTAL_BALL_REQUEST, 6 for the others
+     */
+    static int ballFields(Tokenizer tokens) {
+        return tokens.seek(0).peekIs("port") ? PORTAL_BALL_FIELDS : BALL_FIELDS;
+    }
+    /*
+     * read LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME from tokens as a ball
+     */
+    private static Ball nextBall(Tokenizer tokens) {
+        final double locaX=tokens.nextDouble();
+        final double locaY=tokens.nextDouble();
+        final double veloX=tokens.nextDouble();
+        final double veloY=tokens.nextDouble();
+        return new Ball(tokens.next(), new Vect(locaX, locaY), new Vect(veloX, veloY));
+    }
+    /*
+     * return the nanoseconds a ball sent at sentAt on the server's clock spent in transit 
+     * until receivedAt on the local clock, or 0 if unknown
+     */
+    private synchronized long transitTime(long sentAt, long receivedAt) {
+        if(sentAt==ClockSync.UNKNOWN || !clock.hasEstimate()) {
+            return 0;
+        }
+        return Math.max(0, receivedAt-clock.toLocalTime(sentAt));
+    }
+    /**
+     * @return the estimate of the server's clock used to stamp and compensate ball handoffs
+     */
+    public ClockSync getClockSync() {
+        return clock;
+    }
+    /**
+     * Sample the server's clock with TIME_REQUESTs (see FlingballServer) and add the 
+     * samples to the estimate of this Flingball. Requires this is "open".
+     * @param samples number of round trips to the server
+     * @throws IOException if network or server failure
+     */
+    public synchronized void syncClock(int samples) throws IOException {
+        for(int i=0; i<samples; i++) {
+            final long sent=HandoffTracer.now();
+            out.print("time" + "\n");
+            out.flush(); // important! 
+            String[] reply=getReply().split(" ");
+            final long received=HandoffTracer.now();
+            if(reply.length==3 && reply[0].equals("succeed:")) {
+                clock.addSample(sent, Long.parseLong(reply[2]), received);
+            }
+        }
+    }
+    /**
+     * @return the tracer recording the latency of ball handoffs to and from this Flingball's board
+     */
+    public HandoffTracer getHandoffTracer() {
+        return tracer;
+    }
     /*
      * create a port number according to userID
      */
@@ -292,6 +503,13 @@ public class Flingball {
             serverSocket=new ServerSocket(serverPort);
             serverServe();
             sendServerCreatedRequest();
+            syncClock(CLOCK_SAMPLES);
+            if(Boolean.getBoolean("flingball.udp")) {
+                enableUdp();
+            }
+            if(Boolean.getBoolean("flingball.session")) {
+                requestSession();
+            }
         }else {
             System.err.println("connect request failed");
             socket.close();
@@ -308,6 +526,165 @@ public class Flingball {
         out.flush(); // important! 
         return getReply();
     }
+    /**
+     * Get a session for this Flingball's board with a SESSION_REQUEST (see FlingballServer),
+     * so that the server keeps the board for a while if the connection drops.
+     * Requires this is "open" and connected.
+     * Is also called when connecting if the system property "flingball.session" is true.
+     * @return the reply to the SESSION_REQUEST
+     * @throws IOException if network or server failure
+     */
+    public synchronized String requestSession() throws IOException {
+        out.print("session" + "\n");
+        out.flush(); // important! 
+        String reply=getReply();
+        String[] tokens=reply.split(" ");
+        if(tokens.length==3 && tokens[0].equals("succeed:")) {
+            session=tokens[2];
+        }
+        return reply;
+    }
+    /**
+     * @return true iff this Flingball's board has a session on the server
+     */
+    public synchronized boolean hasSession() {
+        return session!=null;
+    }
+    /**
+     * Reconnect to the server and resume the session of this Flingball's board with a 
+     * RESUME_REQUEST (see FlingballServer), e.g. after the connection dropped. The board 
+     * keeps its joins, and the requests the server buffered for it are sent to it.
+     * The UDP channel is opened again if it was open. Requires this has a session.
+     * @return the reply to the RESUME_REQUEST
+     * @throws IOException if network or server failure
+     */
+    public synchronized String resume() throws IOException {
+        if(session==null) {
+            throw new IOException("no session to resume");
+        }
+        InetSocketAddress server=(InetSocketAddress) socket.getRemoteSocketAddress();
+        socket.close();
+        socket=new Socket(server.getAddress(), server.getPort());
+        in=new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        out=new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
+        out.print("resume "+session + "\n");
+        out.flush(); // important! 
+        String reply=getReply();
+        String[] tokens=reply.split(" ");
+        if(tokens.length>=2 && tokens[0].equals("succeed:")) {
+            int port=createPortWithUserID(Integer.parseInt(tokens[1]));
+            if(serverSocket==null || serverSocket.isClosed() || port!=serverPort) {
+                if(serverSocket!=null) {
+                    serverSocket.close();
+                }
+                serverPort=port;
+                serverSocket=new ServerSocket(serverPort);
+                serverServe();
+            }
+            sendServerCreatedRequest();
+            if(udp!=null) {
+                udp.close();
+                udp=null;
+                serverUdpAddress=null;
+                enableUdp();
+            }
+        }else {
+            session=null;
+        }
+        checkRep();
+        return reply;
+    }
+    /**
+     * Open a UDP channel to the server with a UDP_REQUEST (see FlingballServer), unless it 
+     * is open already. Requires this is "open" and connected.
+     * Is also called when connecting if the system property "flingball.udp" is true.
+     * @return the reply to the UDP_REQUEST
+     * @throws IOException if network or server failure
+     */
+    public synchronized String enableUdp() throws IOException {
+        if(udp!=null) {
+            return "succeed: udp "+serverUdpAddress.getPort();
+        }
+        UdpTransport transport=new UdpTransport(0);
+        out.print("udp "+transport.getPort() + "\n");
+        out.flush(); // important! 
+        String reply=getReply();
+        String[] tokens=reply.split(" ");
+        if(tokens.length==3 && tokens[0].equals("succeed:")) {
+            udp=transport;
+            serverUdpAddress=new InetSocketAddress(socket.getInetAddress(), Integer.parseInt(tokens[2]));
+            udp.start(this::handleDatagram);
+        }else {
+            transport.close();
+        }
+        checkRep();
+        return reply;
+    }
+    /**
+     * @return true iff this Flingball has a UDP channel to the server
+     */
+    public synchronized boolean isUdpEnabled() {
+        return udp!=null;
+    }
+    /*
+     * handle a message received on the UDP channel
+     */
+    private void handleDatagram(String stream, String payload) {
+        try {
+            if(stream.equals("hint")) {
+                handleRequest("hint "+payload, HandoffTracer.now());
+            }else if(stream.startsWith("frame/")) {
+                int nameEnd=payload.indexOf(' ');
+                latestFrames.put(nameEnd<0 ? payload : payload.substring(0, nameEnd), payload);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("dropped datagram: "+stream+" "+payload);
+        }
+    }
+    /**
+     * Send a hint to the server, which doesn't reply to hints. Uses the UDP channel if 
+     * it is open. Requires this is "open".
+     * @param hint "hint" BOARDNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME SEND_STAMP?
+     * @throws IOException if network or server failure
+     */
+    public synchronized void sendHint(String hint) throws IOException {
+        if(udp!=null) {
+            udp.send("hint", hint.substring(hint.indexOf(' ')+1), serverUdpAddress);
+            return;
+        }
+        out.print(hint + "\n");
+        out.flush(); // important! 
+    }
+    /**
+     * Send a FRAME of this Flingball's board to the server, which relays it to the spectators
+     * of the board. Does nothing unless the UDP channel is open.
+     * @param frame the FRAME
+     * @throws IOException if network failure
+     */
+    public synchronized void sendFrame(String frame) throws IOException {
+        if(udp!=null) {
+            udp.send("frame", frame, serverUdpAddress);
+        }
+    }
+    /**
+     * Start receiving the frames of a board on the UDP channel, with a SPECTATE_REQUEST 
+     * (see FlingballServer). Requires the UDP channel is open.
+     * @param boardName name of the board to watch
+     * @return the reply to the SPECTATE_REQUEST
+     * @throws IOException if network or server failure
+     */
+    public synchronized String spectate(String boardName) throws IOException {
+        out.print("spectate "+boardName + "\n");
+        out.flush(); // important! 
+        return getReply();
+    }
+    /**
+     * @param boardName name of a spectated board
+     * @return the latest FRAME received from the board, or empty if none
+     */
+    public Optional<String> getLatestFrame(String boardName) {
+        return Optional.ofNullable(latestFrames.get(boardName));
+    }
     /**
      * Send a ball request to the server. Requires this is "open".
      * @param ballRequest ballRequest
@@ -351,6 +728,9 @@ public class Flingball {
      * @throws IOException if close fails
      */
     public synchronized void close() throws IOException {
+        if(udp!=null) {
+            udp.close();
+        }
         in.close();
         out.close();
         socket.close();
@@ -372,12 +752,33 @@ public class Flingball {
         return builder.toString();
     }
     /*
-     * play board file with given file
+     * load board file with given file, a compiled board file if it ends with BoardCompiler.EXTENSION,
+     * through BOARD_CACHE if there is one
      */
-    private static Board playBoardFile(String boardFile) throws UnableToParseException, IOException {
+    private static Board loadBoardFile(String boardFile) throws UnableToParseException, IOException {
         //Board flingBall = BoardParser.parse(boardFileToString(new File("boards/multiplayer_left.fb")));
-        Board flingBall = BoardParser.parse(boardFileToString(new File(boardFile)));
+        if (boardFile.endsWith(BoardCompiler.EXTENSION)) {
+            return BoardCompiler.load(new File(boardFile).toPath());
+        } else if (BOARD_CACHE.isPresent()) {
+            return BOARD_CACHE.get().load(new File(boardFile).toPath());
+        } else {
+            return BoardParser.parse(boardFileToString(new File(boardFile)));
+        }
+    }
+    /*
+     * load board file with given file, see loadBoardFile, and play it, reloading it whenever
+     * the file changes if WATCH_PROPERTY is set
+     */
+    private static Board playBoardFile(String boardFile) throws UnableToParseException, IOException {
+        final Board flingBall = loadBoardFile(boardFile);
         Simulator simulator = new Simulator(flingBall);
+        if (Boolean.getBoolean(WATCH_PROPERTY)) {
+            if (boardFile.endsWith(BoardCompiler.EXTENSION)) {
+                System.err.println("not watching "+boardFile+": compiled board files can't be reloaded");
+            } else {
+                new BoardWatcher(new File(boardFile).toPath(), flingBall, simulator::refresh).start();
+            }
+        }
         simulator.playFlingball();
         return flingBall;
     }
@@ -2,17 +2,36 @@ package flingball;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.UnknownHostException;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import physics.Vect;
 
 /**
  * FlingballServer is a server that deals with the requests of the 
@@ -24,11 +43,18 @@ import java.util.Map;
  * It accepts requests of the form:
  * 
  * REQUEST ::= CONNECT_REQUEST | QUIT_REQUEST | SERVER_REQUEST | TRANSFER_BALL_REQUEST | PORTAL_BALL_REQUEST
+ *             | TIME_REQUEST | HINT_REQUEST | UDP_REQUEST | SPECTATE_REQUEST | SESSION_REQUEST | RESUME_REQUEST
  * CONNECT_REQUEST ::= "connect" BOARDNAME PORTALNAME* NEWLINE
  * QUIT_REQUEST ::= "quit" NEWLINE
  * SERVER_REQUEST::= "server created"
- * TRANSFER_BALL_REQUEST ::= "tran" BOARDNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME NEWLINE
- * PORTAL_BALL_REQUEST::= "port" BOARDNAME PORTALNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME "from" BOARDNAME NEWLINE
+ * TRANSFER_BALL_REQUEST ::= "tran" BOARDNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME SEND_STAMP? TRACE? NEWLINE
+ * PORTAL_BALL_REQUEST::= "port" BOARDNAME PORTALNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME "from" BOARDNAME SEND_STAMP? TRACE? NEWLINE
+ * TIME_REQUEST ::= "time" NEWLINE
+ * HINT_REQUEST ::= "hint" BOARDNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME SEND_STAMP? NEWLINE
+ * UDP_REQUEST ::= "udp" PORT NEWLINE
+ * SPECTATE_REQUEST ::= "spectate" BOARDNAME NEWLINE
+ * SESSION_REQUEST ::= "session" NEWLINE
+ * RESUME_REQUEST ::= "resume" TOKEN NEWLINE
  * 
  * RESPONSE ::= "succeed:"|"fail:" MESSAGE NEWLINE
  * 
@@ -42,8 +68,11 @@ import java.util.Map;
  * NAME::=[A-Za-z_][A-Za-z_0-9]*
  * FLOAT::= '-'?([0-9]+'.'?[0-9]*|'.'[0-9]+);
  * DIRECTION::='left'|'right'|'top'|'bottom'
+ * TOKEN::= [0-9a-f]+
  * MESSAGE:: [^\n\r]*
  * NEWLINE ::= "\n" | "\r" "\n"?
+ * SEND_STAMP ::= see ClockSync
+ * TRACE ::= see HandoffTrace
  * 
  * The first time a client connects to the server, it must begin with a CONNECT_REQUEST
  * 
@@ -67,10 +96,84 @@ import java.util.Map;
  * with BOARDNAME to create a new ball with given info in this Flingball's game, but if PORTALNAME
  * or BOARDNAME doesn't exist, it will return an error message.
  * 
+ * If request is a TIME_REQUEST, FlingballServer will reply with its current clock
+ * (reply = "succeed: time" NANOSECONDS), which clients use to estimate the server's clock.
+ * 
+ * If request is a HINT_REQUEST, FlingballServer will forward it to the client with BOARDNAME
+ * (without BOARDNAME, like a TRANSFER_BALL_REQUEST). The server never replies to a HINT_REQUEST,
+ * and drops it if BOARDNAME doesn't exist.
+ * 
+ * If request is a UDP_REQUEST, the FlingballServer will send this client's loss-tolerant
+ * traffic to the UdpTransport of the client on PORT, and reply with the port of its own
+ * UdpTransport (reply = "succeed: udp" PORT). On its UdpTransport the server accepts
+ * hints (stream "hint", payload as a HINT_REQUEST without "hint"), which are forwarded like
+ * a HINT_REQUEST, over UDP if the destination has a UDP channel, and frames of boards
+ * (stream "frame", see Flingball), which are relayed over UDP to all spectators of the board
+ * (stream "frame/" BOARDNAME, so that frames of one board never make frames of another late).
+ * 
+ * If request is a SPECTATE_REQUEST, FlingballServer will relay all frames of board BOARDNAME
+ * to this client, which requires a UDP channel.
+ * 
+ * If request is a SESSION_REQUEST from a connected client, FlingballServer will reply with a
+ * new session token for its board (reply = "succeed: session" TOKEN). When the connection of
+ * a client with a session drops without a QUIT_REQUEST, its board is suspended instead of
+ * removed: for a grace period the server keeps the board, its portals and its joins, and
+ * buffers the requests sent to it. Only if the board isn't resumed in time is it removed and
+ * disjoined from all boards. The sessions are kept in a SessionTable.
+ * 
+ * If request is a RESUME_REQUEST, FlingballServer will give this connection the board of the
+ * session TOKEN (reply = "succeed:" userID "resumed the board"), taking it over from the old
+ * connection of the session if the server didn't notice that it dropped. The client should 
+ * then serve on port userID + Flingball.PORT_START_NUMBER again and send a SERVER_REQUEST, 
+ * after which the buffered requests are sent to it in order. The UDP channel and spectated 
+ * boards of a suspended client are not kept.
+ * 
+ * FlingballServer sends a PING_REQUEST ("ping") to every client each heartbeat interval, 
+ * which the client answers like any request. A client that answers nothing for 
+ * MISSED_HEARTBEATS intervals, or doesn't take a request written to it within that time, 
+ * is evicted: its board is removed and disjoined from all boards, and the balls in flight 
+ * to it are returned to the boards that sent them. A ball request that can't be written 
+ * to its destination fails, so that its sender keeps the ball. See LivenessMonitor.
+ * 
+ * Every ball request the server forwards carries a new SEQ (see BallLedger), which the
+ * destination acknowledges in its reply. Until then the server keeps the ball in its ledger:
+ * a ball not acknowledged within ACK_TIMEOUT_MILLIS is sent again with the same SEQ, which
+ * the destination applies at most once, and a destination that didn't acknowledge a ball
+ * sent MAX_ATTEMPTS times is evicted, see RetryPolicy. The balls in flight to a removed 
+ * board are returned to the boards that sent them.
+ * 
+ * The ball requests (TRANSFER_BALL_REQUEST, PORTAL_BALL_REQUEST and HINT_REQUEST) of every
+ * client can be limited to a rate per second on average, in bursts of up to a number of 
+ * requests (see setRateLimit); there is no limit by default. The server drops the ball 
+ * requests over that rate, replying "fail: rate limited" to a TRANSFER_BALL_REQUEST or 
+ * PORTAL_BALL_REQUEST, so that its sender keeps the ball, and counts them as throttled in 
+ * its stats. The requests of 
+ * the clients are handled one at a time, in a fair order (see FairScheduler), so that a 
+ * client that sends requests as fast as it can doesn't keep others waiting.
+ * 
  * Besides the format, also requires that the location and velocity are valid for balls.
+ * A request longer than FRAME_BUFFER_BYTES is dropped and replied "fail: request too long",
+ * and the server goes on with the next request of the client.
+ * A SEND_STAMP of a ball request is forwarded unchanged.
+ * 
+ * If a ball request carries a TRACE, the server appends its receive and forward timestamps
+ * to the TRACE of the forwarded request and records the hops in its HandoffTracer.
  * 
  * If the request doesn't follow the protocol, server will return an error message and
  * do nothing else.
+ * 
+ * Optionally (see setJournal) the server records the boards connecting and leaving, the 
+ * joins, and the ball and portal requests it forwards in an EventJournal, which 
+ * JournalReplay can replay against another server.
+ * 
+ * The boards, portals and joins of the server can be saved in a RegistrySnapshot (see
+ * snapshot and saveSnapshotsEvery) and restored after a restart (see restore): the boards
+ * of the snapshot that reconnect are then joined again to their previous neighbours.
+ * 
+ * TRANSFER_BALL_REQUESTs without a TRACE and HINT_REQUESTs to boards without a UDP channel 
+ * take a fast path: the server only reads BOARDNAME and relays the rest of the request bytes 
+ * unchanged to the destination, followed by its SEQ, without decoding or parsing them. The
+ * ledger keeps a copy of the bytes, decoded only if the ball has to be sent again or given back.
  * ***************************
  * For each client, FlingballServer can also act as it's client and send requests to each of them.
  * ***************************
@@ -80,66 +183,253 @@ import java.util.Map;
  * Two boards can be joined top-and-bottom using the following command:
  * v NAME_top NAME_bottom
  * where NAME_direction is the name of the board the user wants to join 
+ * Many boards can be joined at once into a grid or torus, see Topology:
+ * grid COLS NAME+
+ * torus COLS NAME+
+ * where NAME+ may be "*" for all connected boards, or with the layout in a Topology file:
+ * load FILE
+ * Such a layout is checked against the connected boards and then applied in one pass,
+ * sending a single JOINS_REQUEST to the client of each board in the layout.
  */
 public class FlingballServer {
     
-    private final ServerSocket serverSocket;
+    private final ServerSocketChannel serverChannel;
     private int userNumber;
     private final Map<String, Integer> boardUserMap;
+    private final Map<ByteBuffer, Integer> boardKeyUserMap;
+    private final BufferPool buffers;
     private final Map<String, List<String>> boardPortalMap;
     private final Map<Integer, FBServerSocket> userSockets;
+    private final HandoffTracer tracer;
+    private final UdpTransport udp;
+    private final Map<Integer, Socket> connections;
+    private final Map<Integer, InetSocketAddress> userUdpAddresses;
+    private final Map<String, Set<Integer>> spectators;
+    private final Tokenizer tokens;
+    private final Map<String, Map<BOARD_DIRECTION, String>> joins;
+    private final ServerStats stats;
+    private final Timer timer;
+    private final SessionTable sessions;
+    private final LivenessMonitor liveness;
+    private final BallLedger ledger;
+    private final RetryPolicy retries;
+    private Optional<EventJournal> journal;
+    private final Map<String, Map<BOARD_DIRECTION, String>> restored;
+    private final Map<String, List<String>> restoredPortals;
+    private final FairScheduler scheduler;
+    private volatile double rateLimit;
+    private volatile int rateBurst;
+    private BufferedReader commands;
+    private InputStream commandSource;
     private static final String CLOSE= "close";
+    private static final String NO_REPLY= "";
     public static final int PORT = 10987;
+    /** default time a suspended board waits to be resumed, in milliseconds */
+    public static final long DEFAULT_GRACE_MILLIS = 5000;
+    private static final int MAX_SUSPENDED_REQUESTS = 1024;
+    /** default interval between heartbeats, in milliseconds */
+    public static final long DEFAULT_HEARTBEAT_MILLIS = 1000;
+    /** number of heartbeat intervals a client may stay silent before it is evicted */
+    public static final int MISSED_HEARTBEATS = 3;
+    private static final String PING = "ping";
+    // tokens of "tran"|"hint" BOARDNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME
+    private static final int BALL_FIELDS = 7;
+    // tokens of "port" BOARDNAME PORTALNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME "from" BOARDNAME
+    private static final int PORTAL_BALL_FIELDS = 10;
+    private static final Vect BOARD_CENTER = new Vect(Board.L / 2.0, Board.L / 2.0);
+    /** time a client has to acknowledge a ball it was sent, in milliseconds */
+    public static final long ACK_TIMEOUT_MILLIS = 1000;
+    /** number of times a ball is sent to a client that doesn't acknowledge it before the client is evicted */
+    public static final int MAX_ATTEMPTS = 3;
+    private static final long LEDGER_TICK_MILLIS = 100;
+    /** longest request the server reads, in bytes; a longer one is replied "fail: request too long" */
+    public static final int FRAME_BUFFER_BYTES = 8 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final int SEQ_BYTES = 32;
+    /** interval between snapshots of the registry written by main with --snapshot, in milliseconds */
+    public static final long SNAPSHOT_MILLIS = 2000;
+    /** ball requests a client may send per second on average by default, 0 for no limit, see setRateLimit */
+    public static final double DEFAULT_RATE_LIMIT = 0;
+    /** system property that makes main exit once the server is set up, without serving, see StartupTimer */
+    public static final String EXIT_AFTER_START_PROPERTY = "flingball.exitAfterStart";
+    /** ball requests a client may send at once when main is given a rate, see setRateLimit */
+    public static final int DEFAULT_RATE_BURST = 200;
+    private static final int SCHEDULER_QUANTUM_BYTES = 256;
+    private static final ByteBuffer TRAN_PREFIX = constantFrame("tran ");
+    private static final ByteBuffer HINT_PREFIX = constantFrame("hint ");
+    private static final ByteBuffer PORT_PREFIX = constantFrame("port ");
+    private static final ByteBuffer RATE_LIMITED_REPLY = constantFrame("fail: rate limited\n");
+    private static final ByteBuffer TOO_LONG_REPLY = constantFrame("fail: request too long\n");
+    private static final ByteBuffer NEWLINE = constantFrame("\n");
+    private static final ByteBuffer TRAN_SENT_REPLY = constantFrame("succeed: tran ball received and sent\n");
+    private static final ByteBuffer NO_SUCH_BOARD_REPLY = constantFrame("fail: no such board\n");
     
     // Abstraction function:
-    //   AF(serverSocket,userNumber,boardUserMap,boardPortalMap,userSockets)=
-    //               The flingball server with serverSocket serverSocket, 
+    //   AF(serverChannel,userNumber,boardUserMap,boardPortalMap,userSockets)=
+    //               The flingball server listening on serverChannel, 
     //               with total userNumber users, (including disconnected users).
     //               Each client has a unique userID.
     //               boardUserMap is the map that map board names to their userIds,
+    //               boardKeyUserMap is the same map with the UTF-8 bytes of board names as keys,
+    //               buffers are the buffers used to read requests,
     //               boardPortalMap is the map that map board names to their portal lists,
     //               and userSockets is the map that map userIDs to their FBServerSockets.
+    //               tracer records the latency of ball handoffs forwarded by this server.
+    //               udp is the UDP channel of this server, connections maps the numbers of the 
+    //               open connections to their sockets, userUdpAddresses maps userIDs to the 
+    //               addresses of their UDP channels, and spectators maps board names to the 
+    //               userIDs spectating them.
+    //               tokens is reused to tokenize requests and datagrams.
+    //               joins maps board names to the boards joined to their sides.
+    //               stats counts the requests and messages handled by this server.
+    //               sessions holds the sessions of the clients, the suspended boards with
+    //               the requests buffered for them and the connections that resumed a
+    //               session; its grace periods run on timer.
+    //               liveness tells which clients stopped answering the pings of the server.
+    //               ledger holds the balls forwarded to clients and not acknowledged yet,
+    //               which the server sends again on timer as retries decides.
+    //               journal, if present, records the events processed by this server.
+    //               restored maps the boards of a restored snapshot to the boards joined to
+    //               their sides before the restart and not joined again yet, and 
+    //               restoredPortals maps the boards of the snapshot that didn't reconnect yet
+    //               to their portals.
+    //               scheduler orders the connections on the lock of the server, and every
+    //               connection may send rateLimit ball requests per second in bursts of
+    //               rateBurst (no limit if rateLimit is 0).
+    //               commands reads the commands of the user from commandSource.
     // Representation invariant:
-    //    1.All fields not null.  
+    //    1.All fields not null, except commands and commandSource.
     //    2.boardUserMap,boardPortalMap,userSockets are of same size.
+    //    3.boardKeyUserMap has the same entries as boardUserMap, its keys are read-only buffers.
+    //    4.joins only has boards of boardUserMap.
+    //    5.commands is null iff commandSource is null.
+    //    6.sessions only has userIDs of boardUserMap, and its suspended userIDs have no 
+    //      entry in userSockets.
+    //    7.restored is symmetric like a Topology, restoredPortals has no board of boardUserMap.
+    //    8.rateLimit >= 0, rateBurst >= 1
     // Safety from rep exposure:
-    //    1. All fields except userNumber are private and final. userNumber is private.
-    //    2. Fields are never returned except userNumber, and userNumber is immutable.
+    //    1. All fields except userNumber, journal, rateLimit and rateBurst are private and 
+    //       final. userNumber, journal, rateLimit and rateBurst are private.
+    //    2. Fields are never returned except userNumber, tracer and stats, userNumber is 
+    //       immutable, tracer and stats are thread-safe and meant to be shared.
     //    3. boardUserMap.keySet() and boardPortalMap.keySet() are the same set.    
     // Thread safety argument:
     //    FlingballServer itself is not a thread-safe data type, but its use of multiply 
     //     inner threads is safe, and it can serve multiple clients at the same time.
-    //    1. All instance methods except serve, handleConnection, getCommandAndAct requires the lock
-    //       of "this".
+    //    1. All instance methods except serve, handleConnection, getCommandAndAct, actOnCommand 
+    //       requires the lock of "this".
     //    2. getCommandAndAct is only called inside main method in one thread which only
     //       deals with command line input. So it is safe not to use synchronized keyword on it.
+    //       actOnCommand only touches the rep through synchronized methods.
     //    3. serve is called on one thread. And inside serve, it creates one thread
     //       to deal with each client, and each client is limited to one thread. In the later 
     //       part of serve where it doesn't use synchronized keyword, it only calls 
     //       handleConnection method.
     //    4. handleConnection doesn't touch the rep of this, and it calls handleConnection 
-    //       which is synchronized on "this".
+    //       which is synchronized on "this". Its FrameReader and RelayBuffers are confined 
+    //       to the thread serving the connection, buffers is thread-safe.
+    //    5. tracer, stats and udp are final and thread-safe. The thread of udp only calls 
+    //       handleDatagram, which is synchronized on "this".
+    //    6. connections is only touched by serve outside the lock of "this", and is a 
+    //       synchronized map. sessions is guarded by the lock of "this". timer only calls 
+    //       expire (through sessions), retryUnacknowledged and snapshot, which are synchronized
+    //       on "this". liveness, ledger and retries are thread-safe, and the reader threads
+    //       of FBServerSockets only touch liveness and ledger, so that acknowledging a ball 
+    //       never waits for the lock of "this", which a write to the same client may hold. 
+    //       The heartbeat thread of liveness aborts stuck writes of FBServerSockets (see 
+    //       FBServerSocket) and otherwise only calls heartbeat, which is synchronized.
+    //    7. tokens is only used by relay, handleRequest, stampTrace and handleDatagram, which
+    //       require the lock of "this".
+    //    8. commands and commandSource are only touched by getCommandAndAct, see 2.
+    //    9. journal is guarded by the lock of "this", and EventJournal is thread-safe.
+    //   10. restored and restoredPortals are guarded by the lock of "this". The snapshots 
+    //       written on timer are taken with snapshot, which is synchronized, and written 
+    //       to disk outside the lock.
+    //   11. scheduler is thread-safe. rateLimit and rateBurst are volatile and only read 
+    //       when a connection starts being handled; the TokenBucket made from them is 
+    //       confined to the thread handling the connection.
     
     /**
      * Usage:
-     * FlingballServer [--port PORT]
+     * FlingballServer [--port PORT] [--admin ADMIN_PORT] [--grace MILLIS] [--heartbeat MILLIS] [--journal DIR] [--snapshot FILE] [--rate PER_SECOND]
      * Square brackets mean that the arguments are optional. PORT is an integer in the 
      * range 0 to 65535 inclusive, specifying the port where the server should listen for 
      * incoming connections. If this argument is not given, then the default port is 10987.
+     * If ADMIN_PORT is given, the server also listens for operators on ADMIN_PORT of the
+     * loopback address, see AdminEndpoint.
+     * The MILLIS of --grace is the time a suspended board waits to be resumed, 5000 by default.
+     * The MILLIS of --heartbeat is the interval between heartbeats, 1000 by default, 0 for none.
+     * If DIR is given, the server records its events in an EventJournal in DIR.
+     * If FILE is given, the server restores the RegistrySnapshot in FILE if there is one, 
+     * and writes a new one to FILE every SNAPSHOT_MILLIS and on shutdown.
+     * PER_SECOND is the number of ball requests a client may send per second on average,
+     * in bursts of DEFAULT_RATE_BURST, see setRateLimit; 0, the default, for no limit.
+     * If the system property flingball.exitAfterStart=true is set, the server is set up and
+     * the JVM exits without serving, e.g. to time startup.
      * @throws IOException if exception
      */
     public static void main(String[] args) throws IOException {
         int port=PORT;
+        int adminPort=-1;
+        long graceMillis=DEFAULT_GRACE_MILLIS;
+        long heartbeatMillis=DEFAULT_HEARTBEAT_MILLIS;
+        String journalDirectory=null;
+        String snapshotFile=null;
+        double rateLimit=DEFAULT_RATE_LIMIT;
         if(args[0].equals("FlingballServer")) {
-            if(args.length==3 && args[1].equals("--port")) {
-                port=Integer.parseInt(args[2]);
+            for(int i=1; i+1<args.length; i+=2) {
+                if(args[i].equals("--port")) {
+                    port=Integer.parseInt(args[i+1]);
+                }else if(args[i].equals("--admin")) {
+                    adminPort=Integer.parseInt(args[i+1]);
+                }else if(args[i].equals("--grace")) {
+                    graceMillis=Long.parseLong(args[i+1]);
+                }else if(args[i].equals("--heartbeat")) {
+                    heartbeatMillis=Long.parseLong(args[i+1]);
+                }else if(args[i].equals("--journal")) {
+                    journalDirectory=args[i+1];
+                }else if(args[i].equals("--snapshot")) {
+                    snapshotFile=args[i+1];
+                }else if(args[i].equals("--rate")) {
+                    rateLimit=Double.parseDouble(args[i+1]);
+                }
+            }
+            FlingballServer server = new FlingballServer(port, graceMillis, heartbeatMillis);
+            server.setRateLimit(rateLimit, DEFAULT_RATE_BURST);
+            if(journalDirectory!=null) {
+                EventJournal journal=new EventJournal(Paths.get(journalDirectory));
+                server.setJournal(journal);
+                Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+                System.out.println("SERVER journal in "+journalDirectory);
+            }
+            if(snapshotFile!=null) {
+                Path file=Paths.get(snapshotFile);
+                if(Files.exists(file)) {
+                    server.restore(RegistrySnapshot.read(file));
+                }
+                server.saveSnapshotsEvery(file, SNAPSHOT_MILLIS);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        server.snapshot().write(file);
+                    } catch (IOException e) {
+                        System.err.println("SERVER snapshot not written: "+e);
+                    }
+                }));
+            }
+            if(adminPort>=0) {
+                AdminEndpoint admin=new AdminEndpoint(server, adminPort);
+                admin.start();
+                System.out.println("SERVER admin on port "+admin.getPort());
+            }
+            if(Boolean.getBoolean(EXIT_AFTER_START_PROPERTY)) {
+                System.exit(0);
             }
-            FlingballServer server = new FlingballServer(port);
             new Thread(new Runnable() {
                 public void run() {
-                    while(true) {
+                    boolean more=true;
+                    while(more) {
                         try {
-                            server.getCommandAndAct();
+                            more=server.getCommandAndAct();
                         } catch (IOException ioe) {
                             ioe.printStackTrace(); 
                         } 
@@ -159,24 +449,174 @@ public class FlingballServer {
     
     // checkRep
     private synchronized void checkRep() {
-        assert serverSocket!=null;
+        assert serverChannel!=null;
         assert boardUserMap!=null;
+        assert boardKeyUserMap!=null;
+        assert boardKeyUserMap.size()==boardUserMap.size();
+        assert buffers!=null;
         assert boardPortalMap!=null;
         assert userSockets!=null;
+        assert tracer!=null;
+        assert udp!=null;
+        assert connections!=null;
+        assert userUdpAddresses!=null;
+        assert spectators!=null;
+        assert tokens!=null;
+        assert joins!=null;
+        assert stats!=null;
+        assert boardUserMap.keySet().containsAll(joins.keySet());
+        assert (commands==null) == (commandSource==null);
+        assert sessions!=null;
+        assert boardUserMap.values().containsAll(sessions.getUsers());
+        assert liveness!=null;
+        assert ledger!=null && retries!=null;
+        assert journal!=null;
+        assert restored!=null && restoredPortals!=null;
+        assert scheduler!=null;
+        assert rateLimit>=0 && rateBurst>=1;
+        for(Map.Entry<String, Map<BOARD_DIRECTION, String>> board: restored.entrySet()) {
+            for(Map.Entry<BOARD_DIRECTION, String> side: board.getValue().entrySet()) {
+                assert board.getKey().equals(restored.get(side.getValue()).get(Topology.opposite(side.getKey())));
+            }
+        }
+        assert Collections.disjoint(restoredPortals.keySet(), boardUserMap.keySet());
+        for(int userID: sessions.getSuspended()) {
+            assert !userSockets.containsKey(userID);
+        }
+    }
+    
+    /*
+     * return a read-only direct buffer with the UTF-8 bytes of text
+     */
+    private static ByteBuffer constantFrame(String text) {
+        byte[] bytes=text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer=ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+    
+    /*
+     * return true iff the remaining bytes of frame start with the remaining bytes of prefix
+     */
+    private static boolean startsWith(ByteBuffer frame, ByteBuffer prefix) {
+        if(frame.remaining()<prefix.remaining()) {
+            return false;
+        }
+        for(int i=0; i<prefix.remaining(); i++) {
+            if(frame.get(frame.position()+i)!=prefix.get(prefix.position()+i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /*
+     * return the key of boardName in boardKeyUserMap
+     */
+    private static ByteBuffer boardKey(String boardName) {
+        return ByteBuffer.wrap(boardName.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+    
+    /*
+     * add board boardName played by userID
+     */
+    private synchronized void registerBoard(String boardName, int userID) {
+        boardUserMap.put(boardName, userID);
+        boardKeyUserMap.put(boardKey(boardName), userID);
+        restoredPortals.remove(boardName);
+    }
+    
+    /*
+     * remove board boardName and its joins
+     */
+    private synchronized void unregisterBoard(String boardName) {
+        boardUserMap.remove(boardName);
+        boardKeyUserMap.remove(boardKey(boardName));
+        joins.remove(boardName);
+        for(Map<BOARD_DIRECTION, String> sides: joins.values()) {
+            sides.values().removeIf(boardName::equals);
+        }
+    }
+    
+    /*
+     * open a UdpTransport on port, or on any free port if port is taken
+     */
+    private static UdpTransport openUdpTransport(int port) throws SocketException {
+        try {
+            return new UdpTransport(port);
+        } catch (SocketException e) {
+            return new UdpTransport(0);
+        }
     }
     
     /**
-     * Make a new text game server using board that listens for connections on port.
+     * Make a new text game server using board that listens for connections on port,
+     * and keeps suspended boards for DEFAULT_GRACE_MILLIS.
      * 
      * @param port server port number
      * @throws IOException if an error occurs opening the server socket
      */
     public FlingballServer(int port) throws IOException {
-        this.serverSocket = new ServerSocket(port);
+        this(port, DEFAULT_GRACE_MILLIS);
+    }
+    
+    /**
+     * Make a new text game server using board that listens for connections on port.
+     * 
+     * @param port server port number
+     * @param graceMillis time a suspended board waits to be resumed, in milliseconds, >= 0
+     * @throws IOException if an error occurs opening the server socket
+     */
+    public FlingballServer(int port, long graceMillis) throws IOException {
+        this(port, graceMillis, DEFAULT_HEARTBEAT_MILLIS);
+    }
+    
+    /**
+     * Make a new text game server using board that listens for connections on port.
+     * 
+     * @param port server port number
+     * @param graceMillis time a suspended board waits to be resumed, in milliseconds, >= 0
+     * @param heartbeatMillis interval between heartbeats in milliseconds, 0 for none
+     * @throws IOException if an error occurs opening the server socket
+     */
+    public FlingballServer(int port, long graceMillis, long heartbeatMillis) throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port));
         this.userNumber = 0;
         boardUserMap=Collections.synchronizedMap(new HashMap<>());
+        boardKeyUserMap=Collections.synchronizedMap(new HashMap<>());
+        buffers=new BufferPool(FRAME_BUFFER_BYTES, MAX_POOLED_BUFFERS);
         userSockets=Collections.synchronizedMap(new HashMap<>());
         boardPortalMap=Collections.synchronizedMap(new HashMap<>());
+        tracer=new HandoffTracer("server");
+        connections=Collections.synchronizedMap(new HashMap<>());
+        userUdpAddresses=Collections.synchronizedMap(new HashMap<>());
+        spectators=Collections.synchronizedMap(new HashMap<>());
+        tokens=new Tokenizer();
+        joins=new HashMap<>();
+        stats=new ServerStats();
+        timer=new Timer("server timer", true);
+        sessions=new SessionTable(graceMillis, MAX_SUSPENDED_REQUESTS, timer, this::expire);
+        liveness=new LivenessMonitor(heartbeatMillis, MISSED_HEARTBEATS, System.currentTimeMillis());
+        ledger=new BallLedger(ACK_TIMEOUT_MILLIS, System.currentTimeMillis());
+        retries=new RetryPolicy(ledger, MAX_ATTEMPTS);
+        journal=Optional.empty();
+        restored=new HashMap<>();
+        restoredPortals=new LinkedHashMap<>();
+        scheduler=new FairScheduler(SCHEDULER_QUANTUM_BYTES);
+        rateLimit=DEFAULT_RATE_LIMIT;
+        rateBurst=DEFAULT_RATE_BURST;
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                retryUnacknowledged();
+            }
+        }, LEDGER_TICK_MILLIS, LEDGER_TICK_MILLIS);
+        udp=openUdpTransport(port());
+        udp.start(this::handleDatagram);
+        liveness.start(this::beat);
         checkRep();
     }
 
@@ -187,35 +627,281 @@ public class FlingballServer {
         return boardUserMap.size();
     }
     /**
-     * get commands and act 
+     * get one command from System.in and act on it
+     * @return false if System.in has no more commands, otherwise true
+     * @throws IOException if System.in can't be read or a join request can't be sent
      */
-    public void getCommandAndAct() throws IOException{
-        //read commands from user
-        final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
-        final String input = in.readLine();
+    public boolean getCommandAndAct() throws IOException{
+        //read commands from user, with one reader as long as System.in isn't replaced
+        if(commandSource!=System.in) {
+            commandSource=System.in;
+            commands=new BufferedReader(new InputStreamReader(commandSource));
+        }
+        final String input = commands.readLine();
+        if(input==null) {
+            return false;
+        }
+        actOnCommand(input);
+        return true;
+    }
+    
+    /**
+     * act on one user command
+     * @param input command: "h NAME_left NAME_right", "v NAME_top NAME_bottom",
+     *        a "grid" or "torus" entry of a Topology, or "load FILE" to apply the topology in FILE
+     * @return the outcome, a RESPONSE of the protocol without NEWLINE
+     * @throws IOException if a join request can't be sent
+     */
+    public String actOnCommand(String input) throws IOException{
         //command: "h NAME_left NAME_right" or "v NAME_top NAME_bottom"
         String[] tokens = input.split(" ");
-        if(tokens.length!=3 || !(tokens[0].equals("h") || (tokens[0].equals("v"))) ){
+        if(tokens[0].equals("grid") || tokens[0].equals("torus")) {
+            return actOnTopology(input);
+        }else if(tokens[0].equals("load") && tokens.length==2) {
+            try {
+                return actOnTopology(new String(Files.readAllBytes(Paths.get(tokens[1])), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.err.println("SERVER can't read topology "+tokens[1]+": "+e);
+                return "fail: can't read topology "+tokens[1];
+            }
+        }else if(tokens.length!=3 || !(tokens[0].equals("h") || (tokens[0].equals("v"))) ){
             System.err.println("SERVER illegal command");
+            return "fail: illegal command";
         }else {
             String board1=tokens[1];
             String board2=tokens[2];
             System.out.println("SERVER join b1: "+board1+" b2: "+board2);
             if(!hasBoardName(board1) || !hasBoardName(board2)){
                 System.err.println("SERVER illegal board names");
+                return "fail: illegal board names";
             }else if(tokens[0].equals("h")){
                 leftJoin(board1, board2);
             }else {
                 topJoin(board1, board2);
             }
+            return "succeed: boards joined";
+        }
+    }
+    
+    /*
+     * apply the topology of text, or tell the user why it can't be applied
+     */
+    private String actOnTopology(String text) throws IOException {
+        try {
+            Topology topology=Topology.parse(text, getJoinableBoards());
+            System.out.println("SERVER join "+topology.getBoards().size()+" boards");
+            applyTopology(topology);
+            return "succeed: joined "+topology.getBoards().size()+" boards";
+        } catch (IllegalArgumentException e) {
+            System.err.println("SERVER illegal topology: "+e.getMessage());
+            return "fail: illegal topology: "+e.getMessage();
+        }
+    }
+    
+    /**
+     * @return the boards that can be joined, in the order their clients connected
+     */
+    public synchronized List<String> getJoinableBoards() {
+        List<String> boards=new ArrayList<>();
+        for(String board: boardUserMap.keySet()) {
+            if(userSockets.containsKey(boardUserMap.get(board))) {
+                boards.add(board);
+            }
         }
+        boards.sort((board1, board2) -> Integer.compare(boardUserMap.get(board1), boardUserMap.get(board2)));
+        return boards;
+    }
+    
+    /**
+     * Join boards as laid out by a topology, in one pass that sends one JOINS_REQUEST 
+     * with all its new neighbours to the client of each board in topology. The new joins
+     * replace the joins of the same sides of these boards, other joins are kept.
+     * @param topology layout of joinable boards, see getJoinableBoards
+     * @throws IllegalArgumentException if a board of topology is not joinable; 
+     *         no board is joined then
+     * @throws IOException if a joins request can't be sent
+     */
+    public synchronized void applyTopology(Topology topology) throws IOException {
+        List<String> missing=topology.missingFrom(getJoinableBoards());
+        if(!missing.isEmpty()) {
+            throw new IllegalArgumentException("boards not connected: "+String.join(" ", missing));
+        }
+        for(String board: topology.getBoards()) {
+            //"joins" (DIRECTION BOARDNAME)+
+            StringBuilder request=new StringBuilder("joins");
+            for(Map.Entry<BOARD_DIRECTION, String> side: topology.getNeighbours(board).entrySet()) {
+                request.append(' ').append(directionName(side.getKey())).append(' ').append(side.getValue());
+                setJoin(board, side.getKey(), side.getValue());
+                if(side.getKey()==BOARD_DIRECTION.RIGHT) {
+                    journal(EventJournal.Type.JOIN, EventJournal.SERVER, "h "+board+" "+side.getValue());
+                }else if(side.getKey()==BOARD_DIRECTION.BOTTOM) {
+                    journal(EventJournal.Type.JOIN, EventJournal.SERVER, "v "+board+" "+side.getValue());
+                }
+            }
+            Integer userID=boardUserMap.get(board);
+            if(userID!=null && deliver(userID, request.toString())) {
+                stats.delivered(userID);
+            }
+        }
+        stats.count(ServerStats.Counter.JOIN, topology.size());
+        checkRep();
+    }
+    
+    /**
+     * @param board name of a board
+     * @return the boards this server joined to the sides of board
+     */
+    public synchronized Map<BOARD_DIRECTION, String> getNeighbours(String board) {
+        Map<BOARD_DIRECTION, String> sides=new EnumMap<>(BOARD_DIRECTION.class);
+        sides.putAll(joins.getOrDefault(board, Collections.emptyMap()));
+        return sides;
+    }
+    
+    /*
+     * record that other is joined to side direction of board, and that the board joined
+     * to that side before, if any, is no longer joined to board
+     */
+    private synchronized void setJoin(String board, BOARD_DIRECTION direction, String other) {
+        String previous=joins.computeIfAbsent(board, b -> new EnumMap<>(BOARD_DIRECTION.class)).put(direction, other);
+        if(previous!=null && !previous.equals(other) && joins.containsKey(previous)) {
+            joins.get(previous).remove(Topology.opposite(direction), board);
+        }
+        Map<BOARD_DIRECTION, String> before=restored.get(board);
+        String remembered=before==null ? null : before.remove(direction);
+        if(remembered!=null) {
+            restored.get(remembered).remove(Topology.opposite(direction), board);
+        }
+    }
+    
+    /**
+     * @return a snapshot of the boards of this server with their portals and joins, 
+     *         including the boards and joins restored and not back yet, see restore
+     */
+    public synchronized RegistrySnapshot snapshot() {
+        Map<String, List<String>> portals=new LinkedHashMap<>();
+        for(String board: getJoinableBoards()) {
+            portals.put(board, boardPortalMap.get(board));
+        }
+        for(Map.Entry<String, List<String>> board: boardPortalMap.entrySet()) {
+            portals.putIfAbsent(board.getKey(), board.getValue());
+        }
+        portals.putAll(restoredPortals);
+        StringBuilder layout=new StringBuilder();
+        for(Map<String, Map<BOARD_DIRECTION, String>> sides: Arrays.asList(joins, restored)) {
+            for(Map.Entry<String, Map<BOARD_DIRECTION, String>> board: sides.entrySet()) {
+                for(Map.Entry<BOARD_DIRECTION, String> side: board.getValue().entrySet()) {
+                    if(side.getKey()==BOARD_DIRECTION.RIGHT) {
+                        layout.append("h ").append(board.getKey()).append(' ').append(side.getValue()).append('\n');
+                    }else if(side.getKey()==BOARD_DIRECTION.BOTTOM) {
+                        layout.append("v ").append(board.getKey()).append(' ').append(side.getValue()).append('\n');
+                    }
+                }
+            }
+        }
+        return new RegistrySnapshot(portals, Topology.parse(layout.toString(), Collections.emptyList()));
+    }
+    
+    /**
+     * Restore the joins of a snapshot taken before a restart, in place of any snapshot
+     * restored before. Every board of snapshot that
+     * is connected, or connects later, is joined again to the boards joined to it in 
+     * snapshot as soon as they are connected too, unless the operator joined one of the 
+     * two sides to another board in the meantime. Joins of this server are kept.
+     * @param snapshot the registry to restore, e.g. read from the file written by main
+     * @throws IOException if a join request can't be sent
+     */
+    public synchronized void restore(RegistrySnapshot snapshot) throws IOException {
+        restored.clear();
+        restoredPortals.clear();
+        Topology topology=snapshot.getTopology();
+        for(String board: topology.getBoards()) {
+            for(Map.Entry<BOARD_DIRECTION, String> side: topology.getNeighbours(board).entrySet()) {
+                Map<BOARD_DIRECTION, String> current=joins.getOrDefault(board, Collections.emptyMap());
+                Map<BOARD_DIRECTION, String> other=joins.getOrDefault(side.getValue(), Collections.emptyMap());
+                if(!current.containsKey(side.getKey()) && !other.containsKey(Topology.opposite(side.getKey()))) {
+                    restored.computeIfAbsent(board, b -> new EnumMap<>(BOARD_DIRECTION.class)).put(side.getKey(), side.getValue());
+                }
+            }
+        }
+        for(String board: snapshot.getBoards()) {
+            if(!boardUserMap.containsKey(board)) {
+                restoredPortals.put(board, snapshot.getPortals(board));
+            }
+        }
+        System.out.println("SERVER restored "+snapshot);
+        for(String board: getJoinableBoards()) {
+            rejoin(board);
+        }
+        checkRep();
+    }
+    
+    /*
+     * join board again to the boards of restored that are joinable, board being joinable
+     */
+    private synchronized void rejoin(String board) throws IOException {
+        List<String> joinable=getJoinableBoards();
+        for(Map.Entry<BOARD_DIRECTION, String> side: getRestored(board).entrySet()) {
+            String other=side.getValue();
+            if(!joinable.contains(other)) {
+                continue;
+            }
+            switch(side.getKey()) {
+            case RIGHT: leftJoin(board, other); break;
+            case LEFT: leftJoin(other, board); break;
+            case BOTTOM: topJoin(board, other); break;
+            default: topJoin(other, board);
+            }
+            System.out.println("SERVER rejoined "+board+" "+directionName(side.getKey())+" "+other);
+        }
+    }
+    
+    /*
+     * return a copy of the sides of board in restored
+     */
+    private synchronized Map<BOARD_DIRECTION, String> getRestored(String board) {
+        Map<BOARD_DIRECTION, String> sides=new EnumMap<>(BOARD_DIRECTION.class);
+        sides.putAll(restored.getOrDefault(board, Collections.emptyMap()));
+        return sides;
+    }
+    
+    /**
+     * Write a snapshot of the registry of this server to file every periodMillis, on the
+     * timer of this server, when it changed since the last one written.
+     * A snapshot that can't be written is reported and tried again next time.
+     * @param file the snapshot file, replaced atomically each time, see RegistrySnapshot.write
+     * @param periodMillis interval between snapshots in milliseconds, > 0
+     */
+    public void saveSnapshotsEvery(Path file, long periodMillis) {
+        timer.scheduleAtFixedRate(new TimerTask() {
+            private RegistrySnapshot written=null;
+            @Override
+            public void run() {
+                // an exception would cancel the timer, which also retries balls
+                try {
+                    RegistrySnapshot current=snapshot();
+                    if(!current.equals(written)) {
+                        current.write(file);
+                        written=current;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("SERVER snapshot not written: "+e);
+                }
+            }
+        }, periodMillis, periodMillis);
+    }
+    
+    /*
+     * DIRECTION of JOIN_REQUEST and JOINS_REQUEST
+     */
+    private static String directionName(BOARD_DIRECTION direction) {
+        return direction.name().toLowerCase();
     }
     
     /**
      * @return the port on which this server is listening for connections
      */
     public synchronized int port() {
-        return serverSocket.getLocalPort();
+        return serverChannel.socket().getLocalPort();
     }
     
     /**
@@ -228,14 +914,16 @@ public class FlingballServer {
         //handle multiple clients
         while (true) {
             // block until a client connects
-            Socket socket = serverSocket.accept();
+            Socket socket = serverChannel.accept().socket();
             userNumber++;
             int userID;
             userID = userNumber;
+            connections.put(userID, socket);
             checkRep();
             Thread handler = new Thread(new Runnable() {
                 public void run() {
                     // handle the client
+                    stats.handlerStarted();
                     try {
                         while(!socket.isClosed()) {
                             try {
@@ -247,17 +935,11 @@ public class FlingballServer {
                         }
                     }finally {
                         try {
-                            synchronized (this) {
-                                checkRep();
-                                socket.close();
-                                String board=getBoardWithUser(userID);
-                                boardUserMap.remove(board);
-                                userSockets.remove(userID);
-                                disjoinBoard(board);
-                                checkRep();
-                            }
+                            disconnect(socket, userID);
                         } catch (IOException e) {
                             e.printStackTrace();
+                        } finally {
+                            stats.handlerStopped();
                         }
                     }
                 }
@@ -266,6 +948,333 @@ public class FlingballServer {
         }
     }
     
+    /*
+     * clean up after connection connectionID closed: suspend its board if it has a session,
+     * otherwise remove its board and disjoin it from all boards. Does nothing to the board
+     * if another connection resumed its session or the board was evicted.
+     */
+    private synchronized void disconnect(Socket socket, int connectionID) throws IOException {
+        checkRep();
+        socket.close();
+        connections.remove(connectionID);
+        int userID=sessions.userOf(connectionID);
+        sessions.disconnected(connectionID);
+        if(sessions.isResumed(userID)) {
+            return;
+        }else if(sessions.hasSession(userID)) {
+            suspend(userID);
+        }else if(boardUserMap.containsValue(userID)) {
+            removeUser(userID);
+        }else {
+            userSockets.remove(userID);
+            stats.removeClient(userID);
+        }
+        checkRep();
+    }
+    
+    /*
+     * keep the board of userID, buffer the requests sent to it (after those buffered already,
+     * if it is suspended), and remove it unless it is resumed in time, see SessionTable
+     */
+    private synchronized void suspend(int userID) throws IOException {
+        FBServerSocket socket=userSockets.remove(userID);
+        if(socket!=null) {
+            socket.close();
+        }
+        liveness.forget(userID);
+        userUdpAddresses.remove(userID);
+        for(Set<Integer> watching: spectators.values()) {
+            watching.remove(userID);
+        }
+        sessions.suspend(userID);
+        System.out.println("SERVER suspended board "+getBoardWithUser(userID)+" for "+sessions.getGraceMillis()+" ms");
+    }
+    
+    /*
+     * remove the board of userID if grace is still its grace period, see SessionTable.Expiry
+     */
+    private synchronized void expire(int userID, Object grace) {
+        if(!sessions.expire(userID, grace)) {
+            return;
+        }
+        System.out.println("SERVER board "+getBoardWithUser(userID)+" wasn't resumed");
+        try {
+            removeUser(userID);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        checkRep();
+    }
+    
+    /*
+     * remove the board of userID, disjoin it from all boards, and return the balls in flight
+     * to it, buffered or not acknowledged, to their senders
+     */
+    private synchronized void removeUser(int userID) throws IOException {
+        String board=getBoardWithUser(userID);
+        // while the boards are still joined, see returnRequest
+        Map<BallLedger.Entry, Optional<String>> returns=new LinkedHashMap<>();
+        for(BallLedger.Entry ball: ledger.closeAll(userID)) {
+            returns.put(ball, returnRequest(ball));
+        }
+        unregisterBoard(board);
+        boardPortalMap.remove(board);
+        FBServerSocket socket=userSockets.remove(userID);
+        if(socket!=null) {
+            socket.close();
+        }
+        liveness.forget(userID);
+        userUdpAddresses.remove(userID);
+        spectators.remove(board);
+        for(Set<Integer> watching: spectators.values()) {
+            watching.remove(userID);
+        }
+        sessions.remove(userID);
+        disjoinBoard(board);
+        journal(EventJournal.Type.DISJOIN, userID, board);
+        for(Map.Entry<BallLedger.Entry, Optional<String>> ball: returns.entrySet()) {
+            giveBack(ball.getKey(), ball.getValue());
+        }
+        stats.removeClient(userID);
+    }
+    
+    /*
+     * remove the board of userID because its client stopped responding, and close the
+     * connection of the client
+     */
+    private synchronized void evict(int userID, String reason) {
+        if(!boardUserMap.containsValue(userID)) {
+            return;
+        }
+        System.err.println("SERVER evicted board "+getBoardWithUser(userID)+": "+reason);
+        stats.count(ServerStats.Counter.EVICTION);
+        Socket connection=connections.get(sessions.connectionOf(userID));
+        try {
+            removeUser(userID);
+            if(connection!=null) {
+                connection.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /*
+     * on every heartbeat of liveness: abort the stuck writes, then evict the clients in 
+     * silent, which didn't answer in time, and ping all other clients
+     */
+    private void beat(List<Integer> silent) {
+        // without the lock of this, which a stuck write holds
+        synchronized(userSockets) {
+            for(FBServerSocket socket: userSockets.values()) {
+                socket.abortIfStuck(liveness.getTimeoutMillis());
+            }
+        }
+        heartbeat(silent);
+    }
+    
+    /*
+     * evict the clients in silent, which didn't answer in time, and ping all other clients
+     */
+    private synchronized void heartbeat(List<Integer> silent) {
+        for(int userID: silent) {
+            if(userSockets.containsKey(userID)) {
+                evict(userID, "no answer for "+liveness.getTimeoutMillis()+" ms");
+            }
+        }
+        for(int userID: new ArrayList<>(userSockets.keySet())) {
+            deliver(userID, PING);
+        }
+        checkRep();
+    }
+    
+    /*
+     * give connection connectionID the board of the session token, and return the reply
+     */
+    private synchronized String resume(String token, int connectionID) throws IOException {
+        Optional<Integer> session=sessions.userWithToken(token);
+        if(!session.isPresent()) {
+            return "fail: no such session";
+        }else if(boardUserMap.containsValue(sessions.userOf(connectionID))) {
+            return "fail: board was connected already";
+        }
+        final int userID=session.get();
+        if(!sessions.isSuspended(userID)) {
+            // the old connection may be half-open, take the session over from it
+            Socket old=connections.get(sessions.connectionOf(userID));
+            suspend(userID);
+            if(old!=null) {
+                old.close();
+            }
+        }
+        sessions.resume(connectionID, userID);
+        System.out.println("SERVER resumed board "+getBoardWithUser(userID));
+        return "succeed: "+userID+" resumed the board";
+    }
+    
+    /*
+     * send request, which doesn't carry a ball, to the client userID, or buffer it if the 
+     * board of userID is suspended; evict the client if request can't be sent.
+     * return false if there is no socket to the client, the buffer is full or the client 
+     * was evicted
+     */
+    private synchronized boolean deliver(int userID, String request) {
+        try {
+            return send(userID, request, BallLedger.NO_SEQ);
+        } catch (IOException e) {
+            evict(userID, "can't send: "+e);
+            return false;
+        }
+    }
+    
+    /*
+     * like deliver, for a ball request from the client sender (or BallLedger.NO_SENDER), whose ball 
+     * stays in the ledger until the client userID acknowledges it. side is the side of the 
+     * board of sender the ball left through, see BallLedger.Entry.
+     * return false, leaving the ball to its sender, if request can't be sent or buffered
+     */
+    private synchronized boolean deliverBall(int userID, String request, int sender, Optional<BOARD_DIRECTION> side) {
+        BallLedger.Entry ball=ledger.open(request, sender, userID, side);
+        try {
+            if(send(userID, ball.getRequest(), ball.getSeq())) {
+                return true;
+            }
+            ledger.close(ball.getSeq());
+            return false;
+        } catch (IOException e) {
+            // out of the ledger first, so that evicting the client doesn't give the ball back
+            ledger.close(ball.getSeq());
+            evict(userID, "can't send: "+e);
+            return false;
+        }
+    }
+    
+    /*
+     * send request to the client userID, or buffer it if the board of userID is suspended.
+     * seq is the sequence number in the ledger of the ball of request, or NO_SEQ.
+     * return false if there is no socket to the client or the buffer is full
+     */
+    private synchronized boolean send(int userID, String request, long seq) throws IOException {
+        if(sessions.isSuspended(userID)) {
+            return sessions.buffer(userID, request, seq);
+        }
+        FBServerSocket socket=userSockets.get(userID);
+        if(socket==null) {
+            return false;
+        }
+        sendRequest(request, socket);
+        if(seq!=BallLedger.NO_SEQ) {
+            ledger.sent(seq, System.currentTimeMillis());
+        }
+        return true;
+    }
+    
+    /*
+     * send the requests buffered for the client userID in order, except the balls that left
+     * the ledger meanwhile; evict the client if a request can't be sent, which gives the
+     * balls not sent yet back to their senders
+     */
+    private synchronized void flush(int userID, List<SessionTable.Handoff> buffered) {
+        try {
+            for(SessionTable.Handoff handoff: buffered) {
+                if(handoff.getSeq()==BallLedger.NO_SEQ || ledger.contains(handoff.getSeq())) {
+                    send(userID, handoff.getRequest(), handoff.getSeq());
+                }
+            }
+        } catch (IOException e) {
+            evict(userID, "can't send: "+e);
+        }
+    }
+    
+    /*
+     * send again the balls that their destination didn't acknowledge in time, or evict the 
+     * destination, as retries decides
+     */
+    private synchronized void retryUnacknowledged() {
+        for(BallLedger.Entry ball: retries.due(System.currentTimeMillis())) {
+            final long seq=ball.getSeq();
+            final int userID=ball.getDestination();
+            switch(retries.decide(ball, userSockets.containsKey(userID))) {
+            case SKIP:
+                break;
+            case EVICT:
+                evict(userID, "no ack of ball seq "+seq+" after "+MAX_ATTEMPTS+" attempts");
+                break;
+            case RESEND:
+                try {
+                    if(!send(userID, ball.getRequest(), seq)) {
+                        ledger.close(seq);
+                        giveBack(ball, returnRequest(ball));
+                    }
+                } catch (IOException e) {
+                    evict(userID, "can't send: "+e);
+                }
+                break;
+            }
+        }
+    }
+    
+    /*
+     * give ball, which left the ledger, back to the board that sent it with the request
+     * returned (see returnRequest), or report it lost if there is none or it can't be sent
+     */
+    private synchronized void giveBack(BallLedger.Entry ball, Optional<String> returned) {
+        if(returned.isPresent() && deliverBall(ball.getSender(), returned.get(), BallLedger.NO_SENDER, Optional.empty())) {
+            System.out.println("SERVER returned ball: "+returned.get());
+        }else {
+            System.err.println("SERVER lost ball: "+ball.getRequest());
+        }
+    }
+    
+    /*
+     * return the TRANSFER_BALL_REQUEST that gives ball back to the board that sent it, or 
+     * empty if there is none, see RetryPolicy.returnRequest
+     */
+    private synchronized Optional<String> returnRequest(BallLedger.Entry ball) {
+        final Map<BOARD_DIRECTION, String> sides=joins.getOrDefault(getBoardWithUser(ball.getSender()), Collections.emptyMap());
+        final boolean joined=ball.getSide().isPresent() 
+                && Objects.equals(sides.get(ball.getSide().get()), getBoardWithUser(ball.getDestination()));
+        return RetryPolicy.returnRequest(ball, joined);
+    }
+    
+    /*
+     * return the side of the board of the client sender that a TRANSFER_BALL_REQUEST with 
+     * tokens ("tran" BOARDNAME LOCA_X LOCA_Y ...) left through to the board of the client 
+     * destination, or empty if the boards aren't joined or the location can't be read. 
+     * Boards joined on several sides, like the two columns of a torus, are told apart by the
+     * location, which is in the coordinates of destination: the ball is on the sender side 
+     * of the edge it crossed. Moves the cursor of tokens.
+     */
+    private synchronized Optional<BOARD_DIRECTION> exitSide(int sender, int destination, Tokenizer tokens) {
+        String destinationBoard=getBoardWithUser(destination);
+        BOARD_DIRECTION side=null;
+        Vect location=null;
+        double closest=Double.POSITIVE_INFINITY;
+        for(Map.Entry<BOARD_DIRECTION, String> joined: joins.getOrDefault(getBoardWithUser(sender), Collections.emptyMap()).entrySet()) {
+            if(!joined.getValue().equals(destinationBoard)) {
+                continue;
+            }else if(side==null) {
+                side=joined.getKey();
+                continue;
+            }
+            try {
+                if(location==null) {
+                    tokens.seek(2);
+                    location=new Vect(tokens.nextDouble(), tokens.nextDouble());
+                    closest=location.minus(Board.edgeOffset(side)).minus(BOARD_CENTER).length();
+                }
+            } catch (RuntimeException e) {
+                return Optional.empty();
+            }
+            final double distance=location.minus(Board.edgeOffset(joined.getKey())).minus(BOARD_CENTER).length();
+            if(distance<closest) {
+                side=joined.getKey();
+                closest=distance;
+            }
+        }
+        return Optional.ofNullable(side);
+    }
+    
     /**
      * Handle a single client connection.
      * Returns when the client disconnects.
@@ -274,23 +1283,173 @@ public class FlingballServer {
      * @throws IOException if the connection encounters an error or closes unexpectedly
      */
     private void handleConnection(Socket socket, int userID) throws IOException {
-        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        final SocketChannel channel = socket.getChannel();
+        final FrameReader frames = new FrameReader(channel, buffers);
+        final RelayBuffers relay = new RelayBuffers(frames);
+        final TokenBucket bucket = new TokenBucket(rateLimit, rateBurst, System.nanoTime());
+        // userID of the board of this connection when the last request was handled
+        int user = userID;
         try{
-            for (String input = in.readLine(); input != null; input = in.readLine()) {
-                synchronized(this) {
-                    String output = handleRequest(input,userID);
-                    if(output.equals(CLOSE)) {
-                        break;
+            for (ByteBuffer frame = frames.next(); frame != null; frame = frames.next()) {
+                final long receivedAt = HandoffTracer.now();
+                if(frames.isOversized()) {
+                    stats.count(ServerStats.Counter.FAILURE);
+                    final ByteBuffer reply = TOO_LONG_REPLY.duplicate();
+                    while(reply.hasRemaining()) {
+                        channel.write(reply);
+                    }
+                    continue;
+                }
+                final boolean ball = startsWith(frame, TRAN_PREFIX) || startsWith(frame, PORT_PREFIX);
+                if((ball || startsWith(frame, HINT_PREFIX)) && !bucket.tryTake(System.nanoTime())) {
+                    // throttled without taking the lock; the sender keeps a throttled ball
+                    stats.throttled(user);
+                    if(ball) {
+                        final ByteBuffer reply = RATE_LIMITED_REPLY.duplicate();
+                        while(reply.hasRemaining()) {
+                            channel.write(reply);
+                        }
+                    }
+                    continue;
+                }
+                try {
+                    scheduler.acquire(userID, frame.remaining());
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("interrupted waiting for the server");
+                }
+                try {
+                    stats.lockRequested();
+                    synchronized(this) {
+                        final long acquiredAt = stats.lockAcquired();
+                        user = sessions.userOf(userID);
+                        stats.received(user);
+                        try {
+                            ByteBuffer reply = relay(frame, relay, user);
+                            if(reply == null) {
+                                String output = handleRequest(StandardCharsets.UTF_8.decode(frame).toString(),userID,receivedAt);
+                                if(output.equals(CLOSE)) {
+                                    break;
+                                }
+                                if(output.equals(NO_REPLY)) {
+                                    continue;
+                                }
+                                if(output.startsWith("fail:")) {
+                                    stats.count(ServerStats.Counter.FAILURE);
+                                }
+                                reply = ByteBuffer.wrap((output + "\n").getBytes(StandardCharsets.UTF_8));
+                            }
+                            while(reply.hasRemaining()) {
+                                channel.write(reply);
+                            }
+                        } finally {
+                            stats.lockReleased(acquiredAt);
+                        }
                     }
-                    out.println(output);
+                } finally {
+                    scheduler.release(userID);
                 }
             }
         }finally {
-            out.close();
-            in.close();
+            frames.close();
+            channel.close();
         }
     }
+    /*
+     * If frame is a TRANSFER_BALL_REQUEST without TRACE or a HINT_REQUEST to a board without
+     * UDP channel, forward it to its destination without decoding it, and return the reply
+     * to send (empty if none). Otherwise, return null and leave frame unchanged.
+     * sender is the userID of the client that sent frame.
+     */
+    private synchronized ByteBuffer relay(ByteBuffer frame, RelayBuffers relay, int sender) throws IOException {
+        tokens.reset(frame);
+        final boolean tran=tokens.peekIs("tran");
+        if(!tran && !tokens.peekIs("hint")) {
+            return null;
+        }
+        if(tokens.count()<3 || (tran && HandoffTrace.indexIn(tokens, BALL_FIELDS)<tokens.count())) {
+            return null;
+        }
+        tokens.skip();
+        relay.name.clear();
+        relay.name.position(tokens.offset());
+        relay.name.limit(tokens.tokenEnd());
+        // offset of the payload LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME SEND_STAMP? ...
+        final int payload=tokens.skip().offset();
+        Integer otherUserID=boardKeyUserMap.get(relay.name);
+        if(otherUserID==null) {
+            stats.count(ServerStats.Counter.FAILURE);
+            relay.noSuchBoard.rewind();
+            return tran ? relay.noSuchBoard : relay.none;
+        }
+        FBServerSocket socket=userSockets.get(otherUserID);
+        if(socket==null || (!tran && userUdpAddresses.containsKey(otherUserID))) {
+            return null;
+        }
+        relay.request[0]=tran ? relay.tranPrefix : relay.hintPrefix;
+        relay.request[0].rewind();
+        relay.request[1].clear();
+        relay.request[1].position(payload);
+        relay.request[1].limit(frame.limit());
+        BallLedger.Entry ball=null;
+        if(tran) {
+            // the ledger keeps a copy of the request bytes, decoded only to send it again or give the ball back
+            final byte[] request=new byte[relay.request[0].remaining()+relay.request[1].remaining()];
+            relay.request[0].get(request, 0, relay.request[0].remaining());
+            relay.request[1].get(request, relay.request[0].position(), relay.request[1].remaining());
+            relay.request[0].rewind();
+            relay.request[1].position(payload);
+            ball=ledger.open(request, sender, otherUserID, exitSide(sender, otherUserID, tokens));
+        }
+        putSeq(relay.request[2], ball==null ? BallLedger.NO_SEQ : ball.getSeq());
+        relay.request[3].rewind();
+        try {
+            socket.write(relay.request);
+            if(ball!=null) {
+                ledger.sent(ball.getSeq(), System.currentTimeMillis());
+            }
+        } catch (IOException e) {
+            if(ball!=null) {
+                ledger.close(ball.getSeq());
+            }
+            evict(otherUserID, "can't send: "+e);
+            stats.count(ServerStats.Counter.FAILURE);
+            relay.noSuchBoard.rewind();
+            return tran ? relay.noSuchBoard : relay.none;
+        }
+        stats.count(tran ? ServerStats.Counter.TRANSFER : ServerStats.Counter.HINT);
+        stats.delivered(otherUserID);
+        if(tran) {
+            journal(EventJournal.Type.TRANSFER, sender, frame);
+        }
+        relay.tranSent.rewind();
+        return tran ? relay.tranSent : relay.none;
+    }
+    /*
+     * put the SEQ of seq (see BallLedger) in the cleared buffer, nothing if seq is NO_SEQ,
+     * and flip it
+     */
+    private static void putSeq(ByteBuffer buffer, long seq) {
+        buffer.clear();
+        if(seq!=BallLedger.NO_SEQ) {
+            buffer.put((byte) ' ');
+            for(int i=0; i<BallLedger.KEYWORD.length(); i++) {
+                buffer.put((byte) BallLedger.KEYWORD.charAt(i));
+            }
+            buffer.put((byte) ' ');
+            final int digits=buffer.position();
+            long rest=seq;
+            do {
+                buffer.put((byte) ('0'+rest%10));
+                rest/=10;
+            } while(rest>0);
+            for(int i=digits, j=buffer.position()-1; i<j; i++, j--) {
+                final byte digit=buffer.get(i);
+                buffer.put(i, buffer.get(j));
+                buffer.put(j, digit);
+            }
+        }
+        buffer.flip();
+    }
     /*
      * get the board name with userID userID
      */
@@ -305,61 +1464,123 @@ public class FlingballServer {
     /**
      * Handle a single client request and return the server response.
      * @param input message from client
+     * @param connectionID number of the connection of the client
+     * @param receivedAt time the message was received, see HandoffTracer.now()
      * @return output message to client
      * @throws IOException if network or server failure
      */
-    private synchronized String handleRequest(String input, int userID) throws IOException  {
-        String[] tokens = input.split(" ");
+    private synchronized String handleRequest(String input, int connectionID, long receivedAt) throws IOException  {
+        final int userID=sessions.userOf(connectionID);
+        tokens.reset(input);
+        final int count=tokens.count();
         // handles start requests CONNECT_REQUEST ::= "connect" BOARDNAME PORTALNAME* NEWLINE
-        if (tokens[0].equals("connect") && tokens.length >=2) {
-            String boardName=tokens[1];
+        if (tokens.peekIs("connect") && count >=2) {
+            String boardName=tokens.skip().next();
             if(hasBoardName(boardName)) {
                 return "fail: board was connected already";
             }else {
-                boardUserMap.put(boardName,userID);
+                registerBoard(boardName,userID);
                 List<String> portals=new ArrayList<>();
-                for(int i=2; i<tokens.length; i++) {
-                    portals.add(tokens[i]);
+                while(tokens.hasNext()) {
+                    portals.add(tokens.next());
                 }
                 boardPortalMap.put(boardName, portals);
+                stats.count(ServerStats.Counter.CONNECT);
+                journal(EventJournal.Type.CONNECT, userID, input);
                 return "succeed: "+userID+" connected the board to server";
             }
         // handles quit requests QUIT_REQUEST ::= "quit" NEWLINE
-        }else if (tokens[0].equals("quit") && tokens.length == 1) {
+        }else if (tokens.peekIs("quit") && count == 1) {
+            sessions.close(userID);
             return CLOSE;
-        }else if(tokens[0].equals("tran")||tokens[0].equals("port")) {
-            String otherBoard=tokens[1];
+        }else if((tokens.peekIs("tran")||tokens.peekIs("port")) && count >= 2) {
+            final boolean tran=tokens.peekIs("tran");
+            String otherBoard=tokens.skip().next();
             if(!boardUserMap.containsKey(otherBoard)) {
                 return "fail: no such board";
             }
             //handles TRANSFER_BALL_REQUEST ::= "tran" BOARDNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME NEWLINE
-            else if (tokens[0].equals("tran")) {
+            else if (tran) {
                 int otherUserID = boardUserMap.get(otherBoard);
-                FBServerSocket socket=userSockets.get(otherUserID);
                 //"tran" LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME NEWLINE
-                String ballRequest = "tran "+input.substring(input.indexOf(tokens[1])+tokens[1].length()+1);
-                sendRequest(ballRequest, socket);
+                String ballRequest = "tran "+input.substring(tokens.offset());
+                Optional<BOARD_DIRECTION> side=exitSide(userID, otherUserID, tokens);
+                if(!deliverBall(otherUserID, stampTrace(ballRequest, tokens, receivedAt), userID, side)) {
+                    return "fail: board not ready";
+                }
+                stats.count(ServerStats.Counter.TRANSFER);
+                stats.delivered(otherUserID);
+                journal(EventJournal.Type.TRANSFER, userID, input);
                 return "succeed: tran ball received and sent";
             //handles PORTAL_BALL_REQUEST::= "port" BOARDNAME PORTALNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME "from" BOARDNAME NEWLINE
             }else{
-                String portalName=tokens[2];
-                if(!boardPortalMap.get(otherBoard).contains(portalName)) {
+                final int rest=tokens.offset();
+                if(!tokens.hasNext() || !boardPortalMap.get(otherBoard).contains(tokens.next())) {
                     return "fail: no such portal";
                 }
                 int otherUserID = boardUserMap.get(otherBoard);
-                FBServerSocket socket=userSockets.get(otherUserID);
                 //"port" PORTALNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME "from" BOARDNAME NEWLINE
-                String ballRequest = "port "+input.substring(input.indexOf(tokens[1])+tokens[1].length()+1);
+                String ballRequest = "port "+input.substring(rest);
                 // try to send ball to PORTALNAME in otherboard, if no such portal, the client
                 // of otherboard will send it back by sending a request to this server
-                sendRequest(ballRequest, socket);
+                if(!deliverBall(otherUserID, stampTrace(ballRequest, tokens, receivedAt), userID, Optional.empty())) {
+                    return "fail: board not ready";
+                }
+                stats.count(ServerStats.Counter.PORTAL);
+                stats.delivered(otherUserID);
+                journal(EventJournal.Type.PORTAL, userID, input);
                 return "succeed: portal ball received and sent";
             }
+        // handles HINT_REQUEST ::= "hint" BOARDNAME LOCA_X LOCA_Y VELO_X VELO_Y BALLNAME NEWLINE
+        }else if (tokens.peekIs("hint")) {
+            if(count >= 7) {
+                Integer otherUserID=boardUserMap.get(tokens.skip().next());
+                if(otherUserID!=null) {
+                    forwardHint(otherUserID, input.substring(tokens.offset()));
+                }
+            }
+            return NO_REPLY;
+        // handles UDP_REQUEST ::= "udp" PORT NEWLINE
+        }else if (tokens.peekIs("udp") && count == 2) {
+            try {
+                InetAddress host=connections.get(connectionID).getInetAddress();
+                userUdpAddresses.put(userID, new InetSocketAddress(host, tokens.skip().nextInt()));
+                return "succeed: udp "+udp.getPort();
+            } catch (IllegalArgumentException e) {
+                return "fail: illegal port";
+            }
+        // handles SPECTATE_REQUEST ::= "spectate" BOARDNAME NEWLINE
+        }else if (tokens.peekIs("spectate") && count == 2) {
+            String spectated=tokens.skip().next();
+            if(!boardUserMap.containsKey(spectated)) {
+                return "fail: no such board";
+            }else if(!userUdpAddresses.containsKey(userID)) {
+                return "fail: no udp channel";
+            }
+            spectators.computeIfAbsent(spectated, board -> new HashSet<>()).add(userID);
+            return "succeed: spectating "+spectated;
+        // handles SESSION_REQUEST ::= "session" NEWLINE
+        }else if (tokens.peekIs("session") && count == 1) {
+            if(!boardUserMap.containsValue(userID)) {
+                return "fail: board not connected";
+            }
+            return "succeed: session "+sessions.open(userID);
+        // handles RESUME_REQUEST ::= "resume" TOKEN NEWLINE
+        }else if (tokens.peekIs("resume") && count == 2) {
+            return resume(tokens.skip().next(), connectionID);
+        // handles TIME_REQUEST ::= "time" NEWLINE
+        }else if (tokens.peekIs("time") && count == 1) {
+            return "succeed: time "+HandoffTracer.now();
         //handles server created request
         }else if (input.equals("server created")) {
             try {
-                FBServerSocket newSocket = new FBServerSocket(userID);
+                FBServerSocket newSocket = new FBServerSocket(userID, liveness, ledger);
+                List<SessionTable.Handoff> buffered=sessions.takeBuffered(userID);
                 userSockets.put(userID, newSocket);
+                liveness.answered(userID, System.currentTimeMillis());
+                newSocket.startReading();
+                flush(userID, buffered);
+                rejoin(getBoardWithUser(userID));
                 return "succeed: created socket for this server";
             } catch (IOException e) {
                 e.printStackTrace();
@@ -369,6 +1590,139 @@ public class FlingballServer {
             return "fail: illegal command!!";
         }
     }
+    /*
+     * if the ball request with tokens carries a TRACE without server stamps, return ballRequest
+     * with the server stamps appended and record the hops seen by this server,
+     * otherwise return ballRequest
+     */
+    private synchronized String stampTrace(String ballRequest, Tokenizer tokens, long receivedAt) {
+        HandoffTrace trace=HandoffTrace.parse(tokens, HandoffTrace.indexIn(tokens, ballFields(tokens)));
+        if(trace==null || trace.getServerReceived()!=HandoffTrace.UNKNOWN) {
+            return ballRequest;
+        }
+        trace=trace.withServerStamps(receivedAt, HandoffTracer.now());
+        tracer.recordForwarded(trace);
+        return ballRequest.substring(0, ballRequest.lastIndexOf(" "+HandoffTrace.KEYWORD+" "))+trace.toProtocol();
+    }
+    /*
+     * return the number of tokens before the options (SEND_STAMP, TRACE) of the ball request
+     * with tokens, moving the cursor of tokens to the start
+     */
+    private static int ballFields(Tokenizer tokens) {
+        return tokens.seek(0).peekIs("port") ? PORTAL_BALL_FIELDS : BALL_FIELDS;
+    }
+    /*
+     * forward a hint (without "hint" and BOARDNAME) to the client userID, over UDP if possible
+     */
+    private synchronized void forwardHint(int userID, String hint) throws IOException {
+        stats.count(ServerStats.Counter.HINT);
+        stats.delivered(userID);
+        InetSocketAddress address=userUdpAddresses.get(userID);
+        if(address!=null) {
+            udp.send("hint", hint, address);
+            return;
+        }
+        if(userSockets.containsKey(userID)) {
+            deliver(userID, "hint "+hint);
+        }
+    }
+    /*
+     * handle a message received on the UDP channel of this server
+     */
+    private synchronized void handleDatagram(String stream, String payload) {
+        String boardName=tokens.reset(payload).hasNext() ? tokens.next() : "";
+        if(!boardUserMap.containsKey(boardName)) {
+            return;
+        }
+        try {
+            if(stream.equals("hint") && tokens.hasNext()) {
+                forwardHint(boardUserMap.get(boardName), payload.substring(tokens.offset()));
+            }else if(stream.equals("frame")) {
+                for(int userID: spectators.getOrDefault(boardName, Collections.emptySet())) {
+                    InetSocketAddress address=userUdpAddresses.get(userID);
+                    if(address!=null) {
+                        udp.send("frame/"+boardName, payload, address);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("dropped datagram: "+stream+" "+payload);
+        }
+    }
+    /**
+     * Limit the ball requests (TRANSFER_BALL_REQUEST, PORTAL_BALL_REQUEST and HINT_REQUEST)
+     * of each client, see TokenBucket, for the connections handled from now on.
+     * @param perSecond ball requests a client may send per second on average, 0 for no limit
+     * @param burst ball requests a client may send at once, >= 1
+     */
+    public void setRateLimit(double perSecond, int burst) {
+        rateBurst=burst;
+        rateLimit=perSecond;
+    }
+    /**
+     * Record the events processed by this server from now on in journal.
+     * @param journal the journal, which this server doesn't close
+     */
+    public synchronized void setJournal(EventJournal journal) {
+        this.journal=Optional.of(journal);
+    }
+    /*
+     * record an event in the journal, if any; an event that can't be recorded is reported
+     * and dropped, since the journal must never stop the game
+     */
+    private synchronized void journal(EventJournal.Type type, int userID, String payload) {
+        if(journal.isPresent()) {
+            try {
+                journal.get().record(type, userID, payload);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("SERVER journal dropped "+type+": "+e);
+            }
+        }
+    }
+    /*
+     * like journal above, with the UTF-8 bytes of payload
+     */
+    private synchronized void journal(EventJournal.Type type, int userID, ByteBuffer payload) {
+        if(journal.isPresent()) {
+            try {
+                journal.get().record(type, userID, payload);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("SERVER journal dropped "+type+": "+e);
+            }
+        }
+    }
+    /**
+     * @return the tracer recording the latency of ball handoffs forwarded by this server
+     */
+    public HandoffTracer getHandoffTracer() {
+        return tracer;
+    }
+    /**
+     * @return the live counters of this server
+     */
+    public ServerStats getStats() {
+        return stats;
+    }
+    /**
+     * @return a report of the connected boards, the buffers and the stats of this server,
+     *         with rates since the previous report, see ServerStats.report
+     */
+    public String getStatsReport() {
+        Map<Integer, String> boardNames=new HashMap<>();
+        int boards;
+        synchronized(this) {
+            for(Map.Entry<String, Integer> board: boardUserMap.entrySet()) {
+                boardNames.put(board.getValue(), board.getKey());
+            }
+            boards=boardUserMap.size();
+        }
+        return "boards "+boards+" connected, "+getJoinableBoards().size()+" joinable\n"
+                +"balls "+ledger.size()+" in flight\n"
+                +"scheduler "+scheduler.getWaiting()+" waiting, "+scheduler.getWaited()+" of "
+                    +scheduler.getTurns()+" turns waited\n"
+                +"buffers "+buffers.getAllocated()+" allocated, "+buffers.getFree()+" free\n"
+                +stats.report(boardNames);
+    }
     /*
      * return true if a board with name exist, otherwise false
      */
@@ -381,8 +1735,7 @@ public class FlingballServer {
      * @throws IOException if network or server failure
      */
     private synchronized void sendRequest(String request, FBServerSocket fbSocket) throws IOException {
-        fbSocket.out().print(request + "\n");
-        fbSocket.out().flush(); // important! 
+        fbSocket.write(new ByteBuffer[] {ByteBuffer.wrap((request + "\n").getBytes(StandardCharsets.UTF_8))});
     }
     /**
      * Joins the first board to the left of the second board
@@ -400,9 +1753,13 @@ public class FlingballServer {
             int userID2=boardUserMap.get(board2);
             //"join" DIRECTION BOARDNAME
             String request1="join right "+board2;
-            sendRequest(request1, userSockets.get(userID1));
+            deliver(userID1, request1);
             String request2="join left "+board1;
-            sendRequest(request2, userSockets.get(userID2));
+            deliver(userID2, request2);
+            setJoin(board1, BOARD_DIRECTION.RIGHT, board2);
+            setJoin(board2, BOARD_DIRECTION.LEFT, board1);
+            stats.count(ServerStats.Counter.JOIN, 2);
+            journal(EventJournal.Type.JOIN, EventJournal.SERVER, "h "+board1+" "+board2);
         }
     }
     
@@ -424,9 +1781,13 @@ public class FlingballServer {
             int userID2=boardUserMap.get(board2);
             //"join" DIRECTION BOARDNAME
             String request1="join bottom "+board2;
-            sendRequest(request1, userSockets.get(userID1));
+            deliver(userID1, request1);
             String request2="join top "+board1;
-            sendRequest(request2, userSockets.get(userID2));
+            deliver(userID2, request2);
+            setJoin(board1, BOARD_DIRECTION.BOTTOM, board2);
+            setJoin(board2, BOARD_DIRECTION.TOP, board1);
+            stats.count(ServerStats.Counter.JOIN, 2);
+            journal(EventJournal.Type.JOIN, EventJournal.SERVER, "v "+board1+" "+board2);
         }
     }
     /*
@@ -434,8 +1795,10 @@ public class FlingballServer {
      */
     private synchronized void disjoinBoard(String board) throws IOException {
         String request="disjoin "+board;
-        for(FBServerSocket socket:userSockets.values()) {
-            sendRequest(request, socket);
+        Set<Integer> users=new HashSet<>(userSockets.keySet());
+        users.addAll(sessions.getSuspended());
+        for(int userID: users) {
+            deliver(userID, request);
         }
     }
     @Override 
@@ -445,37 +1808,32 @@ public class FlingballServer {
     
     /*
      * A private class to FlingballServer class.
-     * A FBServerSocket is a Socket and its BufferedReader in, its PrintWriter out.
-     * It can only be accessed by one thread at a time.
+     * RelayBuffers are the views used by relay for one connection, allocated once per 
+     * connection so that relaying a request allocates nothing but its text for the ledger.
+     * It can only be accessed by the thread serving the connection.
      */
-    private class FBServerSocket{
-        private final Socket socket;
-        private final BufferedReader in;
-        private final PrintWriter out;
+    private static class RelayBuffers{
+        private final ByteBuffer name;
+        private final ByteBuffer[] request;
+        private final ByteBuffer tranPrefix = TRAN_PREFIX.duplicate();
+        private final ByteBuffer hintPrefix = HINT_PREFIX.duplicate();
+        private final ByteBuffer tranSent = TRAN_SENT_REPLY.duplicate();
+        private final ByteBuffer noSuchBoard = NO_SUCH_BOARD_REPLY.duplicate();
+        private final ByteBuffer none = ByteBuffer.allocate(0);
         // Abstraction function:
-        //   AF(socket,in,out)=The FBServerSocket is a Socket 
-        //              and its BufferedReader in, its PrintWriter out.
+        //   AF(name,request,...)= name is a view of the frames of a connection to slice 
+        //              board names, request is {prefix, payload view of the frames, SEQ, 
+        //              newline} to relay a request, the other fields are views of constant frames.
         // Representation invariant:
-        //     All fields not null.
+        //     All fields not null, request.length == 4
         // Safety from rep exposure:
         //     Class is private
         
         // constructor
-        private FBServerSocket(int userID) throws UnknownHostException, IOException {
-            final String host="localhost";
-            socket = new Socket(host, userID + Flingball.PORT_START_NUMBER);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
-        }
-        // in
-        private BufferedReader in() {
-            return in;
-        }
-        // out
-        private PrintWriter out() {
-            return out;
+        private RelayBuffers(FrameReader frames) {
+            name = frames.newView();
+            request = new ByteBuffer[] {tranPrefix, frames.newView(), ByteBuffer.allocate(SEQ_BYTES), NEWLINE.duplicate()};
         }
     }
     
 }
-
@@ -0,0 +1,161 @@
+package flingball;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A FrameReader splits the bytes read from a channel into frames, one frame per line of the
+ * protocols of FlingballServer and Flingball. It reads into a single buffer from a BufferPool
+ * and returns each frame as a view of that buffer, so neither the bytes nor the frame are
+ * copied or decoded.
+ *
+ * A frame ends at "\n" or "\r\n", which is not part of the frame. A frame longer than the
+ * buffers of the pool is skipped up to its newline and returned empty, marked oversized, so
+ * the caller can reject it and go on with the next frame.
+ *
+ * A FrameReader is not thread-safe; it is meant to be confined to the thread serving
+ * one connection.
+ */
+public class FrameReader {
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final ReadableByteChannel channel;
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+    private ByteBuffer frame;
+    private int start;
+    private int scanned;
+    private boolean skipping;
+    private boolean oversized;
+
+    // Abstraction function:
+    //   AF(channel, pool, buffer, frame, start, scanned, skipping, oversized) = a reader of the
+    //      frames of channel, where the bytes at buffer[start, buffer.position()) were read but
+    //      are not yet part of a returned frame, and buffer[start, scanned) contains no newline.
+    //      If skipping, those bytes are the middle of a frame longer than buffer, which is
+    //      dropped up to its newline. frame is the view of buffer returned by the last call of
+    //      next, and oversized iff that frame was such a frame. If buffer is null, the reader
+    //      is closed.
+    // Representation invariant:
+    //   channel, pool not null
+    //   if buffer not null: frame not null and shares the content of buffer,
+    //      0 <= start <= scanned <= buffer.position()
+    //   if skipping: start == 0
+    // Safety from rep exposure:
+    //   frame is returned on purpose as a read-only window onto buffer, valid until the next
+    //   call of next; the other fields are never returned.
+
+    /**
+     * Make a FrameReader.
+     * @param channel a blocking channel to read frames from
+     * @param pool pool to take the buffer of this reader from, until closed
+     */
+    public FrameReader(ReadableByteChannel channel, BufferPool pool) {
+        this.channel = channel;
+        this.pool = pool;
+        this.buffer = pool.acquire();
+        this.frame = buffer.duplicate();
+        this.start = 0;
+        this.scanned = 0;
+        this.skipping = false;
+        this.oversized = false;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert channel != null;
+        assert pool != null;
+        if (buffer != null) {
+            assert frame != null;
+            assert 0 <= start && start <= scanned && scanned <= buffer.position();
+        }
+        assert !skipping || start == 0;
+    }
+
+    /**
+     * Read the next frame, blocking until it is complete.
+     * @return the next frame as a buffer whose remaining bytes are the frame, without the newline.
+     *         The returned buffer is only valid until the next call of next or close, and
+     *         must not be modified. A frame longer than the buffers of the pool is returned
+     *         empty, see isOversized. Returns null at the end of the stream; an unfinished
+     *         last frame is dropped.
+     * @throws IOException if the channel fails
+     */
+    public ByteBuffer next() throws IOException {
+        if (buffer == null) {
+            return null;
+        }
+        while (true) {
+            for (int i = scanned; i < buffer.position(); i++) {
+                if (buffer.get(i) == NEWLINE) {
+                    oversized = skipping;
+                    skipping = false;
+                    int end = oversized ? start : i;
+                    if (end > start && buffer.get(end - 1) == CARRIAGE_RETURN) {
+                        end--;
+                    }
+                    frame.clear();
+                    frame.position(start);
+                    frame.limit(end);
+                    start = i + 1;
+                    scanned = start;
+                    return frame;
+                }
+            }
+            scanned = buffer.position();
+            if (start > 0) {
+                // move the unfinished frame to the front of the buffer
+                buffer.limit(buffer.position()).position(start);
+                buffer.compact();
+                scanned -= start;
+                start = 0;
+            }
+            if (!buffer.hasRemaining()) {
+                // drop the frame read so far and go on looking for its newline
+                buffer.clear();
+                scanned = 0;
+                skipping = true;
+            }
+            if (channel.read(buffer) < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return true iff the frame returned by the last call of next was longer than the
+     *         buffers of the pool, and was returned empty
+     */
+    public boolean isOversized() {
+        return oversized;
+    }
+
+    /**
+     * @return a new view of the buffer of this reader, to slice the frames returned by next 
+     *         without copying them. Setting its position and limit doesn't affect this reader.
+     *         Requires this reader is not closed.
+     */
+    public ByteBuffer newView() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * Give the buffer of this reader back to its pool. Doesn't close the channel.
+     * Frames returned before must not be used afterwards.
+     */
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+            frame = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FrameReader of " + channel;
+    }
+}
@@ -0,0 +1,182 @@
+package flingball;
+
+/**
+ * An immutable trace of one ball handoff between two boards.
+ * It carries a trace id and the monotonic timestamps (System.nanoTime()) taken at each hop:
+ * client send, server receive, server forward and destination receive.
+ * A timestamp that was not taken (yet) is UNKNOWN. The client send stamp is converted to the
+ * server's clock by the sending client (see HandoffTracer), the destination receive stamp is
+ * on the clock of the destination.
+ *
+ * On the wire a trace is the last part of a TRANSFER_BALL_REQUEST or PORTAL_BALL_REQUEST:
+ * TRACE ::= "trace" TRACEID STAMP (STAMP STAMP)?
+ * TRACEID ::= [^ \n\r]+
+ * STAMP ::= '-'?[0-9]+
+ * where the stamps are client send, server receive and server forward, in this order.
+ * The sending client writes the first stamp and the server appends the other two when
+ * it forwards the request.
+ */
+public class HandoffTrace {
+    public static final long UNKNOWN = Long.MIN_VALUE;
+    public static final String KEYWORD = "trace";
+
+    private final String id;
+    private final long sent;
+    private final long serverReceived;
+    private final long serverForwarded;
+    private final long destinationReceived;
+
+    // Abstraction function:
+    //   AF(id, sent, serverReceived, serverForwarded, destinationReceived) = the handoff
+    //      with trace id id, that was sent by a client at sent, received by the server at
+    //      serverReceived, forwarded by the server at serverForwarded and received by the
+    //      destination at destinationReceived, UNKNOWN meaning the hop has no timestamp.
+    //      The timestamps are on the server's monotonic clock, except destinationReceived,
+    //      which is on the destination's.
+    // Representation invariant:
+    //   id not null and has no whitespace
+    // Safety from rep exposure:
+    //   all fields are private, final and immutable
+
+    /**
+     * Make a new trace
+     * @param id trace id, requires no whitespace
+     * @param sent client send timestamp
+     * @param serverReceived server receive timestamp
+     * @param serverForwarded server forward timestamp
+     * @param destinationReceived destination receive timestamp
+     */
+    public HandoffTrace(String id, long sent, long serverReceived, long serverForwarded, long destinationReceived) {
+        this.id = id;
+        this.sent = sent;
+        this.serverReceived = serverReceived;
+        this.serverForwarded = serverForwarded;
+        this.destinationReceived = destinationReceived;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert id != null;
+        assert !id.isEmpty() && id.indexOf(' ') < 0;
+    }
+
+    /**
+     * Find the trace in a tokenized ball request, without moving the cursor of tokens.
+     * @param tokens tokenizer of the request
+     * @param from index of the first token after the fixed fields of the request, where its
+     *        options start; the fields are not searched, since a BALLNAME or BOARDNAME may be "trace"
+     * @return the index of the TRACE part in tokens, or tokens.count() if there is none
+     */
+    public static int indexIn(Tokenizer tokens, int from) {
+        return tokens.indexOf(KEYWORD, from);
+    }
+
+    /**
+     * Parse the TRACE part of a tokenized ball request. Moves the cursor of tokens.
+     * @param tokens tokenizer of the request
+     * @param index index of the "trace" keyword in tokens, as returned by indexIn
+     * @return the trace, with UNKNOWN destinationReceived, or null if tokens has no valid trace at index
+     */
+    public static HandoffTrace parse(Tokenizer tokens, int index) {
+        if (index + 2 >= tokens.count() || !tokens.seek(index).nextIs(KEYWORD)) {
+            return null;
+        }
+        try {
+            final String id = tokens.next();
+            final long[] stamps = {UNKNOWN, UNKNOWN, UNKNOWN};
+            for (int i = 0; i < stamps.length && tokens.hasNext(); i++) {
+                stamps[i] = tokens.nextLong();
+            }
+            return new HandoffTrace(id, stamps[0], stamps[1], stamps[2], UNKNOWN);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param received server receive timestamp
+     * @param forwarded server forward timestamp
+     * @return this trace with the server's timestamps
+     */
+    public HandoffTrace withServerStamps(long received, long forwarded) {
+        return new HandoffTrace(id, sent, received, forwarded, destinationReceived);
+    }
+
+    /**
+     * @param received destination receive timestamp
+     * @return this trace with the destination's receive timestamp
+     */
+    public HandoffTrace withDestinationReceived(long received) {
+        return new HandoffTrace(id, sent, serverReceived, serverForwarded, received);
+    }
+
+    /**
+     * @return the TRACE part of a request for this trace, starting with a space,
+     *         containing all known stamps up to the server forward
+     */
+    public String toProtocol() {
+        StringBuilder builder = new StringBuilder(" ").append(KEYWORD).append(' ').append(id).append(' ').append(sent);
+        if (serverReceived != UNKNOWN && serverForwarded != UNKNOWN) {
+            builder.append(' ').append(serverReceived).append(' ').append(serverForwarded);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the trace id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return client send timestamp
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return server receive timestamp
+     */
+    public long getServerReceived() {
+        return serverReceived;
+    }
+
+    /**
+     * @return server forward timestamp
+     */
+    public long getServerForwarded() {
+        return serverForwarded;
+    }
+
+    /**
+     * @return destination receive timestamp
+     */
+    public long getDestinationReceived() {
+        return destinationReceived;
+    }
+
+    @Override
+    public String toString() {
+        return "HandoffTrace " + id + " [" + sent + ", " + serverReceived + ", " + serverForwarded
+                + ", " + destinationReceived + "]";
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode() + Long.hashCode(sent);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof HandoffTrace)) { return false; }
+        final HandoffTrace that = (HandoffTrace) obj;
+        return this.id.equals(that.id) &&
+               this.sent == that.sent &&
+               this.serverReceived == that.serverReceived &&
+               this.serverForwarded == that.serverForwarded &&
+               this.destinationReceived == that.destinationReceived;
+    }
+}
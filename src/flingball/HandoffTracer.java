@@ -0,0 +1,203 @@
+package flingball;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A HandoffTracer records where the latency of ball handoffs between boards goes.
+ * Both Flingball and FlingballServer own one; each records the hops it can observe
+ * into one LatencyHistogram per hop:
+ *
+ *   CLIENT_TO_SERVER        client send      -> server receive       (server)
+ *   SERVER_QUEUE            server receive   -> server forward       (server)
+ *   SERVER_TO_DESTINATION   server forward   -> destination receive  (destination client)
+ *   DESTINATION_TO_TICK     destination receive -> applied at a board tick (destination client)
+ *   END_TO_END              client send      -> applied at a board tick (destination client)
+ *
+ * The server's clock is the timebase of the hops that span two processes. A client's tracer
+ * has the client's ClockSync and converts its own stamps to the server's clock with it: the
+ * client send stamp when a trace starts, and the destination receive and tick times when it
+ * records the hops. Until its ClockSync has an estimate, a client stamps traces it starts
+ * with an UNKNOWN send time and doesn't record the hops that span two processes, so the
+ * histograms never mix two clocks. The error of such a hop is at most the sum of half the
+ * round trips of the estimates of the two clients.
+ *
+ * Tracing is off unless enabled with setEnabled or the system property "flingball.trace=true";
+ * only a client with tracing enabled adds traces to the requests it sends.
+ * A HandoffTracer is thread-safe.
+ */
+public class HandoffTracer {
+
+    /**
+     * the hops of a handoff
+     */
+    public enum Hop {
+        CLIENT_TO_SERVER,
+        SERVER_QUEUE,
+        SERVER_TO_DESTINATION,
+        DESTINATION_TO_TICK,
+        END_TO_END,
+    }
+
+    private final String owner;
+    private final Optional<ClockSync> clock;
+    private final Map<Hop, LatencyHistogram> histograms;
+    private final AtomicLong nextId;
+    private volatile boolean enabled;
+
+    // Abstraction function:
+    //   AF(owner, clock, histograms, nextId, enabled) = the handoff latencies observed by
+    //      owner, where histograms.get(hop) are the latencies of hop. The local clock is the
+    //      server's if clock is empty, else clock estimates the server's clock. Traces started
+    //      here get ids owner-n for n >= nextId. New traces are only started if enabled.
+    // Representation invariant:
+    //   owner, clock, histograms, nextId not null, histograms has one entry per Hop
+    // Safety from rep exposure:
+    //   histograms is unmodifiable; its LatencyHistograms are shared on purpose so that
+    //   callers can read and reset them.
+    // Thread safety argument:
+    //   histograms is never modified after construction and its values are thread-safe,
+    //   clock is thread-safe, nextId is atomic and enabled is volatile.
+
+    /**
+     * Make a new tracer of the server, whose clock is the timebase of the traces
+     * @param owner name of the server owning this tracer, requires no whitespace
+     */
+    public HandoffTracer(String owner) {
+        this(owner, Optional.empty());
+    }
+
+    /**
+     * Make a new tracer of a client
+     * @param owner name of the board owning this tracer, requires no whitespace
+     * @param clock estimate of the server's clock of the client
+     */
+    public HandoffTracer(String owner, ClockSync clock) {
+        this(owner, Optional.of(clock));
+    }
+
+    private HandoffTracer(String owner, Optional<ClockSync> clock) {
+        this.owner = owner;
+        this.clock = clock;
+        Map<Hop, LatencyHistogram> map = new EnumMap<>(Hop.class);
+        for (Hop hop : Hop.values()) {
+            map.put(hop, new LatencyHistogram(hop.name().toLowerCase()));
+        }
+        this.histograms = Collections.unmodifiableMap(map);
+        this.nextId = new AtomicLong();
+        this.enabled = Boolean.getBoolean("flingball.trace");
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert owner != null && clock != null;
+        assert histograms.size() == Hop.values().length;
+        assert nextId != null;
+    }
+
+    /**
+     * @return the current monotonic time in nanoseconds used for all timestamps
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @param enabled whether requests sent by the owner of this tracer should carry traces
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return whether requests sent by the owner of this tracer carry traces
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start the trace of a handoff that is about to be sent.
+     * @return a new trace sent now on the server's clock (UNKNOWN if a client has no
+     *         estimate of it yet), or null if tracing is not enabled
+     */
+    public HandoffTrace start() {
+        if (!enabled) {
+            return null;
+        }
+        return new HandoffTrace(owner + "-" + nextId.getAndIncrement(), toServerTime(now()),
+                HandoffTrace.UNKNOWN, HandoffTrace.UNKNOWN, HandoffTrace.UNKNOWN);
+    }
+
+    /*
+     * the local time on the server's clock, UNKNOWN if there is no estimate of it
+     */
+    private long toServerTime(long local) {
+        if (!clock.isPresent()) {
+            return local;
+        }
+        return clock.get().hasEstimate() ? clock.get().toServerTime(local) : HandoffTrace.UNKNOWN;
+    }
+
+    /*
+     * record the time between two stamps if both are known
+     */
+    private void record(Hop hop, long from, long to) {
+        if (from != HandoffTrace.UNKNOWN && to != HandoffTrace.UNKNOWN) {
+            histograms.get(hop).record(to - from);
+        }
+    }
+
+    /**
+     * Record the hops seen by the server when it forwards a traced request.
+     * @param trace the trace with the server's stamps, whose client send stamp is on the
+     *        server's clock or UNKNOWN
+     */
+    public void recordForwarded(HandoffTrace trace) {
+        record(Hop.CLIENT_TO_SERVER, trace.getSent(), trace.getServerReceived());
+        record(Hop.SERVER_QUEUE, trace.getServerReceived(), trace.getServerForwarded());
+    }
+
+    /**
+     * Record the hops seen by the destination when a traced ball is applied at a board tick.
+     * @param trace the trace with the destination receive stamp on the local clock
+     * @param applied the time of the tick applying the ball on the local clock
+     */
+    public void recordApplied(HandoffTrace trace, long applied) {
+        final boolean received = trace.getDestinationReceived() != HandoffTrace.UNKNOWN;
+        record(Hop.SERVER_TO_DESTINATION, trace.getServerForwarded(),
+                received ? toServerTime(trace.getDestinationReceived()) : HandoffTrace.UNKNOWN);
+        record(Hop.DESTINATION_TO_TICK, trace.getDestinationReceived(), applied);
+        record(Hop.END_TO_END, trace.getSent(), toServerTime(applied));
+    }
+
+    /**
+     * @param hop a hop
+     * @return the latencies of hop recorded here
+     */
+    public LatencyHistogram getHistogram(Hop hop) {
+        return histograms.get(hop);
+    }
+
+    /**
+     * @return a human readable summary of all hops recorded here
+     */
+    public String report() {
+        StringBuilder builder = new StringBuilder("handoff latency at " + owner + ":");
+        for (LatencyHistogram histogram : histograms.values()) {
+            if (histogram.count() > 0) {
+                builder.append("\n  ").append(histogram);
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "HandoffTracer of " + owner;
+    }
+}
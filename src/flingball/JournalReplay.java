@@ -0,0 +1,317 @@
+package flingball;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JournalReplay replays the events of an EventJournal against a fresh FlingballServer, for
+ * load and regression testing. Every board of the journal is played by a headless
+ * SyntheticClient, which connects, sends its recorded TRANSFER_BALL_REQUESTs and
+ * PORTAL_BALL_REQUESTs and quits in the order of the journal, and the recorded joins are
+ * applied as operator commands.
+ *
+ * Usage:
+ * JournalReplay [--host HOST] [--port PORT] [--admin ADMIN_PORT] [--speed FACTOR] [--dump] DIR
+ * DIR is the directory of the journal. If no HOST is provided, a FlingballServer is started
+ * in this process on PORT (0, the default, picks a free port), and the joins are applied to
+ * it directly; against a remote HOST they are sent to its AdminEndpoint on ADMIN_PORT, and
+ * skipped if there is none.
+ * FACTOR scales the time between events: 1 replays them as they were recorded, 2 twice
+ * as fast, and 0 (the default) as fast as possible.
+ * With --dump, the events are only printed, one per line.
+ * e.g. JournalReplay --speed 4 journal
+ */
+public class JournalReplay {
+    private static final String LOCALHOST = "127.0.0.1";
+
+    /**
+     * A Joiner applies an operator command ("h" or "v") to the server replayed against.
+     */
+    public interface Joiner {
+        /**
+         * @param command the command, see FlingballServer.actOnCommand
+         * @return the reply of the server, a RESPONSE of the protocol
+         * @throws IOException if the command can't be sent
+         */
+        String join(String command) throws IOException;
+    }
+
+    private final String host;
+    private final int port;
+    private final Joiner joiner;
+    private final Map<Integer, SyntheticClient> clients;
+    private final Map<EventJournal.Type, Long> replayed;
+    private final AtomicLong received;
+    private long failed;
+    private long skipped;
+    private long elapsedNanos;
+
+    // Abstraction function:
+    //   AF(host, port, joiner, clients, replayed, received, failed, skipped, elapsedNanos) =
+    //      a replay against the server on host:port, which applies joins with joiner.
+    //      clients maps the userIDs of the journal to the clients playing their boards now.
+    //      replayed counts the events replayed of each type, of which failed got a "fail:"
+    //      reply; skipped counts the events of boards the journal didn't see connect, and
+    //      received the ball requests the clients got. elapsedNanos is the length of the last
+    //      replay.
+    // Representation invariant:
+    //   all fields not null, port >= 0, failed, skipped, elapsedNanos >= 0
+    // Safety from rep exposure:
+    //   all fields are private and never returned, only counts and summaries are.
+    // Thread safety argument:
+    //   JournalReplay is not thread-safe, it must be used by one thread only; received is
+    //   atomic since the clients count on their own threads.
+
+    /**
+     * Make a replay against a server.
+     * @param host host name of the server
+     * @param port port of the server
+     * @param joiner applies the recorded joins to the server
+     */
+    public JournalReplay(String host, int port, Joiner joiner) {
+        this.host = host;
+        this.port = port;
+        this.joiner = joiner;
+        this.clients = new HashMap<>();
+        this.replayed = new EnumMap<>(EventJournal.Type.class);
+        this.received = new AtomicLong();
+        this.failed = 0;
+        this.skipped = 0;
+        this.elapsedNanos = 0;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert host != null && joiner != null && clients != null && replayed != null && received != null;
+        assert port >= 0;
+        assert failed >= 0 && skipped >= 0 && elapsedNanos >= 0;
+    }
+
+    /**
+     * Replay or dump a journal and print a summary, see the class comment.
+     * @param args command line arguments
+     * @throws IOException if the journal can't be read or a client can't talk to the server
+     * @throws InterruptedException if interrupted while waiting for the next event
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = null;
+        int port = 0;
+        int adminPort = -1;
+        double speed = 0;
+        boolean dump = false;
+        String directory = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--host": host = args[++i]; break;
+            case "--port": port = Integer.parseInt(args[++i]); break;
+            case "--admin": adminPort = Integer.parseInt(args[++i]); break;
+            case "--speed": speed = Double.parseDouble(args[++i]); break;
+            case "--dump": dump = true; break;
+            default:
+                directory = args[i];
+            }
+        }
+        if (directory == null) {
+            System.err.println("usage: JournalReplay [--host HOST] [--port PORT] [--admin ADMIN_PORT]"
+                    + " [--speed FACTOR] [--dump] DIR");
+            return;
+        }
+        final List<EventJournal.Event> events = EventJournal.read(Paths.get(directory));
+        if (dump) {
+            for (EventJournal.Event event : events) {
+                System.out.println(event);
+            }
+            return;
+        }
+
+        FlingballServer server = null;
+        Joiner joiner;
+        if (host == null) {
+            host = LOCALHOST;
+            server = new FlingballServer(port);
+            port = server.port();
+            final FlingballServer toServe = server;
+            Thread serving = new Thread(() -> {
+                try {
+                    toServe.serve();
+                } catch (IOException ioe) {
+                    throw new RuntimeException(ioe);
+                }
+            });
+            serving.setDaemon(true);
+            serving.start();
+            joiner = server::actOnCommand;
+        } else if (adminPort >= 0) {
+            joiner = adminJoiner(adminPort);
+        } else {
+            System.err.println("no --admin port, joins are skipped");
+            joiner = command -> "fail: no admin port";
+        }
+        JournalReplay replay = new JournalReplay(host, port, joiner);
+        replay.replay(events, speed);
+        System.out.println(replay.report());
+        if (server != null) {
+            System.out.println(server.getStatsReport());
+        }
+        System.exit(0);
+    }
+
+    /*
+     * a Joiner that sends commands to the AdminEndpoint on adminPort of the loopback address
+     */
+    private static Joiner adminJoiner(int adminPort) throws IOException {
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), adminPort);
+        final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        final PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        return command -> {
+            out.println(command);
+            final StringBuilder reply = new StringBuilder();
+            for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+                reply.append(reply.length() == 0 ? "" : "\n").append(line);
+            }
+            return reply.toString();
+        };
+    }
+
+    /**
+     * Replay events in order, then close the clients of the boards still connected.
+     * @param events events of a journal, see EventJournal.read
+     * @param speed how much faster than recorded to replay, 0 for as fast as possible
+     * @throws IOException if a client can't talk to the server
+     * @throws InterruptedException if interrupted while waiting for the next event
+     */
+    public void replay(List<EventJournal.Event> events, double speed) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        final long firstMillis = events.isEmpty() ? 0 : events.get(0).getTimeMillis();
+        for (EventJournal.Event event : events) {
+            if (speed > 0) {
+                final long due = start + (long) (TimeUnit.MILLISECONDS.toNanos(event.getTimeMillis() - firstMillis) / speed);
+                final long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+            apply(event);
+        }
+        for (SyntheticClient client : clients.values()) {
+            client.close();
+        }
+        clients.clear();
+        elapsedNanos = System.nanoTime() - start;
+        checkRep();
+    }
+
+    /*
+     * replay one event
+     */
+    private void apply(EventJournal.Event event) throws IOException {
+        String reply;
+        switch (event.getType()) {
+        case CONNECT:
+            final List<String> words = Arrays.asList(event.getPayload().split(" "));
+            if (words.size() < 2) {
+                skipped++;
+                return;
+            }
+            SyntheticClient client = new SyntheticClient(host, port, words.get(1),
+                    words.subList(2, words.size()), request -> received.incrementAndGet());
+            reply = client.connect();
+            if (reply.startsWith("succeed:")) {
+                clients.put(event.getUserID(), client);
+            } else {
+                client.close();
+            }
+            break;
+        case JOIN:
+            reply = joiner.join(event.getPayload());
+            break;
+        case DISJOIN:
+            final SyntheticClient leaving = clients.remove(event.getUserID());
+            if (leaving == null) {
+                skipped++;
+                return;
+            }
+            leaving.close();
+            reply = "succeed: quit";
+            break;
+        default:
+            final SyntheticClient sender = clients.get(event.getUserID());
+            if (sender == null) {
+                skipped++;
+                return;
+            }
+            reply = sender.send(event.getPayload());
+        }
+        replayed.merge(event.getType(), 1L, Long::sum);
+        if (reply.startsWith("fail:")) {
+            failed++;
+        }
+    }
+
+    /**
+     * @param type type of event
+     * @return the number of events of type replayed so far
+     */
+    public long getReplayed(EventJournal.Type type) {
+        return replayed.getOrDefault(type, 0L);
+    }
+
+    /**
+     * @return the number of events replayed so far that got a "fail:" reply
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the number of events skipped so far, since the journal didn't see their
+     *         board connect
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return the number of ball requests the clients of the replay received so far
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * @return a human readable summary of the last replay
+     */
+    public String report() {
+        final double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        long total = 0;
+        final StringBuilder counts = new StringBuilder();
+        for (EventJournal.Type type : EventJournal.Type.values()) {
+            final long count = replayed.getOrDefault(type, 0L);
+            total += count;
+            counts.append(' ').append(type.name().toLowerCase()).append('=').append(count);
+        }
+        return "JournalReplay: " + total + " events in " + String.format("%.2f", seconds) + "s"
+                + String.format(" (%.1f/s)%n", total / Math.max(seconds, 1e-9))
+                + "  " + counts.substring(1) + "\n"
+                + "  failed=" + failed + " skipped=" + skipped + " balls received=" + received.get();
+    }
+
+    @Override
+    public String toString() {
+        return "JournalReplay against " + host + ":" + port;
+    }
+}
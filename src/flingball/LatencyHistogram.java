@@ -0,0 +1,179 @@
+package flingball;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of latencies, recorded in nanoseconds.
+ * Values are kept in log-linear buckets (32 sub-buckets per power of two),
+ * so any reported percentile is within about 3% of the true value while
+ * recording stays constant-time and allocation-free.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_LIMIT = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int FIRST_EXPONENT = 6; // 2^6 == LINEAR_LIMIT
+    private static final int BUCKETS = LINEAR_LIMIT + (Long.SIZE - 1 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts;
+    private final AtomicLong total;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    // Abstraction function:
+    //   AF(name, counts, total, sum, max) = a multiset of total latencies called name,
+    //        where counts[i] latencies fell into bucket i, their sum is sum nanoseconds
+    //        and the largest one is max nanoseconds.
+    // Representation invariant:
+    //   1. all fields not null, counts has BUCKETS entries
+    //   2. total is the sum of counts, total, sum, max >= 0
+    // Safety from rep exposure:
+    //   all fields are private and final, only primitives and Strings are returned
+    // Thread safety argument:
+    //   every field is final and either immutable or an atomic type; a snapshot read
+    //   while other threads record may be off by the values recorded meanwhile,
+    //   which is acceptable for monitoring.
+
+    /**
+     * Make a new empty histogram.
+     * @param name name used when the histogram is printed
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.total = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert name != null;
+        assert counts.length() == BUCKETS;
+    }
+
+    /*
+     * the bucket a value falls into
+     */
+    private static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    /*
+     * the largest value that falls into given bucket
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        final int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + FIRST_EXPONENT;
+        final long subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        final long lowest = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Record one latency. Negative values (e.g. from clock skew) are recorded as 0.
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded latencies
+     */
+    public long count() {
+        return total.get();
+    }
+
+    /**
+     * @return the largest recorded latency in nanoseconds, 0 if empty
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean recorded latency in nanoseconds, 0 if empty
+     */
+    public double mean() {
+        final long n = total.get();
+        return n == 0 ? 0 : sum.get() / (double) n;
+    }
+
+    /**
+     * @param percentile requires 0 <= percentile <= 100
+     * @return an upper bound (within the bucket precision) of the latency at the
+     *         given percentile in nanoseconds, 0 if empty
+     */
+    public long percentile(double percentile) {
+        assert 0 <= percentile && percentile <= 100;
+        final long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Remove all recorded latencies.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return the name of this histogram
+     */
+    public String getName() {
+        return name;
+    }
+
+    /*
+     * nanoseconds as fractional milliseconds
+     */
+    private static String millis(double nanos) {
+        return String.format("%.3fms", nanos / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+        return name + ": n=" + count()
+                + " mean=" + millis(mean())
+                + " p50=" + millis(percentile(50))
+                + " p99=" + millis(percentile(99))
+                + " p999=" + millis(percentile(99.9))
+                + " max=" + millis(max());
+    }
+}
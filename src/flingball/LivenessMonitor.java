@@ -0,0 +1,137 @@
+package flingball;
+
+import java.util.List;
+
+/**
+ * A LivenessMonitor tells which clients of a FlingballServer stopped answering: every
+ * heartbeat interval it reports the clients that didn't answer the server for
+ * missedHeartbeats intervals, so that the server evicts them and pings the others.
+ * A monitor with a heartbeat interval of 0 is disabled: it never beats nor reports a client.
+ *
+ * Time is given by the caller in milliseconds, e.g. of System.currentTimeMillis().
+ * LivenessMonitors are mutable and thread-safe.
+ */
+public class LivenessMonitor {
+    private static final int SLOTS = 64;
+
+    /**
+     * A Listener is told of every heartbeat of a LivenessMonitor.
+     */
+    public interface Listener {
+        /**
+         * Called on the heartbeat thread of the monitor.
+         * @param silent userIDs of the clients that didn't answer in time since the last beat
+         */
+        void beat(List<Integer> silent);
+    }
+
+    private final long heartbeatMillis;
+    private final int missedHeartbeats;
+    private final TimerWheel<Integer> deadlines;
+
+    // Abstraction function:
+    //   AF(heartbeatMillis, missedHeartbeats, deadlines) = the liveness of clients that must
+    //      answer every heartbeatMillis * missedHeartbeats, by the deadline they have in
+    //      deadlines; never checked if heartbeatMillis is 0
+    // Representation invariant:
+    //   heartbeatMillis >= 0, missedHeartbeats >= 1, deadlines not null
+    //   deadlines is empty if heartbeatMillis is 0
+    // Safety from rep exposure:
+    //   all fields are private and final, deadlines is never returned
+    // Thread safety argument:
+    //   heartbeatMillis and missedHeartbeats are immutable, deadlines is thread-safe and
+    //   each method makes a single call to it
+
+    /**
+     * Make a LivenessMonitor.
+     * @param heartbeatMillis interval between heartbeats in milliseconds, 0 for none
+     * @param missedHeartbeats number of heartbeat intervals a client may stay silent, >= 1
+     * @param nowMillis the current time
+     */
+    public LivenessMonitor(long heartbeatMillis, int missedHeartbeats, long nowMillis) {
+        this.heartbeatMillis = heartbeatMillis;
+        this.missedHeartbeats = missedHeartbeats;
+        this.deadlines = new TimerWheel<>(Math.max(1, heartbeatMillis), SLOTS, nowMillis);
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert heartbeatMillis >= 0;
+        assert missedHeartbeats >= 1;
+        assert deadlines != null;
+        assert heartbeatMillis > 0 || deadlines.size() == 0;
+    }
+
+    /**
+     * @return true iff this monitor beats, i.e. its heartbeat interval isn't 0
+     */
+    public boolean isEnabled() {
+        return heartbeatMillis > 0;
+    }
+
+    /**
+     * @return time a client may stay silent before it is reported, in milliseconds
+     */
+    public long getTimeoutMillis() {
+        return heartbeatMillis * missedHeartbeats;
+    }
+
+    /**
+     * Record that a client answered, which gives it the timeout from now to answer again.
+     * Does nothing if this monitor is disabled.
+     * @param userID userID of the client
+     * @param nowMillis the current time
+     */
+    public void answered(int userID, long nowMillis) {
+        if (isEnabled()) {
+            deadlines.schedule(userID, nowMillis + getTimeoutMillis());
+        }
+        checkRep();
+    }
+
+    /**
+     * Stop watching a client, e.g. because it disconnected.
+     * @param userID userID of the client
+     */
+    public void forget(int userID) {
+        deadlines.cancel(userID);
+    }
+
+    /**
+     * Advance to a time and forget the clients that didn't answer in time.
+     * @param nowMillis the current time, not before the last call
+     * @return the userIDs of the clients that didn't answer in time since the last call
+     */
+    public List<Integer> silent(long nowMillis) {
+        return deadlines.advance(nowMillis);
+    }
+
+    /**
+     * Start beating on a daemon thread, until the thread is interrupted; does nothing if
+     * this monitor is disabled.
+     * @param listener told of every beat with the clients silent since the last one
+     */
+    public void start(Listener listener) {
+        if (!isEnabled()) {
+            return;
+        }
+        Thread heartbeats = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(heartbeatMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                listener.beat(silent(System.currentTimeMillis()));
+            }
+        }, "heartbeat");
+        heartbeats.setDaemon(true);
+        heartbeats.start();
+    }
+
+    @Override
+    public String toString() {
+        return "LivenessMonitor beating every " + heartbeatMillis + " ms, timeout " + getTimeoutMillis() + " ms";
+    }
+}
@@ -0,0 +1,456 @@
+package flingball;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoadGenerator measures how many boards and ball transfers per second a
+ * FlingballServer can sustain.
+ * It spins up N headless SyntheticClients, each claiming a board with some portals,
+ * joins their boards into a grid (or torus) and makes every client fire
+ * TRANSFER_BALL_REQUESTs at its grid neighbours and PORTAL_BALL_REQUESTs at random
+ * boards, at a fixed total target rate.
+ *
+ * It reports the achieved throughput, the round trip of each request to the server's
+ * reply, and the delivery latency from sending a ball to the destination client
+ * receiving it (p50/p99/p999), followed by the stats of the in-process server if any.
+ *
+ * Usage:
+ * LoadGenerator [--host HOST] [--port PORT] [--clients N] [--cols COLS] [--torus]
+ *               [--rate RATE] [--duration SECONDS] [--portals K] [--portal-ratio FRACTION]
+ * If no HOST is provided, a FlingballServer is started in this process on PORT
+ * (0, the default, picks a free port) and the boards are joined through it.
+ * Against a remote HOST the boards can't be joined by this tool, but ball traffic
+ * still follows the grid.
+ * RATE is the total number of ball requests per second over all clients (default 1000),
+ * COLS the width of the grid (default the ceiling of the square root of N).
+ * e.g. LoadGenerator --clients 64 --cols 8 --torus --rate 5000 --duration 30
+ */
+public class LoadGenerator implements Closeable {
+    private static final String LOCALHOST = "127.0.0.1";
+    private static final String BALL_PREFIX = "lg_";
+    private static final long DRAIN_MILLIS = 1000;
+    private static final long JOIN_WAIT_MILLIS = 5000;
+
+    private final List<SyntheticClient> clients;
+    private final int cols;
+    private final boolean torus;
+    private final double portalRatio;
+    private final Map<Long, Long> sentAt;
+    private final AtomicLong sequence;
+    private final AtomicLong sent;
+    private final AtomicLong delivered;
+    private final AtomicLong failed;
+    private final LatencyHistogram serverRoundTrip;
+    private final LatencyHistogram delivery;
+    private long elapsedNanos;
+
+    // Abstraction function:
+    //   AF(clients, cols, torus, portalRatio, sentAt, sequence, sent, delivered, failed,
+    //      serverRoundTrip, delivery, elapsedNanos) =
+    //      a load run over the boards of clients laid out row by row in a grid
+    //      cols wide (wrapping around at the edges if torus), where a portalRatio fraction of
+    //      the traffic are portal requests. sentAt maps the sequence number of every ball that is
+    //      still in flight to the System.nanoTime() it was sent at. sent, delivered and failed count
+    //      the ball requests sent, received by a destination and refused by the server.
+    //      elapsedNanos is the length of the last run.
+    // Representation invariant:
+    //   1. all fields not null, cols > 0, 0 <= portalRatio <= 1
+    //   2. delivered <= sent
+    // Safety from rep exposure:
+    //   all fields are private and never returned, only summaries are printed.
+    // Thread safety argument:
+    //   clients and elapsedNanos are only modified before the sending threads start or
+    //   after they are joined. sentAt is a concurrent map,
+    //   counters are atomic and histograms are thread-safe.
+
+    /**
+     * Make a load run over already connected clients.
+     * @param clients connected clients, laid out row by row
+     * @param cols width of the grid, requires cols > 0
+     * @param torus whether the grid wraps around
+     * @param portalRatio fraction of requests that are portal requests, requires in [0, 1]
+     */
+    public LoadGenerator(List<SyntheticClient> clients, int cols, boolean torus, double portalRatio) {
+        this.clients = new ArrayList<>(clients);
+        this.cols = cols;
+        this.torus = torus;
+        this.portalRatio = portalRatio;
+        this.sentAt = new ConcurrentHashMap<>();
+        this.sequence = new AtomicLong();
+        this.sent = new AtomicLong();
+        this.delivered = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.serverRoundTrip = new LatencyHistogram("server round trip");
+        this.delivery = new LatencyHistogram("delivery");
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert clients != null;
+        assert cols > 0;
+        assert 0 <= portalRatio && portalRatio <= 1;
+        assert delivered.get() <= sent.get();
+    }
+
+    /**
+     * Connect a grid of synthetic boards, run the load and print a summary, see the class comment.
+     * @param args command line arguments
+     * @throws IOException if a client can't connect to the server
+     * @throws InterruptedException if interrupted while running the load
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = null;
+        int port = 0;
+        int clientNumber = 16;
+        int cols = 0;
+        boolean torus = false;
+        double rate = 1000;
+        double duration = 10;
+        int portalsPerBoard = 2;
+        double portalRatio = 0.2;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--host": host = args[++i]; break;
+            case "--port": port = Integer.parseInt(args[++i]); break;
+            case "--clients": clientNumber = Integer.parseInt(args[++i]); break;
+            case "--cols": cols = Integer.parseInt(args[++i]); break;
+            case "--torus": torus = true; break;
+            case "--rate": rate = Double.parseDouble(args[++i]); break;
+            case "--duration": duration = Double.parseDouble(args[++i]); break;
+            case "--portals": portalsPerBoard = Integer.parseInt(args[++i]); break;
+            case "--portal-ratio": portalRatio = Double.parseDouble(args[++i]); break;
+            default:
+                System.err.println("unknown argument " + args[i]);
+                return;
+            }
+        }
+        if (cols <= 0) {
+            cols = (int) Math.ceil(Math.sqrt(clientNumber));
+        }
+        FlingballServer server = null;
+        if (host == null) {
+            host = LOCALHOST;
+            server = new FlingballServer(port);
+            port = server.port();
+            final FlingballServer toServe = server;
+            Thread serving = new Thread(() -> {
+                try {
+                    toServe.serve();
+                } catch (IOException ioe) {
+                    throw new RuntimeException(ioe);
+                }
+            });
+            serving.setDaemon(true);
+            serving.start();
+        }
+
+        final LoadGenerator generator;
+        try {
+            generator = connect(host, port, clientNumber, portalsPerBoard, cols, torus, portalRatio);
+        } catch (IOException ioe) {
+            System.err.println(ioe.getMessage());
+            return;
+        }
+        if (server != null) {
+            generator.join(server);
+        }
+        generator.run(rate, duration);
+        System.out.println(generator.report());
+        if (server != null) {
+            System.out.println(server.getStatsReport());
+        }
+        generator.close();
+        System.exit(0);
+    }
+
+    /**
+     * Connect new SyntheticClients to a server, one per board of the grid, and make a load
+     * run over them that records the balls they receive.
+     * @param host host name of the server
+     * @param port port of the server
+     * @param clientNumber number of clients, requires > 0
+     * @param portalsPerBoard number of portals of every board, requires >= 0
+     * @param cols width of the grid, requires cols > 0
+     * @param torus whether the grid wraps around
+     * @param portalRatio fraction of requests that are portal requests, requires in [0, 1]
+     * @return a load run over the connected clients; close it when done
+     * @throws IOException if a client can't connect, after closing the clients connected
+     */
+    public static LoadGenerator connect(String host, int port, int clientNumber, int portalsPerBoard,
+            int cols, boolean torus, double portalRatio) throws IOException {
+        final LoadGenerator[] generator = new LoadGenerator[1];
+        List<SyntheticClient> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < clientNumber; i++) {
+                List<String> portals = new ArrayList<>();
+                for (int p = 0; p < portalsPerBoard; p++) {
+                    portals.add("p" + p);
+                }
+                SyntheticClient client = new SyntheticClient(host, port, boardName(i), portals,
+                        request -> generator[0].arrived(request));
+                clients.add(client);
+                String reply = client.connect();
+                if (!reply.startsWith("succeed:")) {
+                    throw new IOException("client " + boardName(i) + " failed to connect: " + reply);
+                }
+            }
+        } catch (IOException ioe) {
+            for (SyntheticClient client : clients) {
+                client.close();
+            }
+            throw ioe;
+        }
+        generator[0] = new LoadGenerator(clients, cols, torus, portalRatio);
+        return generator[0];
+    }
+
+    /*
+     * name of the i-th board
+     */
+    private static String boardName(int i) {
+        return "lg" + i;
+    }
+
+    /*
+     * index of the neighbour of board i at given offset in the grid, -1 if none
+     */
+    private int neighbour(int i, int dRow, int dCol) {
+        final int rows = (clients.size() + cols - 1) / cols;
+        int row = i / cols + dRow;
+        int col = i % cols + dCol;
+        if (torus) {
+            row = (row + rows) % rows;
+            col = (col + cols) % cols;
+        }
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return -1;
+        }
+        final int index = row * cols + col;
+        return index < clients.size() ? index : -1;
+    }
+
+    /**
+     * Join all boards into the grid through an in-process server, in one pass with one
+     * JOINS_REQUEST per client, and wait until the clients have been told about their neighbours.
+     * @param server the server the clients are connected to
+     * @throws IOException if a join request can't be sent
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void join(FlingballServer server) throws IOException, InterruptedException {
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            names.add(boardName(i));
+        }
+        final Topology topology = Topology.grid(cols, names, torus);
+        server.applyTopology(topology);
+        final int expected = topology.size();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(JOIN_WAIT_MILLIS);
+        while (joinedSides() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        if (joinedSides() < expected) {
+            System.err.println("only " + joinedSides() + " of " + expected + " board sides were joined");
+        }
+    }
+
+    /*
+     * number of board sides the clients know are joined
+     */
+    private int joinedSides() {
+        int joined = 0;
+        for (SyntheticClient client : clients) {
+            joined += client.getNeighbours().size();
+        }
+        return joined;
+    }
+
+    /**
+     * Fire ball requests from all clients at a fixed total rate.
+     * Each client sends on its own thread; if a client falls behind its schedule it
+     * sends without pausing until it catches up, so a slow server shows up as latency.
+     * Returns after duration seconds plus a short drain period for balls still in flight.
+     * @param rate total requests per second over all clients, requires > 0
+     * @param duration seconds to send for, requires > 0
+     * @throws InterruptedException if interrupted while waiting for the senders
+     */
+    public void run(double rate, double duration) throws InterruptedException {
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) * clients.size() / rate);
+        final long start = System.nanoTime();
+        final long end = start + (long) (duration * TimeUnit.SECONDS.toNanos(1));
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            final int index = i;
+            // stagger the clients so they don't all send at the same instant
+            final long offset = interval * i / clients.size();
+            Thread sender = new Thread(() -> sendLoop(index, start + offset, interval, end), "sender-" + i);
+            senders.add(sender);
+            sender.start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        final long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_MILLIS);
+        while (!sentAt.isEmpty() && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        elapsedNanos = System.nanoTime() - start;
+        checkRep();
+    }
+
+    /*
+     * send requests from client index on a fixed schedule until end
+     */
+    private void sendLoop(int index, long first, long interval, long end) {
+        final SyntheticClient client = clients.get(index);
+        final Random random = new Random(index);
+        final int[] neighbours = {
+            neighbour(index, 0, -1), neighbour(index, 0, 1), neighbour(index, -1, 0), neighbour(index, 1, 0)
+        };
+        int turn = 0;
+        for (long next = first; next < end; next += interval) {
+            final long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            final long seq = sequence.incrementAndGet();
+            final String request;
+            if (random.nextDouble() < portalRatio) {
+                SyntheticClient target = clients.get(random.nextInt(clients.size()));
+                if (target.getPortals().isEmpty()) {
+                    continue;
+                }
+                String portal = target.getPortals().get(random.nextInt(target.getPortals().size()));
+                request = "port " + target.getBoardName() + " " + portal + " 10.0 10.0 1.0 1.0 "
+                        + BALL_PREFIX + seq + " from " + client.getBoardName();
+            } else {
+                int target = -1;
+                for (int tries = 0; tries < neighbours.length && target < 0; tries++) {
+                    target = neighbours[turn++ % neighbours.length];
+                }
+                if (target < 0) {
+                    target = index;
+                }
+                request = "tran " + boardName(target) + " 0.5 10.0 1.0 1.0 " + BALL_PREFIX + seq;
+            }
+            final long sendTime = System.nanoTime();
+            sentAt.put(seq, sendTime);
+            sent.incrementAndGet();
+            try {
+                String reply = client.send(request);
+                serverRoundTrip.record(System.nanoTime() - sendTime);
+                if (!reply.startsWith("succeed:")) {
+                    sentAt.remove(seq);
+                    failed.incrementAndGet();
+                }
+            } catch (IOException ioe) {
+                sentAt.remove(seq);
+                failed.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /*
+     * record the arrival of a ball request at a destination client
+     */
+    private void arrived(String request) {
+        final long now = System.nanoTime();
+        String[] tokens = request.split(" ");
+        // the ball name is the 6th token of "tran" and the 7th of "port"
+        String ballName = tokens[0].equals("tran") ? tokens[5] : tokens[6];
+        if (!ballName.startsWith(BALL_PREFIX)) {
+            return;
+        }
+        Long sendTime = sentAt.remove(Long.parseLong(ballName.substring(BALL_PREFIX.length())));
+        if (sendTime != null) {
+            delivery.record(now - sendTime);
+            delivered.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of ball requests sent
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * @return number of balls sent that a destination received
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * @return number of ball requests the server refused
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return number of balls accepted by the server that no destination received yet
+     */
+    public long getLost() {
+        return sentAt.size();
+    }
+
+    /**
+     * @param percentile requires 0 <= percentile <= 100
+     * @return the round trip of a request to the server's reply at percentile, in
+     *         nanoseconds, see LatencyHistogram.percentile; 0 if no reply was received
+     */
+    public long roundTripPercentile(double percentile) {
+        return serverRoundTrip.percentile(percentile);
+    }
+
+    /**
+     * @param percentile requires 0 <= percentile <= 100
+     * @return the latency from sending a ball to its destination receiving it at
+     *         percentile, in nanoseconds, see LatencyHistogram.percentile; 0 if none arrived
+     */
+    public long deliveryPercentile(double percentile) {
+        return delivery.percentile(percentile);
+    }
+
+    /**
+     * Close all the clients of this load run.
+     * @throws IOException if a client can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        for (SyntheticClient client : clients) {
+            client.close();
+        }
+    }
+
+    /**
+     * @return a human readable summary of the last run
+     */
+    public String report() {
+        final double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        return "LoadGenerator: " + clients.size() + " boards, " + cols + " columns" + (torus ? " (torus)" : "") + "\n"
+                + "  sent=" + sent.get() + " delivered=" + delivered.get() + " failed=" + failed.get()
+                + " lost=" + sentAt.size() + "\n"
+                + String.format("  throughput=%.1f sent/s %.1f delivered/s%n",
+                        sent.get() / seconds, delivered.get() / seconds)
+                + "  " + serverRoundTrip + "\n"
+                + "  " + delivery;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadGenerator over " + clients.size() + " boards";
+    }
+}
@@ -0,0 +1,184 @@
+package flingball;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A RegistrySnapshot is an immutable copy of the routing registry of a FlingballServer: the
+ * boards it knows with their portals, and the Topology of the joins between them. A server
+ * writes snapshots to disk while it runs and on shutdown, and restores the last one when it
+ * starts again, so that the boards that reconnect are joined to their previous neighbours
+ * without the operator entering the joins again.
+ *
+ * A snapshot file is small and is:
+ * SNAPSHOT ::= MAGIC VERSION COUNT BOARD* COUNT JOIN*
+ * MAGIC ::= int 0x46424231 ("FBR1")
+ * VERSION ::= short 1
+ * COUNT ::= int, number of entries that follow
+ * BOARD ::= NAME short PORTALNAME*, the short being the number of PORTALNAMEs
+ * JOIN ::= ("h" | "v") NAME NAME, as a byte and the names of the two boards
+ * with all numbers big-endian and names in modified UTF-8, see DataOutput.writeUTF.
+ */
+public class RegistrySnapshot {
+    private static final int MAGIC = 0x46424231;
+    private static final short VERSION = 1;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Map<String, List<String>> portals;
+    private final Topology topology;
+
+    // Abstraction function:
+    //   AF(portals, topology) = the registry where the board b has the portals portals.get(b),
+    //      in order, and the boards are joined as in topology
+    // Representation invariant:
+    //   portals, topology not null, no list of portals is null
+    // Safety from rep exposure:
+    //   portals and its lists are unmodifiable copies, topology is immutable
+
+    /**
+     * Make a snapshot.
+     * @param portals maps the boards of the registry to their portal names
+     * @param topology the joins between boards of the registry
+     */
+    public RegistrySnapshot(Map<String, List<String>> portals, Topology topology) {
+        final Map<String, List<String>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> board : portals.entrySet()) {
+            copy.put(board.getKey(), Collections.unmodifiableList(new ArrayList<>(board.getValue())));
+        }
+        this.portals = Collections.unmodifiableMap(copy);
+        this.topology = topology;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert portals != null && topology != null;
+        for (List<String> names : portals.values()) {
+            assert names != null;
+        }
+    }
+
+    /**
+     * @return the boards of this registry, in the order they were given
+     */
+    public Set<String> getBoards() {
+        return portals.keySet();
+    }
+
+    /**
+     * @param board name of a board
+     * @return the portal names of board, empty if board is not in this registry
+     */
+    public List<String> getPortals(String board) {
+        return portals.getOrDefault(board, Collections.emptyList());
+    }
+
+    /**
+     * @return the joins between boards of this registry
+     */
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Write this snapshot to a file, atomically: the file is replaced by a complete snapshot
+     * or left as it was, never half written.
+     * @param file the snapshot file, replaced if it exists
+     * @throws IOException if the snapshot can't be written
+     */
+    public void write(Path file) throws IOException {
+        final Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(portals.size());
+            for (Map.Entry<String, List<String>> board : portals.entrySet()) {
+                out.writeUTF(board.getKey());
+                out.writeShort(board.getValue().size());
+                for (String portal : board.getValue()) {
+                    out.writeUTF(portal);
+                }
+            }
+            final String[] joins = topology.toString().split("\n");
+            final int count = topology.getBoards().isEmpty() ? 0 : joins.length;
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                // "h" NAME NAME or "v" NAME NAME, see Topology.toString
+                final String[] join = joins[i].split(" ");
+                out.writeByte(join[0].charAt(0));
+                out.writeUTF(join[1]);
+                out.writeUTF(join[2]);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a snapshot written by write.
+     * @param file the snapshot file
+     * @return the snapshot in file
+     * @throws IOException if file can't be read or is not a snapshot
+     */
+    public static RegistrySnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a registry snapshot");
+            }
+            final short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException(file + " has snapshot version " + version + ", expected " + VERSION);
+            }
+            final Map<String, List<String>> portals = new LinkedHashMap<>();
+            for (int boards = in.readInt(); boards > 0; boards--) {
+                final String board = in.readUTF();
+                final List<String> names = new ArrayList<>();
+                for (int count = in.readShort(); count > 0; count--) {
+                    names.add(in.readUTF());
+                }
+                portals.put(board, names);
+            }
+            final StringBuilder joins = new StringBuilder();
+            for (int count = in.readInt(); count > 0; count--) {
+                final char kind = (char) in.readByte();
+                if (kind != 'h' && kind != 'v') {
+                    throw new IOException(file + " has a join of unknown kind " + kind);
+                }
+                joins.append(kind).append(' ').append(in.readUTF()).append(' ').append(in.readUTF()).append('\n');
+            }
+            try {
+                return new RegistrySnapshot(portals, Topology.parse(joins.toString(), Collections.emptyList()));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + " has inconsistent joins: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        return that instanceof RegistrySnapshot
+                && portals.equals(((RegistrySnapshot) that).portals)
+                && topology.equals(((RegistrySnapshot) that).topology);
+    }
+
+    @Override
+    public int hashCode() {
+        return portals.hashCode() + 31 * topology.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RegistrySnapshot of " + portals.size() + " boards, " + topology.size() / 2 + " joins";
+    }
+}
@@ -0,0 +1,130 @@
+package flingball;
+
+import java.util.List;
+import java.util.Optional;
+
+import physics.Vect;
+
+/**
+ * A RetryPolicy decides what a FlingballServer does with the balls of its BallLedger that
+ * their destination didn't acknowledge in time: send them again, or evict a destination
+ * that didn't acknowledge a ball sent to it maxAttempts times. It also makes the request
+ * that gives a ball which left the ledger back to the board that sent it.
+ *
+ * RetryPolicies are thread-safe, since the ledger is; the server still decides and acts
+ * on a ball under its own lock, so that no other thread closes the ball in between.
+ */
+public class RetryPolicy {
+
+    /**
+     * What to do with a ball not acknowledged in time.
+     */
+    public enum Action {
+        /** nothing, the ball already left the ledger */
+        SKIP,
+        /** send the ball again to its destination */
+        RESEND,
+        /** evict the destination, which gives its balls back to their senders */
+        EVICT
+    }
+
+    private final BallLedger ledger;
+    private final int maxAttempts;
+
+    // Abstraction function:
+    //   AF(ledger, maxAttempts) = the policy sending the balls of ledger not acknowledged in
+    //      time again, up to maxAttempts times each to a destination that is still connected
+    // Representation invariant:
+    //   ledger not null, maxAttempts >= 1
+    // Safety from rep exposure:
+    //   all fields are private and final, ledger is never returned
+    // Thread safety argument:
+    //   maxAttempts is immutable, ledger is thread-safe
+
+    /**
+     * Make a RetryPolicy.
+     * @param ledger the ledger of the balls in flight
+     * @param maxAttempts number of times a ball is sent to a destination before it is evicted, >= 1
+     */
+    public RetryPolicy(BallLedger ledger, int maxAttempts) {
+        this.ledger = ledger;
+        this.maxAttempts = maxAttempts;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert ledger != null;
+        assert maxAttempts >= 1;
+    }
+
+    /**
+     * @param nowMillis the current time in milliseconds, not before the last call
+     * @return the balls whose destination didn't acknowledge them in time since the last
+     *         call, see BallLedger.expired; decide on each in order
+     */
+    public List<BallLedger.Entry> due(long nowMillis) {
+        return ledger.expired(nowMillis);
+    }
+
+    /**
+     * Decide what to do with a ball not acknowledged in time. Decide on each ball right
+     * before acting on it, since acting on a ball may take later balls out of the ledger.
+     * @param ball a ball returned by due
+     * @param connected true iff the destination of ball is connected, rather than suspended
+     * @return SKIP if ball left the ledger, EVICT if it was sent maxAttempts times to its
+     *         connected destination, RESEND otherwise
+     */
+    public Action decide(BallLedger.Entry ball, boolean connected) {
+        if (!ledger.contains(ball.getSeq())) {
+            // given back when its destination was evicted for an earlier ball
+            return Action.SKIP;
+        } else if (ledger.getAttempts(ball.getSeq()) >= maxAttempts && connected) {
+            return Action.EVICT;
+        }
+        return Action.RESEND;
+    }
+
+    /**
+     * Make the TRANSFER_BALL_REQUEST that gives ball back to the board that sent it: a
+     * transferred ball is in the coordinates of its destination, see Board.edgeOffset, and
+     * given back across the side it left through; a portal ball where it is.
+     * @param ball a ball that left the ledger
+     * @param joined true iff the board of the sender of ball is still joined to the board of
+     *        its destination on the side of ball
+     * @return the request, or empty if the server sent ball, ball is a transferred ball and
+     *         the boards are no longer joined, or its request can't be read
+     */
+    public static Optional<String> returnRequest(BallLedger.Entry ball, boolean joined) {
+        if (ball.getSender() == BallLedger.NO_SENDER) {
+            return Optional.empty();
+        }
+        final Tokenizer request = new Tokenizer(ball.getRequest());
+        try {
+            final boolean tran = request.nextIs("tran");
+            if (!tran && !request.nextIs("port")) {
+                return Optional.empty();
+            } else if (!tran) {
+                request.skip();
+            }
+            Vect location = new Vect(request.nextDouble(), request.nextDouble());
+            final double veloX = request.nextDouble();
+            final double veloY = request.nextDouble();
+            final String name = request.next();
+            if (tran) {
+                if (!ball.getSide().isPresent() || !joined) {
+                    return Optional.empty();
+                }
+                location = location.minus(Board.edgeOffset(ball.getSide().get()));
+            }
+            return Optional.of("tran " + location.x() + " " + location.y() + " " + veloX + " " + veloY + " " + name);
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy of " + maxAttempts + " attempts";
+    }
+}
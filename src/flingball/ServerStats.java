@@ -0,0 +1,277 @@
+package flingball;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ServerStats are the live counters of a FlingballServer: how many requests of each kind
+ * it handled, how many messages each client sent and was sent, and how its handler threads
+ * spend their time. Every handler thread serves one connection and handles each request
+ * under the lock of the server, so the number of requests waiting for that lock is the
+ * queue depth of the server and the share of time the lock is held is its utilization.
+ *
+ * Counting is cheap enough to be always on. A report gives the totals and the rates per
+ * second since the previous report (or since the stats were made).
+ * ServerStats are thread-safe.
+ */
+public class ServerStats {
+
+    /**
+     * the kinds of events counted
+     */
+    public enum Counter {
+        CONNECT,
+        JOIN,
+        TRANSFER,
+        PORTAL,
+        HINT,
+        FAILURE,
+        EVICTION,
+        THROTTLED,
+    }
+
+    private static final double NANOSECONDS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long startedAt;
+    private final Map<Counter, LongAdder> counters;
+    private final ConcurrentMap<Integer, LongAdder> receivedFrom;
+    private final ConcurrentMap<Integer, LongAdder> deliveredTo;
+    private final ConcurrentMap<Integer, LongAdder> throttledFrom;
+    private final AtomicInteger handlers;
+    private final AtomicInteger waiting;
+    private final LongAdder lockHeldNanos;
+    private long reportedAt;
+    private final Map<String, Long> reported;
+
+    // Abstraction function:
+    //   AF(startedAt, counters, receivedFrom, deliveredTo, throttledFrom, handlers, waiting,
+    //      lockHeldNanos, reportedAt, reported) = the stats of a server since startedAt
+    //      (System.nanoTime()), where counters.get(c) events of kind c happened, receivedFrom.get(u)
+    //      and deliveredTo.get(u) messages were received from and sent to the client with userID u,
+    //      of which throttledFrom.get(u) received were throttled,
+    //      handlers threads serve connections, of which waiting wait for the server lock,
+    //      and the lock was held for lockHeldNanos to handle requests. The last report was
+    //      made at reportedAt, with the values in reported.
+    // Representation invariant:
+    //   all fields not null, counters has one entry per Counter
+    //   handlers >= 0, waiting >= 0, startedAt <= reportedAt
+    // Safety from rep exposure:
+    //   all fields are private, only primitives and Strings are returned
+    // Thread safety argument:
+    //   counters is never modified after construction and its values are thread-safe,
+    //   receivedFrom, deliveredTo and throttledFrom are concurrent maps of thread-safe values, the gauges are
+    //   atomic, and reportedAt and reported are guarded by the lock of this.
+
+    /**
+     * Make new stats with all counters 0.
+     */
+    public ServerStats() {
+        this.startedAt = System.nanoTime();
+        final Map<Counter, LongAdder> map = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            map.put(counter, new LongAdder());
+        }
+        this.counters = Collections.unmodifiableMap(map);
+        this.receivedFrom = new ConcurrentHashMap<>();
+        this.deliveredTo = new ConcurrentHashMap<>();
+        this.throttledFrom = new ConcurrentHashMap<>();
+        this.handlers = new AtomicInteger();
+        this.waiting = new AtomicInteger();
+        this.lockHeldNanos = new LongAdder();
+        this.reportedAt = startedAt;
+        this.reported = new HashMap<>();
+        checkRep();
+    }
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert counters.size() == Counter.values().length;
+        assert receivedFrom != null && deliveredTo != null && throttledFrom != null && lockHeldNanos != null && reported != null;
+        assert handlers.get() >= 0 && waiting.get() >= 0;
+        assert startedAt <= reportedAt;
+    }
+
+    /**
+     * Count one event.
+     * @param counter kind of the event
+     */
+    public void count(Counter counter) {
+        counters.get(counter).increment();
+    }
+
+    /**
+     * Count events.
+     * @param counter kind of the events
+     * @param events number of events, >= 0
+     */
+    public void count(Counter counter, long events) {
+        counters.get(counter).add(events);
+    }
+
+    /**
+     * @param counter kind of events
+     * @return number of events of that kind counted so far
+     */
+    public long get(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    /**
+     * Count a message received from a client.
+     * @param userID userID of the client
+     */
+    public void received(int userID) {
+        receivedFrom.computeIfAbsent(userID, id -> new LongAdder()).increment();
+    }
+
+    /**
+     * Count a message sent to a client.
+     * @param userID userID of the client
+     */
+    public void delivered(int userID) {
+        deliveredTo.computeIfAbsent(userID, id -> new LongAdder()).increment();
+    }
+
+    /**
+     * Count a message received from a client that was throttled, i.e. dropped because the
+     * client sent too many. Counts a THROTTLED event too.
+     * @param userID userID of the client
+     */
+    public void throttled(int userID) {
+        count(Counter.THROTTLED);
+        throttledFrom.computeIfAbsent(userID, id -> new LongAdder()).increment();
+    }
+
+    /**
+     * Forget the messages of a client that disconnected.
+     * @param userID userID of the client
+     */
+    public synchronized void removeClient(int userID) {
+        receivedFrom.remove(userID);
+        deliveredTo.remove(userID);
+        throttledFrom.remove(userID);
+        reported.remove("from " + userID);
+        reported.remove("to " + userID);
+    }
+
+    /**
+     * Count a thread that started serving a connection.
+     */
+    public void handlerStarted() {
+        handlers.incrementAndGet();
+    }
+
+    /**
+     * Count a thread that stopped serving a connection.
+     */
+    public void handlerStopped() {
+        handlers.decrementAndGet();
+    }
+
+    /**
+     * Count a request that waits for the lock of the server. Must be followed by lockAcquired.
+     */
+    public void lockRequested() {
+        waiting.incrementAndGet();
+    }
+
+    /**
+     * Count a request that got the lock of the server. Must be followed by lockReleased.
+     * @return the time the lock was acquired, to give to lockReleased
+     */
+    public long lockAcquired() {
+        waiting.decrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Count a request that released the lock of the server.
+     * @param acquiredAt the time returned by the matching lockAcquired
+     */
+    public void lockReleased(long acquiredAt) {
+        lockHeldNanos.add(System.nanoTime() - acquiredAt);
+    }
+
+    /**
+     * @return number of threads serving connections
+     */
+    public int getHandlers() {
+        return handlers.get();
+    }
+
+    /**
+     * @return number of requests waiting for the lock of the server
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Report the stats, with rates since the previous report.
+     * @param boardNames names of the boards of the clients by userID, clients without a
+     *        name are reported by userID
+     * @return one line per counter, gauge and client
+     */
+    public synchronized String report(Map<Integer, String> boardNames) {
+        final long now = System.nanoTime();
+        final double seconds = Math.max(1, now - reportedAt) / NANOSECONDS_PER_SECOND;
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "uptime %.1fs, rates over the last %.1fs\n",
+                (now - startedAt) / NANOSECONDS_PER_SECOND, seconds));
+        for (Counter counter : Counter.values()) {
+            final long total = get(counter);
+            report.append(String.format(Locale.ROOT, "%s %d total, %.1f/s\n", counter.name().toLowerCase(), total,
+                    rate("counter " + counter, total, seconds)));
+        }
+        final long held = lockHeldNanos.sum();
+        final double heldShare = (held - reported.getOrDefault("lock", 0L)) / (seconds * NANOSECONDS_PER_SECOND);
+        reported.put("lock", held);
+        report.append(String.format(Locale.ROOT, "handlers %d threads, %d waiting for the server lock, lock held %.1f%%\n",
+                handlers.get(), waiting.get(), 100 * Math.min(1, heldShare)));
+        final Map<String, Integer> clients = new TreeMap<>();
+        for (Integer userID : receivedFrom.keySet()) {
+            clients.put(boardNames.getOrDefault(userID, "user " + userID), userID);
+        }
+        for (Integer userID : deliveredTo.keySet()) {
+            clients.put(boardNames.getOrDefault(userID, "user " + userID), userID);
+        }
+        for (Map.Entry<String, Integer> client : clients.entrySet()) {
+            final long from = sum(receivedFrom.get(client.getValue()));
+            final long to = sum(deliveredTo.get(client.getValue()));
+            final long throttled = sum(throttledFrom.get(client.getValue()));
+            report.append(String.format(Locale.ROOT, "board %s: from %d (%.1f/s), to %d (%.1f/s), throttled %d\n",
+                    client.getKey(), from, rate("from " + client.getValue(), from, seconds),
+                    to, rate("to " + client.getValue(), to, seconds), throttled));
+        }
+        reportedAt = now;
+        checkRep();
+        return report.toString();
+    }
+
+    /*
+     * rate per second of a value named key that is now total, since it was last reported,
+     * and remember total as reported
+     */
+    private synchronized double rate(String key, long total, double seconds) {
+        final Long previous = reported.put(key, total);
+        return (total - (previous == null ? 0 : previous)) / seconds;
+    }
+
+    private static long sum(LongAdder adder) {
+        return adder == null ? 0 : adder.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ServerStats: " + get(Counter.TRANSFER) + " transfers, " + handlers.get() + " handlers";
+    }
+}
@@ -0,0 +1,345 @@
+package flingball;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * A SessionTable keeps the sessions of the clients of a FlingballServer: the token of the
+ * session of each client, the boards suspended since their client dropped, with the requests
+ * buffered for them until they are resumed or their grace period runs out, and the
+ * connections that resumed a session.
+ *
+ * Clients are identified by their userID, and connections by their number; a connection
+ * that didn't resume a session plays the board whose userID is its number.
+ *
+ * SessionTables are mutable and not thread-safe: a FlingballServer guards its table with
+ * its own lock, which the grace periods also take before they call back, see Expiry.
+ */
+public class SessionTable {
+
+    /**
+     * An Expiry is told when the grace period of a suspended board runs out.
+     */
+    public interface Expiry {
+        /**
+         * Called on the thread of the timer of the table when a grace period runs out.
+         * Must call expire(userID, grace) under the lock guarding the table, which tells
+         * whether the grace period is still the current one of the board.
+         * @param userID userID of the suspended board
+         * @param grace the grace period that ran out
+         */
+        void expired(int userID, Object grace);
+    }
+
+    private final long graceMillis;
+    private final int maxBuffered;
+    private final Timer timer;
+    private final Expiry expiry;
+    private final SecureRandom random;
+    private final Map<String, Integer> sessions;
+    private final Map<Integer, List<Handoff>> suspended;
+    private final Map<Integer, TimerTask> graceTasks;
+    private final Map<Integer, Integer> resumedUsers;
+
+    // Abstraction function:
+    //   AF(graceMillis, maxBuffered, timer, expiry, random, sessions, suspended, graceTasks,
+    //      resumedUsers) = the sessions of the clients of a server, where sessions maps the
+    //      token of each session to the userID of its client, suspended maps the userIDs of
+    //      the suspended boards to the requests buffered for them, up to maxBuffered each,
+    //      graceTasks maps them to the grace periods that tell expiry on timer after
+    //      graceMillis unless resumed, and resumedUsers maps the numbers of the connections
+    //      that resumed a session to its userID. random makes tokens.
+    // Representation invariant:
+    //   all fields not null, graceMillis >= 0, maxBuffered >= 0
+    //   each userID has at most one token in sessions
+    //   graceTasks.keySet() is a subset of suspended.keySet()
+    //   every list of suspended has at most maxBuffered requests
+    // Safety from rep exposure:
+    //   all fields are private and final, and never returned; Handoffs are immutable and
+    //   the lists and sets returned are new.
+
+    /**
+     * Make an empty SessionTable.
+     * @param graceMillis time a suspended board waits to be resumed, in milliseconds, >= 0
+     * @param maxBuffered number of requests buffered for a suspended board at most, >= 0
+     * @param timer timer that runs out the grace periods
+     * @param expiry told when a grace period runs out
+     */
+    public SessionTable(long graceMillis, int maxBuffered, Timer timer, Expiry expiry) {
+        this.graceMillis = graceMillis;
+        this.maxBuffered = maxBuffered;
+        this.timer = timer;
+        this.expiry = expiry;
+        this.random = new SecureRandom();
+        this.sessions = new HashMap<>();
+        this.suspended = new HashMap<>();
+        this.graceTasks = new HashMap<>();
+        this.resumedUsers = new HashMap<>();
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert timer != null && expiry != null && random != null;
+        assert sessions != null && suspended != null && graceTasks != null && resumedUsers != null;
+        assert graceMillis >= 0 && maxBuffered >= 0;
+        assert new HashSet<>(sessions.values()).size() == sessions.size();
+        assert suspended.keySet().containsAll(graceTasks.keySet());
+        for (List<Handoff> buffered : suspended.values()) {
+            assert buffered.size() <= maxBuffered;
+        }
+    }
+
+    /**
+     * @return time a suspended board waits to be resumed, in milliseconds
+     */
+    public long getGraceMillis() {
+        return graceMillis;
+    }
+
+    /**
+     * Open a new session for a client, ending its previous one if any.
+     * @param userID userID of the client
+     * @return the token of the new session
+     */
+    public String open(int userID) {
+        sessions.values().remove(userID);
+        final String token = String.format("%016x%016x", random.nextLong(), random.nextLong());
+        sessions.put(token, userID);
+        checkRep();
+        return token;
+    }
+
+    /**
+     * End the session of a client, if any, e.g. because it quit.
+     * @param userID userID of the client
+     */
+    public void close(int userID) {
+        sessions.values().remove(userID);
+    }
+
+    /**
+     * @param userID userID of a client
+     * @return true iff the client has a session
+     */
+    public boolean hasSession(int userID) {
+        return sessions.containsValue(userID);
+    }
+
+    /**
+     * @param token token of a session
+     * @return the userID of the client of the session, empty if there is no such session
+     */
+    public Optional<Integer> userWithToken(String token) {
+        return Optional.ofNullable(sessions.get(token));
+    }
+
+    /**
+     * @param connectionID number of a connection
+     * @return the userID of the board played on the connection
+     */
+    public int userOf(int connectionID) {
+        return resumedUsers.getOrDefault(connectionID, connectionID);
+    }
+
+    /**
+     * @param userID userID of a board
+     * @return the number of the connection the board is played on, the first that resumed
+     *         its session if several did and are still open
+     */
+    public int connectionOf(int userID) {
+        for (Map.Entry<Integer, Integer> resumed : resumedUsers.entrySet()) {
+            if (resumed.getValue() == userID) {
+                return resumed.getKey();
+            }
+        }
+        return userID;
+    }
+
+    /**
+     * @param userID userID of a board
+     * @return true iff a connection that resumed the session of the board is still open
+     */
+    public boolean isResumed(int userID) {
+        return resumedUsers.containsValue(userID);
+    }
+
+    /**
+     * Forget that a connection resumed a session, because it closed.
+     * @param connectionID number of the connection
+     */
+    public void disconnected(int connectionID) {
+        resumedUsers.remove(connectionID);
+    }
+
+    /**
+     * Suspend a board: buffer the requests sent to it from now on, after those buffered
+     * already if it is suspended, and start its grace period again.
+     * @param userID userID of the board
+     */
+    public void suspend(int userID) {
+        suspended.putIfAbsent(userID, new ArrayList<>());
+        cancelGrace(userID);
+        final TimerTask grace = new TimerTask() {
+            @Override
+            public void run() {
+                expiry.expired(userID, this);
+            }
+        };
+        graceTasks.put(userID, grace);
+        timer.schedule(grace, graceMillis);
+        checkRep();
+    }
+
+    /**
+     * End the grace period of a suspended board that ran out, see Expiry.
+     * @param userID userID of the board
+     * @param grace the grace period that ran out
+     * @return true iff grace was the current grace period of the board, which must then be
+     *         removed; false if the board was resumed or suspended again meanwhile
+     */
+    public boolean expire(int userID, Object grace) {
+        return graceTasks.remove(userID, grace);
+    }
+
+    /**
+     * Play a suspended board on a connection, which stops its grace period. The requests
+     * buffered for it stay buffered until taken.
+     * @param connectionID number of the connection
+     * @param userID userID of the board, requires it is suspended
+     */
+    public void resume(int connectionID, int userID) {
+        assert suspended.containsKey(userID);
+        cancelGrace(userID);
+        resumedUsers.put(connectionID, userID);
+        checkRep();
+    }
+
+    /**
+     * @param userID userID of a board
+     * @return true iff the board is suspended
+     */
+    public boolean isSuspended(int userID) {
+        return suspended.containsKey(userID);
+    }
+
+    /**
+     * @return the userIDs of the suspended boards
+     */
+    public Set<Integer> getSuspended() {
+        return new HashSet<>(suspended.keySet());
+    }
+
+    /**
+     * Buffer a request for a suspended board.
+     * @param userID userID of the board, requires it is suspended
+     * @param request the request
+     * @param seq sequence number of the ball of request in the ledger, or BallLedger.NO_SEQ
+     * @return false if the buffer of the board is full, and request was dropped
+     */
+    public boolean buffer(int userID, String request, long seq) {
+        final List<Handoff> buffered = suspended.get(userID);
+        if (buffered.size() >= maxBuffered) {
+            return false;
+        }
+        buffered.add(new Handoff(request, seq));
+        return true;
+    }
+
+    /**
+     * Stop buffering the requests of a board, which is no longer suspended.
+     * @param userID userID of the board
+     * @return the requests buffered for the board, in order, empty if it wasn't suspended
+     */
+    public List<Handoff> takeBuffered(int userID) {
+        cancelGrace(userID);
+        final List<Handoff> buffered = suspended.remove(userID);
+        return buffered == null ? Collections.<Handoff>emptyList() : buffered;
+    }
+
+    /**
+     * Forget a board that was removed: its session, and its requests buffered if suspended.
+     * @param userID userID of the board
+     */
+    public void remove(int userID) {
+        sessions.values().remove(userID);
+        cancelGrace(userID);
+        suspended.remove(userID);
+        checkRep();
+    }
+
+    /**
+     * @return the userIDs of all boards this table knows of: with a session, suspended or resumed
+     */
+    public Set<Integer> getUsers() {
+        final Set<Integer> users = new HashSet<>(sessions.values());
+        users.addAll(suspended.keySet());
+        users.addAll(resumedUsers.values());
+        return users;
+    }
+
+    /*
+     * cancel the grace period of userID, if any
+     */
+    private void cancelGrace(int userID) {
+        final TimerTask grace = graceTasks.remove(userID);
+        if (grace != null) {
+            grace.cancel();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SessionTable with " + sessions.size() + " sessions, " + suspended.size() + " suspended";
+    }
+
+    /**
+     * A Handoff is a request buffered for a suspended board. Handoffs are immutable.
+     */
+    public static class Handoff {
+        private final String request;
+        private final long seq;
+
+        // Abstraction function:
+        //   AF(request, seq) = request buffered for a suspended board, which hands it the
+        //      ball with sequence number seq in the ledger, or carries no ball if seq is NO_SEQ
+        // Representation invariant:
+        //   request not null
+        // Safety from rep exposure:
+        //   all fields are private, final and immutable
+
+        private Handoff(String request, long seq) {
+            this.request = request;
+            this.seq = seq;
+            assert request != null;
+        }
+
+        /**
+         * @return the request buffered
+         */
+        public String getRequest() {
+            return request;
+        }
+
+        /**
+         * @return sequence number of the ball of the request in the ledger, or BallLedger.NO_SEQ
+         */
+        public long getSeq() {
+            return seq;
+        }
+
+        @Override
+        public String toString() {
+            return request;
+        }
+    }
+}
@@ -24,7 +24,7 @@ import physics.Vect;
  */
 public class Simulator {
 
-    private final BufferedImage backgroundImage;
+    private BufferedImage backgroundImage;
     private final Board board;
     private static final int GAMEBOARD_SIZE = 20;
     private static final int PIXELS_PER_L = 20;
@@ -39,10 +39,13 @@ public class Simulator {
     // Rep Invariant:
     // --| backgroundImage and board are not null
     // Safety from Rep Exposure:
-    // --| backgroundImage, board are private, final and is never returned
+    // --| backgroundImage, board are private and never returned; board is final
     // Thread Safety:
     //  --| Used monitor pattern, used synchronized keyword in all instance methods.
-    //  --| All fields are private and final. All instance fields left are immutable. no rep exposure.
+    //  --| All fields are private. board is final and thread-safe. backgroundImage is replaced
+    //  --| by refresh, e.g. on the thread of a BoardWatcher, and only read and written while
+    //  --| holding the lock of this, through getBackgroundImage on the Swing thread; an image
+    //  --| is never drawn on after it was made.
     //  --| Used thread safe datatype for lists and maps.
     
     /**
@@ -55,11 +58,27 @@ public class Simulator {
     }
 
     // Checks the Representation Invariant to ensure that no representation exposure occurs
-    private void checkRep() {
+    private synchronized void checkRep() {
         assert board != null;
         assert backgroundImage != null;
     }
 
+    /**
+     * Redraw the background of this simulator, e.g. after the static gadgets of its board
+     * were reloaded
+     */
+    public synchronized void refresh() {
+        backgroundImage = board.drawBackground();
+        checkRep();
+    }
+
+    /*
+     * @return the background of this simulator
+     */
+    private synchronized BufferedImage getBackgroundImage() {
+        return backgroundImage;
+    }
+
     /**
      * Play the flingball game of this simulator
      * 
@@ -100,7 +119,7 @@ public class Simulator {
 
             @Override protected void paintComponent(Graphics graphics) {
                 super.paintComponent(graphics);
-                graphics.drawImage(backgroundImage, 0, 0, DRAWING_AREA_SIZE_IN_PIXELS, DRAWING_AREA_SIZE_IN_PIXELS,
+                graphics.drawImage(getBackgroundImage(), 0, 0, DRAWING_AREA_SIZE_IN_PIXELS, DRAWING_AREA_SIZE_IN_PIXELS,
                         NO_OBSERVER_NEEDED);
                 board.updateBoard();
                 board.drawBalls(graphics);
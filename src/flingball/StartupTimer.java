@@ -0,0 +1,251 @@
+package flingball;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+/**
+ * StartupTimer measures how long a new JVM takes to load a board file, by each of the ways
+ * Flingball can load one, and how long the real entry points take to start, so that the cost
+ * of compiling the grammar at startup can be seen.
+ * Every run starts a new JVM with the class path of this one; the timer reports the median
+ * of the runs, and how it compares to the baseline, GRAMMAR.
+ *
+ * The ways to load a board, see Mode, are parsing with BoardParser, which compiles Board.g
+ * the first time it parses and is what Flingball does by default; parsing with
+ * StreamingBoardParser, which needs no grammar; loading the board compiled ahead of time to
+ * a .fbc file by BoardCompiler; and loading it through a BoardCache directory, as Flingball
+ * does with -Dflingball.boardCache=DIRECTORY after the first time a board is played. Their
+ * JVMs load the board and exit, and the timer reports both the whole JVM and the load.
+ *
+ * The entry points, see EntryPoint, are Flingball.main with the board file, by default and
+ * through the BoardCache directory, which exits once the board is loaded (see
+ * Flingball.EXIT_AFTER_LOAD_PROPERTY), and FlingballServer.main, which exits once the server
+ * is set up (see FlingballServer.EXIT_AFTER_START_PROPERTY). Only the whole JVM is timed.
+ *
+ * The compiled file and cache directory are made before the runs, in a temporary directory.
+ *
+ * Usage:
+ * StartupTimer [--runs N] FILE
+ * times N runs (default 5) of each way of loading the board file FILE and of each entry point.
+ */
+public class StartupTimer {
+    private static final int DEFAULT_RUNS = 5;
+    private static final String CHILD = "--child";
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final int CACHE_CAPACITY = 1;
+
+    /**
+     * A way to load a board file.
+     */
+    enum Mode {
+        /** parse with BoardParser, compiling the grammar */
+        GRAMMAR,
+        /** parse with StreamingBoardParser */
+        STREAMING,
+        /** load a compiled board file */
+        COMPILED,
+        /** load through a BoardCache directory that already has the board */
+        CACHED,
+    }
+
+    /**
+     * A real entry point, started with the flag that makes it exit once it is ready.
+     */
+    enum EntryPoint {
+        /** Flingball.main with the board file, parsed by BoardParser */
+        FLINGBALL,
+        /** Flingball.main with the board file, through a BoardCache directory that has it */
+        FLINGBALL_CACHED,
+        /** FlingballServer.main on a free port, without heartbeats */
+        SERVER,
+    }
+
+    private StartupTimer() {
+        // only static methods
+    }
+
+    /**
+     * Load a board the way mode says.
+     * @param mode how to load the board
+     * @param file board file, or compiled board file if mode is COMPILED
+     * @param cacheDirectory directory of the BoardCache, used only if mode is CACHED
+     * @return the board of file
+     * @throws IOException if file can't be read
+     * @throws UnableToParseException if file doesn't match the Board grammar
+     */
+    static Board load(Mode mode, Path file, Path cacheDirectory) throws IOException, UnableToParseException {
+        switch (mode) {
+        case GRAMMAR: return BoardParser.parse(Flingball.boardFileToString(file.toFile()));
+        case STREAMING: return StreamingBoardParser.parse(Flingball.boardFileToString(file.toFile()));
+        case COMPILED: return BoardCompiler.load(file);
+        case CACHED: return new BoardCache(CACHE_CAPACITY, Optional.of(cacheDirectory)).load(file);
+        default: throw new AssertionError("unknown mode " + mode);
+        }
+    }
+
+    /**
+     * Make the command that starts a JVM at an entry point.
+     * @param entryPoint the entry point
+     * @param file board file
+     * @param cacheDirectory directory of the BoardCache, used only by FLINGBALL_CACHED
+     * @return the arguments of the command, after the java executable and class path
+     */
+    static List<String> command(EntryPoint entryPoint, Path file, Path cacheDirectory) {
+        switch (entryPoint) {
+        case FLINGBALL:
+            return Arrays.asList(property(Flingball.EXIT_AFTER_LOAD_PROPERTY, "true"),
+                    Flingball.class.getName(), "Flingball", file.toString());
+        case FLINGBALL_CACHED:
+            return Arrays.asList(property(Flingball.EXIT_AFTER_LOAD_PROPERTY, "true"),
+                    property(Flingball.BOARD_CACHE_PROPERTY, cacheDirectory.toString()),
+                    Flingball.class.getName(), "Flingball", file.toString());
+        case SERVER:
+            return Arrays.asList(property(FlingballServer.EXIT_AFTER_START_PROPERTY, "true"),
+                    FlingballServer.class.getName(), "FlingballServer", "--port", "0", "--heartbeat", "0");
+        default: throw new AssertionError("unknown entry point " + entryPoint);
+        }
+    }
+
+    private static String property(String name, String value) {
+        return "-D" + name + "=" + value;
+    }
+
+    /*
+     * Time runs new JVMs started with arguments after the java executable and class path.
+     * If reportsLoad, each prints the nanoseconds it took to load the board.
+     * @return median milliseconds of the whole JVM and of loading the board (NaN unless
+     *         reportsLoad), or null if a run failed, after printing why
+     */
+    private static double[] time(String name, List<String> arguments, boolean reportsLoad, int runs)
+            throws IOException, InterruptedException {
+        final List<Double> wholeMillis = new ArrayList<>();
+        final List<Double> loadMillis = new ArrayList<>();
+        final List<String> command = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path")));
+        command.addAll(arguments);
+        for (int i = 0; i < runs; i++) {
+            final Process child = new ProcessBuilder(command).redirectErrorStream(true).start();
+            final long start = System.nanoTime();
+            final String output = read(child.getInputStream()).trim();
+            final int status = child.waitFor();
+            final long whole = System.nanoTime() - start;
+            if (status != 0) {
+                System.out.println(name + ": failed: " + output.split("\n")[0]);
+                return null;
+            }
+            wholeMillis.add(whole / NANOS_PER_MILLI);
+            if (reportsLoad) {
+                loadMillis.add(Long.parseLong(output) / NANOS_PER_MILLI);
+            }
+        }
+        return new double[] {median(wholeMillis), reportsLoad ? median(loadMillis) : Double.NaN};
+    }
+
+    /*
+     * print the medians of name, compared to those of the baseline if there are any
+     */
+    private static void report(String name, double[] millis, double[] baseline) {
+        final StringBuilder line = new StringBuilder(String.format("%s: %.1f ms to exit", name, millis[0]));
+        if (!Double.isNaN(millis[1])) {
+            line.append(String.format(", %.1f ms to load", millis[1]));
+        }
+        if (baseline != null) {
+            line.append(String.format(" (%.2fx of %s to exit", millis[0] / baseline[0], Mode.GRAMMAR));
+            if (!Double.isNaN(millis[1])) {
+                line.append(String.format(", %.2fx to load", millis[1] / baseline[1]));
+            }
+            line.append(')');
+        }
+        System.out.println(line);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        final byte[] buffer = new byte[4096];
+        final StringBuilder text = new StringBuilder();
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            text.append(new String(buffer, 0, n, StandardCharsets.UTF_8));
+        }
+        return text.toString();
+    }
+
+    private static double median(List<Double> values) {
+        final List<Double> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    /**
+     * Time the ways of loading a board file and the entry points, see the class comment.
+     * @param args command line arguments
+     * @throws Exception if the board file can't be compiled or a JVM can't be started
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 4 && args[0].equals(CHILD)) {
+            final long start = System.nanoTime();
+            load(Mode.valueOf(args[1]), Paths.get(args[2]), Paths.get(args[3]));
+            System.out.println(System.nanoTime() - start);
+            return;
+        }
+        int runs = DEFAULT_RUNS;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--runs")) {
+                runs = Integer.parseInt(args[++i]);
+            } else {
+                file = args[i];
+            }
+        }
+        if (file == null || runs < 1) {
+            System.err.println("usage: StartupTimer [--runs N] FILE");
+            return;
+        }
+        final Path source = Paths.get(file);
+        final Path directory = Files.createTempDirectory("startuptimer");
+        final Path compiled = directory.resolve("board" + BoardCompiler.EXTENSION);
+        final Path cacheDirectory = directory.resolve("cache");
+        BoardCompiler.compile(source, compiled);
+        load(Mode.CACHED, source, cacheDirectory);
+        double[] baseline = null;
+        for (Mode mode : Mode.values()) {
+            final Path input = mode == Mode.COMPILED ? compiled : source;
+            final double[] millis = time(mode.name(), Arrays.asList(StartupTimer.class.getName(), CHILD, mode.name(),
+                    input.toString(), cacheDirectory.toString()), true, runs);
+            if (millis == null) {
+                continue;
+            } else if (mode == Mode.GRAMMAR) {
+                baseline = millis;
+            }
+            report(mode.name(), millis, mode == Mode.GRAMMAR ? null : baseline);
+        }
+        for (EntryPoint entryPoint : EntryPoint.values()) {
+            final double[] millis = time(entryPoint.name(), command(entryPoint, source, cacheDirectory), false, runs);
+            if (millis != null) {
+                report(entryPoint.name(), millis, baseline);
+            }
+        }
+        for (Path path : Arrays.asList(compiled, cacheDirectory)) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> entries = Files.list(path)) {
+                    for (Path entry : (Iterable<Path>) entries::iterator) {
+                        Files.delete(entry);
+                    }
+                }
+            }
+            Files.deleteIfExists(path);
+        }
+        Files.delete(directory);
+    }
+}
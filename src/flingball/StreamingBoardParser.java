@@ -0,0 +1,625 @@
+package flingball;
+
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Angle;
+import physics.Vect;
+
+/**
+ * StreamingBoardParser parses board files of the grammar in Board.g, like BoardParser, but in
+ * a single pass by recursive descent, without building a parse tree: every gadget is handed to
+ * a Sink as soon as it is read, e.g. to a Builder that adds it to a Board right away. So a
+ * board with many gadgets is parsed in time and extra memory linear in its size.
+ *
+ * It accepts the same language as BoardParser and fails the same way: an input that doesn't
+ * match the grammar throws UnableToParseException (with the line and column of the error),
+ * and a fire whose trigger is not a gadget declared before it throws RuntimeException.
+ * Terminals are matched longest first (e.g. the KEY "shift" rather than "s").
+ *
+ * StreamingBoardParsers are mutable and not thread-safe, each parses one input; the static
+ * methods make a new one per call and are thread-safe.
+ */
+public class StreamingBoardParser {
+
+    /**
+     * A Sink takes the parts of a board in the order they appear in the board file.
+     * board is called first and once, then the other methods once per gadget.
+     */
+    public interface Sink {
+        /**
+         * @param name name of the board
+         * @param gravity gravity of the board, the default if not given
+         * @param friction1 friction1 of the board, the default if not given
+         * @param friction2 friction2 of the board, the default if not given
+         */
+        void board(String name, float gravity, float friction1, float friction2);
+
+        /**
+         * @param name name of the ball
+         * @param x x coordinate
+         * @param y y coordinate
+         * @param xVelocity x velocity
+         * @param yVelocity y velocity
+         */
+        void ball(String name, float x, float y, float xVelocity, float yVelocity);
+
+        /**
+         * @param name name of the bumper
+         * @param x x coordinate
+         * @param y y coordinate
+         */
+        void squareBumper(String name, int x, int y);
+
+        /**
+         * @param name name of the bumper
+         * @param x x coordinate
+         * @param y y coordinate
+         */
+        void circleBumper(String name, int x, int y);
+
+        /**
+         * @param name name of the bumper
+         * @param x x coordinate
+         * @param y y coordinate
+         * @param orientation 0, 90, 180 or 270 degrees
+         */
+        void triangleBumper(String name, int x, int y, int orientation);
+
+        /**
+         * @param name name of the absorber
+         * @param x x coordinate
+         * @param y y coordinate
+         * @param width width
+         * @param height height
+         */
+        void absorber(String name, int x, int y, int width, int height);
+
+        /**
+         * @param name name of the flipper
+         * @param x x coordinate
+         * @param y y coordinate
+         * @param orientation 0, 90, 180 or 270 degrees
+         * @param left true for a leftFlipper, false for a rightFlipper
+         */
+        void flipper(String name, int x, int y, int orientation, boolean left);
+
+        /**
+         * @param name name of the portal
+         * @param x x coordinate
+         * @param y y coordinate
+         * @param otherBoard name of the board of the other portal, null if not given
+         * @param otherPortal name of the other portal
+         */
+        void portal(String name, int x, int y, String otherBoard, String otherPortal);
+
+        /**
+         * @param trigger name of the triggering gadget
+         * @param action name of the gadget triggered
+         */
+        void fire(String trigger, String action);
+
+        /**
+         * @param key the KEY, e.g. "a" or "space"
+         * @param up true for a keyup, false for a keydown
+         * @param action name of the gadget triggered
+         */
+        void key(String key, boolean up, String action);
+    }
+
+    /** default gravity of a board */
+    public static final float DEFAULT_GRAVITY = 25F;
+    /** default friction1 and friction2 of a board */
+    public static final float DEFAULT_FRICTION = .025F;
+    // named KEYs, longest first so that a prefix never hides a longer key
+    private static final List<String> NAMED_KEYS;
+    static {
+        final List<String> keys = new ArrayList<>(Arrays.asList("shift", "ctrl", "alt", "meta", "space",
+                "left", "right", "up", "down", "minus", "equals", "backspace", "openbracket", "closebracket",
+                "backslash", "semicolon", "quote", "enter", "comma", "period", "slash"));
+        keys.sort((a, b) -> Integer.compare(b.length(), a.length()));
+        NAMED_KEYS = Collections.unmodifiableList(keys);
+    }
+    private static final String[] ORIENTATIONS = { "270", "180", "90", "0" };
+
+    private final String text;
+    private int position;
+
+    // Abstraction function:
+    //   AF(text, position) = the parse of text, which read text up to position so far
+    // Representation invariant:
+    //   text not null, 0 <= position <= text.length()
+    // Safety from rep exposure:
+    //   all fields are private, text is immutable
+
+    private StreamingBoardParser(String text) {
+        this.text = text;
+        this.position = 0;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert text != null;
+        assert 0 <= position && position <= text.length();
+    }
+
+    /**
+     * Parse a string into a Board.
+     * @param string string to parse
+     * @return Board parsed from the string
+     * @throws UnableToParseException if the string doesn't match the Board grammar
+     */
+    public static Board parse(String string) throws UnableToParseException {
+        final Builder builder = new Builder();
+        parse(string, builder);
+        return builder.getBoard();
+    }
+
+    /**
+     * Parse a string, handing the board and its gadgets to sink as they are read.
+     * @param string string to parse
+     * @param sink takes the parts of the board
+     * @throws UnableToParseException if the string doesn't match the Board grammar; sink may
+     *         have been given the parts before the error then
+     */
+    public static void parse(String string, Sink sink) throws UnableToParseException {
+        new StreamingBoardParser(string).board(sink);
+    }
+
+    /*
+     * board::='board name=' NAME ('gravity' '='GRAVITY)? ('friction1' '='FRICTION1)? ('friction2' '='FRICTION2)? gadget*;
+     */
+    private void board(Sink sink) throws UnableToParseException {
+        literal("board name=");
+        final String name = name();
+        float gravity = DEFAULT_GRAVITY;
+        float friction1 = DEFAULT_FRICTION;
+        float friction2 = DEFAULT_FRICTION;
+        if (optional("gravity")) {
+            literal("=");
+            gravity = floatNumber();
+        }
+        if (optional("friction1")) {
+            literal("=");
+            friction1 = floatNumber();
+        }
+        if (optional("friction2")) {
+            literal("=");
+            friction2 = floatNumber();
+        }
+        sink.board(name, gravity, friction1, friction2);
+        skip();
+        while (position < text.length()) {
+            gadget(sink);
+            skip();
+        }
+        checkRep();
+    }
+
+    /*
+     * gadget::= ball|squareBumper|circleBumper|triangleBumper|absorber|fire|keydown|keyup|portal|rightFlipper|leftFlipper;
+     */
+    private void gadget(Sink sink) throws UnableToParseException {
+        if (optional("ball")) {
+            final String name = attribute("name") ? name() : null;
+            final float x = floatAttribute("x");
+            final float y = floatAttribute("y");
+            final float xVelocity = floatAttribute("xVelocity");
+            sink.ball(name, x, y, xVelocity, floatAttribute("yVelocity"));
+        } else if (optional("squareBumper")) {
+            final String name = attribute("name") ? name() : null;
+            final int x = integerAttribute("x");
+            sink.squareBumper(name, x, integerAttribute("y"));
+        } else if (optional("circleBumper")) {
+            final String name = attribute("name") ? name() : null;
+            final int x = integerAttribute("x");
+            sink.circleBumper(name, x, integerAttribute("y"));
+        } else if (optional("triangleBumper")) {
+            final String name = attribute("name") ? name() : null;
+            final int x = integerAttribute("x");
+            final int y = integerAttribute("y");
+            sink.triangleBumper(name, x, y, orientation());
+        } else if (optional("absorber")) {
+            final String name = attribute("name") ? name() : null;
+            final int x = integerAttribute("x");
+            final int y = integerAttribute("y");
+            final int width = integerAttribute("width");
+            sink.absorber(name, x, y, width, integerAttribute("height"));
+        } else if (optional("fire")) {
+            final String trigger = attribute("trigger") ? name() : null;
+            sink.fire(trigger, attribute("action") ? name() : null);
+        } else if (optional("keydown") || optional("keyup")) {
+            final boolean up = text.startsWith("keyup", position - "keyup".length());
+            final String key = attribute("key") ? key() : null;
+            sink.key(key, up, attribute("action") ? name() : null);
+        } else if (optional("portal")) {
+            final String name = attribute("name") ? name() : null;
+            final int x = integerAttribute("x");
+            final int y = integerAttribute("y");
+            final String otherBoard = optional("otherBoard") && literal("=") ? name() : null;
+            sink.portal(name, x, y, otherBoard, attribute("otherPortal") ? name() : null);
+        } else if (optional("rightFlipper") || optional("leftFlipper")) {
+            final boolean left = text.startsWith("leftFlipper", position - "leftFlipper".length());
+            final String name = attribute("name") ? name() : null;
+            final int x = integerAttribute("x");
+            final int y = integerAttribute("y");
+            sink.flipper(name, x, y, orientation(), left);
+        } else {
+            throw error("a gadget");
+        }
+    }
+
+    /*
+     * ('orientation' '=' ORIENTATION)?, 0 if absent
+     */
+    private int orientation() throws UnableToParseException {
+        if (!optional("orientation")) {
+            return 0;
+        }
+        literal("=");
+        skip();
+        for (String orientation : ORIENTATIONS) {
+            if (text.startsWith(orientation, position)) {
+                position += orientation.length();
+                return Integer.parseInt(orientation);
+            }
+        }
+        throw error("an ORIENTATION");
+    }
+
+    /*
+     * skip whitespaceAndComments*, where
+     * whitespace::=[ \t\r\n]+; comments::='#'+[^\r\n]*[\r\n]+;
+     * a comment without a newline after it is not skipped
+     */
+    private void skip() {
+        while (position < text.length()) {
+            final char c = text.charAt(position);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                position++;
+            } else if (c == '#') {
+                int end = position;
+                while (end < text.length() && text.charAt(end) != '\r' && text.charAt(end) != '\n') {
+                    end++;
+                }
+                if (end == text.length()) {
+                    return;
+                }
+                position = end;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /*
+     * skip, then read literal if it is next
+     */
+    private boolean optional(String literal) {
+        skip();
+        if (text.startsWith(literal, position)) {
+            position += literal.length();
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * skip, then read literal, which must be next; always true
+     */
+    private boolean literal(String literal) throws UnableToParseException {
+        if (!optional(literal)) {
+            throw error("'" + literal + "'");
+        }
+        return true;
+    }
+
+    /*
+     * read KEYWORD '=', which must be next; always true
+     */
+    private boolean attribute(String keyword) throws UnableToParseException {
+        literal(keyword);
+        return literal("=");
+    }
+
+    private int integerAttribute(String keyword) throws UnableToParseException {
+        attribute(keyword);
+        return integer();
+    }
+
+    private float floatAttribute(String keyword) throws UnableToParseException {
+        attribute(keyword);
+        return floatNumber();
+    }
+
+    /*
+     * skip, then read NAME::=[A-Za-z_][A-Za-z_0-9]*
+     */
+    private String name() throws UnableToParseException {
+        skip();
+        final int start = position;
+        if (position < text.length() && isNameStart(text.charAt(position))) {
+            position++;
+            while (position < text.length() && (isNameStart(text.charAt(position)) || isDigit(text.charAt(position)))) {
+                position++;
+            }
+            return text.substring(start, position);
+        }
+        throw error("a NAME");
+    }
+
+    /*
+     * skip, then read INTEGER::=[0-9]+
+     */
+    private int integer() throws UnableToParseException {
+        skip();
+        final int start = position;
+        while (position < text.length() && isDigit(text.charAt(position))) {
+            position++;
+        }
+        if (position == start) {
+            throw error("an INTEGER");
+        }
+        return Integer.parseInt(text.substring(start, position));
+    }
+
+    /*
+     * skip, then read FLOAT::= '-'?([0-9]+'.'?[0-9]*|'.'[0-9]+)
+     */
+    private float floatNumber() throws UnableToParseException {
+        skip();
+        final int start = position;
+        int end = position;
+        if (end < text.length() && text.charAt(end) == '-') {
+            end++;
+        }
+        if (end < text.length() && isDigit(text.charAt(end))) {
+            while (end < text.length() && isDigit(text.charAt(end))) {
+                end++;
+            }
+            if (end < text.length() && text.charAt(end) == '.') {
+                end++;
+            }
+        } else if (end + 1 < text.length() && text.charAt(end) == '.' && isDigit(text.charAt(end + 1))) {
+            end++;
+        } else {
+            throw error("a FLOAT");
+        }
+        while (end < text.length() && isDigit(text.charAt(end))) {
+            end++;
+        }
+        position = end;
+        return Float.parseFloat(text.substring(start, end));
+    }
+
+    /*
+     * skip, then read KEY ::= [a-z] | [0-9] | 'shift' | ... | 'slash', longest first
+     */
+    private String key() throws UnableToParseException {
+        skip();
+        for (String key : NAMED_KEYS) {
+            if (text.startsWith(key, position)) {
+                position += key.length();
+                return key;
+            }
+        }
+        if (position < text.length()) {
+            final char c = text.charAt(position);
+            if ((c >= 'a' && c <= 'z') || isDigit(c)) {
+                position++;
+                return String.valueOf(c);
+            }
+        }
+        throw error("a KEY");
+    }
+
+    private static boolean isNameStart(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '_';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /*
+     * the exception for a parse that expected something else at position
+     */
+    private UnableToParseException error(String expected) {
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i < position; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        final String found = position < text.length()
+                ? "'" + text.substring(position, Math.min(text.length(), position + 10)).split("\\s", 2)[0] + "'"
+                : "end of input";
+        return new UnableToParseException("line " + line + ", column " + (position - lineStart + 1)
+                + ": expected " + expected + " but found " + found);
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingBoardParser at " + position + " of " + text.length() + " characters";
+    }
+
+    /**
+     * A Builder is a Sink that makes a Board like BoardParser does, adding every gadget to the
+     * board as it is read. A fire, keyup or keydown triggers the absorbers and flippers with
+     * its action name declared before it; the trigger of a fire must be a gadget other than
+     * a ball declared before it, the last one if several have its name.
+     * Builders are mutable and not thread-safe.
+     */
+    public static class Builder implements Sink {
+        private static final Map<String, Integer> KEY_CODES;
+        static {
+            final Map<String, Integer> codes = new HashMap<>();
+            for (char c = 'a'; c <= 'z'; c++) {
+                codes.put(String.valueOf(c), KeyEvent.VK_A + (c - 'a'));
+            }
+            for (char c = '0'; c <= '9'; c++) {
+                codes.put(String.valueOf(c), KeyEvent.VK_0 + (c - '0'));
+            }
+            codes.put("shift", KeyEvent.VK_SHIFT);
+            codes.put("ctrl", KeyEvent.VK_CONTROL);
+            codes.put("alt", KeyEvent.VK_ALT);
+            codes.put("meta", KeyEvent.VK_META);
+            codes.put("space", KeyEvent.VK_SPACE);
+            codes.put("left", KeyEvent.VK_LEFT);
+            codes.put("right", KeyEvent.VK_RIGHT);
+            codes.put("up", KeyEvent.VK_UP);
+            codes.put("down", KeyEvent.VK_DOWN);
+            codes.put("minus", KeyEvent.VK_MINUS);
+            codes.put("equals", KeyEvent.VK_EQUALS);
+            codes.put("backspace", KeyEvent.VK_BACK_SPACE);
+            codes.put("openbracket", KeyEvent.VK_OPEN_BRACKET);
+            codes.put("closebracket", KeyEvent.VK_CLOSE_BRACKET);
+            codes.put("backslash", KeyEvent.VK_BACK_SLASH);
+            codes.put("semicolon", KeyEvent.VK_SEMICOLON);
+            codes.put("quote", KeyEvent.VK_QUOTE);
+            codes.put("enter", KeyEvent.VK_ENTER);
+            codes.put("comma", KeyEvent.VK_COMMA);
+            codes.put("period", KeyEvent.VK_PERIOD);
+            codes.put("slash", KeyEvent.VK_SLASH);
+            KEY_CODES = Collections.unmodifiableMap(codes);
+        }
+
+        private Board board;
+        private final Map<String, Gadget> gadgets = new HashMap<>();
+        private final Map<String, List<Absorber>> absorbers = new HashMap<>();
+        private final Map<String, List<Flipper>> flippers = new HashMap<>();
+
+        // Abstraction function:
+        //   AF(board, gadgets, absorbers, flippers) = the board made so far, null before the
+        //      board was read, where gadgets maps the names of its gadgets other than balls to
+        //      the last gadget of that name, and absorbers and flippers map names to the
+        //      absorbers and flippers of that name in order
+        // Representation invariant:
+        //   gadgets, absorbers and flippers are empty if board is null
+        // Safety from rep exposure:
+        //   all fields are private, board is only returned by getBoard when the parse is done
+
+        /**
+         * @return the board built, or null if no board was read
+         */
+        public Board getBoard() {
+            return board;
+        }
+
+        @Override
+        public void board(String name, float gravity, float friction1, float friction2) {
+            board = new Board(name, gravity, friction1, friction2);
+        }
+
+        @Override
+        public void ball(String name, float x, float y, float xVelocity, float yVelocity) {
+            board.addBall(new Ball(name, new Vect(x, y), new Vect(xVelocity, yVelocity)));
+        }
+
+        @Override
+        public void squareBumper(String name, int x, int y) {
+            final SquareBumper bumper = new SquareBumper(name, new Vect(x, y));
+            gadgets.put(name, bumper);
+            board.addBumper(bumper);
+        }
+
+        @Override
+        public void circleBumper(String name, int x, int y) {
+            final CircleBumper bumper = new CircleBumper(name, new Vect(x, y));
+            gadgets.put(name, bumper);
+            board.addBumper(bumper);
+        }
+
+        @Override
+        public void triangleBumper(String name, int x, int y, int orientation) {
+            final TriangleBumper bumper = new TriangleBumper(name, new Vect(x, y), angle(orientation));
+            gadgets.put(name, bumper);
+            board.addBumper(bumper);
+        }
+
+        @Override
+        public void absorber(String name, int x, int y, int width, int height) {
+            final Absorber absorber = new Absorber(name, new Vect(x, y), new Vect(width, height));
+            gadgets.put(name, absorber);
+            absorbers.computeIfAbsent(name, n -> new ArrayList<>()).add(absorber);
+            board.addAbsorber(absorber);
+        }
+
+        @Override
+        public void flipper(String name, int x, int y, int orientation, boolean left) {
+            final Flipper flipper = new Flipper(name, new Vect(x, y), angle(orientation),
+                    left ? FlipperLeftOrRight.LEFT_FLIPPER : FlipperLeftOrRight.RIGHT_FLIPPER);
+            gadgets.put(name, flipper);
+            flippers.computeIfAbsent(name, n -> new ArrayList<>()).add(flipper);
+            board.addFlipper(flipper);
+        }
+
+        @Override
+        public void portal(String name, int x, int y, String otherBoard, String otherPortal) {
+            final Portal portal = new Portal(name, otherPortal, otherBoard == null ? board.getName() : otherBoard,
+                    new Vect(x, y));
+            gadgets.put(name, portal);
+            board.addPortal(portal);
+        }
+
+        @Override
+        public void fire(String trigger, String action) {
+            final Gadget gadget = gadgets.get(trigger);
+            if (gadget == null) {
+                throw new RuntimeException("no gadget with name " + trigger);
+            }
+            for (Absorber absorber : absorbers.getOrDefault(action, Collections.emptyList())) {
+                board.setTarget(absorber, gadget);
+            }
+            for (Flipper flipper : flippers.getOrDefault(action, Collections.emptyList())) {
+                board.setTarget(flipper, gadget);
+            }
+        }
+
+        @Override
+        public void key(String key, boolean up, String action) {
+            final int keyCode = keyCode(key);
+            for (Absorber absorber : absorbers.getOrDefault(action, Collections.emptyList())) {
+                board.setTarget(absorber, keyCode, up);
+            }
+            for (Flipper flipper : flippers.getOrDefault(action, Collections.emptyList())) {
+                board.setTarget(flipper, keyCode, up);
+            }
+        }
+
+        /**
+         * @param key a KEY of the grammar, e.g. "a" or "space"
+         * @return the KeyEvent code of key
+         * @throws RuntimeException if key is not a KEY
+         */
+        static int keyCode(String key) {
+            final Integer keyCode = KEY_CODES.get(key);
+            if (keyCode == null) {
+                throw new RuntimeException("illegal key");
+            }
+            return keyCode;
+        }
+
+        /**
+         * @param orientation 0, 90, 180 or 270 degrees
+         * @return the angle of orientation, 0 if it is none of these
+         */
+        static Angle angle(int orientation) {
+            switch (orientation) {
+            case 90: return Angle.DEG_90;
+            case 180: return Angle.DEG_180;
+            case 270: return Angle.DEG_270;
+            default: return new Angle(0);
+            }
+        }
+    }
+}
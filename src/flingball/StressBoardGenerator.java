@@ -0,0 +1,336 @@
+package flingball;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A StressBoardGenerator writes board files, matching Board.g, far denser than the sample
+ * boards, for benchmarks: a board filled with gadgets up to a given density, many balls, long
+ * chains of fire triggers and many pairs of portals. The board is the same for the same seed
+ * and settings on every machine, so a slow board can be reproduced exactly.
+ *
+ * Gadgets never overlap each other or the balls, so the density is the fraction of the
+ * 20L x 20L board covered by gadgets; at density 1 every square has a gadget, portal or ball.
+ * The kinds of gadgets are drawn with the weights of the mix. Every fire chain starts at a
+ * random gadget and goes on through random absorbers and flippers, as fire actions must be.
+ *
+ * Usage:
+ * StressBoardGenerator [--seed S] [--density D] [--balls N] [--portals N] [--chains N]
+ *                      [--chain-length N] [--mix KIND=WEIGHT,...] [FILE]
+ * writes the board to FILE, or prints it if no FILE is given. KIND is one of square, circle,
+ * triangle, leftflipper, rightflipper, absorber; e.g.
+ * StressBoardGenerator --seed 7 --density 0.6 --balls 100 --mix square=1,absorber=0 stress.fb
+ *
+ * StressBoardGenerators are immutable and thread-safe.
+ */
+public class StressBoardGenerator {
+    private static final int SIZE = 20;
+    private static final int FLIPPER_SIZE = 2;
+    private static final int MAX_ABSORBER_WIDTH = 4;
+    private static final int MAX_ABSORBER_HEIGHT = 2;
+    private static final int MAX_SPEED = 20;
+    private static final int[] ORIENTATIONS = {0, 90, 180, 270};
+    private static final String BOARD_NAME = "Stress";
+    // gadgets drawn in a row that don't fit before the board is taken as full
+    private static final int MAX_FAILURES = 100;
+
+    /**
+     * A kind of gadget the generator places.
+     */
+    public enum Kind {
+        SQUARE("squareBumper", "Square"),
+        CIRCLE("circleBumper", "Circle"),
+        TRIANGLE("triangleBumper", "Triangle"),
+        LEFTFLIPPER("leftFlipper", "LeftFlipper"),
+        RIGHTFLIPPER("rightFlipper", "RightFlipper"),
+        ABSORBER("absorber", "Absorber");
+
+        private final String keyword;
+        private final String prefix;
+
+        private Kind(String keyword, String prefix) {
+            this.keyword = keyword;
+            this.prefix = prefix;
+        }
+    }
+
+    private final long seed;
+    private final double density;
+    private final int balls;
+    private final int portals;
+    private final int chains;
+    private final int chainLength;
+    private final Map<Kind, Integer> mix;
+
+    // Abstraction function:
+    //   AF(seed, density, balls, portals, chains, chainLength, mix) = the generator of the
+    //      board of seed with gadgets covering density of the board, drawn with the weights
+    //      mix, balls balls, portals pairs of portals and chains fire chains of chainLength
+    // Representation invariant:
+    //   0 <= density <= 1, balls, portals, chains, chainLength >= 0,
+    //   mix has a weight >= 0 for every Kind, and some weight > 0
+    // Safety from rep exposure:
+    //   all fields are private and final; mix is a copy that is never returned
+    // Thread safety argument:
+    //   immutable; every generate() uses its own Random and grid
+
+    /**
+     * Make a generator.
+     * @param seed seed of the board
+     * @param density fraction of the board covered by gadgets and portals, requires 0 <= density <= 1
+     * @param balls number of balls, requires balls >= 0; fewer if the board has no room left
+     * @param portals number of pairs of portals linked to each other, requires portals >= 0
+     * @param chains number of fire chains, requires chains >= 0
+     * @param chainLength number of fire triggers in each chain, requires chainLength >= 0
+     * @param mix weight of every kind of gadget, a kind missing has weight 0; requires weights
+     *        >= 0 and some weight > 0
+     */
+    public StressBoardGenerator(long seed, double density, int balls, int portals, int chains, int chainLength,
+            Map<Kind, Integer> mix) {
+        this.seed = seed;
+        this.density = density;
+        this.balls = balls;
+        this.portals = portals;
+        this.chains = chains;
+        this.chainLength = chainLength;
+        this.mix = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            this.mix.put(kind, mix.getOrDefault(kind, 0));
+        }
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert 0 <= density && density <= 1;
+        assert balls >= 0 && portals >= 0 && chains >= 0 && chainLength >= 0;
+        int total = 0;
+        for (int weight : mix.values()) {
+            assert weight >= 0;
+            total += weight;
+        }
+        assert total > 0;
+    }
+
+    /**
+     * @return a mix of every kind of gadget, bumpers weighing more than flippers and absorbers
+     */
+    public static Map<Kind, Integer> defaultMix() {
+        final Map<Kind, Integer> mix = new EnumMap<>(Kind.class);
+        mix.put(Kind.SQUARE, 4);
+        mix.put(Kind.CIRCLE, 4);
+        mix.put(Kind.TRIANGLE, 4);
+        mix.put(Kind.LEFTFLIPPER, 1);
+        mix.put(Kind.RIGHTFLIPPER, 1);
+        mix.put(Kind.ABSORBER, 1);
+        return mix;
+    }
+
+    /**
+     * @return the board file of this generator, the same for the same seed and settings
+     */
+    public String generate() {
+        final Random random = new Random(seed);
+        final boolean[][] occupied = new boolean[SIZE][SIZE];
+        final StringBuilder board = new StringBuilder();
+        board.append(String.format(Locale.ROOT, "# generated by StressBoardGenerator: seed=%d density=%s balls=%d "
+                + "portals=%d chains=%d chainLength=%d mix=%s\n", seed, density, balls, portals, chains, chainLength, mix));
+        board.append("board name=").append(BOARD_NAME).append('\n');
+
+        final List<String> gadgets = new ArrayList<>();
+        final List<String> targets = new ArrayList<>();
+        final int[] counts = new int[Kind.values().length];
+        int covered = 0;
+        for (int i = 0; i < portals; i++) {
+            final List<int[]> cells = freeCells(occupied, random, 2);
+            if (cells.size() < 2) {
+                break;
+            }
+            for (int end = 0; end < 2; end++) {
+                final int[] cell = cells.get(end);
+                occupied[cell[0]][cell[1]] = true;
+                board.append(String.format(Locale.ROOT, "portal name=Portal%d_%d x=%d y=%d otherPortal=Portal%d_%d\n",
+                        i, end, cell[0], cell[1], i, 1 - end));
+                gadgets.add("Portal" + i + "_" + end);
+            }
+            covered += 2;
+        }
+
+        final int goal = (int) Math.round(density * SIZE * SIZE);
+        for (int failures = 0; covered < goal && failures < MAX_FAILURES; ) {
+            final Kind kind = pick(random);
+            final int width = kind == Kind.ABSORBER ? 1 + random.nextInt(MAX_ABSORBER_WIDTH)
+                    : kind == Kind.LEFTFLIPPER || kind == Kind.RIGHTFLIPPER ? FLIPPER_SIZE : 1;
+            final int height = kind == Kind.ABSORBER ? 1 + random.nextInt(MAX_ABSORBER_HEIGHT)
+                    : kind == Kind.LEFTFLIPPER || kind == Kind.RIGHTFLIPPER ? FLIPPER_SIZE : 1;
+            final int[] corner = covered + width * height > goal ? null : place(occupied, random, width, height);
+            if (corner == null) {
+                failures++;
+                continue;
+            }
+            failures = 0;
+            final int x = corner[0];
+            final int y = corner[1];
+            for (int i = x; i < x + width; i++) {
+                for (int j = y; j < y + height; j++) {
+                    occupied[i][j] = true;
+                }
+            }
+            covered += width * height;
+            final String name = kind.prefix + counts[kind.ordinal()]++;
+            board.append(kind.keyword).append(" name=").append(name).append(" x=").append(x).append(" y=").append(y);
+            switch (kind) {
+            case ABSORBER:
+                board.append(" width=").append(width).append(" height=").append(height);
+                targets.add(name);
+                break;
+            case LEFTFLIPPER:
+            case RIGHTFLIPPER:
+                board.append(" orientation=").append(ORIENTATIONS[random.nextInt(ORIENTATIONS.length)]);
+                targets.add(name);
+                break;
+            case TRIANGLE:
+                board.append(" orientation=").append(ORIENTATIONS[random.nextInt(ORIENTATIONS.length)]);
+                break;
+            default:
+                break;
+            }
+            board.append('\n');
+            gadgets.add(name);
+        }
+
+        final List<int[]> cells = freeCells(occupied, random, balls);
+        for (int i = 0; i < cells.size(); i++) {
+            board.append(String.format(Locale.ROOT, "ball name=Ball%d x=%.2f y=%.2f xVelocity=%.2f yVelocity=%.2f\n",
+                    i, cells.get(i)[0] + 0.5, cells.get(i)[1] + 0.5, velocity(random), velocity(random)));
+        }
+
+        if (!gadgets.isEmpty() && !targets.isEmpty()) {
+            for (int i = 0; i < chains; i++) {
+                String trigger = gadgets.get(random.nextInt(gadgets.size()));
+                for (int j = 0; j < chainLength; j++) {
+                    final String action = targets.get(random.nextInt(targets.size()));
+                    board.append("fire trigger=").append(trigger).append(" action=").append(action).append('\n');
+                    trigger = action;
+                }
+            }
+        }
+        return board.toString();
+    }
+
+    /*
+     * Pick a kind of gadget with the weights of mix.
+     */
+    private Kind pick(Random random) {
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += weight;
+        }
+        int draw = random.nextInt(total);
+        for (Map.Entry<Kind, Integer> weight : mix.entrySet()) {
+            draw -= weight.getValue();
+            if (draw < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new AssertionError("weights add up to " + total);
+    }
+
+    /*
+     * @return a random {x, y} where a gadget of width and height fits on the free squares of
+     *         occupied, or null if there is none
+     */
+    private static int[] place(boolean[][] occupied, Random random, int width, int height) {
+        for (int[] cell : freeCells(occupied, random, SIZE * SIZE)) {
+            if (cell[0] + width <= SIZE && cell[1] + height <= SIZE && isFree(occupied, cell[0], cell[1], width, height)) {
+                return cell;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isFree(boolean[][] occupied, int x, int y, int width, int height) {
+        for (int i = x; i < x + width; i++) {
+            for (int j = y; j < y + height; j++) {
+                if (occupied[i][j]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+     * @return at most n random free squares {x, y} of occupied, without repeats
+     */
+    private static List<int[]> freeCells(boolean[][] occupied, Random random, int n) {
+        final List<int[]> cells = new ArrayList<>();
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                if (!occupied[x][y]) {
+                    cells.add(new int[] {x, y});
+                }
+            }
+        }
+        Collections.shuffle(cells, random);
+        return cells.subList(0, Math.min(n, cells.size()));
+    }
+
+    private static double velocity(Random random) {
+        return (random.nextDouble() * 2 - 1) * MAX_SPEED;
+    }
+
+    @Override
+    public String toString() {
+        return "StressBoardGenerator of seed " + seed + ", density " + density + ", " + balls + " balls, " + portals
+                + " portal pairs, " + chains + " chains of " + chainLength + ", mix " + mix;
+    }
+
+    /**
+     * Generate a board file, see the class comment.
+     * @param args command line arguments
+     * @throws IOException if FILE can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        long seed = 0;
+        double density = 0.5;
+        int balls = 100;
+        int portals = 10;
+        int chains = 10;
+        int chainLength = 20;
+        Map<Kind, Integer> mix = defaultMix();
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "--seed": seed = Long.parseLong(args[++i]); break;
+            case "--density": density = Double.parseDouble(args[++i]); break;
+            case "--balls": balls = Integer.parseInt(args[++i]); break;
+            case "--portals": portals = Integer.parseInt(args[++i]); break;
+            case "--chains": chains = Integer.parseInt(args[++i]); break;
+            case "--chain-length": chainLength = Integer.parseInt(args[++i]); break;
+            case "--mix":
+                for (String weight : args[++i].split(",")) {
+                    final String[] parts = weight.split("=");
+                    mix.put(Kind.valueOf(parts[0].toUpperCase(Locale.ROOT)), Integer.parseInt(parts[1]));
+                }
+                break;
+            default: file = args[i];
+            }
+        }
+        final String board = new StressBoardGenerator(seed, density, balls, portals, chains, chainLength, mix).generate();
+        if (file == null) {
+            System.out.print(board);
+        } else {
+            Files.write(Paths.get(file), board.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package flingball;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * SyntheticClient is a headless fake Flingball client. It speaks the same protocol
+ * as Flingball (see the spec of Flingball and FlingballServer) but has no Board and
+ * no GUI: every ball request it receives from the FlingballServer is handed to a
+ * listener instead of being simulated. It is meant for load generation and replay.
+ *
+ * A SyntheticClient is thread-safe.
+ */
+public class SyntheticClient {
+    private final String boardName;
+    private final List<String> portals;
+    private final Consumer<String> ballListener;
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final Map<String, String> neighbours;
+    private final DedupWindow received;
+    private ServerSocket serverSocket;
+    private int userID;
+
+    // Abstraction function:
+    //   AF(boardName, portals, ballListener, socket, in, out, neighbours, received, serverSocket, userID) =
+    //      a fake client playing a board called boardName with portals portals,
+    //      that sends requests to FlingballServer through socket/in/out and receives requests
+    //      from the server on serverSocket. neighbours maps each joined direction to
+    //      the name of the board joined on it. Received ball requests go to ballListener,
+    //      except those whose SEQ is in received, the window of the latest SEQs.
+    // Representation invariant:
+    //   1. boardName, portals, ballListener, socket, in, out, neighbours, received not null
+    //   2. if connected, serverSocket not null and userID > 0
+    // Safety from rep exposure:
+    //   all fields private; portals is an unmodifiable copy; neighbours is only returned as a copy.
+    // Thread safety argument:
+    //   all instance methods are synchronized except the inbound thread, which only
+    //   touches neighbours (a synchronized map), received (thread-safe) and the final ballListener.
+
+    /**
+     * Make a SyntheticClient and open its connection to a FlingballServer.
+     * @param host host name of the server
+     * @param port port of the server
+     * @param boardName name of the fake board
+     * @param portals names of the portals the fake board claims to have
+     * @param ballListener called with every TRANSFER_BALL_REQUEST and PORTAL_BALL_REQUEST
+     *                     received from the server, once per SEQ (see BallLedger), on the
+     *                     thread that received it
+     * @throws IOException if can't connect
+     */
+    public SyntheticClient(String host, int port, String boardName, List<String> portals,
+            Consumer<String> ballListener) throws IOException {
+        this.boardName = boardName;
+        this.portals = Collections.unmodifiableList(new ArrayList<>(portals));
+        this.ballListener = ballListener;
+        this.socket = new Socket(host, port);
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
+        this.neighbours = Collections.synchronizedMap(new HashMap<>());
+        this.received = new DedupWindow(Flingball.DEDUP_WINDOW);
+        checkRep();
+    }
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert boardName != null;
+        assert portals != null;
+        assert ballListener != null;
+        assert socket != null;
+        assert in != null;
+        assert out != null;
+        assert neighbours != null;
+        assert received != null;
+    }
+
+    /**
+     * Register the fake board with the server, open the socket on which the server
+     * sends requests to this client and tell the server about it.
+     * @return the reply to the connect request
+     * @throws IOException if network or server failure
+     */
+    public synchronized String connect() throws IOException {
+        StringBuilder request = new StringBuilder("connect ").append(boardName);
+        for (String portal : portals) {
+            request.append(' ').append(portal);
+        }
+        String reply = send(request.toString());
+        if (!reply.startsWith("succeed:")) {
+            return reply;
+        }
+        userID = Integer.parseInt(reply.split(" ")[1]);
+        serverSocket = new ServerSocket(userID + Flingball.PORT_START_NUMBER);
+        Thread inbound = new Thread(this::serveInbound, "synthetic-" + boardName);
+        inbound.setDaemon(true);
+        inbound.start();
+        send("server created");
+        checkRep();
+        return reply;
+    }
+
+    /*
+     * accept the server's connection and answer its requests until it closes
+     */
+    private void serveInbound() {
+        try (Socket fromServer = serverSocket.accept();
+                BufferedReader serverIn = new BufferedReader(new InputStreamReader(fromServer.getInputStream()));
+                PrintWriter serverOut = new PrintWriter(fromServer.getOutputStream(), true)) {
+            for (String input = serverIn.readLine(); input != null; input = serverIn.readLine()) {
+                serverOut.println(handleRequest(input));
+            }
+        } catch (IOException ioe) {
+            // the server or this client closed the connection, stop serving
+        }
+    }
+
+    /*
+     * handle one request from the server, mirroring Flingball's replies
+     */
+    private String handleRequest(String input) {
+        String[] tokens = input.split(" ");
+        switch (tokens[0]) {
+        case "tran":
+        case "port":
+            final Tokenizer ball = new Tokenizer(input);
+            final long seq = BallLedger.parse(ball, BallLedger.indexIn(ball, Flingball.ballFields(ball)));
+            if (received.add(seq)) {
+                ballListener.accept(input);
+            }
+            return "succeed: ball received" + BallLedger.ack(seq);
+        case "hint":
+            return "succeed: hint received";
+        case "join":
+            if (tokens.length == 3) {
+                neighbours.put(tokens[1], tokens[2]);
+                return "succeed: boards joined";
+            }
+            return "fail: illegal command";
+        case "joins":
+            if (tokens.length >= 3 && tokens.length % 2 == 1) {
+                for (int i = 1; i < tokens.length; i += 2) {
+                    neighbours.put(tokens[i], tokens[i + 1]);
+                }
+                return "succeed: boards joined";
+            }
+            return "fail: illegal command";
+        case "disjoin":
+            neighbours.values().removeIf(tokens[1]::equals);
+            return "succeed: disjoined board";
+        case "ping":
+            return "succeed: pong";
+        default:
+            return "fail: illegal command";
+        }
+    }
+
+    /**
+     * Send one request to the server and wait for its reply.
+     * @param request a request following the FlingballServer protocol, without NEWLINE
+     * @return the server's reply
+     * @throws IOException if network or server failure
+     */
+    public synchronized String send(String request) throws IOException {
+        out.print(request + "\n");
+        out.flush();
+        String reply = in.readLine();
+        if (reply == null) {
+            throw new IOException("connection terminated unexpectedly");
+        }
+        return reply;
+    }
+
+    /**
+     * @return the name of the fake board
+     */
+    public String getBoardName() {
+        return boardName;
+    }
+
+    /**
+     * @return the portals of the fake board
+     */
+    public List<String> getPortals() {
+        return portals;
+    }
+
+    /**
+     * @return a copy of the map from joined direction ("left", "right", "top", "bottom")
+     *         to the name of the board joined on that side
+     */
+    public Map<String, String> getNeighbours() {
+        synchronized (neighbours) {
+            return new HashMap<>(neighbours);
+        }
+    }
+
+    /**
+     * Send a quit request and close all sockets of this client.
+     * @throws IOException if close fails
+     */
+    public synchronized void close() throws IOException {
+        if (!socket.isClosed()) {
+            out.print("quit\n");
+            out.flush();
+        }
+        in.close();
+        out.close();
+        socket.close();
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticClient with board " + boardName;
+    }
+}
@@ -0,0 +1,156 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A TimerWheel is a hashed timing wheel of deadlines of keys: a ring of slots, where each
+ * slot holds the keys whose deadline falls on a tick that maps to it. Scheduling,
+ * rescheduling and cancelling a deadline take constant time however many keys there are,
+ * and advancing the wheel only looks at the slots of the ticks that passed, which makes it
+ * cheap to push back the deadline of a key every time it shows a sign of life.
+ *
+ * Time is given by the caller in milliseconds. Deadlines are rounded up to whole ticks, so a
+ * key never expires before its deadline, and at most one tick after it.
+ * TimerWheels are mutable and thread-safe.
+ *
+ * @param <K> type of the keys, which must be immutable
+ */
+public class TimerWheel<K> {
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final List<Set<K>> slots;
+    private final Map<K, Long> deadlines;
+    private long tick;
+
+    // Abstraction function:
+    //   AF(tickMillis, startMillis, slots, deadlines, tick) = a wheel turning one slot every
+    //      tickMillis since startMillis, now at tick number tick, where key k expires when
+    //      the wheel reaches tick number deadlines.get(k)
+    // Representation invariant:
+    //   tickMillis > 0, slots not empty
+    //   k is in slots.get(d % slots.size()) iff deadlines.get(k) == d
+    //   deadlines.get(k) > tick for every key k
+    // Safety from rep exposure:
+    //   all fields are private, keys are immutable, advance returns a new list
+    // Thread safety argument:
+    //   all fields are guarded by the lock of this, every method that touches them is
+    //   synchronized
+
+    /**
+     * Make an empty TimerWheel.
+     * @param tickMillis length of a tick in milliseconds, > 0
+     * @param slotCount number of slots, > 0; deadlines more than slotCount ticks away
+     *        share slots with nearer ones, which only costs advance more work
+     * @param startMillis the current time in milliseconds, e.g. of System.currentTimeMillis()
+     */
+    public TimerWheel(long tickMillis, int slotCount, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+        this.slots = new ArrayList<>();
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new LinkedHashSet<>());
+        }
+        this.deadlines = new HashMap<>();
+        this.tick = 0;
+        checkRep();
+    }
+
+    // checkRep
+    private synchronized void checkRep() {
+        assert tickMillis > 0;
+        assert !slots.isEmpty();
+        for (Map.Entry<K, Long> deadline : deadlines.entrySet()) {
+            assert deadline.getValue() > tick;
+            assert slotOf(deadline.getValue()).contains(deadline.getKey());
+        }
+    }
+
+    /*
+     * the slot of tick number t
+     */
+    private Set<K> slotOf(long t) {
+        return slots.get((int) (t % slots.size()));
+    }
+
+    /**
+     * Set the deadline of a key, replacing its deadline if it has one.
+     * @param key the key
+     * @param deadlineMillis time at which the key expires, on the clock of startMillis
+     */
+    public synchronized void schedule(K key, long deadlineMillis) {
+        cancel(key);
+        final long elapsed = Math.max(0, deadlineMillis - startMillis);
+        final long deadline = Math.max(tick + 1, (elapsed + tickMillis - 1) / tickMillis);
+        deadlines.put(key, deadline);
+        slotOf(deadline).add(key);
+    }
+
+    /**
+     * Remove the deadline of a key.
+     * @param key the key
+     * @return true iff key had a deadline
+     */
+    public synchronized boolean cancel(K key) {
+        final Long deadline = deadlines.remove(key);
+        if (deadline == null) {
+            return false;
+        }
+        slotOf(deadline).remove(key);
+        return true;
+    }
+
+    /**
+     * @param key the key
+     * @return true iff key has a deadline
+     */
+    public synchronized boolean contains(K key) {
+        return deadlines.containsKey(key);
+    }
+
+    /**
+     * @return number of keys with a deadline
+     */
+    public synchronized int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * Turn the wheel to the current time and remove the keys that expired.
+     * @param nowMillis the current time in milliseconds, on the clock of startMillis
+     * @return the keys whose deadline passed
+     */
+    public synchronized List<K> advance(long nowMillis) {
+        final List<K> expired = new ArrayList<>();
+        final long target = Math.max(0, nowMillis - startMillis) / tickMillis;
+        if (target - tick > slots.size()) {
+            // every slot is visited once below, with a tick at or after its deadlines
+            tick = target - slots.size();
+        }
+        while (tick < target) {
+            tick++;
+            final Iterator<K> keys = slotOf(tick).iterator();
+            while (keys.hasNext()) {
+                final K key = keys.next();
+                if (deadlines.get(key) <= tick) {
+                    keys.remove();
+                    deadlines.remove(key);
+                    expired.add(key);
+                }
+            }
+        }
+        checkRep();
+        return expired;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TimerWheel at tick " + tick + " of " + tickMillis + "ms with " + deadlines.size() + " deadlines";
+    }
+}
@@ -0,0 +1,73 @@
+package flingball;
+
+/**
+ * A TokenBucket limits the rate of the messages of one client: it holds up to burst tokens,
+ * refilled at ratePerSecond, and each message takes one token or is throttled. A client
+ * may so send bursts of up to burst messages, but no more than ratePerSecond on average.
+ * A bucket with ratePerSecond 0 never throttles.
+ *
+ * TokenBuckets are mutable and not thread-safe, a FlingballServer confines each to the
+ * thread serving the connection of its client.
+ */
+public class TokenBucket {
+    private static final double NANOSECONDS_PER_SECOND = 1e9;
+
+    private final double ratePerSecond;
+    private final double burst;
+    private double tokens;
+    private long refilledAt;
+
+    // Abstraction function:
+    //   AF(ratePerSecond, burst, tokens, refilledAt) = a bucket of burst tokens refilled at
+    //      ratePerSecond, or unlimited if ratePerSecond == 0, that held tokens at refilledAt
+    //      (System.nanoTime())
+    // Representation invariant:
+    //   ratePerSecond >= 0, burst >= 1, 0 <= tokens <= burst
+    // Safety from rep exposure:
+    //   all fields are private and primitive
+
+    /**
+     * Make a full bucket.
+     * @param ratePerSecond messages allowed per second on average, 0 for no limit
+     * @param burst messages allowed at once, >= 1
+     * @param nowNanos the current time, see System.nanoTime()
+     */
+    public TokenBucket(double ratePerSecond, int burst, long nowNanos) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = nowNanos;
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert ratePerSecond >= 0;
+        assert burst >= 1;
+        assert 0 <= tokens && tokens <= burst;
+    }
+
+    /**
+     * Take a token for a message, if there is one.
+     * @param nowNanos the current time, see System.nanoTime(), not before the last call
+     * @return true iff the message may pass, false if it is throttled
+     */
+    public boolean tryTake(long nowNanos) {
+        if (ratePerSecond == 0) {
+            return true;
+        }
+        tokens = Math.min(burst, tokens + (nowNanos - refilledAt) * ratePerSecond / NANOSECONDS_PER_SECOND);
+        refilledAt = nowNanos;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        checkRep();
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBucket of " + (int) burst + " at " + ratePerSecond + "/s";
+    }
+}
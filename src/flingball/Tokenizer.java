@@ -0,0 +1,455 @@
+package flingball;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/**
+ * A Tokenizer is a reusable cursor over the tokens of one message of the protocols of
+ * FlingballServer and Flingball, where tokens are separated by spaces. It reads the message
+ * in place, either as characters or as the bytes of a frame, and parses numbers without
+ * creating objects, so that handling a ball request only allocates the strings it keeps
+ * (like the ball's name).
+ *
+ * Tokens are indexed from 0 like the result of String.split(" "), except that runs of spaces
+ * separate tokens like a single space. Offsets are indexes into the characters of the message,
+ * or into the bytes of the buffer for a message read from a buffer.
+ *
+ * A Tokenizer is not thread-safe; it must be confined to one thread or guarded by a lock.
+ */
+public class Tokenizer {
+    private static final char SEPARATOR = ' ';
+    // largest number of significant digits that always fits in a long
+    private static final int MAX_DIGITS = 18;
+    // powers of ten that are exact doubles
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private CharSequence chars;
+    private ByteBuffer bytes;
+    private int start;
+    private int end;
+    private int cursor;
+    private int index;
+    private int count;
+
+    // Abstraction function:
+    //   AF(chars, bytes, start, end, cursor, index, count) = a cursor before token index of the
+    //      message chars[start, end), or bytes[start, end) read as ASCII if bytes is not null,
+    //      where the message is tokenized from cursor on. count is the number of tokens of
+    //      the message, or -1 if not counted yet.
+    // Representation invariant:
+    //   exactly one of chars, bytes is not null
+    //   0 <= start <= cursor <= end
+    //   index >= 0, count == -1 || index <= count
+    // Safety from rep exposure:
+    //   chars and bytes are given by the client, who is required not to change them while
+    //   tokenizing, and are never returned; all other fields are immutable values
+
+    /**
+     * Make a Tokenizer of the empty message.
+     */
+    public Tokenizer() {
+        reset("");
+    }
+
+    /**
+     * Make a Tokenizer of a message.
+     * @param message message to tokenize, must not change while it is tokenized
+     */
+    public Tokenizer(CharSequence message) {
+        reset(message);
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert (chars == null) != (bytes == null);
+        assert 0 <= start && start <= cursor && cursor <= end;
+        assert index >= 0;
+        assert count == -1 || index <= count;
+    }
+
+    /**
+     * Start tokenizing a new message, before its first token.
+     * @param message message to tokenize, must not change while it is tokenized
+     * @return this tokenizer
+     */
+    public Tokenizer reset(CharSequence message) {
+        chars = message;
+        bytes = null;
+        return reset(0, message.length());
+    }
+
+    /**
+     * Start tokenizing the remaining bytes of a buffer as a message, before its first token.
+     * Tokens are read as ASCII, except that next() decodes them as UTF-8.
+     * Doesn't change the position or limit of the buffer.
+     * @param message buffer whose remaining bytes are the message, must not change while it is tokenized
+     * @return this tokenizer
+     */
+    public Tokenizer reset(ByteBuffer message) {
+        chars = null;
+        bytes = message;
+        return reset(message.position(), message.limit());
+    }
+
+    // start tokenizing [from, to) of the current message
+    private Tokenizer reset(int from, int to) {
+        start = from;
+        end = to;
+        cursor = from;
+        index = 0;
+        count = -1;
+        checkRep();
+        return this;
+    }
+
+    // character at offset i, start <= i < end
+    private char charAt(int i) {
+        return chars != null ? chars.charAt(i) : (char)(bytes.get(i) & 0xff);
+    }
+
+    // move the cursor to the start of the next token, or to end
+    private void skipSeparators() {
+        while (cursor < end && charAt(cursor) == SEPARATOR) {
+            cursor++;
+        }
+    }
+
+    // end offset of the token starting at from
+    private int endOfToken(int from) {
+        int i = from;
+        while (i < end && charAt(i) != SEPARATOR) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return true iff the message has a token after the cursor
+     */
+    public boolean hasNext() {
+        skipSeparators();
+        return cursor < end;
+    }
+
+    /**
+     * @return number of tokens of the message
+     */
+    public int count() {
+        if (count < 0) {
+            int tokens = 0;
+            int i = start;
+            while (i < end) {
+                if (charAt(i) == SEPARATOR) {
+                    i++;
+                } else {
+                    tokens++;
+                    i = endOfToken(i);
+                }
+            }
+            count = tokens;
+        }
+        return count;
+    }
+
+    /**
+     * @return index of the token after the cursor, or count() if there is none
+     */
+    public int index() {
+        return index;
+    }
+
+    /**
+     * Move the cursor before a token.
+     * @param tokenIndex index of the token, 0 <= tokenIndex <= count()
+     * @return this tokenizer
+     */
+    public Tokenizer seek(int tokenIndex) {
+        if (tokenIndex < index) {
+            cursor = start;
+            index = 0;
+        }
+        while (index < tokenIndex) {
+            skip();
+        }
+        checkRep();
+        return this;
+    }
+
+    /**
+     * @return offset of the token after the cursor, or the end offset of the message if there is none
+     */
+    public int offset() {
+        skipSeparators();
+        return cursor;
+    }
+
+    /**
+     * @return offset just after the token after the cursor, or the end offset of the message
+     *         if there is none
+     */
+    public int tokenEnd() {
+        skipSeparators();
+        return endOfToken(cursor);
+    }
+
+    /**
+     * Find a token, without moving the cursor.
+     * @param word token to find
+     * @param from index of the first token to compare with word, >= 0
+     * @return index of the first token equal to word from index from on, or count() if there is none
+     */
+    public int indexOf(CharSequence word, int from) {
+        final int savedCursor = cursor;
+        final int savedIndex = index;
+        seek(Math.min(from, count()));
+        while (hasNext() && !peekIs(word)) {
+            skip();
+        }
+        final int found = index;
+        cursor = savedCursor;
+        index = savedIndex;
+        return found;
+    }
+
+    /**
+     * @param word a word without spaces
+     * @return true iff the token after the cursor equals word. Doesn't move the cursor.
+     */
+    public boolean peekIs(CharSequence word) {
+        skipSeparators();
+        if (endOfToken(cursor) - cursor != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (charAt(cursor + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skip the token after the cursor if it equals word.
+     * @param word a word without spaces
+     * @return true iff the token after the cursor equals word (and was skipped)
+     */
+    public boolean nextIs(CharSequence word) {
+        if (!peekIs(word)) {
+            return false;
+        }
+        skip();
+        return true;
+    }
+
+    /**
+     * Skip the token after the cursor.
+     * @return this tokenizer
+     * @throws NoSuchElementException if there is no token after the cursor
+     */
+    public Tokenizer skip() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no token " + index);
+        }
+        cursor = endOfToken(cursor);
+        index++;
+        return this;
+    }
+
+    /**
+     * Read the token after the cursor as a string; the only read that allocates.
+     * @return the token
+     * @throws NoSuchElementException if there is no token after the cursor
+     */
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no token " + index);
+        }
+        final int from = cursor;
+        final int to = endOfToken(from);
+        final String token;
+        if (chars != null) {
+            token = chars.subSequence(from, to).toString();
+        } else {
+            final ByteBuffer view = bytes.duplicate();
+            view.limit(to).position(from);
+            token = StandardCharsets.UTF_8.decode(view).toString();
+        }
+        cursor = to;
+        index++;
+        return token;
+    }
+
+    /**
+     * Read the token after the cursor as a decimal integer with optional sign,
+     * like Integer.parseInt.
+     * @return the value of the token
+     * @throws NoSuchElementException if there is no token after the cursor
+     * @throws NumberFormatException if the token is not an int; the cursor doesn't move then
+     */
+    public int nextInt() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no token " + index);
+        }
+        final int to = endOfToken(cursor);
+        final long value = parseLong(cursor, to);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw numberFormat(cursor, to);
+        }
+        cursor = to;
+        index++;
+        return (int)value;
+    }
+
+    /**
+     * Read the token after the cursor as a decimal long with optional sign, like Long.parseLong.
+     * @return the value of the token
+     * @throws NoSuchElementException if there is no token after the cursor
+     * @throws NumberFormatException if the token is not a long; the cursor doesn't move then
+     */
+    public long nextLong() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no token " + index);
+        }
+        final int to = endOfToken(cursor);
+        final long value = parseLong(cursor, to);
+        cursor = to;
+        index++;
+        return value;
+    }
+
+    /**
+     * Read the token after the cursor as a double, like Double.parseDouble. Decimal tokens
+     * like the ones made by Double.toString are parsed without allocating. The result is the
+     * same as Double.parseDouble for tokens with at most 15 significant digits, and may differ
+     * from it in the last bit otherwise.
+     * @return the value of the token
+     * @throws NoSuchElementException if there is no token after the cursor
+     * @throws NumberFormatException if the token is not a double; the cursor doesn't move then
+     */
+    public double nextDouble() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no token " + index);
+        }
+        final int to = endOfToken(cursor);
+        final double value = parseDouble(cursor, to);
+        cursor = to;
+        index++;
+        return value;
+    }
+
+    // parse [from, to) as a long
+    private long parseLong(int from, int to) {
+        int i = from;
+        final boolean negative = charAt(i) == '-';
+        if (negative || charAt(i) == '+') {
+            i++;
+        }
+        if (i == to) {
+            throw numberFormat(from, to);
+        }
+        // accumulate negatively, which also reaches Long.MIN_VALUE
+        long value = 0;
+        for (; i < to; i++) {
+            final int digit = charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                throw numberFormat(from, to);
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            throw numberFormat(from, to);
+        }
+        return negative ? value : -value;
+    }
+
+    // parse [from, to) as a double
+    private double parseDouble(int from, int to) {
+        int i = from;
+        final boolean negative = charAt(i) == '-';
+        if (negative || charAt(i) == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        for (; i < to && isDigit(charAt(i)); i++) {
+            anyDigit = true;
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (charAt(i) - '0');
+                digits += mantissa == 0 ? 0 : 1;
+            } else {
+                exponent++;
+            }
+        }
+        if (i < to && charAt(i) == '.') {
+            for (i++; i < to && isDigit(charAt(i)); i++) {
+                anyDigit = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (charAt(i) - '0');
+                    digits += mantissa == 0 ? 0 : 1;
+                    exponent--;
+                }
+            }
+        }
+        if (anyDigit && i < to && (charAt(i) == 'e' || charAt(i) == 'E')) {
+            i++;
+            final boolean negativeExponent = i < to && charAt(i) == '-';
+            if (i < to && (negativeExponent || charAt(i) == '+')) {
+                i++;
+            }
+            int written = 0;
+            boolean anyExponentDigit = false;
+            for (; i < to && isDigit(charAt(i)); i++) {
+                anyExponentDigit = true;
+                written = Math.min(written * 10 + (charAt(i) - '0'), 10 * POWERS_OF_TEN.length);
+            }
+            if (!anyExponentDigit) {
+                return slowParseDouble(from, to);
+            }
+            exponent += negativeExponent ? -written : written;
+        }
+        if (!anyDigit || i != to || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+            // NaN, Infinity, hexadecimal, suffixes, tiny or huge values, or not a number
+            return slowParseDouble(from, to);
+        }
+        double value = mantissa;
+        if (exponent < 0) {
+            value /= POWERS_OF_TEN[-exponent];
+        } else {
+            value *= POWERS_OF_TEN[exponent];
+        }
+        return negative ? -value : value;
+    }
+
+    // parse [from, to) with Double.parseDouble
+    private double slowParseDouble(int from, int to) {
+        return Double.parseDouble(substring(from, to));
+    }
+
+    private static boolean isDigit(char c) {
+        return '0' <= c && c <= '9';
+    }
+
+    // [from, to) of the message
+    private String substring(int from, int to) {
+        final StringBuilder builder = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            builder.append(charAt(i));
+        }
+        return builder.toString();
+    }
+
+    private NumberFormatException numberFormat(int from, int to) {
+        return new NumberFormatException("For input string: \"" + substring(from, to) + "\"");
+    }
+
+    @Override
+    public String toString() {
+        return "Tokenizer at token " + index + " of \"" + substring(start, end) + "\"";
+    }
+}
@@ -0,0 +1,292 @@
+package flingball;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A Topology is an immutable layout of boards: for every board in it, the boards joined
+ * to its sides. Joins are symmetric, if b2 is joined to the right of b1 then b1 is joined
+ * to the left of b2, and a side of a board is joined to at most one board.
+ *
+ * A topology is written as text with one entry per line:
+ *
+ * h NAME_left NAME_right       joins two boards side-by-side, like the "h" command of FlingballServer
+ * v NAME_top NAME_bottom       joins two boards top-and-bottom, like the "v" command
+ * grid COLS NAME+              lays out boards row by row in a grid COLS wide, joining each
+ *                              board to the boards right of and below it
+ * torus COLS NAME+             like grid, but the rows and columns wrap around
+ *
+ * where the list of NAMEs of a grid or torus may be "*", which stands for all connected
+ * boards in the order they connected. Blank lines and lines starting with "#" are ignored.
+ * e.g. a 2x2 torus of the connected boards: "torus 2 *"
+ */
+public class Topology {
+    /** stands for all connected boards in a grid or torus */
+    public static final String ALL_BOARDS = "*";
+    private static final String COMMENT = "#";
+
+    private final Map<String, Map<BOARD_DIRECTION, String>> neighbours;
+
+    // Abstraction function:
+    //   AF(neighbours) = the layout where the board neighbours.get(b).get(d) is joined to
+    //      side d of board b, for every board b and direction d in neighbours
+    // Representation invariant:
+    //   no board has an empty map of neighbours
+    //   neighbours.get(b).get(d) == c iff neighbours.get(c).get(opposite(d)) == b
+    // Safety from rep exposure:
+    //   neighbours and its maps are unmodifiable, and only copies of maps are returned
+
+    /*
+     * Make a Topology from a layout that satisfies the rep invariant.
+     */
+    private Topology(Map<String, Map<BOARD_DIRECTION, String>> neighbours) {
+        final Map<String, Map<BOARD_DIRECTION, String>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<BOARD_DIRECTION, String>> board : neighbours.entrySet()) {
+            copy.put(board.getKey(), Collections.unmodifiableMap(new EnumMap<>(board.getValue())));
+        }
+        this.neighbours = Collections.unmodifiableMap(copy);
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        for (Map.Entry<String, Map<BOARD_DIRECTION, String>> board : neighbours.entrySet()) {
+            assert !board.getValue().isEmpty();
+            for (Map.Entry<BOARD_DIRECTION, String> side : board.getValue().entrySet()) {
+                assert board.getKey().equals(neighbours.get(side.getValue()).get(opposite(side.getKey())));
+            }
+        }
+    }
+
+    /**
+     * @param direction a side of a board
+     * @return the side of a board joined to direction
+     */
+    public static BOARD_DIRECTION opposite(BOARD_DIRECTION direction) {
+        switch (direction) {
+        case LEFT: return BOARD_DIRECTION.RIGHT;
+        case RIGHT: return BOARD_DIRECTION.LEFT;
+        case TOP: return BOARD_DIRECTION.BOTTOM;
+        default: return BOARD_DIRECTION.TOP;
+        }
+    }
+
+    /**
+     * Parse a topology.
+     * @param text entries of the topology, one per line, in the format above
+     * @param connected the connected boards in the order they connected, for "*"
+     * @return the topology of text
+     * @throws IllegalArgumentException if text doesn't follow the format or joins a side
+     *         of a board to two different boards
+     */
+    public static Topology parse(String text, List<String> connected) {
+        final Builder layout = new Builder();
+        final String[] lines = text.split("\r?\n");
+        for (int i = 0; i < lines.length; i++) {
+            final String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith(COMMENT)) {
+                continue;
+            }
+            try {
+                parseEntry(new Tokenizer(line), connected, layout);
+            } catch (IllegalArgumentException | NoSuchElementException e) {
+                throw new IllegalArgumentException("line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return new Topology(layout.neighbours);
+    }
+
+    /*
+     * add the joins of one entry to layout
+     */
+    private static void parseEntry(Tokenizer tokens, List<String> connected, Builder layout) {
+        if (tokens.peekIs("h") || tokens.peekIs("v")) {
+            final boolean horizontal = tokens.nextIs("h");
+            if (!horizontal) {
+                tokens.skip();
+            }
+            if (tokens.count() != 3) {
+                throw new IllegalArgumentException("expected 2 board names");
+            }
+            final String first = tokens.next();
+            final String second = tokens.next();
+            layout.join(first, horizontal ? BOARD_DIRECTION.RIGHT : BOARD_DIRECTION.BOTTOM, second);
+        } else if (tokens.peekIs("grid") || tokens.peekIs("torus")) {
+            final boolean torus = tokens.nextIs("torus");
+            if (!torus) {
+                tokens.skip();
+            }
+            final int cols;
+            try {
+                cols = tokens.nextInt();
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("COLS is not a number");
+            }
+            if (cols <= 0) {
+                throw new IllegalArgumentException("COLS must be positive");
+            }
+            final List<String> names = new ArrayList<>();
+            while (tokens.hasNext()) {
+                names.add(tokens.next());
+            }
+            if (names.equals(Collections.singletonList(ALL_BOARDS))) {
+                names.clear();
+                names.addAll(connected);
+            } else if (names.isEmpty() || names.contains(ALL_BOARDS)) {
+                throw new IllegalArgumentException("expected board names or " + ALL_BOARDS);
+            }
+            layout.grid(cols, names, torus);
+        } else {
+            throw new IllegalArgumentException("unknown entry");
+        }
+    }
+
+    /**
+     * Make the layout of a grid.
+     * @param cols width of the grid, > 0
+     * @param names boards laid out row by row, the last row may be shorter
+     * @param torus whether the rows and columns wrap around
+     * @return the layout where each board is joined to the boards right of and below it
+     * @throws IllegalArgumentException if names has duplicates that join a side of a board
+     *         to two different boards
+     */
+    public static Topology grid(int cols, List<String> names, boolean torus) {
+        final Builder layout = new Builder();
+        layout.grid(cols, names, torus);
+        return new Topology(layout.neighbours);
+    }
+
+    /**
+     * @return the boards of this topology, in the order they first appear in it
+     */
+    public Set<String> getBoards() {
+        return neighbours.keySet();
+    }
+
+    /**
+     * @param board name of a board
+     * @return the boards joined to the sides of board in this topology, empty if board
+     *         is not in this topology
+     */
+    public Map<BOARD_DIRECTION, String> getNeighbours(String board) {
+        final Map<BOARD_DIRECTION, String> sides = new EnumMap<>(BOARD_DIRECTION.class);
+        sides.putAll(neighbours.getOrDefault(board, Collections.emptyMap()));
+        return sides;
+    }
+
+    /**
+     * @return number of joined sides of boards in this topology, two per join
+     */
+    public int size() {
+        int sides = 0;
+        for (Map<BOARD_DIRECTION, String> board : neighbours.values()) {
+            sides += board.size();
+        }
+        return sides;
+    }
+
+    /**
+     * @param boards names of boards
+     * @return the boards of this topology that are not in boards
+     */
+    public List<String> missingFrom(Collection<String> boards) {
+        final List<String> missing = new ArrayList<>();
+        for (String board : neighbours.keySet()) {
+            if (!boards.contains(board)) {
+                missing.add(board);
+            }
+        }
+        return missing;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        return that instanceof Topology && neighbours.equals(((Topology) that).neighbours);
+    }
+
+    @Override
+    public int hashCode() {
+        return neighbours.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Map<BOARD_DIRECTION, String>> board : neighbours.entrySet()) {
+            final String right = board.getValue().get(BOARD_DIRECTION.RIGHT);
+            final String bottom = board.getValue().get(BOARD_DIRECTION.BOTTOM);
+            if (right != null) {
+                text.append("h ").append(board.getKey()).append(' ').append(right).append('\n');
+            }
+            if (bottom != null) {
+                text.append("v ").append(board.getKey()).append(' ').append(bottom).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /*
+     * A mutable layout, used while making a Topology.
+     */
+    private static class Builder {
+        private final Map<String, Map<BOARD_DIRECTION, String>> neighbours = new LinkedHashMap<>();
+        // Abstraction function:
+        //   AF(neighbours) = the layout of the joins added so far, as in Topology
+        // Representation invariant:
+        //   as in Topology
+        // Safety from rep exposure:
+        //   Class is private
+
+        // join side direction of first to second, and the opposite side of second to first
+        private void join(String first, BOARD_DIRECTION direction, String second) {
+            side(first, direction, second);
+            side(second, opposite(direction), first);
+        }
+
+        private void side(String board, BOARD_DIRECTION direction, String other) {
+            final Map<BOARD_DIRECTION, String> sides =
+                    neighbours.computeIfAbsent(board, b -> new EnumMap<>(BOARD_DIRECTION.class));
+            final String joined = sides.putIfAbsent(direction, other);
+            if (joined != null && !joined.equals(other)) {
+                throw new IllegalArgumentException(direction.name().toLowerCase() + " of " + board
+                        + " joined to both " + joined + " and " + other);
+            }
+        }
+
+        private void grid(int cols, List<String> names, boolean torus) {
+            final int rows = (names.size() + cols - 1) / cols;
+            for (int i = 0; i < names.size(); i++) {
+                final int right = neighbour(i, 0, 1, cols, rows, names.size(), torus);
+                final int bottom = neighbour(i, 1, 0, cols, rows, names.size(), torus);
+                if (right >= 0) {
+                    join(names.get(i), BOARD_DIRECTION.RIGHT, names.get(right));
+                }
+                if (bottom >= 0) {
+                    join(names.get(i), BOARD_DIRECTION.BOTTOM, names.get(bottom));
+                }
+            }
+        }
+
+        // index of the neighbour of board i at given offset in the grid, -1 if none
+        private static int neighbour(int i, int dRow, int dCol, int cols, int rows, int size, boolean torus) {
+            int row = i / cols + dRow;
+            int col = i % cols + dCol;
+            if (torus) {
+                row = (row + rows) % rows;
+                col = (col + cols) % cols;
+            }
+            if (row < 0 || row >= rows || col < 0 || col >= cols) {
+                return -1;
+            }
+            final int index = row * cols + col;
+            return index < size ? index : -1;
+        }
+    }
+}
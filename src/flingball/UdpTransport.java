@@ -0,0 +1,209 @@
+package flingball;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * A UdpTransport sends and receives loss-tolerant messages (ghost ball hints, spectator
+ * frames) as UDP datagrams. Messages are grouped in named streams; each datagram is
+ * DATAGRAM ::= SEQ " " STREAM " " PAYLOAD
+ * SEQ ::= [0-9]+
+ * STREAM ::= [^ ]+
+ * PAYLOAD ::= [^\n\r]*
+ * encoded in UTF-8, at most MAX_DATAGRAM_BYTES long.
+ *
+ * Every stream sent by a UdpTransport has increasing sequence numbers. A receiving
+ * UdpTransport drops any datagram that isn't newer than the last one it delivered from the
+ * same sender and stream, so a late (reordered or duplicated) message never overwrites
+ * fresher state. Lost datagrams are not resent. Anything that must arrive, like the
+ * transfer of a ball, belongs on the TCP connection instead.
+ *
+ * Sequence numbers start at the creation time of the sending UdpTransport in microseconds,
+ * so that a sender restarted on the same address is not mistaken for a late one.
+ *
+ * A UdpTransport is thread-safe.
+ */
+public class UdpTransport {
+    public static final int MAX_DATAGRAM_BYTES = 1400;
+
+    private final DatagramSocket socket;
+    private final Map<String, Long> nextSequence;
+    private final Map<String, Long> lastDelivered;
+    private final AtomicLong sent;
+    private final AtomicLong delivered;
+    private final AtomicLong droppedLate;
+    private final long firstSequence;
+
+    // Abstraction function:
+    //   AF(socket, nextSequence, lastDelivered, sent, delivered, droppedLate, firstSequence) =
+    //      a UDP endpoint on socket, which sends the next datagram of a stream s with sequence
+    //      number nextSequence.get(s) (firstSequence if absent), and has delivered the datagram
+    //      with sequence number lastDelivered.get(sender + " " + s) last from sender on stream s.
+    //      sent, delivered, droppedLate count datagrams sent, delivered and dropped as late.
+    // Representation invariant:
+    //   all fields not null, all sequence numbers >= 0
+    // Safety from rep exposure:
+    //   all fields are private and final and never returned
+    // Thread safety argument:
+    //   socket is thread-safe; nextSequence and lastDelivered are synchronized maps that are
+    //   only read-modify-written while holding their lock; counters are atomic.
+
+    /**
+     * Make a UdpTransport bound to a local port.
+     * @param port local port, or 0 for any free port
+     * @throws SocketException if the port can't be bound
+     */
+    public UdpTransport(int port) throws SocketException {
+        this.socket = new DatagramSocket(port);
+        this.nextSequence = Collections.synchronizedMap(new HashMap<>());
+        this.lastDelivered = Collections.synchronizedMap(new HashMap<>());
+        this.sent = new AtomicLong();
+        this.delivered = new AtomicLong();
+        this.droppedLate = new AtomicLong();
+        this.firstSequence = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        checkRep();
+    }
+
+    // checkRep
+    private void checkRep() {
+        assert socket != null;
+        assert nextSequence != null;
+        assert lastDelivered != null;
+        assert firstSequence >= 0;
+    }
+
+    /**
+     * @return the local port of this transport
+     */
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Start delivering received datagrams on a new daemon thread, until this is closed.
+     * @param handler called with the stream and payload of every delivered datagram,
+     *                on the receiving thread
+     */
+    public void start(BiConsumer<String, String> handler) {
+        Thread receiver = new Thread(() -> {
+            final byte[] buffer = new byte[MAX_DATAGRAM_BYTES];
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            while (!socket.isClosed()) {
+                try {
+                    packet.setLength(buffer.length);
+                    socket.receive(packet);
+                    String datagram = new String(packet.getData(), packet.getOffset(), packet.getLength(),
+                            StandardCharsets.UTF_8);
+                    String[] message = accept(datagram, packet.getSocketAddress());
+                    if (message != null) {
+                        handler.accept(message[0], message[1]);
+                    }
+                } catch (IOException ioe) {
+                    if (!socket.isClosed()) {
+                        ioe.printStackTrace();
+                    }
+                }
+            }
+        }, "udp-" + getPort());
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Apply the sequencing rules to a received datagram.
+     * @param datagram the text of the datagram
+     * @param sender address it was received from
+     * @return {stream, payload} if the datagram should be delivered,
+     *         null if it is malformed or late
+     */
+    String[] accept(String datagram, SocketAddress sender) {
+        final int streamStart = datagram.indexOf(' ');
+        final int payloadStart = datagram.indexOf(' ', streamStart + 1);
+        if (streamStart < 0 || payloadStart < 0) {
+            return null;
+        }
+        final long sequence;
+        try {
+            sequence = Long.parseLong(datagram.substring(0, streamStart));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        final String stream = datagram.substring(streamStart + 1, payloadStart);
+        final String key = sender + " " + stream;
+        synchronized (lastDelivered) {
+            Long last = lastDelivered.get(key);
+            if (last != null && sequence <= last) {
+                droppedLate.incrementAndGet();
+                return null;
+            }
+            lastDelivered.put(key, sequence);
+        }
+        delivered.incrementAndGet();
+        return new String[] {stream, datagram.substring(payloadStart + 1)};
+    }
+
+    /**
+     * Send one message of a stream.
+     * @param stream name of the stream, requires no spaces
+     * @param payload the message, requires no newlines
+     * @param receiver address of the receiving UdpTransport
+     * @throws IOException if the datagram is longer than MAX_DATAGRAM_BYTES or can't be sent
+     */
+    public void send(String stream, String payload, SocketAddress receiver) throws IOException {
+        final long sequence;
+        synchronized (nextSequence) {
+            sequence = nextSequence.getOrDefault(stream, firstSequence);
+            nextSequence.put(stream, sequence + 1);
+        }
+        byte[] datagram = (sequence + " " + stream + " " + payload).getBytes(StandardCharsets.UTF_8);
+        if (datagram.length > MAX_DATAGRAM_BYTES) {
+            throw new IOException("datagram of " + datagram.length + " bytes is too long");
+        }
+        socket.send(new DatagramPacket(datagram, datagram.length, receiver));
+        sent.incrementAndGet();
+    }
+
+    /**
+     * @return number of datagrams sent
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * @return number of datagrams received and delivered
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * @return number of datagrams received but dropped because they were late
+     */
+    public long getDroppedLate() {
+        return droppedLate.get();
+    }
+
+    /**
+     * Close the socket of this transport and stop delivering datagrams.
+     */
+    public void close() {
+        socket.close();
+    }
+
+    @Override
+    public String toString() {
+        return "UdpTransport on port " + getPort() + ": sent " + getSent() + ", delivered " + getDelivered()
+                + ", dropped late " + getDroppedLate();
+    }
+}
@@ -0,0 +1,153 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class BallLedgerTest {
+
+    /*
+     * Testing strategy
+     *
+     * open, sent, acknowledge, close, closeAll:
+     *    ball not sent yet, sent once, sent again
+     *    acknowledged by its destination, by another client, twice
+     *    closeAll of a destination with 0, > 1 balls in flight
+     *    request as a String, as UTF-8 bytes with and without TRACE; side empty, present
+     *
+     * expired:
+     *    no deadline passed, deadline passed, ball acknowledged before its deadline
+     *
+     * withSeq, indexIn, parse, ack, ackedIn:
+     *    request with TRACE, without; SEQ valid, missing, not a number
+     *    BALLNAME or BOARDNAME "seq" or "trace"
+     *    reply with SEQ, without, failure
+     *
+     * DedupWindow add:
+     *    NO_SEQ, new seq, seq seen, seq forgotten after the window moved on
+     */
+    private static final long START = 1000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers ball not sent, sent once and again, acknowledged by destination, by another
+    // client and twice, no deadline passed, deadline passed
+    @Test
+    public void testAcknowledgeAndExpire() {
+        final BallLedger ledger = new BallLedger(100, START);
+        final BallLedger.Entry ball = ledger.open("tran 1.0 2.0 3.0 4.0 b", 1, 2);
+        final BallLedger.Entry other = ledger.open("tran 1.0 2.0 3.0 4.0 c", 1, 2);
+        assertEquals("request", "tran 1.0 2.0 3.0 4.0 b seq " + ball.getSeq(), ball.getRequest());
+        assertNotEquals("new seq", ball.getSeq(), other.getSeq());
+        assertEquals("not sent", 0, ledger.getAttempts(ball.getSeq()));
+        assertEquals("no deadline before sent", Collections.emptyList(), ledger.expired(START + 500));
+
+        ledger.sent(ball.getSeq(), START + 500);
+        ledger.sent(other.getSeq(), START + 500);
+        assertEquals("no deadline passed", Collections.emptyList(), ledger.expired(START + 550));
+        assertFalse("another client", ledger.acknowledge(3, other.getSeq()));
+        assertTrue("destination", ledger.acknowledge(2, other.getSeq()));
+        assertFalse("twice", ledger.acknowledge(2, other.getSeq()));
+        final List<BallLedger.Entry> expired = ledger.expired(START + 600);
+        assertEquals("deadline passed", Arrays.asList(ball), expired);
+        assertTrue("still in flight", ledger.contains(ball.getSeq()));
+
+        ledger.sent(ball.getSeq(), START + 600);
+        assertEquals("sent again", 2, ledger.getAttempts(ball.getSeq()));
+        assertEquals("size", 1, ledger.size());
+    }
+
+    // covers request as UTF-8 bytes with and without TRACE, side empty and present
+    @Test
+    public void testOpenBytes() {
+        final BallLedger ledger = new BallLedger(100, START);
+        final BallLedger.Entry text = ledger.open("tran 1.0 2.0 3.0 4.0 b", 1, 2);
+        final BallLedger.Entry bytes = ledger.open("tran 1.0 2.0 3.0 4.0 b\u00e9".getBytes(StandardCharsets.UTF_8),
+                1, 2, Optional.of(BOARD_DIRECTION.LEFT));
+        final BallLedger.Entry traced = ledger.open("tran 1.0 2.0 3.0 4.0 b trace 5 6".getBytes(StandardCharsets.UTF_8),
+                1, 2, Optional.empty());
+        assertEquals("no side", Optional.empty(), text.getSide());
+        assertEquals("side", Optional.of(BOARD_DIRECTION.LEFT), bytes.getSide());
+        assertEquals("decoded", "tran 1.0 2.0 3.0 4.0 b\u00e9 seq " + bytes.getSeq(), bytes.getRequest());
+        assertEquals("before TRACE", "tran 1.0 2.0 3.0 4.0 b seq " + traced.getSeq() + " trace 5 6", traced.getRequest());
+        assertEquals("in flight", Arrays.asList(text, bytes, traced), ledger.closeAll(2));
+    }
+
+    // covers close, closeAll with 0 and > 1 balls
+    @Test
+    public void testCloseAll() {
+        final BallLedger ledger = new BallLedger(100, START);
+        final BallLedger.Entry first = ledger.open("tran 1.0 2.0 3.0 4.0 b", 1, 2);
+        final BallLedger.Entry kept = ledger.open("tran 1.0 2.0 3.0 4.0 c", 2, 1);
+        final BallLedger.Entry second = ledger.open("port p 1.0 2.0 3.0 4.0 d from b1", 1, 2);
+        ledger.sent(first.getSeq(), START);
+        assertEquals("no balls", Collections.emptyList(), ledger.closeAll(3));
+        assertEquals("balls in order", Arrays.asList(first, second), ledger.closeAll(2));
+        assertEquals("closed deadline", Collections.emptyList(), ledger.expired(START + 1000));
+        assertEquals("close", kept, ledger.close(kept.getSeq()));
+        assertNull("closed twice", ledger.close(kept.getSeq()));
+        assertEquals("empty", 0, ledger.size());
+    }
+
+    // covers requests with and without TRACE, SEQ valid, missing, not a number,
+    // replies with SEQ, without, failure
+    @Test
+    public void testProtocol() {
+        assertEquals("before trace", "tran 1 2 3 4 b at 5 seq 7 trace 9 10",
+                BallLedger.withSeq("tran 1 2 3 4 b at 5 trace 9 10", 7));
+        final Tokenizer tokens = new Tokenizer("tran 1 2 3 4 b at 5 seq 7 trace 9 10");
+        final int index = BallLedger.indexIn(tokens, 6);
+        assertEquals("index", 8, index);
+        assertEquals("seq", 7, BallLedger.parse(tokens, index));
+        final Tokenizer missing = new Tokenizer("tran 1 2 3 4 b");
+        assertEquals("missing", BallLedger.NO_SEQ, BallLedger.parse(missing, BallLedger.indexIn(missing, 6)));
+        final Tokenizer wrong = new Tokenizer("tran 1 2 3 4 b seq x");
+        assertEquals("not a number", BallLedger.NO_SEQ, BallLedger.parse(wrong, BallLedger.indexIn(wrong, 6)));
+
+        assertEquals("ack", " seq 7", BallLedger.ack(7));
+        assertEquals("no ack", "", BallLedger.ack(BallLedger.NO_SEQ));
+        assertEquals("acked", 7, BallLedger.ackedIn("succeed: ball received seq 7"));
+        assertEquals("not acked", BallLedger.NO_SEQ, BallLedger.ackedIn("succeed: pong"));
+        assertEquals("failure", BallLedger.NO_SEQ, BallLedger.ackedIn("fail: illegal command seq 7"));
+    }
+
+    // covers BALLNAME and BOARDNAME "seq" and "trace"
+    @Test
+    public void testNamedSeq() {
+        final Tokenizer ball = new Tokenizer("tran 1 2 3 4 seq");
+        assertEquals("ball named seq is no SEQ", BallLedger.NO_SEQ, BallLedger.parse(ball, BallLedger.indexIn(ball, 6)));
+        final Tokenizer numbered = new Tokenizer("tran 1 2 3 4 seq seq 7");
+        assertEquals("SEQ after the ball", 7, BallLedger.parse(numbered, BallLedger.indexIn(numbered, 6)));
+        final Tokenizer portal = new Tokenizer("port p 1 2 3 4 b from seq seq 8");
+        assertEquals("SEQ after board named seq", 8, BallLedger.parse(portal, BallLedger.indexIn(portal, 9)));
+
+        assertEquals("ball named trace", "tran 1 2 3 4 trace at 5 seq 7", BallLedger.withSeq("tran 1 2 3 4 trace at 5", 7));
+        assertEquals("ball named seq", "tran 1 2 3 4 seq seq 7 trace b-0 9",
+                BallLedger.withSeq("tran 1 2 3 4 seq trace b-0 9", 7));
+        assertEquals("board named trace", "port p 1 2 3 4 b from trace seq 7",
+                BallLedger.withSeq("port p 1 2 3 4 b from trace", 7));
+    }
+
+    // covers NO_SEQ, new seq, seq seen, seq forgotten
+    @Test
+    public void testDedupWindow() {
+        final DedupWindow window = new DedupWindow(2);
+        assertTrue("no seq", window.add(BallLedger.NO_SEQ));
+        assertTrue("no seq again", window.add(BallLedger.NO_SEQ));
+        assertTrue("new", window.add(1));
+        assertFalse("seen", window.add(1));
+        assertTrue("new", window.add(2));
+        assertTrue("new", window.add(3));
+        assertTrue("forgotten", window.add(1));
+        assertFalse("still seen", window.add(3));
+    }
+}
@@ -0,0 +1,77 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Vect;
+
+public class BoardBlueprintTest {
+
+    /*
+     * Testing strategy
+     *
+     * Board.blueprint, instantiate:
+     *    board with balls, static gadgets, flippers, fire triggers and key bindings
+     *    board with no gadgets
+     *
+     * Board of a blueprint:
+     *    balls changed, static gadget added, trigger added, unchanged
+     *    other boards of the same blueprint, the blueprint itself
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers board with everything, unchanged board
+    @Test
+    public void testInstantiate() throws UnableToParseException, IOException {
+        final Board parsed = StreamingBoardParser.parse(Flingball.boardFileToString(new File("boards/key.fb")));
+        final BoardBlueprint blueprint = parsed.blueprint();
+        final Board board = blueprint.instantiate();
+        assertEquals("name", parsed.getName(), board.getName());
+        assertEquals("gravity", parsed.getGravity(), board.getGravity(), 0);
+        assertEquals("balls", parsed.getBalls(), board.getBalls());
+        assertEquals("static gadgets", parsed.getStaticGadgets(), board.getStaticGadgets());
+        assertEquals("flippers", parsed.getFlippers(), board.getFlippers());
+        final Gadget circle = parsed.getGadgetWithName("CircleF");
+        assertEquals("fire", parsed.getTargetAbsorbers(circle), board.getTargetAbsorbers(circle));
+        assertEquals("keyup", parsed.getTargetFlippers(KeyEvent.VK_SPACE, true),
+                board.getTargetFlippers(KeyEvent.VK_SPACE, true));
+        assertEquals("blueprint of a board of a blueprint", blueprint.getStaticGadgets(),
+                board.blueprint().getStaticGadgets());
+    }
+
+    // covers no gadgets, balls changed, static gadget added, trigger added, other boards, blueprint
+    @Test
+    public void testBoardsIndependent() throws UnableToParseException {
+        final BoardBlueprint blueprint = StreamingBoardParser.parse("board name=Example\n"
+                + "ball name=B x=1.5 y=1.5 xVelocity=0 yVelocity=0\n"
+                + "absorber name=Abs x=0 y=19 width=20 height=1\n").blueprint();
+        final Board changed = blueprint.instantiate();
+        final Board other = blueprint.instantiate();
+        changed.addBall(new Ball("C", new Vect(2, 2), new Vect(0, 0)));
+        final SquareBumper square = new SquareBumper("Square", new Vect(5, 5));
+        changed.addBumper(square);
+        changed.setTarget(changed.getAbsorbers().get(0), square);
+
+        assertEquals("balls changed", 2, changed.getBalls().size());
+        assertEquals("static gadget added", 2, changed.getStaticGadgets().size());
+        assertEquals("trigger added", 1, changed.getTargetAbsorbers(square).size());
+        assertEquals("other balls", 1, other.getBalls().size());
+        assertEquals("other static gadgets", 1, other.getStaticGadgets().size());
+        assertTrue("other triggers", other.getTargetAbsorbers(square).isEmpty());
+        assertEquals("blueprint", 1, blueprint.getBalls().size());
+        assertEquals("blueprint", 1, blueprint.getStaticGadgets().size());
+
+        final BoardBlueprint empty = StreamingBoardParser.parse("board name=Empty\n").blueprint();
+        assertTrue("no gadgets", empty.instantiate().getStaticGadgets().isEmpty());
+    }
+}
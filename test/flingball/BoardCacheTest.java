@@ -0,0 +1,91 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Vect;
+
+public class BoardCacheTest {
+
+    /*
+     * Testing strategy
+     *
+     * load:
+     *    content not cached, cached from the same file, cached from another file with the same content
+     *    content evicted from memory, content on disk only
+     *    disk entry not a compiled board, with a bad count in the header
+     *    no cache directory, cache directory that doesn't exist yet
+     *    boards loaded from one entry changed independently
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers not cached, same file, another file with the same content, evicted, no cache directory,
+    // independent boards
+    @Test
+    public void testMemoryCache() throws IOException, UnableToParseException {
+        final Path directory = Files.createTempDirectory("cache");
+        final Path copy = directory.resolve("copy.fb");
+        Files.copy(Paths.get("boards/key.fb"), copy);
+        final BoardCache cache = new BoardCache(1, Optional.empty());
+        final Board first = cache.load(Paths.get("boards/key.fb"));
+        final Board second = cache.load(copy);
+        assertEquals("parsed once", 1, cache.getMisses());
+        assertEquals("same content", 1, cache.getHits());
+        assertEquals("same board", first.getStaticGadgets(), second.getStaticGadgets());
+        second.addBall(new Ball("extra", new Vect(1, 1), new Vect(0, 0)));
+        assertEquals("independent boards", first.getBalls().size() + 1, second.getBalls().size());
+
+        cache.load(Paths.get("boards/flippers.fb"));
+        assertEquals("capacity", 1, cache.size());
+        cache.load(copy);
+        assertEquals("evicted", 3, cache.getMisses());
+        assertEquals("no disk", 0, cache.getDiskHits());
+    }
+
+    // covers cache directory that doesn't exist yet, on disk only, disk entry not a compiled board,
+    // bad count in the header
+    @Test
+    public void testDiskCache() throws IOException, UnableToParseException {
+        final Path directory = Files.createTempDirectory("cache").resolve("boards");
+        new BoardCache(4, Optional.of(directory)).load(Paths.get("boards/portals.fb"));
+        final Path[] entries = Files.list(directory).toArray(Path[]::new);
+        assertEquals("one compiled board", 1, entries.length);
+        assertTrue("named by hash", entries[0].getFileName().toString().matches("[0-9a-f]{64}\\.fbc"));
+
+        final BoardCache restarted = new BoardCache(4, Optional.of(directory));
+        assertEquals("from disk", 2, restarted.load(Paths.get("boards/portals.fb")).getPortals().size());
+        assertEquals("disk hit", 1, restarted.getDiskHits());
+        assertEquals("not parsed", 0, restarted.getMisses());
+
+        Files.write(entries[0], "corrupt".getBytes(StandardCharsets.UTF_8));
+        final BoardCache corrupt = new BoardCache(4, Optional.of(directory));
+        assertEquals("parsed again", 2, corrupt.load(Paths.get("boards/portals.fb")).getPortals().size());
+        assertEquals("parsed", 1, corrupt.getMisses());
+        final BoardCache rewritten = new BoardCache(4, Optional.of(directory));
+        rewritten.load(Paths.get("boards/portals.fb"));
+        assertEquals("rewritten", 1, rewritten.getDiskHits());
+
+        final byte[] badCount = Files.readAllBytes(entries[0]);
+        badCount[27] = (byte) 0x80; // negative count of STRINGs
+        Files.write(entries[0], badCount);
+        final BoardCache counted = new BoardCache(4, Optional.of(directory));
+        assertEquals("bad count parsed again", 2, counted.load(Paths.get("boards/portals.fb")).getPortals().size());
+        assertEquals("bad count parsed", 1, counted.getMisses());
+        final BoardCache recounted = new BoardCache(4, Optional.of(directory));
+        recounted.load(Paths.get("boards/portals.fb"));
+        assertEquals("bad count rewritten", 1, recounted.getDiskHits());
+    }
+}
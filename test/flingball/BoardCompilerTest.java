@@ -0,0 +1,122 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Vect;
+
+public class BoardCompilerTest {
+
+    /*
+     * Testing strategy
+     *
+     * compile, load:
+     *    board with balls, every kind of gadget, fire triggers, keyup and keydown, portals
+     *    to the board itself and to another board
+     *    board with no gadgets
+     *    file is not a compiled board, has another version, is cut short, has a negative
+     *    count, has a count too large for the file
+     *
+     * toBytes:
+     *    little-endian header
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers balls, every kind of gadget, triggers, keys, portals to the board itself
+    @Test
+    public void testRoundTrip() throws IOException, UnableToParseException {
+        final Path directory = Files.createTempDirectory("compiled");
+        for (String file : new String[] { "boards/key.fb", "boards/flippers.fb", "boards/sampleBoard2.fb" }) {
+            final Path target = directory.resolve(Paths.get(file).getFileName() + BoardCompiler.EXTENSION);
+            BoardCompiler.compile(Paths.get(file), target);
+            final Board parsed = StreamingBoardParser.parse(new String(Files.readAllBytes(Paths.get(file)),
+                    StandardCharsets.UTF_8));
+            final Board loaded = BoardCompiler.load(target);
+            assertEquals("name", parsed.getName(), loaded.getName());
+            assertEquals("gravity", parsed.getGravity(), loaded.getGravity(), 0);
+            assertEquals("balls", parsed.getBalls(), loaded.getBalls());
+            assertEquals("static gadgets in order", parsed.getStaticGadgets(), loaded.getStaticGadgets());
+            assertEquals("flippers", parsed.getFlippers(), loaded.getFlippers());
+            assertEquals("portals", parsed.getPortals(), loaded.getPortals());
+            for (Gadget gadget : parsed.getStaticGadgets()) {
+                assertEquals("fire targets", parsed.getTargetAbsorbers(gadget), loaded.getTargetAbsorbers(gadget));
+                assertEquals("fire targets", parsed.getTargetFlippers(gadget), loaded.getTargetFlippers(gadget));
+            }
+            for (int key : new int[] { KeyEvent.VK_A, KeyEvent.VK_B, KeyEvent.VK_SPACE }) {
+                assertEquals("keyup", parsed.getTargetFlippers(key, true), loaded.getTargetFlippers(key, true));
+                assertEquals("keydown", parsed.getTargetAbsorbers(key, false), loaded.getTargetAbsorbers(key, false));
+            }
+        }
+    }
+
+    // covers no gadgets, portal to another board, little-endian header
+    @Test
+    public void testPortalToOtherBoard() throws IOException, UnableToParseException {
+        final BoardCompiler compiler = new BoardCompiler();
+        StreamingBoardParser.parse("board name=Left friction1=0.5\n"
+                + "portal name=p x=1 y=2 otherBoard=Right otherPortal=q\n", compiler);
+        final ByteBuffer bytes = compiler.toBytes();
+        assertEquals("magic", 0x31434246, bytes.order(ByteOrder.LITTLE_ENDIAN).getInt(0));
+        assertEquals("magic bytes", 'F', bytes.get(0));
+        final Path file = Files.createTempDirectory("compiled").resolve("left.fbc");
+        compiler.write(file);
+        final Board loaded = BoardCompiler.load(file);
+        assertEquals("friction1", 0.5f, loaded.getFriction1(), 0);
+        assertEquals("portal", new Portal("p", "q", "Right", new Vect(1, 2)), loaded.getPortals().get(0));
+
+        final BoardCompiler empty = new BoardCompiler();
+        StreamingBoardParser.parse("board name=Empty\n", empty);
+        empty.write(file);
+        assertEquals("no gadgets", 0, BoardCompiler.load(file).getStaticGadgets().size());
+    }
+
+    // covers not a compiled board, another version, cut short, negative count, count too large
+    @Test
+    public void testRejectsBadFiles() throws IOException, UnableToParseException {
+        final Path directory = Files.createTempDirectory("compiled");
+        final Path text = directory.resolve("text.fbc");
+        Files.write(text, "board name=Example\n".getBytes(StandardCharsets.UTF_8));
+        final BoardCompiler compiler = new BoardCompiler();
+        StreamingBoardParser.parse("board name=Example\nsquareBumper name=S x=1 y=1\n", compiler);
+        final byte[] bytes = new byte[compiler.toBytes().remaining()];
+        compiler.toBytes().get(bytes);
+        final byte[] version = bytes.clone();
+        version[4] = 9;
+        final Path other = directory.resolve("version.fbc");
+        Files.write(other, version);
+        final Path shorter = directory.resolve("short.fbc");
+        Files.write(shorter, Arrays.copyOf(bytes, bytes.length - 4));
+        final byte[] negative = bytes.clone();
+        negative[27] = (byte) 0x80; // count of STRINGs
+        final Path negativeCount = directory.resolve("negative.fbc");
+        Files.write(negativeCount, negative);
+        final byte[] large = bytes.clone();
+        large[35] = 0x7f; // count of GADGETs
+        final Path largeCount = directory.resolve("large.fbc");
+        Files.write(largeCount, large);
+        for (Path file : new Path[] { text, other, shorter, negativeCount, largeCount }) {
+            try {
+                BoardCompiler.load(file);
+                fail("expected " + file + " to be rejected");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
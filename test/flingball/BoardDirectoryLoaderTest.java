@@ -0,0 +1,87 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+public class BoardDirectoryLoaderTest {
+
+    /*
+     * Testing strategy
+     *
+     * load:
+     *    directory with no board files, one, many
+     *    files that parse, don't match the grammar, end without a newline, aren't board files
+     *    1 thread, > 1 threads
+     *    first load, later loads on the same loader, loader closed
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers many files that parse, > 1 threads
+    @Test
+    public void testLoadBoards() throws IOException, InterruptedException {
+        final List<BoardDirectoryLoader.Result> results;
+        try (BoardDirectoryLoader loader = new BoardDirectoryLoader(4, true)) {
+            results = loader.load(Paths.get("boards"));
+        }
+        assertEquals("every board file", new File("boards").list((dir, name) -> name.endsWith(".fb")).length,
+                results.size());
+        for (BoardDirectoryLoader.Result result : results) {
+            assertTrue("loaded " + result, result.getBoard().isPresent());
+            assertFalse("no error", result.getError().isPresent());
+        }
+        assertTrue("in order of file name",
+                results.get(0).getFile().toString().compareTo(results.get(1).getFile().toString()) < 0);
+    }
+
+    // covers no board files, one file, not matching the grammar, no newline at the end, not board files, 1 thread
+    @Test
+    public void testErrors() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("boards");
+        try (BoardDirectoryLoader loader = new BoardDirectoryLoader(1, true)) {
+            Files.write(directory.resolve("notes.txt"), "not a board".getBytes(StandardCharsets.UTF_8));
+            assertTrue("no board files", loader.load(directory).isEmpty());
+
+            Files.write(directory.resolve("a.fb"), "board name=A\n# comment at the end".getBytes(StandardCharsets.UTF_8));
+            Files.write(directory.resolve("b.fb"), "board name=B\nspinner name=S x=0 y=0\n".getBytes(StandardCharsets.UTF_8));
+            final List<BoardDirectoryLoader.Result> results = loader.load(directory);
+            assertEquals("board files", 2, results.size());
+            assertEquals("no newline at the end", "A", results.get(0).getBoard().get().getName());
+            assertTrue("doesn't match the grammar", results.get(1).getError().get().startsWith("UnableToParseException"));
+            assertFalse("no board", results.get(1).getBoard().isPresent());
+        }
+    }
+
+    // covers later loads on the same loader, loader closed
+    @Test
+    public void testReusesWorkers() throws IOException, InterruptedException {
+        final BoardDirectoryLoader loader = new BoardDirectoryLoader(2, true);
+        final List<BoardDirectoryLoader.Result> first = loader.load(Paths.get("boards"));
+        final int started = loader.getWorkersStarted();
+        assertTrue("started " + started, started >= 1 && started <= 2);
+        for (int i = 0; i < 3; i++) {
+            assertEquals("same files", first.size(), loader.load(Paths.get("boards")).size());
+        }
+        assertEquals("same workers", started, loader.getWorkersStarted());
+        loader.close();
+        try {
+            loader.load(Paths.get("boards"));
+            fail("expected a closed loader to reject loads");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+}
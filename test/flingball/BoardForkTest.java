@@ -0,0 +1,106 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Angle;
+import physics.Vect;
+
+public class BoardForkTest {
+
+    /*
+     * Testing strategy
+     *
+     * fork, advance:
+     *    fork advanced, original advanced, both advanced the same number of updates
+     *    flippers moving in the fork, not moving
+     *    joined edge crossed by a ball in the fork
+     *    static gadget added to the original after forking, to the fork
+     *    many forks advanced in parallel
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers fork advanced, original advanced, both the same number, flippers not moving,
+    // gadgets added after forking
+    @Test
+    public void testForkIndependent() throws UnableToParseException {
+        final Board board = StreamingBoardParser.parse("board name=Example\n"
+                + "ball name=B x=5.5 y=2.5 xVelocity=3 yVelocity=0\n"
+                + "squareBumper name=Square x=5 y=10\n");
+        final Board fork = board.fork();
+        fork.advance(20);
+        assertEquals("fork advanced", 20, fork.getTicks());
+        assertEquals("original not advanced", 0, board.getTicks());
+        assertEquals("original ball", new Vect(5.5, 2.5), board.getBalls().get(0).getLocation());
+        assertNotEquals("fork ball moved", new Vect(5.5, 2.5), fork.getBalls().get(0).getLocation());
+
+        board.advance(20);
+        assertEquals("same updates, same state", board.getBalls(), fork.getBalls());
+
+        board.addBumper(new CircleBumper("Circle", new Vect(1, 1)));
+        fork.addBumper(new TriangleBumper("Triangle", new Vect(2, 2), Angle.DEG_90));
+        assertEquals("original gadgets", "Circle", board.getStaticBumpers().get(1).getName());
+        assertEquals("fork gadgets", "Triangle", fork.getStaticBumpers().get(1).getName());
+    }
+
+    // covers flippers moving in the fork, joined edge crossed in the fork
+    @Test
+    public void testForkRuntimeState() throws UnableToParseException {
+        final Board board = StreamingBoardParser.parse("board name=Example\n"
+                + "leftFlipper name=F x=5 y=5\n"
+                + "keydown key=a action=F\n");
+        final Board fork = board.fork();
+        fork.keyPressed(KeyEvent.VK_A);
+        fork.advance(2);
+        assertTrue("flipper moving in the fork", fork.getFlippers().get(0).stillNeedToMove());
+        assertFalse("flipper still in the original", board.getFlippers().get(0).stillNeedToMove());
+
+        final Board joined = StreamingBoardParser.parse("board name=Left gravity=0\n"
+                + "ball name=B x=18.5 y=10.5 xVelocity=20 yVelocity=0\n");
+        joined.joinBoard("Right", BOARD_DIRECTION.RIGHT);
+        final Board headless = joined.fork();
+        headless.advance(20);
+        assertTrue("left through the joined edge", headless.getBalls().isEmpty());
+        assertEquals("original keeps its ball", 1, joined.getBalls().size());
+    }
+
+    // covers many forks in parallel
+    @Test
+    public void testParallelForks() throws Exception {
+        final Board board = StreamingBoardParser.parse("board name=Example\n"
+                + "ball name=B x=5.5 y=2.5 xVelocity=3 yVelocity=1\n"
+                + "circleBumper name=C x=6 y=8\n"
+                + "triangleBumper name=T x=3 y=12\n");
+        final Board expected = board.fork();
+        expected.advance(50);
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<Ball>>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final Board fork = board.fork();
+                results.add(pool.submit(() -> {
+                    fork.advance(50);
+                    return fork.getBalls();
+                }));
+            }
+            for (Future<List<Ball>> result : results) {
+                assertEquals("every fork the same", expected.getBalls(), result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -61,6 +61,12 @@ public class BoardTest {
      * gadget is bumper, flipper, portal
      * 
      * receiveBall
+     * transit time 0, > 0, > MAX_TRANSIT_TICKS ticks
+     * ball about to hit a gadget in transit, not
+     * ball was announced as a ghost, wasn't
+     * 
+     * receiveHint, getGhosts, getRenderOffset:
+     * ghost expires, ghost reconciled with arriving ball
      * 
      * setFlingball
      * 
@@ -611,6 +617,65 @@ public class BoardTest {
         assertEquals("Expected strings to match", expected, multi.toString());
     }
     
+    // covers receiveBall, transit time 0 and > 0, ball not hitting anything
+    @Test
+    public void testReceiveBallAdvancedByTransit() {
+        final int ticks = 10;
+        final Board received = new Board("received");
+        received.receiveBall("10 5 1 0 ball", (long)(ticks * Board.TIME * 1_000_000_000), null);
+        final Board updated = new Board("updated");
+        updated.addBall(new Ball("ball", new Vect(10, 5), new Vect(1, 0)));
+        for (int i = 0; i < ticks; i++) {
+            updated.updateBoard();
+        }
+        assertEquals("same as updating the board", updated.getBalls(), received.getBalls());
+        
+        final Board notAdvanced = new Board("notAdvanced");
+        notAdvanced.receiveBall("10 5 1 0 ball", 0, null);
+        assertEquals("no transit", new Vect(10, 5), notAdvanced.getBalls().get(0).getLocation());
+    }
+    
+    // covers receiveBall, transit time > MAX_TRANSIT_TICKS ticks, ball about to hit a gadget
+    @Test
+    public void testReceiveBallStopsBeforeCollision() {
+        final Board board = new Board("board");
+        board.addBumper(new CircleBumper("cB", new Vect(9, 8)));
+        board.receiveBall("10 1 0 0 ball", (long)(10 * Board.MAX_TRANSIT_TICKS * Board.TIME * 1_000_000_000), null);
+        final Vect location = board.getBalls().get(0).getLocation();
+        assertTrue("ball advanced", location.y() > 1);
+        assertTrue("ball stopped above bumper", location.y() < 8 - Ball.RADIUS);
+    }
+    
+    // covers receiveHint, getGhosts, ghost expires
+    @Test
+    public void testGhostExpires() {
+        final Board board = new Board("board");
+        board.receiveHint("-0.2 10 10 0 ball", 0);
+        assertEquals("one ghost", 1, board.getGhosts().size());
+        board.updateBoard();
+        assertTrue("ghost dead-reckoned", board.getGhosts().get(0).getLocation().x() > -0.2);
+        for (int i = 1; i < Board.GHOST_TICKS; i++) {
+            board.updateBoard();
+        }
+        assertTrue("ghost expired", board.getGhosts().isEmpty());
+    }
+    
+    // covers receiveBall, ball was announced as a ghost, getRenderOffset
+    @Test
+    public void testGhostReconciled() {
+        final Board board = new Board("board");
+        board.receiveHint("-0.2 10 10 0 ball", 0);
+        board.updateBoard();
+        board.updateBoard();
+        board.receiveBall("0.3 10 10 0 ball", 0, null);
+        assertTrue("ghost replaced", board.getGhosts().isEmpty());
+        final Vect offset = board.getRenderOffset("ball");
+        assertTrue("drawn at ghost first", offset.x() < 0);
+        board.updateBoard();
+        assertTrue("offset decays", Math.abs(board.getRenderOffset("ball").x()) < Math.abs(offset.x()));
+        assertEquals("no offset for other balls", Vect.ZERO, board.getRenderOffset("other"));
+    }
+    
     // Test drawBoard
     @Test
     public void testDrawBoard() {
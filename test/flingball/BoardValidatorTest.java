@@ -0,0 +1,127 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class BoardValidatorTest {
+
+    /*
+     * Testing strategy
+     *
+     * validate:
+     *    valid board: empty, with every kind of gadget, portal to another board
+     *    gadgets overlapping: bumpers, absorber and bumper, flipper and bumper, several squares
+     *    of the same pair; gadget and ball outside the board; two gadgets with the same name
+     *    fire: trigger not a gadget, action not a gadget, action a bumper, trigger declared
+     *    after the binding, action declared after the binding
+     *    keyup, keydown: action a bumper, action declared after the binding
+     *    portal to a portal of this board that doesn't exist, to a gadget not a portal
+     *    several problems at once
+     *    generated stress board
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers valid empty board, every kind of gadget, portal to another board
+    @Test
+    public void testValid() throws UnableToParseException {
+        assertEquals("empty board", Collections.emptyList(), BoardValidator.validate("board name=Example\n"));
+        assertEquals("every gadget", Collections.emptyList(), BoardValidator.validate("board name=Example\n"
+                + "ball name=B x=1.5 y=1.5 xVelocity=0 yVelocity=0\n"
+                + "squareBumper name=S x=0 y=0\n"
+                + "circleBumper name=C x=1 y=0\n"
+                + "triangleBumper name=T x=2 y=0 orientation=90\n"
+                + "leftFlipper name=L x=3 y=0\n"
+                + "rightFlipper name=R x=5 y=0\n"
+                + "absorber name=A x=0 y=19 width=20 height=1\n"
+                + "portal name=P x=7 y=0 otherPortal=Q\n"
+                + "portal name=Q x=8 y=0 otherPortal=P\n"
+                + "portal name=Far x=9 y=0 otherBoard=Other otherPortal=Nowhere\n"
+                + "fire trigger=S action=A\n"
+                + "fire trigger=A action=L\n"
+                + "keydown key=space action=R\n"));
+    }
+
+    // covers overlapping bumpers, absorber and bumper, flipper and bumper, several squares of
+    // the same pair, gadget and ball outside, same name
+    @Test
+    public void testOverlaps() throws UnableToParseException {
+        assertEquals("overlaps", Arrays.asList(
+                "squareBumper S has the name of circleBumper S",
+                "ball B at (25.0, 1.0) is outside the board",
+                "squareBumper S overlaps circleBumper S at (0, 0)",
+                "squareBumper Inside overlaps absorber A at (2, 18)",
+                "rightFlipper F overlaps triangleBumper T at (11, 11)",
+                "absorber Wide at (18, 0) is outside the board"),
+                BoardValidator.validate("board name=Example\n"
+                + "circleBumper name=S x=0 y=0\n"
+                + "squareBumper name=S x=0 y=0\n"
+                + "absorber name=A x=0 y=18 width=20 height=2\n"
+                + "squareBumper name=Inside x=2 y=18\n"
+                + "triangleBumper name=T x=11 y=11\n"
+                + "rightFlipper name=F x=10 y=10\n"
+                + "absorber name=Wide x=18 y=0 width=4 height=1\n"
+                + "ball name=B x=25 y=1 xVelocity=0 yVelocity=0\n"));
+    }
+
+    // covers fire and key actions, portal links, several problems at once
+    @Test
+    public void testTargets() throws UnableToParseException {
+        assertEquals("targets", Arrays.asList(
+                "fire trigger=Missing action=A: no gadget Missing",
+                "fire trigger=Missing action=A: absorber A is declared after it",
+                "fire trigger=S action=Gone: no gadget Gone",
+                "fire trigger=A action=S: squareBumper S is not an absorber or flipper",
+                "keyup key=a action=S: squareBumper S is not an absorber or flipper",
+                "portal P: no portal Q on board Example",
+                "portal R: no portal S on board Example"),
+                BoardValidator.validate("board name=Example\n"
+                + "fire trigger=Missing action=A\n"
+                + "absorber name=A x=0 y=19 width=20 height=1\n"
+                + "squareBumper name=S x=0 y=0\n"
+                + "fire trigger=S action=Gone\n"
+                + "fire trigger=A action=S\n"
+                + "keyup key=a action=S\n"
+                + "portal name=P x=5 y=5 otherBoard=Example otherPortal=Q\n"
+                + "portal name=R x=6 y=5 otherPortal=S\n"));
+    }
+
+    // covers trigger and actions declared after their bindings
+    @Test
+    public void testDeclaredAfter() throws UnableToParseException {
+        assertEquals("trigger after", Arrays.asList(
+                "fire trigger=sq action=abs: squareBumper sq is declared after it",
+                "fire trigger=sq action=abs: absorber abs is declared after it"),
+                BoardValidator.validate("board name=Example\n"
+                + "fire trigger=sq action=abs\n"
+                + "squareBumper name=sq x=0 y=0\n"
+                + "absorber name=abs x=0 y=19 width=20 height=1\n"));
+        assertEquals("action after", Arrays.asList(
+                "fire trigger=sq action=abs: absorber abs is declared after it",
+                "keydown key=space action=L: leftFlipper L is declared after it"),
+                BoardValidator.validate("board name=Example\n"
+                + "squareBumper name=sq x=0 y=0\n"
+                + "fire trigger=sq action=abs\n"
+                + "keydown key=space action=L\n"
+                + "absorber name=abs x=0 y=19 width=20 height=1\n"
+                + "leftFlipper name=L x=3 y=0\n"));
+    }
+
+    // covers generated stress board
+    @Test
+    public void testStressBoard() throws UnableToParseException {
+        final String board = new StressBoardGenerator(7, 1, 0, 50, 50, 50, StressBoardGenerator.defaultMix()).generate();
+        final long start = System.nanoTime();
+        assertEquals("generated board valid", Collections.emptyList(), BoardValidator.validate(board));
+        assertTrue("fast", System.nanoTime() - start < 1_000_000_000L);
+    }
+}
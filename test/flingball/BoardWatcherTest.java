@@ -0,0 +1,141 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Vect;
+
+public class BoardWatcherTest {
+
+    private static final String BOARD = "board name=Example gravity=0\n"
+            + "ball name=B x=5.5 y=2.5 xVelocity=3 yVelocity=0\n"
+            + "squareBumper name=Square x=5 y=10\n"
+            + "circleBumper name=Circle x=1 y=1\n"
+            + "leftFlipper name=F x=10 y=10\n"
+            + "keydown key=a action=F\n";
+
+    /*
+     * Testing strategy
+     *
+     * Board.reload:
+     *    nothing changed; gadget added, removed, moved; trigger changed; gravity changed
+     *    balls kept; flipper moving and unchanged, flipper moved
+     *
+     * BoardWatcher:
+     *    reload(): file valid, file that doesn't parse
+     *    file changed while watching, other file in the directory changed
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers nothing changed, balls kept, flipper moving and unchanged
+    @Test
+    public void testReloadUnchanged() throws UnableToParseException {
+        final Board board = StreamingBoardParser.parse(BOARD);
+        board.keyPressed(KeyEvent.VK_A);
+        board.advance(2);
+        final Vect ball = board.getBalls().get(0).getLocation();
+        assertEquals("no changes", Arrays.asList(), board.reload(StreamingBoardParser.parse(BOARD).blueprint()));
+        assertEquals("ball kept", ball, board.getBalls().get(0).getLocation());
+        assertTrue("flipper still moving", board.getFlippers().get(0).stillNeedToMove());
+    }
+
+    // covers gadget added, removed, moved, trigger changed, gravity changed, flipper moved
+    @Test
+    public void testReloadChanged() throws UnableToParseException {
+        final Board board = StreamingBoardParser.parse(BOARD);
+        board.keyPressed(KeyEvent.VK_A);
+        board.advance(2);
+        final String edited = "board name=Example gravity=10\n"
+                + "ball name=B x=5.5 y=2.5 xVelocity=3 yVelocity=0\n"
+                + "squareBumper name=Square x=6 y=10\n"
+                + "triangleBumper name=Triangle x=1 y=1\n"
+                + "leftFlipper name=F x=12 y=10\n"
+                + "keydown key=b action=F\n";
+        assertEquals("changes", new HashSet<>(Arrays.asList("moved SquareBumper Square", "removed CircleBumper Circle",
+                "added TriangleBumper Triangle", "moved Flipper F", "changed triggers", "changed gravity or friction")),
+                new HashSet<>(board.reload(StreamingBoardParser.parse(edited).blueprint())));
+        assertEquals("gravity", 10.0f, board.getGravity(), 0.001);
+        assertEquals("gadgets", new SquareBumper("Square", new Vect(6, 10)), board.getGadgetWithName("Square"));
+        assertEquals("gadgets", "Triangle", board.getStaticBumpers().get(1).getName());
+        assertFalse("moved flipper starts still", board.getFlippers().get(0).stillNeedToMove());
+        assertEquals("new key", board.getFlippers(), board.getTargetFlippers(KeyEvent.VK_B, false));
+        assertEquals("ball kept", 1, board.getBalls().size());
+
+        board.addBumper(new CircleBumper("Circle", new Vect(2, 2)));
+        assertEquals("reloaded board still editable", 3, board.getStaticBumpers().size());
+    }
+
+    // covers reload() of a valid file and a file that doesn't parse
+    @Test
+    public void testReloadFile() throws IOException, UnableToParseException {
+        final Path directory = Files.createTempDirectory("boardwatcher");
+        final Path file = directory.resolve("board.fb");
+        write(file, BOARD);
+        final Board board = StreamingBoardParser.parse(BOARD);
+        final int[] runs = {0};
+        try (BoardWatcher watcher = new BoardWatcher(file, board, () -> runs[0]++)) {
+            write(file, BOARD.replace("x=5 y=10", "x=7 y=10"));
+            assertEquals("changes", Arrays.asList("moved SquareBumper Square"), watcher.reload());
+            assertEquals("ran onReload", 1, runs[0]);
+
+            write(file, "board name=Example\nspinner name=S x=0 y=0\n");
+            try {
+                watcher.reload();
+                fail("expected a syntax error");
+            } catch (UnableToParseException e) {
+                // expected
+            }
+            assertEquals("board kept", new SquareBumper("Square", new Vect(7, 10)), board.getGadgetWithName("Square"));
+            assertEquals("reloads", 1, watcher.getReloads());
+        } finally {
+            delete(directory, file);
+        }
+    }
+
+    // covers file changed while watching, other file changed
+    @Test
+    public void testWatch() throws IOException, UnableToParseException, InterruptedException {
+        final Path directory = Files.createTempDirectory("boardwatcher");
+        final Path file = directory.resolve("board.fb");
+        final Path other = directory.resolve("other.fb");
+        write(file, BOARD);
+        final Board board = StreamingBoardParser.parse(BOARD);
+        final CountDownLatch reloaded = new CountDownLatch(1);
+        try (BoardWatcher watcher = new BoardWatcher(file, board, reloaded::countDown)) {
+            watcher.start();
+            write(other, BOARD);
+            write(file, BOARD.replace("circleBumper name=Circle x=1 y=1\n", ""));
+            assertTrue("reloaded", reloaded.await(30, TimeUnit.SECONDS));
+            assertEquals("gadget removed", 1, board.getStaticBumpers().size());
+        } finally {
+            delete(directory, file, other);
+        }
+    }
+
+    private static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(Path directory, Path... files) throws IOException {
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+        Files.delete(directory);
+    }
+}
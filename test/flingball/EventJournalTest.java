@@ -0,0 +1,81 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EventJournalTest {
+
+    /*
+     * Testing strategy
+     *
+     * record:
+     *    payload String, ByteBuffer (position kept)
+     *    event fits in the segment, rolls over to a new segment, never fits
+     *
+     * read:
+     *    no segment, one segment, many segments
+     *    segment closed (END), segment still open (ends with zeros)
+     *    journal reopened on a directory with segments
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers String and ByteBuffer payload, event fits, segment still open, one segment
+    @Test
+    public void testRecordAndRead() throws IOException {
+        final Path directory = Files.createTempDirectory("journal");
+        assertTrue("no segment", EventJournal.read(directory.resolve("none")).isEmpty());
+        final EventJournal journal = new EventJournal(directory, 1024);
+        journal.record(EventJournal.Type.CONNECT, 1, "connect b1 p1");
+        final ByteBuffer frame = ByteBuffer.wrap("tran b2 1.0 2.0 3.0 4.0 ball".getBytes(StandardCharsets.UTF_8));
+        journal.record(EventJournal.Type.TRANSFER, 1, frame);
+        assertEquals("position kept", 0, frame.position());
+
+        final List<EventJournal.Event> events = EventJournal.read(directory);
+        assertEquals("events", 2, events.size());
+        assertEquals("type", EventJournal.Type.CONNECT, events.get(0).getType());
+        assertEquals("user", 1, events.get(0).getUserID());
+        assertEquals("payload", "connect b1 p1", events.get(0).getPayload());
+        assertEquals("bytes", "tran b2 1.0 2.0 3.0 4.0 ball", events.get(1).getPayload());
+        assertTrue("time", events.get(0).getTimeMillis() <= events.get(1).getTimeMillis());
+        journal.close();
+    }
+
+    // covers rolling over, many segments, closed segment, reopened journal, never fits
+    @Test
+    public void testRollOver() throws IOException {
+        final Path directory = Files.createTempDirectory("journal");
+        try (EventJournal journal = new EventJournal(directory, 128)) {
+            for (int i = 0; i < 20; i++) {
+                journal.record(EventJournal.Type.JOIN, EventJournal.SERVER, "h b" + i + " c" + i);
+            }
+            assertEquals("records", 20, journal.getRecords());
+            try {
+                journal.record(EventJournal.Type.JOIN, EventJournal.SERVER, new String(new char[200]).replace('\0', 'x'));
+                fail("expected an event too large for a segment");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        try (EventJournal reopened = new EventJournal(directory, 128)) {
+            reopened.record(EventJournal.Type.DISJOIN, 3, "b3");
+        }
+        final List<EventJournal.Event> events = EventJournal.read(directory);
+        assertEquals("events of all segments", 21, events.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("in order", "h b" + i + " c" + i, events.get(i).getPayload());
+        }
+        assertEquals("after reopening", "b3", events.get(20).getPayload());
+    }
+}
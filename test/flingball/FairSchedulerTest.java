@@ -0,0 +1,90 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class FairSchedulerTest {
+
+    /*
+     * Testing strategy
+     *
+     * FairScheduler acquire, release:
+     *    nobody has the turn, somebody has it
+     *    waiting flows with cost <= quantum, > quantum
+     *    flow asking again right after its turn while others wait
+     *
+     * TokenBucket tryTake:
+     *    no limit; tokens left, burst used up, refilled after a while, refilled up to burst only
+     */
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers nobody has the turn, somebody has it, costs <= and > quantum, asking again
+    @Test
+    public void testRoundRobin() throws InterruptedException {
+        final FairScheduler scheduler = new FairScheduler(100);
+        final List<Integer> served = Collections.synchronizedList(new ArrayList<>());
+        scheduler.acquire(0, 50);
+        assertEquals("free turn", 0, scheduler.getWaited());
+
+        final List<Thread> threads = new ArrayList<>();
+        // flow 1 asks for a large request first, then flows 2 and 3 for small ones
+        for (int flow = 1; flow <= 3; flow++) {
+            final int id = flow;
+            final Thread thread = new Thread(() -> {
+                try {
+                    scheduler.acquire(id, id == 1 ? 150 : 50);
+                    served.add(id);
+                    scheduler.release(id);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            while (scheduler.getWaiting() < flow) {
+                Thread.sleep(1);
+            }
+        }
+        scheduler.release(0);
+        scheduler.acquire(0, 50);
+        served.add(0);
+        scheduler.release(0);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("small requests first, asking again last", Arrays.asList(2, 3, 1, 0), served);
+        assertEquals("turns", 5, scheduler.getTurns());
+        assertTrue("waited", scheduler.getWaited() >= 3);
+        assertEquals("nobody waiting", 0, scheduler.getWaiting());
+    }
+
+    // covers no limit, tokens left, burst used up, refilled, refilled up to burst
+    @Test
+    public void testTokenBucket() {
+        final TokenBucket unlimited = new TokenBucket(0, 1, 0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue("no limit", unlimited.tryTake(0));
+        }
+        final TokenBucket bucket = new TokenBucket(10, 2, 0);
+        assertTrue("tokens left", bucket.tryTake(0));
+        assertTrue("tokens left", bucket.tryTake(0));
+        assertFalse("burst used up", bucket.tryTake(0));
+        assertFalse("not refilled yet", bucket.tryTake(SECOND / 20));
+        assertTrue("refilled", bucket.tryTake(SECOND / 10));
+        assertTrue("refilled up to burst", bucket.tryTake(10 * SECOND));
+        assertTrue("refilled up to burst", bucket.tryTake(10 * SECOND));
+        assertFalse("refilled up to burst", bucket.tryTake(10 * SECOND));
+    }
+}
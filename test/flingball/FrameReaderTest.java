@@ -0,0 +1,117 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class FrameReaderTest {
+
+    /*
+     * Testing strategy
+     *
+     * FrameReader.next:
+     *    frame read at once, split across many reads
+     *    frame ends with "\n", "\r\n"
+     *    frame empty, not empty
+     *    stream ends after a complete frame, in the middle of a frame
+     *    frame fits the buffer, is longer than the buffer (skipped, reader goes on)
+     *
+     * BufferPool:
+     *    acquire with no free buffer, with a released buffer
+     *    release with the pool full
+     */
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    /*
+     * a channel that returns at most chunk bytes per read
+     */
+    private static ReadableByteChannel channel(String text, int chunk) {
+        final ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        return new ReadableByteChannel() {
+            @Override public int read(ByteBuffer dst) {
+                if (!bytes.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(chunk, Math.min(dst.remaining(), bytes.remaining()));
+                for (int i = 0; i < n; i++) {
+                    dst.put(bytes.get());
+                }
+                return n;
+            }
+            @Override public boolean isOpen() { return true; }
+            @Override public void close() { }
+        };
+    }
+
+    private static String decode(ByteBuffer frame) {
+        return StandardCharsets.UTF_8.decode(frame).toString();
+    }
+
+    // covers read at once, "\n" and "\r\n", empty frame, stream ends after a complete frame
+    @Test
+    public void testFramesReadAtOnce() throws IOException {
+        final BufferPool pool = new BufferPool(64, 1);
+        final FrameReader frames = new FrameReader(Channels.newChannel(
+                new ByteArrayInputStream("tran b1 1 2 3 4 ball\r\n\nquit\n".getBytes(StandardCharsets.UTF_8))), pool);
+        assertEquals("first", "tran b1 1 2 3 4 ball", decode(frames.next()));
+        assertEquals("empty", "", decode(frames.next()));
+        assertEquals("last", "quit", decode(frames.next()));
+        assertNull("end", frames.next());
+        frames.close();
+        assertEquals("buffer released", 1, pool.getFree());
+    }
+
+    // covers split across many reads, stream ends in the middle of a frame
+    @Test
+    public void testFramesSplitAcrossReads() throws IOException {
+        final BufferPool pool = new BufferPool(16, 1);
+        final FrameReader frames = new FrameReader(channel("connect b1 p1\ntime\nconnect b2 p2\nqu", 3), pool);
+        assertEquals("first", "connect b1 p1", decode(frames.next()));
+        assertEquals("second", "time", decode(frames.next()));
+        assertEquals("third moved to front of buffer", "connect b2 p2", decode(frames.next()));
+        assertNull("unfinished frame dropped", frames.next());
+        frames.close();
+    }
+
+    // covers frame longer than the buffer, split across many reads, "\r\n"
+    @Test
+    public void testFrameTooLong() throws IOException {
+        final FrameReader frames = new FrameReader(channel("time\n0123456789abcdefghijklmnopqrstuvwXYZ\r\nquit\n", 5),
+                new BufferPool(16, 0));
+        assertEquals("before", "time", decode(frames.next()));
+        assertFalse("fits", frames.isOversized());
+        assertEquals("oversized frame empty", "", decode(frames.next()));
+        assertTrue("oversized", frames.isOversized());
+        assertEquals("after", "quit", decode(frames.next()));
+        assertFalse("fits again", frames.isOversized());
+        assertNull("end", frames.next());
+    }
+
+    // covers acquire with no free buffer, with a released buffer, release with the pool full
+    @Test
+    public void testBufferPool() {
+        final BufferPool pool = new BufferPool(32, 1);
+        final ByteBuffer first = pool.acquire();
+        final ByteBuffer second = pool.acquire();
+        assertTrue("direct", first.isDirect());
+        assertEquals("capacity", 32, first.capacity());
+        first.put((byte) 1);
+        pool.release(first);
+        pool.release(second);
+        assertEquals("pool full", 1, pool.getFree());
+        final ByteBuffer reused = pool.acquire();
+        assertSame("reused", first, reused);
+        assertEquals("cleared", 0, reused.position());
+        assertEquals("allocated", 2, pool.getAllocated());
+    }
+}
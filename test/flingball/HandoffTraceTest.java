@@ -0,0 +1,134 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HandoffTraceTest {
+
+    /*
+     * Testing strategy
+     *
+     * indexIn, parse:
+     *    request has no trace, has a trace with client stamp only, has a trace with all stamps
+     *    trace is malformed (missing stamp, stamp not a number)
+     *    BALLNAME or BOARDNAME is "trace", with and without a trace
+     *
+     * toProtocol:
+     *    server stamps unknown, known
+     *
+     * HandoffTracer:
+     *    tracing disabled, enabled
+     *    recordForwarded, recordApplied with known and unknown stamps
+     *    tracer of the server, of a client with and without an estimate of the server's clock
+     */
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers request has no trace
+    @Test
+    public void testNoTrace() {
+        Tokenizer tokens = new Tokenizer("tran 1.0 2.0 3.0 4.0 ball");
+        assertEquals("index", tokens.count(), HandoffTrace.indexIn(tokens, 6));
+        assertNull("no trace", HandoffTrace.parse(tokens, HandoffTrace.indexIn(tokens, 6)));
+    }
+
+    // covers trace with client stamp only, server stamps unknown
+    @Test
+    public void testClientStampOnly() {
+        Tokenizer tokens = new Tokenizer("tran 1.0 2.0 3.0 4.0 ball trace b-0 100");
+        final int index = HandoffTrace.indexIn(tokens, 6);
+        assertEquals("index", 6, index);
+        HandoffTrace trace = HandoffTrace.parse(tokens, index);
+        assertEquals("id", "b-0", trace.getId());
+        assertEquals("sent", 100, trace.getSent());
+        assertEquals("server received", HandoffTrace.UNKNOWN, trace.getServerReceived());
+        assertEquals("protocol", " trace b-0 100", trace.toProtocol());
+    }
+
+    // covers trace with all stamps, server stamps known
+    @Test
+    public void testAllStamps() {
+        String request = "port P 1.0 2.0 3.0 4.0 ball from B trace b-1 100 150 160";
+        Tokenizer tokens = new Tokenizer(request);
+        HandoffTrace trace = HandoffTrace.parse(tokens, HandoffTrace.indexIn(tokens, 9));
+        assertEquals("forwarded", 160, trace.getServerForwarded());
+        assertEquals("round trip", request, "port P 1.0 2.0 3.0 4.0 ball from B" + trace.toProtocol());
+        assertEquals("with stamps", trace,
+                new HandoffTrace("b-1", 100, HandoffTrace.UNKNOWN, HandoffTrace.UNKNOWN, HandoffTrace.UNKNOWN)
+                        .withServerStamps(150, 160));
+    }
+
+    // covers malformed traces
+    @Test
+    public void testMalformed() {
+        Tokenizer missing = new Tokenizer("tran 1.0 2.0 3.0 4.0 ball trace b-2");
+        assertNull("missing stamp", HandoffTrace.parse(missing, HandoffTrace.indexIn(missing, 6)));
+        Tokenizer notNumber = new Tokenizer("tran 1.0 2.0 3.0 4.0 ball trace b-2 soon");
+        assertNull("not a number", HandoffTrace.parse(notNumber, HandoffTrace.indexIn(notNumber, 6)));
+    }
+
+    // covers BALLNAME and BOARDNAME "trace"
+    @Test
+    public void testNamedTrace() {
+        Tokenizer untraced = new Tokenizer("tran 1.0 2.0 3.0 4.0 trace");
+        assertEquals("ball named trace is no trace", untraced.count(), HandoffTrace.indexIn(untraced, 6));
+        Tokenizer traced = new Tokenizer("tran 1.0 2.0 3.0 4.0 trace trace b-3 100");
+        assertEquals("trace after the ball", 6, HandoffTrace.indexIn(traced, 6));
+        assertEquals("id", "b-3", HandoffTrace.parse(traced, 6).getId());
+        Tokenizer portal = new Tokenizer("port P 1.0 2.0 3.0 4.0 ball from trace at 5");
+        assertEquals("board named trace is no trace", portal.count(), HandoffTrace.indexIn(portal, 9));
+    }
+
+    // covers tracing disabled and enabled, recording known and unknown stamps
+    @Test
+    public void testTracer() {
+        HandoffTracer tracer = new HandoffTracer("b");
+        tracer.setEnabled(false);
+        assertNull("disabled", tracer.start());
+        tracer.setEnabled(true);
+        HandoffTrace trace = tracer.start();
+        assertEquals("id", "b-0", trace.getId());
+
+        tracer.recordApplied(trace.withDestinationReceived(trace.getSent() + 1000), trace.getSent() + 3000);
+        assertEquals("no server stamps", 0, tracer.getHistogram(HandoffTracer.Hop.SERVER_TO_DESTINATION).count());
+        assertEquals("to tick", 2000, tracer.getHistogram(HandoffTracer.Hop.DESTINATION_TO_TICK).max());
+        assertEquals("end to end", 3000, tracer.getHistogram(HandoffTracer.Hop.END_TO_END).max());
+
+        tracer.recordForwarded(trace.withServerStamps(trace.getSent() + 10, trace.getSent() + 30));
+        assertEquals("client to server", 10, tracer.getHistogram(HandoffTracer.Hop.CLIENT_TO_SERVER).max());
+        assertEquals("server queue", 20, tracer.getHistogram(HandoffTracer.Hop.SERVER_QUEUE).max());
+    }
+
+    // covers tracer of a client without and with an estimate of the server's clock
+    @Test
+    public void testClientTracer() {
+        final ClockSync clock = new ClockSync();
+        final HandoffTracer tracer = new HandoffTracer("b", clock);
+        tracer.setEnabled(true);
+        final HandoffTrace unsynced = tracer.start();
+        assertEquals("no estimate, no send stamp", HandoffTrace.UNKNOWN, unsynced.getSent());
+        final Tokenizer request = new Tokenizer("tran 1.0 2.0 3.0 4.0 ball" + unsynced.toProtocol());
+        assertEquals("parsed back", unsynced.getSent(),
+                HandoffTrace.parse(request, HandoffTrace.indexIn(request, 6)).getSent());
+        final long local = HandoffTracer.now();
+        tracer.recordApplied(new HandoffTrace("a-0", 0, 10, 20, local), local + 3000);
+        assertEquals("no estimate, no cross-process hop", 0,
+                tracer.getHistogram(HandoffTracer.Hop.SERVER_TO_DESTINATION).count()
+                + tracer.getHistogram(HandoffTracer.Hop.END_TO_END).count());
+        assertEquals("local hop", 3000, tracer.getHistogram(HandoffTracer.Hop.DESTINATION_TO_TICK).max());
+
+        // the server's clock is 1 s ahead of the local one
+        final long offset = 1_000_000_000L;
+        clock.addSample(local, local + offset, local);
+        final long before = HandoffTracer.now();
+        final long sent = tracer.start().getSent();
+        assertTrue("send stamp on the server's clock", sent >= before + offset && sent <= HandoffTracer.now() + offset);
+        tracer.recordApplied(new HandoffTrace("a-1", local + offset - 500, local + offset - 400,
+                local + offset - 300, local + 1000), local + 3000);
+        assertEquals("server to destination", 1300, tracer.getHistogram(HandoffTracer.Hop.SERVER_TO_DESTINATION).max());
+        assertEquals("end to end", 3500, tracer.getHistogram(HandoffTracer.Hop.END_TO_END).max());
+    }
+}
@@ -0,0 +1,113 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+public class JournalReplayTest {
+
+    /*
+     * Testing strategy
+     *
+     * journaled server:
+     *    events connect, join, transfer, portal, disjoin, in the order processed
+     *
+     * replay against a fresh in-process server:
+     *    counts of each type equal those of the journal, none failed or skipped
+     *    balls received by the replayed boards
+     */
+
+    private static final String LOCALHOST = "127.0.0.1";
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers connect, join, transfer, portal, disjoin, replayed counts, balls received
+    @Test
+    public void testJournalAndReplay() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("journal");
+        final FlingballServer server = serve();
+        final EventJournal journal = new EventJournal(directory);
+        server.setJournal(journal);
+        final SyntheticClient client1 = new SyntheticClient(LOCALHOST, server.port(), "b1",
+                Collections.emptyList(), request -> {});
+        final SyntheticClient client2 = new SyntheticClient(LOCALHOST, server.port(), "b2",
+                Arrays.asList("p"), request -> {});
+        assertTrue("connect b1", client1.connect().startsWith("succeed:"));
+        assertTrue("connect b2", client2.connect().startsWith("succeed:"));
+        assertTrue("join", server.actOnCommand("h b1 b2").startsWith("succeed:"));
+        assertTrue("tran", client1.send("tran b2 19.5 10.0 1.0 0.0 ball").startsWith("succeed:"));
+        assertTrue("port", client1.send("port b2 p 5.0 5.0 1.0 0.0 ball from b1").startsWith("succeed:"));
+        client1.close();
+        client2.close();
+        await("boards removed", () -> server.getJoinableBoards().isEmpty());
+        journal.close();
+
+        final List<EventJournal.Event> events = EventJournal.read(directory);
+        final Map<EventJournal.Type, Long> counts = new EnumMap<>(EventJournal.Type.class);
+        for (EventJournal.Event event : events) {
+            counts.merge(event.getType(), 1L, Long::sum);
+        }
+        assertEquals("events " + events, 7, events.size());
+        assertEquals("first", EventJournal.Type.CONNECT, events.get(0).getType());
+        assertEquals("connect payload", "connect b2 p", events.get(1).getPayload());
+        assertEquals("join payload", "h b1 b2", events.get(2).getPayload());
+        assertEquals("connects", 2, (long) counts.get(EventJournal.Type.CONNECT));
+        assertEquals("joins", 1, (long) counts.get(EventJournal.Type.JOIN));
+        assertEquals("transfers", 1, (long) counts.get(EventJournal.Type.TRANSFER));
+        assertEquals("portals", 1, (long) counts.get(EventJournal.Type.PORTAL));
+        assertEquals("disjoins", 2, (long) counts.get(EventJournal.Type.DISJOIN));
+
+        final FlingballServer fresh = serve();
+        final JournalReplay replay = new JournalReplay(LOCALHOST, fresh.port(), fresh::actOnCommand);
+        replay.replay(events, 0);
+        for (EventJournal.Type type : EventJournal.Type.values()) {
+            assertEquals("replayed " + type, (long) counts.getOrDefault(type, 0L), replay.getReplayed(type));
+        }
+        assertEquals("failed", 0, replay.getFailed());
+        assertEquals("skipped", 0, replay.getSkipped());
+        await("balls received", () -> replay.getReceived() == 2);
+        assertTrue("reported", replay.report().contains("failed=0 skipped=0"));
+    }
+
+    /*
+     * start a server on a free port, serving on a daemon thread
+     */
+    private static FlingballServer serve() throws IOException {
+        final FlingballServer server = new FlingballServer(0);
+        final Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+        return server;
+    }
+
+    /*
+     * wait until condition holds, failing with message after TIMEOUT_MILLIS
+     */
+    private static void await(String message, BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(message, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
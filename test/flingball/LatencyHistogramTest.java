@@ -0,0 +1,69 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    /*
+     * Testing strategy
+     *
+     * record, percentile, count, max, mean:
+     *    histogram is empty, has one value, has many values
+     *    value < 64ns (exact buckets), value >= 64ns (log buckets), value < 0
+     *    percentile = 0, 50, 100
+     *
+     * reset:
+     *    histogram is empty, not empty
+     */
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers empty histogram
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram("empty");
+        assertEquals("count", 0, histogram.count());
+        assertEquals("p50", 0, histogram.percentile(50));
+        assertEquals("max", 0, histogram.max());
+        assertEquals("mean", 0, histogram.mean(), 0);
+    }
+
+    // covers one value < 64ns, negative value
+    @Test
+    public void testSmallValues() {
+        LatencyHistogram histogram = new LatencyHistogram("small");
+        histogram.record(42);
+        assertEquals("exact bucket", 42, histogram.percentile(100));
+        histogram.record(-5);
+        assertEquals("negative recorded as 0", 0, histogram.percentile(0));
+        assertEquals("count", 2, histogram.count());
+    }
+
+    // covers many values >= 64ns, percentile 50 and 100
+    @Test
+    public void testPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram("many");
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        final double precision = 0.04;
+        assertEquals("p50", 500_000, histogram.percentile(50), 500_000 * precision);
+        assertEquals("p99", 990_000, histogram.percentile(99), 990_000 * precision);
+        assertEquals("p100 is max", 1_000_000, histogram.percentile(100));
+        assertEquals("mean", 500_500, histogram.mean(), 1);
+    }
+
+    // covers reset of a non-empty histogram
+    @Test
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram("reset");
+        histogram.record(123_456);
+        histogram.reset();
+        assertEquals("count", 0, histogram.count());
+        assertEquals("max", 0, histogram.max());
+    }
+}
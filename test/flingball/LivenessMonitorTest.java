@@ -0,0 +1,75 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LivenessMonitorTest {
+
+    /*
+     * Testing strategy
+     *
+     * answered, forget, silent:
+     *    client answered in time, late, never after it was forgotten
+     *    monitor enabled, disabled
+     *
+     * start:
+     *    enabled (beats), disabled (never beats)
+     */
+    private static final long START = 1000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers answered in time, late, forgotten, enabled
+    @Test
+    public void testSilent() {
+        final LivenessMonitor liveness = new LivenessMonitor(100, 3, START);
+        assertTrue("enabled", liveness.isEnabled());
+        assertEquals("timeout", 300, liveness.getTimeoutMillis());
+        liveness.answered(1, START);
+        liveness.answered(2, START);
+        liveness.answered(3, START);
+        liveness.answered(2, START + 200);
+        liveness.forget(3);
+        assertEquals("in time", Collections.emptyList(), liveness.silent(START + 250));
+        assertEquals("late", Arrays.asList(1), liveness.silent(START + 450));
+        assertEquals("answered again", Arrays.asList(2), liveness.silent(START + 650));
+    }
+
+    // covers disabled
+    @Test
+    public void testDisabled() throws InterruptedException {
+        final LivenessMonitor liveness = new LivenessMonitor(0, 3, START);
+        assertFalse("disabled", liveness.isEnabled());
+        liveness.answered(1, START);
+        assertEquals("never silent", Collections.emptyList(), liveness.silent(START + 1000000));
+        final BlockingQueue<List<Integer>> beats = new ArrayBlockingQueue<>(1);
+        liveness.start(beats::offer);
+        assertNull("never beats", beats.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    // covers enabled beats
+    @Test
+    public void testStart() throws InterruptedException {
+        final LivenessMonitor liveness = new LivenessMonitor(20, 1, System.currentTimeMillis());
+        liveness.answered(1, System.currentTimeMillis());
+        final BlockingQueue<List<Integer>> beats = new ArrayBlockingQueue<>(100);
+        liveness.start(beats::offer);
+        final long deadline = System.currentTimeMillis() + 2000;
+        List<Integer> silent = Collections.emptyList();
+        while (silent.isEmpty() && System.currentTimeMillis() < deadline) {
+            silent = beats.poll(1, TimeUnit.SECONDS);
+        }
+        assertEquals("silent client reported", Arrays.asList(1), silent);
+    }
+}
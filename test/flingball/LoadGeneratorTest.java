@@ -0,0 +1,64 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class LoadGeneratorTest {
+
+    /*
+     * Testing strategy
+     *
+     * connect, join, run:
+     *    2x2 grid through an in-process server, transfer and portal requests
+     *    counts: sent, delivered, failed, lost
+     *    percentiles of server round trip and delivery
+     */
+
+    private static final String LOCALHOST = "127.0.0.1";
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers 2x2 grid, transfer and portal requests, counts, percentiles
+    @Test
+    public void testLoopbackGrid() throws IOException, InterruptedException {
+        final FlingballServer server = new FlingballServer(0);
+        final Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException ioe) {
+                throw new RuntimeException(ioe);
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+        try (LoadGenerator generator = LoadGenerator.connect(LOCALHOST, server.port(), 4, 1, 2, false, 0.25)) {
+            generator.join(server);
+            assertEquals("right", "lg1", server.getNeighbours("lg0").get(BOARD_DIRECTION.RIGHT));
+            assertEquals("bottom", "lg2", server.getNeighbours("lg0").get(BOARD_DIRECTION.BOTTOM));
+            assertNull("no torus", server.getNeighbours("lg0").get(BOARD_DIRECTION.LEFT));
+            generator.run(200, 1);
+
+            assertTrue("sent " + generator.getSent(), generator.getSent() >= 100);
+            assertEquals("none failed", 0, generator.getFailed());
+            assertEquals("none lost", 0, generator.getLost());
+            assertEquals("all delivered", generator.getSent(), generator.getDelivered());
+            for (String report : new String[] {"sent=" + generator.getSent(), "delivered=" + generator.getDelivered(),
+                    "failed=0", "lost=0"}) {
+                assertTrue("reported " + report, generator.report().contains(report));
+            }
+
+            assertTrue("round trip p50", generator.roundTripPercentile(50) > 0);
+            assertTrue("round trip p99", generator.roundTripPercentile(50) <= generator.roundTripPercentile(99));
+            assertTrue("round trip p999", generator.roundTripPercentile(99) <= generator.roundTripPercentile(99.9));
+            assertTrue("delivery p50", generator.deliveryPercentile(50) > 0);
+            assertTrue("delivery p99", generator.deliveryPercentile(50) <= generator.deliveryPercentile(99));
+            assertTrue("delivery p999", generator.deliveryPercentile(99) <= generator.deliveryPercentile(99.9));
+        }
+    }
+}
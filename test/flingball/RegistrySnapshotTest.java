@@ -0,0 +1,78 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RegistrySnapshotTest {
+
+    /*
+     * Testing strategy
+     *
+     * write, read:
+     *    no boards, boards with 0, > 1 portals; no joins, horizontal and vertical joins
+     *    file doesn't exist, exists and is replaced
+     *    file is not a snapshot
+     *
+     * getPortals:
+     *    board in the snapshot, not in it
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers boards with 0 and > 1 portals, both kinds of joins, file doesn't exist,
+    // board in the snapshot and not in it
+    @Test
+    public void testRoundTrip() throws IOException {
+        final Map<String, List<String>> portals = new LinkedHashMap<>();
+        portals.put("b1", Arrays.asList("p", "q"));
+        portals.put("b2", Collections.emptyList());
+        portals.put("b3", Arrays.asList("r"));
+        final RegistrySnapshot snapshot = new RegistrySnapshot(portals,
+                Topology.parse("h b1 b2\nv b1 b3\nh b2 b1", Collections.emptyList()));
+        final Path file = Files.createTempDirectory("snapshot").resolve("registry.fbr");
+        snapshot.write(file);
+        final RegistrySnapshot read = RegistrySnapshot.read(file);
+        assertEquals("round trip", snapshot, read);
+        assertEquals("boards in order", Arrays.asList("b1", "b2", "b3"), Arrays.asList(read.getBoards().toArray()));
+        assertEquals("portals", Arrays.asList("p", "q"), read.getPortals("b1"));
+        assertEquals("not in snapshot", Collections.emptyList(), read.getPortals("b4"));
+        assertEquals("joins", "b3", read.getTopology().getNeighbours("b1").get(BOARD_DIRECTION.BOTTOM));
+    }
+
+    // covers no boards, no joins, file replaced, not a snapshot
+    @Test
+    public void testReplaceAndReject() throws IOException {
+        final Path directory = Files.createTempDirectory("snapshot");
+        final Path file = directory.resolve("registry.fbr");
+        final RegistrySnapshot empty = new RegistrySnapshot(Collections.emptyMap(),
+                Topology.parse("", Collections.emptyList()));
+        new RegistrySnapshot(Collections.singletonMap("b1", Collections.emptyList()),
+                Topology.parse("h b1 b2", Collections.emptyList())).write(file);
+        empty.write(file);
+        assertEquals("replaced", empty, RegistrySnapshot.read(file));
+        assertEquals("no temporary file left", 1, directory.toFile().list().length);
+
+        final Path other = directory.resolve("other");
+        Files.write(other, "h b1 b2".getBytes(StandardCharsets.UTF_8));
+        try {
+            RegistrySnapshot.read(other);
+            fail("expected not a snapshot");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
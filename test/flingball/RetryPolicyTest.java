@@ -0,0 +1,79 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    /*
+     * Testing strategy
+     *
+     * due, decide:
+     *    ball in the ledger, closed meanwhile
+     *    attempts < maxAttempts, = maxAttempts
+     *    destination connected, suspended
+     *
+     * returnRequest:
+     *    TRANSFER_BALL_REQUEST, PORTAL_BALL_REQUEST, other request
+     *    sender a client, NO_SENDER
+     *    side empty, present; boards joined, no longer joined
+     */
+    private static final long START = 1000;
+    private static final long TIMEOUT = 100;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers ball in the ledger and closed, attempts < and = maxAttempts, connected and suspended
+    @Test
+    public void testDecide() {
+        final BallLedger ledger = new BallLedger(TIMEOUT, START);
+        final RetryPolicy retries = new RetryPolicy(ledger, 2);
+        final BallLedger.Entry ball = ledger.open("tran 1.0 2.0 3.0 4.0 b", 1, 2);
+        final BallLedger.Entry closed = ledger.open("tran 1.0 2.0 3.0 4.0 c", 1, 2);
+        ledger.sent(ball.getSeq(), START);
+        ledger.sent(closed.getSeq(), START);
+        final List<BallLedger.Entry> due = retries.due(START + 2 * TIMEOUT);
+        assertEquals("due", 2, due.size());
+        ledger.close(closed.getSeq());
+        assertEquals("closed", RetryPolicy.Action.SKIP, retries.decide(closed, true));
+        assertEquals("first attempt", RetryPolicy.Action.RESEND, retries.decide(ball, true));
+
+        ledger.sent(ball.getSeq(), START + 2 * TIMEOUT);
+        assertEquals("due again", Arrays.asList(ball), retries.due(START + 4 * TIMEOUT));
+        assertEquals("last attempt", RetryPolicy.Action.EVICT, retries.decide(ball, true));
+        assertEquals("suspended", RetryPolicy.Action.RESEND, retries.decide(ball, false));
+    }
+
+    // covers TRANSFER_BALL_REQUEST, sender a client and NO_SENDER, side present and empty,
+    // boards joined and not
+    @Test
+    public void testReturnTransferredBall() {
+        final BallLedger ledger = new BallLedger(TIMEOUT, START);
+        final BallLedger.Entry ball = ledger.open("tran -0.5 2.0 3.0 4.0 b", 1, 2, Optional.of(BOARD_DIRECTION.RIGHT));
+        assertEquals("across its side", Optional.of("tran 19.5 2.0 3.0 4.0 b"), RetryPolicy.returnRequest(ball, true));
+        assertEquals("no longer joined", Optional.empty(), RetryPolicy.returnRequest(ball, false));
+        final BallLedger.Entry noSide = ledger.open("tran -0.5 2.0 3.0 4.0 b", 1, 2);
+        assertEquals("no side", Optional.empty(), RetryPolicy.returnRequest(noSide, true));
+        final BallLedger.Entry returned = ledger.open("tran -0.5 2.0 3.0 4.0 b", BallLedger.NO_SENDER, 2,
+                Optional.of(BOARD_DIRECTION.RIGHT));
+        assertEquals("no sender", Optional.empty(), RetryPolicy.returnRequest(returned, true));
+    }
+
+    // covers PORTAL_BALL_REQUEST, other request
+    @Test
+    public void testReturnPortalBall() {
+        final BallLedger ledger = new BallLedger(TIMEOUT, START);
+        final BallLedger.Entry ball = ledger.open("port p 5.0 6.0 1.0 0.0 b from b1", 1, 2);
+        assertEquals("where it is", Optional.of("tran 5.0 6.0 1.0 0.0 b"), RetryPolicy.returnRequest(ball, false));
+        final BallLedger.Entry hint = ledger.open("hint 5.0 6.0 1.0 0.0 b", 1, 2);
+        assertEquals("not a ball", Optional.empty(), RetryPolicy.returnRequest(hint, true));
+    }
+}
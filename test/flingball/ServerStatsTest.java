@@ -0,0 +1,123 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class ServerStatsTest {
+
+    /*
+     * Testing strategy
+     *
+     * ServerStats count, received, delivered, throttled, removeClient:
+     *    counter 0, > 0
+     *    client with board name, without
+     *
+     * ServerStats lock and handler gauges:
+     *    no request waiting, waiting, lock released
+     *
+     * ServerStats report:
+     *    first report, later report (rates since the previous one)
+     *
+     * AdminEndpoint:
+     *    command stats, boards with no boards, topology, help, topology command that fails, quit
+     */
+    private static final int PORT = 12000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers counters 0 and > 0, clients with and without name, first and later report
+    @Test
+    public void testReport() {
+        final ServerStats stats = new ServerStats();
+        assertEquals("zero", 0, stats.get(ServerStats.Counter.TRANSFER));
+        stats.count(ServerStats.Counter.TRANSFER);
+        stats.count(ServerStats.Counter.JOIN, 4);
+        stats.received(1);
+        stats.received(1);
+        stats.delivered(2);
+        stats.throttled(1);
+        assertEquals("transfers", 1, stats.get(ServerStats.Counter.TRANSFER));
+        assertEquals("joins", 4, stats.get(ServerStats.Counter.JOIN));
+
+        final String first = stats.report(Collections.singletonMap(1, "b1"));
+        assertTrue("transfer total in " + first, first.contains("transfer 1 total"));
+        assertTrue("join total in " + first, first.contains("join 4 total"));
+        assertTrue("named client in " + first, first.contains("board b1: from 2"));
+        assertTrue("throttled in " + first, first.contains("throttled 1 total") && first.contains("throttled 1\n"));
+        assertTrue("unnamed client in " + first, first.contains("board user 2: from 0"));
+
+        final String later = stats.report(Collections.singletonMap(1, "b1"));
+        assertTrue("no new transfers in " + later, later.contains("transfer 1 total, 0.0/s"));
+
+        stats.removeClient(2);
+        assertFalse("removed client in " + later, stats.report(Collections.emptyMap()).contains("user 2"));
+    }
+
+    // covers no request waiting, waiting, lock released
+    @Test
+    public void testGauges() {
+        final ServerStats stats = new ServerStats();
+        stats.handlerStarted();
+        stats.lockRequested();
+        assertEquals("handlers", 1, stats.getHandlers());
+        assertEquals("waiting", 1, stats.getWaiting());
+        final long acquiredAt = stats.lockAcquired();
+        assertEquals("acquired", 0, stats.getWaiting());
+        stats.lockReleased(acquiredAt);
+        stats.handlerStopped();
+        assertEquals("stopped", 0, stats.getHandlers());
+        assertTrue(stats.report(Collections.emptyMap()).contains("handlers 0 threads, 0 waiting"));
+    }
+
+    // covers all AdminEndpoint commands
+    @Test
+    public void testAdminEndpoint() throws IOException {
+        final FlingballServer server = new FlingballServer(PORT);
+        final AdminEndpoint admin = new AdminEndpoint(server, 0);
+        admin.start();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), admin.getPort());
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+            out.println("stats");
+            final String stats = readReply(in);
+            assertTrue("boards in " + stats, stats.startsWith("boards 0 connected"));
+            assertTrue("counters in " + stats, stats.contains("transfer 0 total"));
+            out.println("boards");
+            assertEquals("no boards", "no boards", readReply(in));
+            out.println("topology");
+            assertTrue("topology", readReply(in).startsWith("# topology"));
+            out.println("help");
+            assertTrue("help", readReply(in).startsWith("commands:"));
+            out.println("h b1 b2");
+            assertEquals("join of unknown boards", "fail: illegal board names", readReply(in));
+            out.println("quit");
+            assertNull("closed", in.readLine());
+        } finally {
+            admin.close();
+        }
+    }
+
+    /*
+     * read one reply of an AdminEndpoint, without the final empty line
+     */
+    private static String readReply(BufferedReader in) throws IOException {
+        final StringBuilder reply = new StringBuilder();
+        for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+            reply.append(reply.length() == 0 ? "" : "\n").append(line);
+        }
+        return reply.toString();
+    }
+}
@@ -1,8 +1,18 @@
 package flingball;
 
 import static org.junit.Assert.*;
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.junit.Test;
 import physics.Vect;
 
@@ -30,6 +40,24 @@ public class ServerTest {
      * 
      * partition on user number: =1, >1
      * 
+     * partition on SESSION_REQUEST, RESUME_REQUEST:
+     *    resumed while the old connection is open, dropped and not resumed in time
+     * 
+     * partition on heartbeats:
+     *    client answers, client never answers (evicted)
+     * 
+     * partition on ball acknowledgements:
+     *    destination acknowledges, never acknowledges (sent again, evicted, ball returned)
+     * 
+     * partition on rate limits:
+     *    ball requests within the burst, over the rate (throttled)
+     * 
+     * partition on request length:
+     *    fits the server's buffer, longer (rejected, connection kept)
+     * 
+     * partition on restored snapshots:
+     *    boards of the snapshot not back, back and joined again, other board missing
+     * 
      * tests for Flingball:
      * 
      * (methods that send requests can be tested jointly with tests of FlingballServer)
@@ -43,6 +71,9 @@ public class ServerTest {
      * partition on DISJOIN_REQUEST: 
      *    direction is left, right, top, bottom
      *    
+     * partition on JOINS_REQUEST (topology commands):
+     *    grid of all connected boards
+     *    
      * partition on TRANSFER_BALL_REQUEST
      *    
      * PORTAL_BALL_REQUEST
@@ -489,6 +520,260 @@ public class ServerTest {
         assertEquals("bottom no board","",result[1]);
     }
  
+    //covers SESSION_REQUEST, RESUME_REQUEST
+    @Test
+    public void testFlingballSessionResume() throws IOException, InterruptedException {
+        final int port=PORT+20;
+        FlingballServer server = new FlingballServer(port, 1000);
+        startServer(server);
+        Board board = new Board("b1",0,0,0);
+        Flingball flingball = new Flingball(LOCALHOST, port, board);
+        flingball.sendConnectRequest(board.getName());
+        Board board2 = new Board("b2",0,0,0);
+        Flingball flingball2 = new Flingball(LOCALHOST, port, board2);
+        flingball2.sendConnectRequest(board2.getName());
+        assertTrue("session", flingball.requestSession().startsWith("succeed: session "));
+        Thread.sleep(300);
+        server.actOnCommand("h b1 b2");
+        Thread.sleep(300);
+        assertEquals("resumed", "succeed: 1 resumed the board", flingball.resume());
+        Thread.sleep(300);
+        assertEquals("joins kept","b2",board.getJoinedBoard(BOARD_DIRECTION.RIGHT));
+        assertEquals("server view","b1",server.getNeighbours("b2").get(BOARD_DIRECTION.LEFT));
+        flingball.close();
+        Thread.sleep(400);
+        assertEquals("suspended","b1",board2.getJoinedBoard(BOARD_DIRECTION.LEFT));
+        Thread.sleep(1200);
+        assertEquals("expired","",board2.getJoinedBoard(BOARD_DIRECTION.LEFT));
+        flingball2.close();
+    }
+    
+    //covers heartbeats, client answers and client never answers
+    @Test
+    public void testServerEvictsSilentClient() throws IOException, InterruptedException {
+        final int port=PORT+21;
+        FlingballServer server = new FlingballServer(port, FlingballServer.DEFAULT_GRACE_MILLIS, 100);
+        startServer(server);
+        Board board = new Board("b1",0,0,0);
+        Flingball flingball = new Flingball(LOCALHOST, port, board);
+        flingball.sendConnectRequest(board.getName());
+        // the client of board b2 never reads or answers the requests of the server
+        try (Socket zombie = new Socket(LOCALHOST, port);
+                BufferedReader in = new BufferedReader(new InputStreamReader(zombie.getInputStream()));
+                PrintWriter out = new PrintWriter(zombie.getOutputStream(), true)) {
+            out.println("connect b2");
+            int userID=Integer.parseInt(in.readLine().split(" ")[1]);
+            try (ServerSocket zombieServer = new ServerSocket(userID + Flingball.PORT_START_NUMBER)) {
+                out.println("server created");
+                assertEquals("created","succeed: created socket for this server",in.readLine());
+                server.actOnCommand("h b1 b2");
+                Thread.sleep(200);
+                assertEquals("joined","b2",board.getJoinedBoard(BOARD_DIRECTION.RIGHT));
+                Thread.sleep(800);
+                assertEquals("evicted","",board.getJoinedBoard(BOARD_DIRECTION.RIGHT));
+                assertNull("server view",server.getNeighbours("b1").get(BOARD_DIRECTION.RIGHT));
+                assertNull("connection closed",in.readLine());
+            }
+        }
+        flingball.close();
+    }
+    
+    //covers destination that never acknowledges a ball, sender that acknowledges
+    @Test
+    public void testServerRetriesUnacknowledgedBall() throws IOException, InterruptedException {
+        final int port=PORT+22;
+        FlingballServer server = new FlingballServer(port, FlingballServer.DEFAULT_GRACE_MILLIS, 0);
+        startServer(server);
+        try (Socket sender = new Socket(LOCALHOST, port);
+                BufferedReader senderIn = new BufferedReader(new InputStreamReader(sender.getInputStream()));
+                PrintWriter senderOut = new PrintWriter(sender.getOutputStream(), true);
+                Socket receiver = new Socket(LOCALHOST, port);
+                BufferedReader receiverIn = new BufferedReader(new InputStreamReader(receiver.getInputStream()));
+                PrintWriter receiverOut = new PrintWriter(receiver.getOutputStream(), true)) {
+            senderOut.println("connect b1");
+            int senderID=Integer.parseInt(senderIn.readLine().split(" ")[1]);
+            receiverOut.println("connect b2");
+            int receiverID=Integer.parseInt(receiverIn.readLine().split(" ")[1]);
+            try (ServerSocket senderServer = new ServerSocket(senderID + Flingball.PORT_START_NUMBER);
+                    ServerSocket receiverServer = new ServerSocket(receiverID + Flingball.PORT_START_NUMBER)) {
+                senderOut.println("server created");
+                assertEquals("created","succeed: created socket for this server",senderIn.readLine());
+                receiverOut.println("server created");
+                assertEquals("created","succeed: created socket for this server",receiverIn.readLine());
+                try (Socket toSender = senderServer.accept();
+                        BufferedReader toSenderIn = new BufferedReader(new InputStreamReader(toSender.getInputStream()));
+                        PrintWriter toSenderOut = new PrintWriter(toSender.getOutputStream(), true);
+                        Socket toReceiver = receiverServer.accept();
+                        BufferedReader toReceiverIn = new BufferedReader(new InputStreamReader(toReceiver.getInputStream()))) {
+                    server.actOnCommand("h b1 b2");
+                    assertEquals("join","join right b2",toSenderIn.readLine());
+                    assertEquals("join","join left b1",toReceiverIn.readLine());
+                    senderOut.println("tran b2 1.0 2.0 3.0 4.0 ball");
+                    assertEquals("accepted","succeed: tran ball received and sent",senderIn.readLine());
+                    // the client of b2 reads the ball but never acknowledges it
+                    String ball=toReceiverIn.readLine();
+                    assertEquals("numbered","tran 1.0 2.0 3.0 4.0 ball seq 0",ball);
+                    assertEquals("sent again",ball,toReceiverIn.readLine());
+                    assertEquals("sent again",ball,toReceiverIn.readLine());
+                    assertEquals("evicted","disjoin b2",toSenderIn.readLine());
+                    String returned=toSenderIn.readLine();
+                    assertTrue("returned "+returned,returned.startsWith("tran ") && returned.endsWith(" ball seq 1"));
+                    assertNull("connection closed",receiverIn.readLine());
+                    toSenderOut.println("succeed: ball received seq 1");
+                    Thread.sleep(200);
+                    assertTrue("acknowledged",server.getStatsReport().contains("balls 0 in flight"));
+                }
+            }
+        }
+    }
+    
+    //covers ball given back to a board joined to its destination on two sides
+    @Test
+    public void testServerReturnsBallThroughItsSide() throws IOException, InterruptedException {
+        final int port=PORT+25;
+        FlingballServer server = new FlingballServer(port, FlingballServer.DEFAULT_GRACE_MILLIS, 0);
+        startServer(server);
+        try (Socket sender = new Socket(LOCALHOST, port);
+                BufferedReader senderIn = new BufferedReader(new InputStreamReader(sender.getInputStream()));
+                PrintWriter senderOut = new PrintWriter(sender.getOutputStream(), true);
+                Socket receiver = new Socket(LOCALHOST, port);
+                BufferedReader receiverIn = new BufferedReader(new InputStreamReader(receiver.getInputStream()));
+                PrintWriter receiverOut = new PrintWriter(receiver.getOutputStream(), true)) {
+            senderOut.println("connect b1");
+            int senderID=Integer.parseInt(senderIn.readLine().split(" ")[1]);
+            receiverOut.println("connect b2");
+            int receiverID=Integer.parseInt(receiverIn.readLine().split(" ")[1]);
+            try (ServerSocket senderServer = new ServerSocket(senderID + Flingball.PORT_START_NUMBER);
+                    ServerSocket receiverServer = new ServerSocket(receiverID + Flingball.PORT_START_NUMBER)) {
+                senderOut.println("server created");
+                assertEquals("created","succeed: created socket for this server",senderIn.readLine());
+                receiverOut.println("server created");
+                assertEquals("created","succeed: created socket for this server",receiverIn.readLine());
+                try (Socket toSender = senderServer.accept();
+                        BufferedReader toSenderIn = new BufferedReader(new InputStreamReader(toSender.getInputStream()));
+                        Socket toReceiver = receiverServer.accept();
+                        BufferedReader toReceiverIn = new BufferedReader(new InputStreamReader(toReceiver.getInputStream()))) {
+                    // the two columns of a torus: b2 is on both sides of b1
+                    server.actOnCommand("h b1 b2");
+                    assertEquals("join","join right b2",toSenderIn.readLine());
+                    assertEquals("join","join left b1",toReceiverIn.readLine());
+                    server.actOnCommand("h b2 b1");
+                    assertEquals("join","join right b1",toReceiverIn.readLine());
+                    assertEquals("join","join left b2",toSenderIn.readLine());
+                    // the ball leaves b1 through its left wall, at the right of b2
+                    senderOut.println("tran b2 19.5 2.0 -3.0 4.0 ball");
+                    assertEquals("accepted","succeed: tran ball received and sent",senderIn.readLine());
+                    String ball=toReceiverIn.readLine();
+                    assertEquals("sent again",ball,toReceiverIn.readLine());
+                    assertEquals("sent again",ball,toReceiverIn.readLine());
+                    assertEquals("evicted","disjoin b2",toSenderIn.readLine());
+                    assertEquals("returned at the left wall","tran -0.5 2.0 -3.0 4.0 ball seq 1",toSenderIn.readLine());
+                }
+            }
+        }
+    }
+    
+    //covers restored snapshot, boards not back, back and joined again, other board missing
+    @Test
+    public void testServerRestoresJoins() throws IOException, InterruptedException {
+        final int port=PORT+23;
+        FlingballServer server = new FlingballServer(port, FlingballServer.DEFAULT_GRACE_MILLIS, 0);
+        Map<String, List<String>> portals=new LinkedHashMap<>();
+        portals.put("b1", Arrays.asList("p1"));
+        portals.put("b2", Arrays.asList());
+        portals.put("b3", Arrays.asList("p3", "q3"));
+        RegistrySnapshot snapshot=new RegistrySnapshot(portals, 
+                Topology.parse("h b1 b2\nv b1 b3", Collections.emptyList()));
+        server.restore(snapshot);
+        assertEquals("not back",snapshot,server.snapshot());
+        startServer(server);
+        Board board = new Board("b1",0,0,0);
+        Flingball flingball = new Flingball(LOCALHOST, port, board);
+        flingball.sendConnectRequest(board.getName());
+        Board board2 = new Board("b2",0,0,0);
+        Flingball flingball2 = new Flingball(LOCALHOST, port, board2);
+        flingball2.sendConnectRequest(board2.getName());
+        Thread.sleep(500);
+        assertEquals("joined again","b2",board.getJoinedBoard(BOARD_DIRECTION.RIGHT));
+        assertEquals("joined again","b1",board2.getJoinedBoard(BOARD_DIRECTION.LEFT));
+        assertEquals("missing","",board.getJoinedBoard(BOARD_DIRECTION.BOTTOM));
+        assertEquals("server view","b2",server.getNeighbours("b1").get(BOARD_DIRECTION.RIGHT));
+        assertEquals("still remembered",snapshot.getTopology(),server.snapshot().getTopology());
+        assertEquals("portals of b3",Arrays.asList("p3", "q3"),server.snapshot().getPortals("b3"));
+        flingball.close();
+        flingball2.close();
+    }
+    
+    //covers ball requests within the burst and over the rate
+    @Test
+    public void testServerThrottlesBallRequests() throws IOException, InterruptedException {
+        final int port=PORT+24;
+        FlingballServer server = new FlingballServer(port, FlingballServer.DEFAULT_GRACE_MILLIS, 0);
+        server.setRateLimit(1, 2);
+        startServer(server);
+        try (Socket client = new Socket(LOCALHOST, port);
+                BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+                PrintWriter out = new PrintWriter(client.getOutputStream(), true)) {
+            out.println("connect b1");
+            assertTrue("connected",in.readLine().startsWith("succeed:"));
+            out.println("tran b2 1.0 2.0 3.0 4.0 ball");
+            assertEquals("within the burst","fail: no such board",in.readLine());
+            out.println("port b2 p 1.0 2.0 3.0 4.0 ball from b1");
+            assertEquals("within the burst","fail: no such board",in.readLine());
+            out.println("tran b2 1.0 2.0 3.0 4.0 ball");
+            assertEquals("over the rate","fail: rate limited",in.readLine());
+            out.println("time");
+            assertTrue("other requests",in.readLine().startsWith("succeed: time"));
+            assertEquals("counted",1,server.getStats().get(ServerStats.Counter.THROTTLED));
+        }
+    }
+    
+    //covers a request longer than the server reads, the connection goes on
+    @Test
+    public void testServerRejectsOversizedRequest() throws IOException, InterruptedException {
+        final int port=PORT+26;
+        FlingballServer server = new FlingballServer(port, FlingballServer.DEFAULT_GRACE_MILLIS, 0);
+        startServer(server);
+        try (Socket client = new Socket(LOCALHOST, port);
+                BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+                PrintWriter out = new PrintWriter(client.getOutputStream(), true)) {
+            out.println("connect b1");
+            assertTrue("connected",in.readLine().startsWith("succeed:"));
+            final char[] name = new char[2*FlingballServer.FRAME_BUFFER_BYTES];
+            Arrays.fill(name, 'b');
+            out.println("tran "+new String(name)+" 1.0 2.0 3.0 4.0 ball");
+            assertEquals("too long","fail: request too long",in.readLine());
+            out.println("tran b2 1.0 2.0 3.0 4.0 ball");
+            assertEquals("next request","fail: no such board",in.readLine());
+            out.println("connect b1");
+            assertEquals("board kept","fail: board was connected already",in.readLine());
+        }
+    }
+    
+    //covers JOINS_REQUEST, grid of all connected boards
+    @Test
+    public void testFlingballGridCommand() throws IOException, InterruptedException {
+        final int port=PORT+19;
+        FlingballServer server = new FlingballServer(port);
+        startServer(server);
+        Board board = new Board("b1",0,0,0);
+        Flingball flingball = new Flingball(LOCALHOST, port, board);
+        flingball.sendConnectRequest(board.getName());
+        Board board2 = new Board("b2",0,0,0);
+        Flingball flingball2 = new Flingball(LOCALHOST, port, board2);
+        flingball2.sendConnectRequest(board2.getName());
+        Thread.sleep(300);
+        server.actOnCommand("grid 2 *");
+        Thread.sleep(700);
+        assertEquals("right","b2",board.getJoinedBoard(BOARD_DIRECTION.RIGHT));
+        assertEquals("left","b1",board2.getJoinedBoard(BOARD_DIRECTION.LEFT));
+        assertEquals("empty","",board.getJoinedBoard(BOARD_DIRECTION.LEFT)+board2.getJoinedBoard(BOARD_DIRECTION.RIGHT)
+                +board.getJoinedBoard(BOARD_DIRECTION.BOTTOM)+board2.getJoinedBoard(BOARD_DIRECTION.TOP));
+        assertEquals("server view","b2",server.getNeighbours("b1").get(BOARD_DIRECTION.RIGHT));
+        flingball.close();
+        flingball2.close();
+    }
+    
     /* Start server on its own thread. */
     private static Thread startServer(final FlingballServer server) {
         Thread thread = new Thread(() ->  {
@@ -0,0 +1,122 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Timer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SessionTableTest {
+
+    /*
+     * Testing strategy
+     *
+     * open, close, userWithToken:
+     *    first session of a client, new session replacing the old one, closed session
+     *
+     * suspend, buffer, takeBuffered:
+     *    buffer empty, full; board suspended once, again
+     *
+     * expire, resume:
+     *    grace period runs out, board resumed before, suspended again before
+     *
+     * userOf, connectionOf, isResumed, disconnected:
+     *    connection that resumed a session, that didn't; after it closed
+     *
+     * remove:
+     *    board with a session, suspended
+     */
+    private static final long LONG_GRACE = 60000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers first session, new session, closed session
+    @Test
+    public void testOpenAndClose() {
+        final SessionTable sessions = new SessionTable(LONG_GRACE, 1, new Timer(true), (userID, grace) -> {});
+        final String first = sessions.open(1);
+        assertEquals("first", Optional.of(1), sessions.userWithToken(first));
+        final String second = sessions.open(1);
+        assertNotEquals("new token", first, second);
+        assertEquals("old ended", Optional.empty(), sessions.userWithToken(first));
+        assertTrue("has session", sessions.hasSession(1));
+        sessions.close(1);
+        assertFalse("closed", sessions.hasSession(1));
+        assertEquals("closed token", Optional.empty(), sessions.userWithToken(second));
+    }
+
+    // covers buffer empty and full, suspended once and again, resumed before the grace
+    // period ran out, connection that resumed and didn't, after it closed, remove
+    @Test
+    public void testSuspendAndResume() {
+        final SessionTable sessions = new SessionTable(LONG_GRACE, 2, new Timer(true), (userID, grace) -> {});
+        sessions.open(1);
+        sessions.suspend(1);
+        assertTrue("suspended", sessions.isSuspended(1));
+        assertTrue("buffered", sessions.buffer(1, "join left b2", BallLedger.NO_SEQ));
+        sessions.suspend(1);
+        assertTrue("buffered after", sessions.buffer(1, "tran 1.0 2.0 3.0 4.0 b seq 0", 0));
+        assertFalse("full", sessions.buffer(1, "ping", BallLedger.NO_SEQ));
+
+        assertEquals("not resumed", 5, sessions.userOf(5));
+        sessions.resume(5, 1);
+        assertEquals("resumed", 1, sessions.userOf(5));
+        assertEquals("connection", 5, sessions.connectionOf(1));
+        assertTrue("is resumed", sessions.isResumed(1));
+        final List<SessionTable.Handoff> buffered = sessions.takeBuffered(1);
+        assertEquals("in order", "join left b2", buffered.get(0).getRequest());
+        assertEquals("seq", 0, buffered.get(1).getSeq());
+        assertEquals("size", 2, buffered.size());
+        assertFalse("no longer suspended", sessions.isSuspended(1));
+        assertEquals("nothing buffered", Collections.emptyList(), sessions.takeBuffered(1));
+
+        sessions.disconnected(5);
+        assertFalse("connection closed", sessions.isResumed(1));
+        assertEquals("own connection", 1, sessions.connectionOf(1));
+        sessions.suspend(1);
+        sessions.remove(1);
+        assertFalse("removed session", sessions.hasSession(1));
+        assertFalse("removed suspended", sessions.isSuspended(1));
+        assertEquals("no users", Collections.emptySet(), sessions.getUsers());
+    }
+
+    // covers grace period runs out, suspended again before
+    @Test
+    public void testExpire() throws InterruptedException {
+        final BlockingQueue<Object> expired = new ArrayBlockingQueue<>(2);
+        final SessionTable[] table = new SessionTable[1];
+        final SessionTable sessions = new SessionTable(50, 1, new Timer(true), (userID, grace) -> {
+            synchronized (table) {
+                if (table[0].expire(userID, grace)) {
+                    expired.add(userID);
+                }
+            }
+        });
+        table[0] = sessions;
+        synchronized (table) {
+            sessions.suspend(1);
+            sessions.suspend(2);
+            sessions.suspend(1);
+        }
+        final Set<Object> users = new HashSet<>();
+        users.add(expired.poll(1, TimeUnit.SECONDS));
+        users.add(expired.poll(1, TimeUnit.SECONDS));
+        assertEquals("expired", new HashSet<>(Arrays.asList(1, 2)), users);
+        assertNull("once each", expired.poll(200, TimeUnit.MILLISECONDS));
+        synchronized (table) {
+            assertEquals("still suspended", new HashSet<>(Arrays.asList(1, 2)), sessions.getSuspended());
+        }
+    }
+}
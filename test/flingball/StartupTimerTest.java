@@ -0,0 +1,93 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class StartupTimerTest {
+
+    /*
+     * Testing strategy
+     *
+     * load:
+     *    mode STREAMING, COMPILED, CACHED with the board in the cache directory or not
+     *
+     * command:
+     *    entry point FLINGBALL, FLINGBALL_CACHED, SERVER; the JVM started exits by itself
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers every mode without a grammar, cached board in the directory or not
+    @Test
+    public void testLoadModes() throws IOException, UnableToParseException {
+        final Path source = Paths.get("boards/default.fb");
+        final Path directory = Files.createTempDirectory("startuptimer");
+        final Path compiled = directory.resolve("default" + BoardCompiler.EXTENSION);
+        final Path cache = directory.resolve("cache");
+        try {
+            BoardCompiler.compile(source, compiled);
+            final Board expected = StartupTimer.load(StartupTimer.Mode.STREAMING, source, cache);
+            final Board fromCompiled = StartupTimer.load(StartupTimer.Mode.COMPILED, compiled, cache);
+            final Board parsedIntoCache = StartupTimer.load(StartupTimer.Mode.CACHED, source, cache);
+            final Board fromCache = StartupTimer.load(StartupTimer.Mode.CACHED, source, cache);
+            for (Board board : new Board[] {fromCompiled, parsedIntoCache, fromCache}) {
+                assertEquals("same name", expected.getName(), board.getName());
+                assertEquals("same gadgets", expected.getStaticGadgets(), board.getStaticGadgets());
+                assertEquals("same balls", expected.getBalls(), board.getBalls());
+            }
+            assertEquals("cached on disk", 1, Files.list(cache).count());
+        } finally {
+            if (Files.isDirectory(cache)) {
+                for (Path entry : (Iterable<Path>) Files.list(cache)::iterator) {
+                    Files.delete(entry);
+                }
+                Files.delete(cache);
+            }
+            Files.deleteIfExists(compiled);
+            Files.delete(directory);
+        }
+    }
+
+    // covers entry points FLINGBALL_CACHED and SERVER, JVM exits by itself
+    @Test
+    public void testEntryPointsExit() throws IOException, InterruptedException {
+        final Path source = Paths.get("boards/default.fb");
+        final Path cache = Files.createTempDirectory("startuptimer");
+        try {
+            assertTrue("flingball", StartupTimer.command(StartupTimer.EntryPoint.FLINGBALL, source, cache)
+                    .contains("-D" + Flingball.EXIT_AFTER_LOAD_PROPERTY + "=true"));
+            for (StartupTimer.EntryPoint entryPoint : new StartupTimer.EntryPoint[] {
+                    StartupTimer.EntryPoint.FLINGBALL_CACHED, StartupTimer.EntryPoint.SERVER}) {
+                final List<String> command = new ArrayList<>(Arrays.asList(
+                        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-cp", System.getProperty("java.class.path")));
+                command.addAll(StartupTimer.command(entryPoint, source, cache));
+                final Process child = new ProcessBuilder(command).redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
+                assertTrue(entryPoint + " exited", child.waitFor(60, TimeUnit.SECONDS));
+                assertEquals(entryPoint + " status", 0, child.exitValue());
+            }
+            assertEquals("cached on disk", 1, Files.list(cache).count());
+        } finally {
+            for (Path entry : (Iterable<Path>) Files.list(cache)::iterator) {
+                Files.delete(entry);
+            }
+            Files.delete(cache);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+import physics.Angle;
+import physics.Vect;
+
+public class StreamingBoardParserTest {
+
+    private final static double DELTA = 0.001;
+
+    /*
+     * Testing strategy
+     *
+     * parse(String):
+     *    the inputs of ParserTest: empty board, gravity and friction given, comments, every
+     *    kind of gadget, orientation given or not, fire triggered by itself or another gadget,
+     *    keyup and keydown, portals with and without otherBoard
+     *    every board file in boards/
+     *    whitespace around '=', named key that starts with a single-char key
+     *    input not in the grammar: missing attribute, bad ORIENTATION, unknown gadget,
+     *    comment without newline at the end
+     *    fire with a trigger that is not declared before it
+     *
+     * parse(String, Sink):
+     *    gadgets handed to the sink in file order
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers empty board, gravity and friction given, comments, whitespace around '='
+    @Test
+    public void testParseEmptyBoards() throws UnableToParseException {
+        final Board empty = StreamingBoardParser.parse("board name=Example\n");
+        assertEquals("expected name", "Example", empty.getName());
+        assertEquals("expected gravity", 25.0f, empty.getGravity(), DELTA);
+        assertEquals("expected friction1", 0.025f, empty.getFriction1(), DELTA);
+        assertEquals("expected friction2", 0.025f, empty.getFriction2(), DELTA);
+        assertEquals("expected zero static gadgets", 0, empty.getStaticGadgets().size());
+        assertEquals("expected zero balls", 0, empty.getBalls().size());
+
+        final Board given = StreamingBoardParser.parse("board name=Example gravity = 10 friction1=0.2 friction2=.1\n");
+        assertEquals("expected gravity", 10.0f, given.getGravity(), DELTA);
+        assertEquals("expected friction1", 0.2f, given.getFriction1(), DELTA);
+        assertEquals("expected friction2", 0.1f, given.getFriction2(), DELTA);
+
+        final Board comment = StreamingBoardParser.parse("board name=Example\n #gravity=10 friction1=0.1\n");
+        assertEquals("expected gravity", 25.0f, comment.getGravity(), DELTA);
+    }
+
+    // covers every kind of gadget, orientation given or not, fire triggered by itself and another gadget
+    @Test
+    public void testParseGadgets() throws UnableToParseException {
+        final Board board = StreamingBoardParser.parse("board name=Example\n"
+                + " ball name=Ball x=1.8 y=4.5 xVelocity=-3.4 yVelocity=-2.3\n"
+                + " squareBumper name=Square x=0 y=2\n"
+                + " circleBumper name=circle x=1 y=2\n"
+                + " triangleBumper name=Triangle x=2 y=2\n"
+                + " triangleBumper name=Turned x=3 y=2 orientation=90\n"
+                + " absorber name=Abs x=0 y=19 width=20 height=1 \n"
+                + "fire trigger=Abs action=Abs\n"
+                + "fire trigger=Square action=Abs\n");
+        assertEquals("expected ball", Arrays.asList(new Ball("Ball", new Vect(1.8F, 4.5F), new Vect(-3.4F, -2.3F))),
+                board.getBalls());
+        assertEquals("expected bumpers", Arrays.asList(new SquareBumper("Square", new Vect(0, 2)),
+                new CircleBumper("circle", new Vect(1, 2)), new TriangleBumper("Triangle", new Vect(2, 2), new Angle(0)),
+                new TriangleBumper("Turned", new Vect(3, 2), Angle.DEG_90)), board.getStaticBumpers());
+        final Absorber abs = board.getAbsorbers().get(0);
+        assertEquals("expected Absorber", new Absorber("Abs", new Vect(0, 19), new Vect(20, 1)), abs);
+        assertEquals("expected triggered by itself", abs, board.getTargetAbsorbers(abs).get(0));
+        assertEquals("expected triggered by other", abs,
+                board.getTargetAbsorbers(board.getStaticBumpers().get(0)).get(0));
+    }
+
+    // covers flippers, portals without otherBoard, keyup and keydown, named key after a single-char key
+    @Test
+    public void testParseBoardFiles() throws UnableToParseException, IOException {
+        final Board flippers = StreamingBoardParser.parse(Flingball.boardFileToString(new File("boards/flippers.fb")));
+        assertEquals("expected balls", 5, flippers.getBalls().size());
+        assertEquals("expected bumpers", 8, flippers.getStaticBumpers().size());
+        assertEquals("expected flippers", 6, flippers.getFlippers().size());
+        assertEquals("expected first flipper", new Flipper("FlipA", new Vect(0, 8), Angle.DEG_90,
+                FlipperLeftOrRight.LEFT_FLIPPER), flippers.getFlippers().get(0));
+
+        final Board portals = StreamingBoardParser.parse(Flingball.boardFileToString(new File("boards/portals.fb")));
+        assertEquals("expected portals", Arrays.asList(new Portal("p1", "p2", "Example", new Vect(1, 1)),
+                new Portal("p2", "p1", "Example", new Vect(5, 5))), portals.getPortals());
+
+        final Board key = StreamingBoardParser.parse(Flingball.boardFileToString(new File("boards/key.fb")));
+        final Absorber abs = (Absorber) key.getGadgetWithName("Abs");
+        final Flipper flipA = (Flipper) key.getGadgetWithName("FlipA");
+        final Flipper flipB = (Flipper) key.getGadgetWithName("FlipB");
+        assertEquals("expected fire", abs, key.getTargetAbsorbers(key.getGadgetWithName("CircleF")).get(0));
+        assertEquals("expected fire", flipB, key.getTargetFlippers(abs).get(0));
+        assertEquals("expected fire", flipA, key.getTargetFlippers(flipB).get(0));
+        assertEquals("expected keydown", flipA, key.getTargetFlippers(KeyEvent.VK_A, false).get(0));
+        assertEquals("expected keyup", abs, key.getTargetAbsorbers(KeyEvent.VK_B, true).get(0));
+        assertEquals("expected keyup", flipA, key.getTargetFlippers(KeyEvent.VK_SPACE, true).get(0));
+    }
+
+    // covers every board file in boards/
+    @Test
+    public void testParseAllBoardFiles() throws UnableToParseException, IOException {
+        for (File file : new File("boards").listFiles((dir, name) -> name.endsWith(".fb"))) {
+            assertNotNull("parsed " + file, StreamingBoardParser.parse(Flingball.boardFileToString(file)).getName());
+        }
+    }
+
+    // covers missing attribute, bad ORIENTATION, unknown gadget, comment without newline
+    @Test
+    public void testSyntaxErrors() {
+        for (String board : Arrays.asList("board name=\n", "bord name=Example\n",
+                "board name=Example\nsquareBumper name=Square x=0\n",
+                "board name=Example\ntriangleBumper name=T x=0 y=0 orientation=45\n",
+                "board name=Example\nspinner name=S x=0 y=0\n",
+                "board name=Example\n# comment without newline")) {
+            try {
+                StreamingBoardParser.parse(board);
+                fail("expected a syntax error in " + board);
+            } catch (UnableToParseException e) {
+                assertTrue("line and column in " + e.getMessage(), e.getMessage().startsWith("line "));
+            }
+        }
+        try {
+            StreamingBoardParser.parse("board name=Example\nspinner name=S x=0 y=0\n");
+            fail("expected a syntax error");
+        } catch (UnableToParseException e) {
+            assertTrue("position of the error", e.getMessage().startsWith("line 2, column 1:"));
+        }
+    }
+
+    // covers trigger not declared before the fire
+    @Test(expected=RuntimeException.class)
+    public void testUnknownTrigger() throws UnableToParseException {
+        StreamingBoardParser.parse("board name=Example\nfire trigger=Abs action=Abs\n"
+                + "absorber name=Abs x=0 y=19 width=20 height=1\n");
+    }
+
+    // covers gadgets handed to the sink in file order
+    @Test
+    public void testSinkOrder() throws UnableToParseException {
+        final List<String> parts = new ArrayList<>();
+        StreamingBoardParser.parse("board name=Left gravity=5\n"
+                + "portal name=p x=1 y=1 otherBoard=Right otherPortal=q\n"
+                + "leftFlipper name=F x=4 y=4 orientation=270\n"
+                + "keydown key=shift action=F\n", new StreamingBoardParser.Builder() {
+                    @Override public void board(String name, float gravity, float friction1, float friction2) {
+                        parts.add("board " + name + " " + gravity);
+                    }
+                    @Override public void portal(String name, int x, int y, String otherBoard, String otherPortal) {
+                        parts.add("portal " + name + " " + otherBoard + " " + otherPortal);
+                    }
+                    @Override public void flipper(String name, int x, int y, int orientation, boolean left) {
+                        parts.add("flipper " + name + " " + orientation + " " + left);
+                    }
+                    @Override public void key(String key, boolean up, String action) {
+                        parts.add("key " + key + " " + up + " " + action);
+                    }
+                });
+        assertEquals("in file order", Arrays.asList("board Left 5.0", "portal p Right q", "flipper F 270 true",
+                "key shift false F"), parts);
+    }
+}
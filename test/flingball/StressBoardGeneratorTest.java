@@ -0,0 +1,66 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.mit.eecs.parserlib.UnableToParseException;
+
+public class StressBoardGeneratorTest {
+
+    /*
+     * Testing strategy
+     *
+     * generate:
+     *    same seed and settings, different seeds
+     *    density 0, between 0 and 1, 1
+     *    mix of every kind, of one kind
+     *    balls 0, more than the room left
+     *    portals 0, > 0; chains 0, > 0
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers same seed, different seeds, density between 0 and 1, mix of every kind, portals > 0, chains > 0
+    @Test
+    public void testDeterministic() throws UnableToParseException {
+        final String board = new StressBoardGenerator(42, 0.5, 100, 5, 3, 10, StressBoardGenerator.defaultMix()).generate();
+        assertEquals("same seed, same board", board,
+                new StressBoardGenerator(42, 0.5, 100, 5, 3, 10, StressBoardGenerator.defaultMix()).generate());
+        assertNotEquals("other seed, other board", board,
+                new StressBoardGenerator(43, 0.5, 100, 5, 3, 10, StressBoardGenerator.defaultMix()).generate());
+
+        final Board parsed = StreamingBoardParser.parse(board);
+        assertEquals("balls", 100, parsed.getBalls().size());
+        assertEquals("portals", 10, parsed.getPortals().size());
+        assertFalse("gadgets", parsed.getStaticBumpers().isEmpty());
+        assertEquals("fire triggers", 30, board.split("\nfire ").length - 1);
+        for (Flipper flipper : parsed.getFlippers()) {
+            assertTrue("flipper on the board", flipper.getLocation().x() <= 18 && flipper.getLocation().y() <= 18);
+        }
+    }
+
+    // covers density 0, density 1, mix of one kind, balls 0, more balls than room, portals 0, chains 0
+    @Test
+    public void testDensity() throws UnableToParseException {
+        final Map<StressBoardGenerator.Kind, Integer> squares = new EnumMap<>(StressBoardGenerator.Kind.class);
+        squares.put(StressBoardGenerator.Kind.SQUARE, 1);
+        final Board empty = StreamingBoardParser.parse(new StressBoardGenerator(1, 0, 0, 0, 0, 0, squares).generate());
+        assertEquals("no gadgets", Collections.emptyList(), empty.getStaticGadgets());
+        assertEquals("no balls", 0, empty.getBalls().size());
+
+        final Board full = StreamingBoardParser.parse(new StressBoardGenerator(1, 1, 100, 0, 5, 5, squares).generate());
+        assertEquals("every square a bumper", 400, full.getStaticBumpers().size());
+        assertEquals("no room for balls", 0, full.getBalls().size());
+
+        final Board crowded = StreamingBoardParser.parse(new StressBoardGenerator(1, 0.5, 1000, 0, 0, 0, squares).generate());
+        assertEquals("balls fill the rest", 200, crowded.getBalls().size());
+    }
+}
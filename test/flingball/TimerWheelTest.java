@@ -0,0 +1,78 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+    /*
+     * Testing strategy
+     *
+     * schedule, cancel:
+     *    key new, key with a deadline (rescheduled)
+     *    deadline on a tick boundary, inside a tick, in the past
+     *    cancel key with deadline, without
+     *
+     * advance:
+     *    no tick passed, one tick, many ticks, more ticks than slots
+     *    deadline before, at, after the current time
+     *    deadline further than one turn of the wheel
+     */
+    private static final long START = 1000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers new key, deadline on a boundary and inside a tick, no tick passed, one tick,
+    // deadline before, at and after the current time
+    @Test
+    public void testAdvance() {
+        final TimerWheel<String> wheel = new TimerWheel<>(10, 8, START);
+        wheel.schedule("a", START + 20);
+        wheel.schedule("b", START + 25);
+        assertEquals("size", 2, wheel.size());
+        assertEquals("no tick passed", Collections.emptyList(), wheel.advance(START + 5));
+        assertEquals("before deadline", Collections.emptyList(), wheel.advance(START + 19));
+        assertEquals("at deadline", Arrays.asList("a"), wheel.advance(START + 20));
+        assertEquals("never early", Collections.emptyList(), wheel.advance(START + 29));
+        assertEquals("rounded up", Arrays.asList("b"), wheel.advance(START + 30));
+        assertEquals("empty", 0, wheel.size());
+    }
+
+    // covers rescheduled key, cancel with and without deadline, deadline in the past
+    @Test
+    public void testRescheduleAndCancel() {
+        final TimerWheel<Integer> wheel = new TimerWheel<>(10, 8, START);
+        wheel.schedule(1, START + 30);
+        wheel.schedule(2, START + 30);
+        wheel.advance(START + 20);
+        wheel.schedule(1, START + 60);
+        assertTrue("cancelled", wheel.cancel(2));
+        assertFalse("cancelled twice", wheel.cancel(2));
+        assertEquals("pushed back", Collections.emptyList(), wheel.advance(START + 50));
+        assertTrue("still scheduled", wheel.contains(1));
+        assertEquals("expired", Arrays.asList(1), wheel.advance(START + 60));
+
+        wheel.schedule(3, START);
+        assertEquals("past deadline expires on the next tick", Arrays.asList(3), wheel.advance(START + 70));
+    }
+
+    // covers many ticks, more ticks than slots, deadline further than one turn
+    @Test
+    public void testMoreThanOneTurn() {
+        final TimerWheel<String> wheel = new TimerWheel<>(10, 4, START);
+        wheel.schedule("near", START + 10);
+        wheel.schedule("far", START + 100);
+        assertEquals("many ticks", Arrays.asList("near"), wheel.advance(START + 40));
+        assertEquals("far shares a slot", Collections.emptyList(), wheel.advance(START + 90));
+        wheel.schedule("later", START + 200);
+        assertEquals("more ticks than slots", Arrays.asList("far"), wheel.advance(START + 150));
+        assertEquals("skipped turns", Arrays.asList("later"), wheel.advance(START + 1000));
+    }
+}
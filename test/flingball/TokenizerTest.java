@@ -0,0 +1,189 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+public class TokenizerTest {
+
+    /*
+     * Testing strategy
+     *
+     * reset:
+     *    message is a String, the remaining bytes of a ByteBuffer
+     *    message empty, one token, many tokens, runs of spaces
+     *
+     * count, index, seek, offset, tokenEnd, indexOf, peekIs, nextIs, skip, next:
+     *    cursor at first, middle, last token, after the last token
+     *    seek forward, backward
+     *    word found, not found, token is a prefix of word, word is a prefix of token
+     *    token is ASCII, UTF-8 (bytes)
+     *
+     * nextInt, nextLong:
+     *    value negative, 0, positive, with "+", min and max values
+     *    token not a number, overflows, is only a sign
+     *
+     * nextDouble:
+     *    value negative, 0, -0.0, positive, with and without fraction, exponent
+     *    token as made by Double.toString, with more than 18 digits, NaN, Infinity
+     *    token not a number
+     *
+     * ClockSync and HandoffTrace indexIn, parse:
+     *    request without, with SEND_STAMP and TRACE
+     *    BALLNAME, PORTALNAME and BOARDNAME "at"
+     */
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers String, empty, one token, after the last token
+    @Test
+    public void testEmptyAndSingle() {
+        final Tokenizer tokens = new Tokenizer();
+        assertEquals("empty count", 0, tokens.count());
+        assertFalse("empty hasNext", tokens.hasNext());
+        tokens.reset("quit");
+        assertEquals("count", 1, tokens.count());
+        assertTrue("peekIs", tokens.peekIs("quit"));
+        assertFalse("prefix of word", tokens.peekIs("quits"));
+        assertFalse("word is a prefix", tokens.peekIs("qui"));
+        assertTrue("nextIs", tokens.nextIs("quit"));
+        assertFalse("hasNext", tokens.hasNext());
+        assertEquals("index", 1, tokens.index());
+        assertEquals("offset at end", 4, tokens.offset());
+        try {
+            tokens.next();
+            fail("expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    // covers many tokens, runs of spaces, seek forward and backward, offset, tokenEnd, indexOf
+    @Test
+    public void testCursor() {
+        final String request = "tran  b1 1.5 2 ball trace t-1 7";
+        final Tokenizer tokens = new Tokenizer(request);
+        assertEquals("count", 8, tokens.count());
+        assertFalse("nextIs wrong word", tokens.nextIs("port"));
+        assertEquals("not moved", 0, tokens.index());
+        assertEquals("name", "b1", tokens.skip().next());
+        assertEquals("rest", "1.5 2 ball trace t-1 7", request.substring(tokens.offset()));
+        assertEquals("indexOf", 5, tokens.indexOf("trace", 1));
+        assertEquals("indexOf not found", 8, tokens.indexOf("at", 1));
+        assertEquals("indexOf keeps cursor", 2, tokens.index());
+        assertEquals("seek forward", "t-1", tokens.seek(6).next());
+        assertEquals("seek backward", "tran", tokens.seek(0).next());
+        assertEquals("offset", 6, tokens.offset());
+        assertEquals("tokenEnd", 8, tokens.tokenEnd());
+    }
+
+    // covers ByteBuffer, UTF-8 token, offsets into the buffer
+    @Test
+    public void testBytes() {
+        final ByteBuffer frame = ByteBuffer.wrap("xxhint bé 1 2 3 4 ball".getBytes(StandardCharsets.UTF_8));
+        frame.position(2);
+        final Tokenizer tokens = new Tokenizer().reset(frame);
+        assertEquals("count", 7, tokens.count());
+        assertTrue("nextIs", tokens.nextIs("hint"));
+        assertEquals("offset of name", 7, tokens.offset());
+        assertEquals("UTF-8 name", "bé", tokens.next());
+        assertEquals("int", 1, tokens.nextInt());
+        assertEquals("buffer unchanged", 2, frame.position());
+    }
+
+    // covers nextInt, nextLong, all partitions
+    @Test
+    public void testIntegers() {
+        final Tokenizer tokens = new Tokenizer("-12 0 +7 2147483647 -2147483648 9223372036854775807 -9223372036854775808");
+        assertEquals("negative", -12, tokens.nextInt());
+        assertEquals("zero", 0, tokens.nextInt());
+        assertEquals("plus", 7, tokens.nextInt());
+        assertEquals("max int", Integer.MAX_VALUE, tokens.nextInt());
+        assertEquals("min int", Integer.MIN_VALUE, tokens.nextInt());
+        assertEquals("max long", Long.MAX_VALUE, tokens.nextLong());
+        assertEquals("min long", Long.MIN_VALUE, tokens.nextLong());
+        for (String malformed : new String[] {"x", "-", "1x", "2147483648", "9223372036854775808"}) {
+            tokens.reset(malformed);
+            try {
+                if (malformed.length() > 10) {
+                    tokens.nextLong();
+                } else {
+                    tokens.nextInt();
+                }
+                fail("expected NumberFormatException for " + malformed);
+            } catch (NumberFormatException e) {
+                assertEquals("not moved", 0, tokens.index());
+            }
+        }
+    }
+
+    // covers nextDouble, all partitions
+    @Test
+    public void testDoubles() {
+        final String[] values = {"0", "-0.0", "1.0", "-2.5", "19.999999999999996", "0.30000000000000004",
+            "1.0E-5", "6.02e23", "1.5E10", "123456789012345678901234.5", ".5", "3.", "NaN", "-Infinity"};
+        final StringBuilder message = new StringBuilder();
+        for (String value : values) {
+            message.append(value).append(' ');
+        }
+        final Tokenizer tokens = new Tokenizer(message);
+        for (String value : values) {
+            final double expected = Double.parseDouble(value);
+            final double actual = tokens.nextDouble();
+            assertTrue(value + ": expected " + expected + " got " + actual,
+                    Double.compare(expected, actual) == 0 || Math.abs(expected - actual) <= Math.ulp(expected));
+        }
+        for (int i = 0; i < 1000; i++) {
+            final double random = (Math.random() - .5) * 40;
+            final double parsed = tokens.reset(Double.toString(random)).nextDouble();
+            assertEquals("Double.toString " + random, random, parsed, Math.ulp(random));
+        }
+        for (String malformed : new String[] {"x", ".", "1e", "1.0.0", "--1"}) {
+            try {
+                tokens.reset(malformed).nextDouble();
+                fail("expected NumberFormatException for " + malformed);
+            } catch (NumberFormatException e) {
+                assertEquals("not moved", 0, tokens.index());
+            }
+        }
+    }
+
+    // covers ClockSync and HandoffTrace indexIn and parse, with and without SEND_STAMP and TRACE
+    @Test
+    public void testStampAndTrace() {
+        final Tokenizer plain = new Tokenizer("tran 1 2 3 4 ball");
+        assertEquals("no stamp", plain.count(), ClockSync.indexIn(plain, 6));
+        assertEquals("no stamp parsed", ClockSync.UNKNOWN, ClockSync.parse(plain, ClockSync.indexIn(plain, 6)));
+        assertNull("no trace", HandoffTrace.parse(plain, HandoffTrace.indexIn(plain, 6)));
+
+        final Tokenizer tokens = new Tokenizer("tran 1 2 3 4 ball at 42 trace b-1 100 200 300");
+        final int stampIndex = ClockSync.indexIn(tokens, 6);
+        final int traceIndex = HandoffTrace.indexIn(tokens, 6);
+        assertEquals("stamp index", 6, stampIndex);
+        assertEquals("trace index", 8, traceIndex);
+        assertEquals("stamp", 42, ClockSync.parse(tokens, stampIndex));
+        final HandoffTrace trace = HandoffTrace.parse(tokens, traceIndex);
+        assertEquals("id", "b-1", trace.getId());
+        assertEquals("sent", 100, trace.getSent());
+        assertEquals("forwarded", 300, trace.getServerForwarded());
+    }
+
+    // covers ClockSync indexIn and parse with BALLNAME and BOARDNAME "at"
+    @Test
+    public void testStampNamedAt() {
+        final Tokenizer ball = new Tokenizer("tran 1 2 3 4 at");
+        assertEquals("ball named at is no stamp", ball.count(), ClockSync.indexIn(ball, 6));
+        final Tokenizer stamped = new Tokenizer("tran 1 2 3 4 at at 42");
+        assertEquals("stamp after the ball", 6, ClockSync.indexIn(stamped, 6));
+        assertEquals("stamp", 42, ClockSync.parse(stamped, 6));
+        final Tokenizer portal = new Tokenizer("port at 1 2 3 4 b from at at 7");
+        assertEquals("portal and board named at", 9, ClockSync.indexIn(portal, 9));
+        assertEquals("portal stamp", 7, ClockSync.parse(portal, 9));
+    }
+}
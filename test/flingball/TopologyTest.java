@@ -0,0 +1,97 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TopologyTest {
+
+    /*
+     * Testing strategy
+     *
+     * parse:
+     *    entries h, v, grid, torus, blank lines and comments
+     *    grid of names, of "*"
+     *    text illegal: unknown entry, missing names, COLS not a number or not positive,
+     *       side joined to two boards
+     *
+     * grid:
+     *    torus false, true
+     *    last row full, shorter
+     *    one column, many columns
+     *
+     * getNeighbours, size, missingFrom, toString:
+     *    board in topology, not in topology
+     *    all boards connected, some not
+     */
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers h, v, blank lines and comments, board in and not in topology, toString
+    @Test
+    public void testParseEdges() {
+        final Topology topology = Topology.parse("# two by one\nh b1 b2\n\nv b1 b3\n", Collections.emptyList());
+        assertEquals("boards", Arrays.asList("b1", "b2", "b3"), Arrays.asList(topology.getBoards().toArray()));
+        final Map<BOARD_DIRECTION, String> b1 = topology.getNeighbours("b1");
+        assertEquals("right of b1", "b2", b1.get(BOARD_DIRECTION.RIGHT));
+        assertEquals("bottom of b1", "b3", b1.get(BOARD_DIRECTION.BOTTOM));
+        assertEquals("left of b2", "b1", topology.getNeighbours("b2").get(BOARD_DIRECTION.LEFT));
+        assertEquals("top of b3", "b1", topology.getNeighbours("b3").get(BOARD_DIRECTION.TOP));
+        assertTrue("not in topology", topology.getNeighbours("b4").isEmpty());
+        assertEquals("size", 4, topology.size());
+        assertEquals("round trip", topology, Topology.parse(topology.toString(), Collections.emptyList()));
+    }
+
+    // covers grid of "*", last row shorter, many columns, missingFrom
+    @Test
+    public void testGridOfConnected() {
+        final List<String> connected = Arrays.asList("a", "b", "c", "d", "e");
+        final Topology topology = Topology.parse("grid 3 *", connected);
+        // a b c
+        // d e
+        assertEquals("a", "b", topology.getNeighbours("a").get(BOARD_DIRECTION.RIGHT));
+        assertEquals("a below", "d", topology.getNeighbours("a").get(BOARD_DIRECTION.BOTTOM));
+        assertNull("c below", topology.getNeighbours("c").get(BOARD_DIRECTION.BOTTOM));
+        assertNull("e right", topology.getNeighbours("e").get(BOARD_DIRECTION.RIGHT));
+        assertEquals("size", 2 * (3 + 2), topology.size());
+        assertEquals("all connected", Collections.emptyList(), topology.missingFrom(connected));
+        assertEquals("missing", Arrays.asList("e"), topology.missingFrom(connected.subList(0, 4)));
+    }
+
+    // covers torus, last row full, one column and many columns
+    @Test
+    public void testTorus() {
+        final Topology wide = Topology.grid(2, Arrays.asList("a", "b", "c", "d"), true);
+        assertEquals("a left", "b", wide.getNeighbours("a").get(BOARD_DIRECTION.LEFT));
+        assertEquals("a top", "c", wide.getNeighbours("a").get(BOARD_DIRECTION.TOP));
+        assertEquals("d right", "c", wide.getNeighbours("d").get(BOARD_DIRECTION.RIGHT));
+        assertEquals("every side joined", 4 * 4, wide.size());
+        assertEquals("same as parsed", wide, Topology.parse("torus 2 a b c d", Collections.emptyList()));
+
+        final Topology column = Topology.grid(1, Arrays.asList("a", "b"), true);
+        assertEquals("joined to itself", "a", column.getNeighbours("a").get(BOARD_DIRECTION.RIGHT));
+        assertEquals("below", "b", column.getNeighbours("a").get(BOARD_DIRECTION.BOTTOM));
+    }
+
+    // covers illegal text
+    @Test
+    public void testIllegal() {
+        final String[] illegal = {"x b1 b2", "h b1", "grid x b1", "grid 0 b1", "torus 2", "grid 2 * b1",
+            "h b1 b2\nh b1 b3"};
+        for (String text : illegal) {
+            try {
+                Topology.parse(text, Arrays.asList("b1", "b2"));
+                fail("expected IllegalArgumentException for " + text);
+            } catch (IllegalArgumentException e) {
+                assertTrue("line number in " + e.getMessage(), e.getMessage().startsWith("line "));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package flingball;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class UdpTransportTest {
+
+    /*
+     * Testing strategy
+     *
+     * send, start:
+     *    one message, many messages on loopback
+     *    datagram fits, too long
+     *
+     * accept:
+     *    datagram newer than last from same sender and stream, older, same sequence number
+     *    different stream, different sender
+     *    malformed datagram
+     */
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers many messages on loopback
+    @Test
+    public void testSendAndReceiveOnLoopback() throws IOException, InterruptedException {
+        final UdpTransport sender = new UdpTransport(0);
+        final UdpTransport receiver = new UdpTransport(0);
+        final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        receiver.start((stream, payload) -> received.add(stream + ":" + payload));
+        final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), receiver.getPort());
+        try {
+            sender.send("hint", "b1 1.0 2.0 3.0 4.0 ball", address);
+            sender.send("frame", "b1 5 ball 1.0 2.0", address);
+            final int timeoutMillis = 2000;
+            assertEquals("first", "hint:b1 1.0 2.0 3.0 4.0 ball", received.poll(timeoutMillis, TimeUnit.MILLISECONDS));
+            assertEquals("second", "frame:b1 5 ball 1.0 2.0", received.poll(timeoutMillis, TimeUnit.MILLISECONDS));
+            assertEquals("sent", 2, sender.getSent());
+            assertEquals("delivered", 2, receiver.getDelivered());
+        } finally {
+            sender.close();
+            receiver.close();
+        }
+    }
+
+    // covers datagram too long
+    @Test(expected=IOException.class)
+    public void testTooLong() throws IOException {
+        final UdpTransport sender = new UdpTransport(0);
+        try {
+            StringBuilder payload = new StringBuilder();
+            while (payload.length() <= UdpTransport.MAX_DATAGRAM_BYTES) {
+                payload.append("ball ");
+            }
+            sender.send("frame", payload.toString(), new InetSocketAddress(InetAddress.getLoopbackAddress(), 1));
+        } finally {
+            sender.close();
+        }
+    }
+
+    // covers newer, older, same sequence number, different stream, different sender
+    @Test
+    public void testDropLate() throws IOException {
+        final UdpTransport receiver = new UdpTransport(0);
+        final InetSocketAddress sender1 = new InetSocketAddress(InetAddress.getLoopbackAddress(), 1);
+        final InetSocketAddress sender2 = new InetSocketAddress(InetAddress.getLoopbackAddress(), 2);
+        try {
+            assertArrayEquals("first", new String[] {"s", "a b"}, receiver.accept("5 s a b", sender1));
+            assertNull("older", receiver.accept("4 s c", sender1));
+            assertNull("duplicate", receiver.accept("5 s c", sender1));
+            assertArrayEquals("newer", new String[] {"s", "d"}, receiver.accept("7 s d", sender1));
+            assertArrayEquals("other stream", new String[] {"t", "e"}, receiver.accept("1 t e", sender1));
+            assertArrayEquals("other sender", new String[] {"s", "f"}, receiver.accept("1 s f", sender2));
+            assertEquals("dropped", 2, receiver.getDroppedLate());
+        } finally {
+            receiver.close();
+        }
+    }
+
+    // covers malformed datagram
+    @Test
+    public void testMalformed() throws IOException {
+        final UdpTransport receiver = new UdpTransport(0);
+        final InetSocketAddress sender = new InetSocketAddress(InetAddress.getLoopbackAddress(), 1);
+        try {
+            assertNull("no payload", receiver.accept("5 s", sender));
+            assertNull("no sequence number", receiver.accept("x s a", sender));
+            assertEquals("nothing delivered", 0, receiver.getDelivered());
+        } finally {
+            receiver.close();
+        }
+    }
+}